@@ -24,9 +24,13 @@
 package htsjdk.samtools;
 
 
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.seekablestream.SeekableReadAheadStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
 import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CoordMath;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -87,6 +91,21 @@ class BAMFileReader extends SamReader.ReaderImplementation {
      */
     private boolean mEnableIndexMemoryMapping = true;
 
+    /**
+     * Cache shared with other readers for the contents of a file-based index, or null.
+     */
+    private BAMIndexCache mIndexCache = null;
+
+    /**
+     * Chunks of a multi-interval query that are separated by at most this many compressed bytes are read as one.
+     */
+    private long mQueryChunkGap = Defaults.BAM_QUERY_CHUNK_GAP;
+
+    /**
+     * The stream under mCompressedInputStream if this reader is seekable, through which query results are read ahead.
+     */
+    private SeekableReadAheadStream mReadAheadStream = null;
+
     /**
      * Add information about the origin (reader and position) to SAM records.
      */
@@ -129,7 +148,7 @@ class BAMFileReader extends SamReader.ReaderImplementation {
                   final ValidationStringency validationStringency,
                   final SAMRecordFactory factory)
         throws IOException {
-        this(new BlockCompressedInputStream(file), indexFile!=null ? indexFile : SamFiles.findIndex(file), eagerDecode, useAsynchronousIO, file.getAbsolutePath(), validationStringency, factory);
+        this(new SeekableReadAheadStream(new SeekableFileStream(file), Defaults.BAM_QUERY_READ_AHEAD_SIZE), indexFile!=null ? indexFile : SamFiles.findIndex(file), eagerDecode, useAsynchronousIO, file.getAbsolutePath(), validationStringency, factory);
         if (mIndexFile != null && mIndexFile.lastModified() < file.lastModified()) {
             System.err.println("WARNING: BAM index file " + mIndexFile.getAbsolutePath() +
                     " is older than BAM " + file.getAbsolutePath());
@@ -145,7 +164,7 @@ class BAMFileReader extends SamReader.ReaderImplementation {
                   final ValidationStringency validationStringency,
                   final SAMRecordFactory factory)
         throws IOException {
-        this(new BlockCompressedInputStream(strm), indexFile, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, factory);
+        this(new SeekableReadAheadStream(strm, Defaults.BAM_QUERY_READ_AHEAD_SIZE), indexFile, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, factory);
     }
 
     BAMFileReader(final SeekableStream strm,
@@ -155,10 +174,10 @@ class BAMFileReader extends SamReader.ReaderImplementation {
                   final ValidationStringency validationStringency,
                   final SAMRecordFactory factory)
         throws IOException {
-        this(new BlockCompressedInputStream(strm), indexStream, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, factory);
+        this(new SeekableReadAheadStream(strm, Defaults.BAM_QUERY_READ_AHEAD_SIZE), indexStream, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, factory);
     }
 
-    private BAMFileReader(final BlockCompressedInputStream compressedInputStream,
+    private BAMFileReader(final SeekableReadAheadStream readAheadStream,
                           final File indexFile,
                           final boolean eagerDecode,
                           final boolean useAsynchronousIO,
@@ -168,7 +187,8 @@ class BAMFileReader extends SamReader.ReaderImplementation {
         throws IOException {
         mIndexFile = indexFile;
         mIsSeekable = true;
-        mCompressedInputStream = compressedInputStream;
+        mReadAheadStream = readAheadStream;
+        mCompressedInputStream = new BlockCompressedInputStream(readAheadStream);
         mStream = new BinaryCodec(new DataInputStream(mCompressedInputStream));
         this.eagerDecode = eagerDecode;
         this.useAsynchronousIO = useAsynchronousIO;
@@ -178,7 +198,7 @@ class BAMFileReader extends SamReader.ReaderImplementation {
         mFirstRecordPointer = mCompressedInputStream.getFilePointer();
     }    
 
-    private BAMFileReader(final BlockCompressedInputStream compressedInputStream,
+    private BAMFileReader(final SeekableReadAheadStream readAheadStream,
                           final SeekableStream indexStream,
                           final boolean eagerDecode,
                           final boolean useAsynchronousIO,
@@ -188,7 +208,8 @@ class BAMFileReader extends SamReader.ReaderImplementation {
         throws IOException {
         mIndexStream = indexStream;
         mIsSeekable = true;
-        mCompressedInputStream = compressedInputStream;
+        mReadAheadStream = readAheadStream;
+        mCompressedInputStream = new BlockCompressedInputStream(readAheadStream);
         mStream = new BinaryCodec(new DataInputStream(mCompressedInputStream));
         this.eagerDecode = eagerDecode;
         this.useAsynchronousIO = useAsynchronousIO;
@@ -236,6 +257,27 @@ class BAMFileReader extends SamReader.ReaderImplementation {
         this.mEnableIndexMemoryMapping = enabled;
     }
 
+    /**
+     * Caches the contents of a file-based index in the given cache, which may be shared with other readers.
+     * @param cache the cache, or null to go back to caching according to {@link #enableIndexCaching(boolean)}.
+     */
+    @Override
+    void setIndexCache(final BAMIndexCache cache) {
+        if (mIndex != null) {
+            throw new SAMException("Unable to set the index cache; index file has already been loaded.");
+        }
+        this.mIndexCache = cache;
+    }
+
+    /**
+     * Sets the largest number of compressed bytes between the chunks of a multi-interval query for which the chunks
+     * are read as one, rather than seeking from one to the next.  The records in between are read and filtered out.
+     */
+    void setQueryChunkGap(final long gap) {
+        if (gap < 0) throw new IllegalArgumentException("gap must be >= 0");
+        this.mQueryChunkGap = gap;
+    }
+
     @Override void enableCrcChecking(final boolean enabled) {
         this.mCompressedInputStream.setCheckCrcs(enabled);
     }
@@ -262,7 +304,9 @@ class BAMFileReader extends SamReader.ReaderImplementation {
         if(!hasIndex())
             throw new SAMException("No index is available for this BAM file.");
         if(mIndex == null) {
-            if (mIndexFile != null)
+            if (mIndexFile != null && mIndexCache != null)
+                mIndex = new CachingBAMFileIndex(mIndexFile, getFileHeader().getSequenceDictionary(), mEnableIndexMemoryMapping, mIndexCache);
+            else if (mIndexFile != null)
                 mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(mIndexFile, getFileHeader().getSequenceDictionary(), mEnableIndexMemoryMapping)
                                              : new DiskBasedBAMFileIndex(mIndexFile, getFileHeader().getSequenceDictionary(), mEnableIndexMemoryMapping);
             else
@@ -753,7 +797,7 @@ class BAMFileReader extends SamReader.ReaderImplementation {
         }
         final long[] filePointers;
         if (inputSpans.length > 0) {
-            filePointers = BAMFileSpan.merge(inputSpans).toCoordinateArray();
+            filePointers = BAMFileSpan.merge(inputSpans).coalesce(mQueryChunkGap).toCoordinateArray();
         } else {
             filePointers = null;
         }
@@ -795,6 +839,11 @@ class BAMFileReader extends SamReader.ReaderImplementation {
                 }
                 final long startOffset = mFilePointers[mFilePointerIndex++];
                 final long endOffset = mFilePointers[mFilePointerIndex++];
+                if (mReadAheadStream != null) {
+                    // the chunk ends somewhere in the block at the address of its end
+                    mReadAheadStream.readAhead(BlockCompressedFilePointerUtil.getBlockAddress(startOffset),
+                            BlockCompressedFilePointerUtil.getBlockAddress(endOffset) + BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE);
+                }
                 mCompressedInputStream.seek(startOffset);
                 mFilePointerLimit = endOffset;
             }
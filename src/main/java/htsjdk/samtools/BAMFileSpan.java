@@ -23,6 +23,7 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
 import htsjdk.samtools.util.StringUtil;
 
 import java.io.Serializable;
@@ -178,6 +179,31 @@ public class BAMFileSpan implements SAMFileSpan, Serializable {
         return result;
     }
 
+    /**
+     * Joins chunks that are close to each other in the file, so that the span can be read with fewer seeks at the
+     * cost of also reading the data in between.  The chunks must be sorted and disjoint, as they are after
+     * {@link #merge(BAMFileSpan[])}.
+     * @param maxGap Chunks are joined if the compressed block of the start of one is at most this many bytes after
+     *               the block of the end of the previous one.
+     * @return A new span with the joined chunks.
+     */
+    public BAMFileSpan coalesce(final long maxGap) {
+        validateSorted();
+        final List<Chunk> coalesced = new ArrayList<Chunk>(chunks.size());
+        Chunk last = null;
+        for (final Chunk chunk : chunks) {
+            if (last != null && BlockCompressedFilePointerUtil.getBlockAddress(chunk.getChunkStart()) -
+                    BlockCompressedFilePointerUtil.getBlockAddress(last.getChunkEnd()) <= maxGap) {
+                last = new Chunk(last.getChunkStart(), chunk.getChunkEnd());
+                coalesced.set(coalesced.size() - 1, last);
+            } else {
+                last = new Chunk(chunk.getChunkStart(), chunk.getChunkEnd());
+                coalesced.add(last);
+            }
+        }
+        return new BAMFileSpan(coalesced);
+    }
+
     /**
      * Find the first offset in the chunk list
      * @return The first offset in the span
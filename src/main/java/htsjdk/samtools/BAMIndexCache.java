@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memory-bounded cache of the per-reference contents of BAM index files, shared by all the readers it is given to.
+ *
+ * A {@link CachingBAMFileIndex} only keeps the contents it has loaded for as long as the garbage collector allows, and
+ * only for the life of its reader, so an application that opens the same BAM file many times decodes the same index
+ * bins over and over.  Readers that share a cache, see {@link SamReaderFactory#indexCache(BAMIndexCache)}, decode the
+ * contents of each reference of an index file once, until they are evicted to keep the estimated size of the cache
+ * under its limit.  Entries are evicted in least recently used order.
+ *
+ * Index files are identified by their canonical path, length and modification time, so an index that is rewritten
+ * is loaded again.  Indexes read from streams rather than files are not cached.  This class is thread-safe.
+ */
+public class BAMIndexCache {
+    /** Default limit on the estimated size of the contents held by a cache. */
+    public static final long DEFAULT_MAX_SIZE_IN_BYTES = 64L * 1024 * 1024;
+
+    private static final BAMIndexCache SHARED_INSTANCE = new BAMIndexCache(DEFAULT_MAX_SIZE_IN_BYTES);
+
+    private final long maxSizeInBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long sizeInBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSizeInBytes limit on the estimated size of the index contents held by this cache
+     */
+    public BAMIndexCache(final long maxSizeInBytes) {
+        if (maxSizeInBytes < 0) throw new IllegalArgumentException("maxSizeInBytes must be >= 0");
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * @return a process-wide cache of {@link #DEFAULT_MAX_SIZE_IN_BYTES}
+     */
+    public static BAMIndexCache getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    /** @return the number of lookups that found the index contents in this cache */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return the number of lookups that had to read the index contents from the index file */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** @return the number of index contents removed from this cache to keep it under its size limit */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /** @return the estimated size of the index contents held by this cache */
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    /** @return the number of index contents held by this cache */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all the index contents from this cache.  The counters are not reset.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    /**
+     * @return the identity under which the contents of indexFile are cached
+     */
+    static String getIndexId(final File indexFile) {
+        String path;
+        try {
+            path = indexFile.getCanonicalPath();
+        } catch (final IOException e) {
+            path = indexFile.getAbsolutePath();
+        }
+        return path + '\t' + indexFile.length() + '\t' + indexFile.lastModified();
+    }
+
+    /**
+     * Looks up the contents of a reference, loading them through index if they are not cached.
+     *
+     * @param indexId        the identity of the index file, from {@link #getIndexId(File)}
+     * @param referenceIndex the reference to look up
+     * @param index          an index reading the index file identified by indexId
+     * @return the index contents for the reference, or null if the index has none
+     */
+    BAMIndexContent getQueryResults(final String indexId, final int referenceIndex, final AbstractBAMFileIndex index) {
+        final Key key = new Key(indexId, referenceIndex);
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.content;
+            }
+        }
+        misses.incrementAndGet();
+
+        // load outside the lock, so that readers of other indexes are not held up by the I/O
+        final BAMIndexContent content = index.query(referenceIndex, 1, -1);
+        if (content == null) return null;
+        final long size = estimateSizeInBytes(content);
+        if (size > maxSizeInBytes) return content;
+
+        synchronized (this) {
+            final Entry existing = entries.get(key);
+            // another reader may have loaded the same contents in the meantime
+            if (existing != null) return existing.content;
+            entries.put(key, new Entry(content, size));
+            sizeInBytes += size;
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while (sizeInBytes > maxSizeInBytes) {
+                sizeInBytes -= iterator.next().sizeInBytes;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return content;
+    }
+
+    /**
+     * @return a rough estimate of the heap occupied by content
+     */
+    static long estimateSizeInBytes(final BAMIndexContent content) {
+        final BinningIndexContent.BinList bins = content.getBins();
+        long size = 64;
+        // the bin array, each bin and its chunk list, and each chunk
+        size += 16 + 8L * (bins.maxBinNumber + 1);
+        size += 80L * bins.numberOfNonNullBins;
+        for (final Bin bin : bins) {
+            if (bin.getChunkList() != null) size += 40L * bin.getChunkList().size();
+        }
+        final LinearIndex linearIndex = content.getLinearIndex();
+        if (linearIndex != null) size += 48 + 8L * linearIndex.size();
+        return size;
+    }
+
+    private static final class Key {
+        private final String indexId;
+        private final int referenceIndex;
+
+        Key(final String indexId, final int referenceIndex) {
+            this.indexId = indexId;
+            this.referenceIndex = referenceIndex;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return referenceIndex == key.referenceIndex && indexId.equals(key.indexId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * indexId.hashCode() + referenceIndex;
+        }
+    }
+
+    private static final class Entry {
+        private final BAMIndexContent content;
+        private final long sizeInBytes;
+
+        Entry(final BAMIndexContent content, final long sizeInBytes) {
+            this.content = content;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+}
@@ -23,9 +23,13 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.BinaryCodec;
 import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.ParallelBlockCompressedInputStream;
+import htsjdk.samtools.util.RuntimeIOException;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.function.Function;
 
@@ -310,4 +314,34 @@ public class BAMIndexer {
         }
         indexer.finish();
     }
+
+    /**
+     * Generates a BAM index file from a BAM file, decompressing the file on several threads.  The index is the same as
+     * the one created by {@link #createIndex(SamReader, File)}.
+     *
+     * @param input    BAM file to be indexed
+     * @param output   File for output index file
+     * @param nThreads number of threads used to decompress the input
+     */
+    public static void createIndex(final File input, final File output, final int nThreads) {
+        final String source = input.getAbsolutePath();
+        try (final ParallelBlockCompressedInputStream stream = new ParallelBlockCompressedInputStream(input, nThreads)) {
+            final SAMFileHeader header = BAMFileReader.readHeader(new BinaryCodec(stream), ValidationStringency.DEFAULT_STRINGENCY, source);
+            final BAMRecordCodec codec = new BAMRecordCodec(header);
+            codec.setInputStream(stream, source);
+
+            final BAMIndexer indexer = new BAMIndexer(output, header);
+            while (true) {
+                final long startCoordinate = stream.getFilePointer();
+                final SAMRecord rec = codec.decode();
+                if (rec == null) break;
+                final long stopCoordinate = stream.getFilePointer();
+                rec.setFileSource(new SAMFileSource(null, new BAMFileSpan(new Chunk(startCoordinate, stopCoordinate))));
+                indexer.processAlignment(rec);
+            }
+            indexer.finish();
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error creating BAM index for " + source, e);
+        }
+    }
 }
\ No newline at end of file
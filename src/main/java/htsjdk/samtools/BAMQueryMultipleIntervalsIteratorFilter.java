@@ -20,10 +20,13 @@ public class BAMQueryMultipleIntervalsIteratorFilter implements BAMIteratorFilte
     @Override
     public FilteringIteratorState compareToFilter(final SAMRecord record) {
         while (intervalIndex < intervals.length) {
-            final IntervalComparison comparison = compareIntervalToRecord(intervals[intervalIndex], record);
+            final QueryInterval interval = intervals[intervalIndex];
+            // a record that starts inside the interval overlaps it, whatever its end
+            if (!contained && startsInside(interval, record)) return FilteringIteratorState.MATCHES_FILTER;
+            final IntervalComparison comparison = compareIntervalToRecord(interval, record);
             switch (comparison) {
-                // Interval is before SAMRecord.  Try next interval;
-                case BEFORE: ++intervalIndex; break;
+                // Interval is before SAMRecord.  Skip to the first interval that is not.
+                case BEFORE: intervalIndex = firstIntervalNotBefore(record); break;
                 // Interval is after SAMRecord.  Keep scanning forward in SAMRecords
                 case AFTER: return FilteringIteratorState.CONTINUE_ITERATION;
                 // Found a good record
@@ -37,6 +40,42 @@ public class BAMQueryMultipleIntervalsIteratorFilter implements BAMIteratorFilte
         return FilteringIteratorState.STOP_ITERATION;
     }
 
+    private static boolean startsInside(final QueryInterval interval, final SAMRecord record) {
+        final int start = record.getAlignmentStart();
+        return interval.referenceIndex == record.getReferenceIndex() && interval.start <= start &&
+                (interval.end <= 0 || start <= interval.end);
+    }
+
+    private static boolean isBefore(final QueryInterval interval, final SAMRecord record) {
+        final int referenceIndex = record.getReferenceIndex();
+        return interval.referenceIndex < referenceIndex ||
+                (interval.referenceIndex == referenceIndex && interval.end > 0 && interval.end < record.getAlignmentStart());
+    }
+
+    /**
+     * Since the intervals are sorted and disjoint, and the records sorted by start, the intervals before a record are
+     * a prefix of the remaining ones.  Gallops then bisects to the end of that prefix, so that a query over many
+     * intervals does not compare each record with each interval between it and the previous record.
+     * @return the index of the first interval after intervalIndex that is not before record
+     */
+    private int firstIntervalNotBefore(final SAMRecord record) {
+        int lo = intervalIndex + 1;
+        int step = 1;
+        int hi = lo;
+        while (hi < intervals.length && isBefore(intervals[hi], record)) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, intervals.length);
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (isBefore(intervals[mid], record)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
     public static IntervalComparison compareIntervalToRecord(final QueryInterval interval, final SAMRecord record) {
         // interval.end <= 0 implies the end of the reference sequence.
         final int intervalEnd = (interval.end <= 0? Integer.MAX_VALUE: interval.end);
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedBlockFinder;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.BlockGunzipper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the first BAM record that starts at or after the start of a given BGZF block, without reading the file from
+ * the beginning.
+ *
+ * Every offset of the inflated data is tried in turn as the start of a record.  An offset is accepted if the fields of
+ * the record there are consistent with each other and with the sequence dictionary, and if the records that follow it
+ * are too, up to {@link #RECORDS_TO_CHECK} records or the end of the file.  A false positive would need several
+ * consecutive records' worth of random data to look like valid records, including NUL-terminated printable read
+ * names and valid CIGAR operators.
+ */
+class BAMRecordBoundaryGuesser {
+    /** Number of consecutive records that must be valid for an offset to be taken as a record start. */
+    static final int RECORDS_TO_CHECK = 3;
+
+    // larger than any record we expect to see; bounds the data read to check a bad candidate
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int FIXED_LENGTH = 36;
+    private static final int MAX_CIGAR_OPERATOR = 8;
+    private static final int MAX_BASE_QUALITY = 93;
+
+    private final SeekableStream stream;
+    private final int nReferences;
+    private final BlockGunzipper gunzipper = new BlockGunzipper();
+    private final byte[] header = new byte[BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+    private final byte[] compressed = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+
+    // inflated data of consecutive blocks, starting at the block passed to guessNextRecordStart
+    private byte[] data = new byte[0];
+    private int dataLength;
+    private long[] blockAddresses = new long[16];
+    // offset in data of the start of each block
+    private int[] blockStarts = new int[16];
+    private int blockCount;
+    private long nextBlockAddress;
+
+    /**
+     * @param stream      a BAM file
+     * @param nReferences number of sequences in the dictionary of the BAM file
+     */
+    BAMRecordBoundaryGuesser(final SeekableStream stream, final int nReferences) {
+        this.stream = stream;
+        this.nReferences = nReferences;
+    }
+
+    /**
+     * @param blockAddress the address of a BGZF block that does not hold any part of the BAM header
+     * @return the virtual file pointer of the first record that starts at or after the start of the block, or -1 if
+     * there is none
+     * @throws SAMFormatException if the file is not a valid BGZF file
+     */
+    long guessNextRecordStart(final long blockAddress) throws IOException {
+        dataLength = 0;
+        blockCount = 0;
+        nextBlockAddress = blockAddress;
+        for (int offset = 0; ensureAvailable(offset + FIXED_LENGTH); offset++) {
+            if (isRecordChain(offset)) return toFilePointer(offset);
+        }
+        return -1;
+    }
+
+    /** @return true if there are records at offset and after it, up to RECORDS_TO_CHECK or the end of the file */
+    private boolean isRecordChain(int offset) throws IOException {
+        for (int i = 0; i < RECORDS_TO_CHECK; i++) {
+            if (i > 0 && !ensureAvailable(offset + 1)) return true;
+            final int length = getRecordLength(offset);
+            if (length < 0) return false;
+            offset += length;
+        }
+        return true;
+    }
+
+    /** @return the length of the record at offset in data, including its block_size field, or -1 if there is no valid record there */
+    private int getRecordLength(final int offset) throws IOException {
+        if (!ensureAvailable(offset + FIXED_LENGTH)) return -1;
+        final int blockSize = getInt(offset);
+        final int refIndex = getInt(offset + 4);
+        final int position = getInt(offset + 8);
+        final int readNameLength = data[offset + 12] & 0xff;
+        final int cigarLength = getUnsignedShort(offset + 16);
+        final int readLength = getInt(offset + 20);
+        final int mateRefIndex = getInt(offset + 24);
+        final int matePosition = getInt(offset + 28);
+        if (blockSize < FIXED_LENGTH - 4 || blockSize > MAX_RECORD_SIZE) return -1;
+        if (refIndex < -1 || refIndex >= nReferences || mateRefIndex < -1 || mateRefIndex >= nReferences) return -1;
+        if (position < -1 || matePosition < -1) return -1;
+        if (readNameLength == 0 || readLength < 0 || readLength > MAX_RECORD_SIZE) return -1;
+        final long variableLength = readNameLength + 4L * cigarLength + (readLength + 1) / 2 + readLength;
+        if (FIXED_LENGTH - 4 + variableLength > blockSize) return -1;
+
+        final int nameStart = offset + FIXED_LENGTH;
+        final int cigarStart = nameStart + readNameLength;
+        final int qualityStart = cigarStart + 4 * cigarLength + (readLength + 1) / 2;
+        if (!ensureAvailable(offset + 4 + blockSize)) return -1;
+        for (int i = nameStart; i < cigarStart - 1; i++) {
+            if (data[i] < '!' || data[i] > '~') return -1;
+        }
+        if (data[cigarStart - 1] != 0) return -1;
+        for (int i = 0; i < cigarLength; i++) {
+            if ((data[cigarStart + 4 * i] & 0xf) > MAX_CIGAR_OPERATOR) return -1;
+        }
+        // qualities are either all missing (0xff) or in the range of printable phred+33 values
+        if (readLength > 0 && data[qualityStart] != (byte) 0xff) {
+            for (int i = qualityStart; i < qualityStart + readLength; i++) {
+                if ((data[i] & 0xff) > MAX_BASE_QUALITY) return -1;
+            }
+        }
+        return 4 + blockSize;
+    }
+
+    private int getInt(final int offset) {
+        return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8) | ((data[offset + 2] & 0xff) << 16) | ((data[offset + 3] & 0xff) << 24);
+    }
+
+    private int getUnsignedShort(final int offset) {
+        return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8);
+    }
+
+    /** @return the virtual file pointer of offset in data, which must be in a non-empty block */
+    private long toFilePointer(final int offset) {
+        int block = Arrays.binarySearch(blockStarts, 0, blockCount, offset);
+        if (block < 0) {
+            block = -block - 2;
+        } else {
+            // skip empty blocks that start at the same offset
+            while (block + 1 < blockCount && blockStarts[block + 1] == offset) block++;
+        }
+        return BlockCompressedFilePointerUtil.makeFilePointer(blockAddresses[block], offset - blockStarts[block]);
+    }
+
+    /** Inflates blocks until data holds at least length bytes. @return false if the end of the file comes first */
+    private boolean ensureAvailable(final int length) throws IOException {
+        while (dataLength < length) {
+            if (!inflateNextBlock()) return false;
+        }
+        return true;
+    }
+
+    private boolean inflateNextBlock() throws IOException {
+        if (nextBlockAddress >= stream.length()) return false;
+        stream.seek(nextBlockAddress);
+        readFully(header, 0, header.length);
+        if (!BlockCompressedBlockFinder.isBlockHeader(header, 0)) {
+            throw new SAMFormatException("Invalid BGZF block header at " + nextBlockAddress + " in " + stream.getSource());
+        }
+        final int blockSize = BlockCompressedBlockFinder.getBlockSize(header, 0);
+        System.arraycopy(header, 0, compressed, 0, header.length);
+        stream.seek(nextBlockAddress + header.length);
+        readFully(compressed, header.length, blockSize - header.length);
+        final int uncompressedSize = BlockCompressedBlockFinder.getUncompressedSize(compressed, 0);
+
+        if (blockCount == blockAddresses.length) {
+            blockAddresses = Arrays.copyOf(blockAddresses, 2 * blockCount);
+            blockStarts = Arrays.copyOf(blockStarts, 2 * blockCount);
+        }
+        if (dataLength + uncompressedSize > data.length) {
+            data = Arrays.copyOf(data, Math.max(2 * data.length, dataLength + uncompressedSize));
+        }
+        blockAddresses[blockCount] = nextBlockAddress;
+        blockStarts[blockCount] = dataLength;
+        blockCount++;
+        dataLength += gunzipper.unzipBlock(data, dataLength, compressed, 0, blockSize);
+        nextBlockAddress += blockSize;
+        return true;
+    }
+
+    private void readFully(final byte[] buffer, final int offset, final int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            final int read = stream.read(buffer, offset + n, length - n);
+            if (read < 0) throw new SAMFormatException("Truncated BGZF block at " + nextBlockAddress + " in " + stream.getSource());
+            n += read;
+        }
+    }
+}
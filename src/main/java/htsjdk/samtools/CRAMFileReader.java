@@ -54,6 +54,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
     private File mIndexFile;
     private boolean mEnableIndexCaching;
     private boolean mEnableIndexMemoryMapping;
+    private BAMIndexCache mIndexCache;
 
     private ValidationStringency validationStringency;
 
@@ -230,6 +231,12 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         mEnableIndexMemoryMapping = enabled;
     }
 
+    @Override
+    void setIndexCache(final BAMIndexCache cache) {
+        // relevant to BAI only
+        mIndexCache = cache;
+    }
+
     @Override
     void enableCrcChecking(final boolean enabled) {
         // inapplicable to CRAM: do nothing
@@ -252,7 +259,9 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
             final SAMSequenceDictionary dictionary = getFileHeader()
                     .getSequenceDictionary();
             if (mIndexFile.getName().endsWith(BAMIndex.BAMIndexSuffix)) {
-                mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(mIndexFile,
+                mIndex = mIndexCache != null ? new CachingBAMFileIndex(mIndexFile,
+                        dictionary, mEnableIndexMemoryMapping, mIndexCache)
+                        : mEnableIndexCaching ? new CachingBAMFileIndex(mIndexFile,
                         dictionary, mEnableIndexMemoryMapping)
                         : new DiskBasedBAMFileIndex(mIndexFile, dictionary,
                         mEnableIndexMemoryMapping);
@@ -33,23 +33,38 @@ import java.util.WeakHashMap;
 
 /**
  * Class for reading BAM file indices, caching each contig as it's loaded and
- * dropping values when the next contig is loaded.
+ * dropping values when the next contig is loaded.  If given a {@link BAMIndexCache},
+ * the contigs are cached there instead, where they can be shared with other readers.
  */
 class CachingBAMFileIndex extends AbstractBAMFileIndex implements BrowseableBAMIndex
 {
     private Integer mLastReferenceRetrieved = null;
     private final WeakHashMap<Integer,BAMIndexContent> mQueriesByReference = new WeakHashMap<Integer,BAMIndexContent>();
+    private final BAMIndexCache mSharedCache;
+    private final String mIndexId;
 
     public CachingBAMFileIndex(final File file, final SAMSequenceDictionary dictionary) {
-        super(file, dictionary);
+        this(file, dictionary, true);
     }
 
     public CachingBAMFileIndex(final SeekableStream stream, final SAMSequenceDictionary dictionary) {
         super(stream, dictionary);
+        mSharedCache = null;
+        mIndexId = null;
     }
 
     public CachingBAMFileIndex(final File file, final SAMSequenceDictionary dictionary, final boolean useMemoryMapping) {
+        this(file, dictionary, useMemoryMapping, null);
+    }
+
+    /**
+     * @param sharedCache cache in which to look up and store the contents of the index, or null to cache them in this index only
+     */
+    public CachingBAMFileIndex(final File file, final SAMSequenceDictionary dictionary, final boolean useMemoryMapping,
+                               final BAMIndexCache sharedCache) {
         super(file, dictionary, useMemoryMapping);
+        mSharedCache = sharedCache;
+        mIndexId = sharedCache == null ? null : BAMIndexCache.getIndexId(file);
     }
 
     /**
@@ -139,6 +154,9 @@ class CachingBAMFileIndex extends AbstractBAMFileIndex implements BrowseableBAMI
      * @return The index information for this reference.
      */
     protected BAMIndexContent getQueryResults(final int referenceIndex) {
+        if (mSharedCache != null)
+            return mSharedCache.getQueryResults(mIndexId, referenceIndex, this);
+
         // WeakHashMap is a bit weird in that its lookups are done via equals() equality, but expirations must be
         // handled via == equality.  This implementation jumps through a few hoops to make sure that == equality still
         // holds even in the context of boxing/unboxing.
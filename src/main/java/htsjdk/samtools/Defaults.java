@@ -37,12 +37,31 @@ public class Defaults {
      */
     public static final boolean USE_ASYNC_IO_WRITE_FOR_TRIBBLE;
 
+    /** Should asynchronous read I/O be used when iterating over whole files in the tribble package (one thread per file).
+     *  Default = false.
+     */
+    public static final boolean USE_ASYNC_IO_READ_FOR_TRIBBLE;
+
+    /** Should tribble indices of local files be memory-mapped rather than read onto the heap (see
+     *  {@link htsjdk.tribble.index.MappedIndex}).  Default = false.
+     */
+    public static final boolean USE_MEMORY_MAPPED_TRIBBLE_INDEX;
+
     /** Compresion level to be used for writing BAM and other block-compressed outputs.  Default = 5. */
     public static final int COMPRESSION_LEVEL;
 
     /** Buffer size, in bytes, used whenever reading/writing files or streams.  Default = 128k. */
     public static final int BUFFER_SIZE;
 
+    /**
+     * Chunks of a BAM file found for a query over many intervals are read as one if they are separated by at most
+     * this many compressed bytes, rather than seeking from one to the next.  Default = 64k.
+     */
+    public static final int BAM_QUERY_CHUNK_GAP;
+
+    /** Maximum number of bytes read from a BAM file at a time when reading the chunks found for a query.  Default = 4m. */
+    public static final int BAM_QUERY_READ_AHEAD_SIZE;
+
     /** The output format of the flag field when writing SAM text.  Ignored for reading SAM text. */
     public static final SamFlagField SAM_FLAG_FIELD_FORMAT;
 
@@ -91,6 +110,8 @@ public class Defaults {
         USE_ASYNC_IO_READ_FOR_SAMTOOLS = getBooleanProperty("use_async_io_read_samtools", false);
         USE_ASYNC_IO_WRITE_FOR_SAMTOOLS = getBooleanProperty("use_async_io_write_samtools", false);
         USE_ASYNC_IO_WRITE_FOR_TRIBBLE = getBooleanProperty("use_async_io_write_tribble", false);
+        USE_ASYNC_IO_READ_FOR_TRIBBLE = getBooleanProperty("use_async_io_read_tribble", false);
+        USE_MEMORY_MAPPED_TRIBBLE_INDEX = getBooleanProperty("use_memory_mapped_tribble_index", false);
         COMPRESSION_LEVEL = getIntProperty("compression_level", 5);
         BUFFER_SIZE = getIntProperty("buffer_size", 1024 * 128);
         if (BUFFER_SIZE == 0) {
@@ -98,6 +119,8 @@ public class Defaults {
         } else {
             NON_ZERO_BUFFER_SIZE = BUFFER_SIZE;
         }
+        BAM_QUERY_CHUNK_GAP = getIntProperty("bam_query_chunk_gap", 64 * 1024);
+        BAM_QUERY_READ_AHEAD_SIZE = getIntProperty("bam_query_read_ahead_size", 4 * 1024 * 1024);
         REFERENCE_FASTA = getFileProperty("reference_fasta", null);
         USE_CRAM_REF_DOWNLOAD = getBooleanProperty("use_cram_ref_download", false);
         EBI_REFERENCE_SERVICE_URL_MASK = "http://www.ebi.ac.uk/ena/cram/md5/%s";
@@ -118,9 +141,13 @@ public class Defaults {
         result.put("USE_ASYNC_IO_READ_FOR_SAMTOOLS", USE_ASYNC_IO_READ_FOR_SAMTOOLS);
         result.put("USE_ASYNC_IO_WRITE_FOR_SAMTOOLS", USE_ASYNC_IO_WRITE_FOR_SAMTOOLS);
         result.put("USE_ASYNC_IO_WRITE_FOR_TRIBBLE", USE_ASYNC_IO_WRITE_FOR_TRIBBLE);
+        result.put("USE_ASYNC_IO_READ_FOR_TRIBBLE", USE_ASYNC_IO_READ_FOR_TRIBBLE);
+        result.put("USE_MEMORY_MAPPED_TRIBBLE_INDEX", USE_MEMORY_MAPPED_TRIBBLE_INDEX);
         result.put("COMPRESSION_LEVEL", COMPRESSION_LEVEL);
         result.put("BUFFER_SIZE", BUFFER_SIZE);
         result.put("NON_ZERO_BUFFER_SIZE", NON_ZERO_BUFFER_SIZE);
+        result.put("BAM_QUERY_CHUNK_GAP", BAM_QUERY_CHUNK_GAP);
+        result.put("BAM_QUERY_READ_AHEAD_SIZE", BAM_QUERY_READ_AHEAD_SIZE);
         result.put("REFERENCE_FASTA", REFERENCE_FASTA);
         result.put("USE_CRAM_REF_DOWNLOAD", USE_CRAM_REF_DOWNLOAD);
         result.put("EBI_REFERENCE_SERVICE_URL_MASK", EBI_REFERENCE_SERVICE_URL_MASK);
@@ -23,27 +23,51 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.AsyncBufferedIterator;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.DelegatingIterator;
+import htsjdk.samtools.util.SortKeyComparator;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.NoSuchElementException;
 
 /**
  * Provides an iterator interface for merging multiple underlying iterators into a single
  * iterable stream. The underlying iterators/files must all have the same sort order unless
  * the requested output format is unsorted, in which case any combination is valid.
+ *
+ * The next record of each input is kept in a loser tree, so each record returned costs about log2(number of inputs)
+ * comparisons.  If the comparator is a {@link SortKeyComparator}, as those of the coordinate and queryname orders are,
+ * the sort key of each input's next record is cached, and the full comparator is only used to break ties between
+ * keys.  Records that compare equal are returned in the order of their inputs.
  */
 public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
-    private final PriorityQueue<ComparableSamRecordIterator> pq;
     private final SamFileHeaderMerger samHeaderMerger;
     private final Collection<SamReader> readers;
     private final SAMFileHeader.SortOrder sortOrder;
     private final SAMRecordComparator comparator;
+    // non-null if the comparator provides sort keys
+    private final SortKeyComparator<SAMRecord> sortKeyComparator;
 
+    // iterators passed to the constructor, which are merged instead of iterating over the whole of each reader
+    private Map<SamReader, CloseableIterator<SAMRecord>> initialIterators;
+    private int prefetchBufferSize = 0;
     private boolean initialized = false;
 
+    // the inputs being merged, and for each one its next record, or null once it is exhausted, and that record's sort key
+    private SamReader[] inputReaders;
+    private CloseableIterator<SAMRecord>[] inputs;
+    private SAMRecord[] heads;
+    private long[] sortKeys;
+    // loser tree over the inputs: tree[0] is the input with the first record, and every other node holds the input
+    // that lost the comparison made there
+    private int[] tree;
+
     /**
      * Constructs a new merging iterator with the same set of readers and sort order as
      * provided by the header merger parameter.
@@ -67,10 +91,9 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
         this.samHeaderMerger = headerMerger;
         this.sortOrder = headerMerger.getMergedHeader().getSortOrder();
         this.comparator = getComparator();
+        this.sortKeyComparator = this.comparator instanceof SortKeyComparator ? (SortKeyComparator<SAMRecord>) this.comparator : null;
         this.readers = readers;
 
-        this.pq = new PriorityQueue<ComparableSamRecordIterator>(readers.size());
-
         for (final SamReader reader : readers) {
             if (!samHeaderMerger.getHeaders().contains(reader.getFileHeader()))
                 throw new SAMException("All iterators to be merged must be accounted for in the SAM header merger");
@@ -90,41 +113,147 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
      */
     public MergingSamRecordIterator(final SamFileHeaderMerger headerMerger, final Map<SamReader, CloseableIterator<SAMRecord>> iterators, final boolean assumeSorted) {
         this(headerMerger, iterators.keySet(), assumeSorted);
-        for (final Map.Entry<SamReader, CloseableIterator<SAMRecord>> mapping : iterators.entrySet())
-            addIfNotEmpty(new ComparableSamRecordIterator(mapping.getKey(), mapping.getValue(), comparator));
-        initialized = true;
+        this.initialIterators = iterators;
     }
 
+    /**
+     * Reads and decodes the records of each input on a background thread of its own, ahead of the merge.  This takes
+     * one thread per input, and is worthwhile when decoding the inputs, rather than writing the merged records, limits
+     * the speed of the merge.  Must be called before iteration starts.
+     *
+     * @param bufferSize the number of records read ahead of the merge from each input, or 0 to read the inputs on the
+     *                   calling thread, which is the default
+     */
+    public void setPrefetchBufferSize(final int bufferSize) {
+        if (initialized) throw new IllegalStateException("Cannot change the prefetch buffer size after iteration has started");
+        if (bufferSize < 0) throw new IllegalArgumentException("bufferSize must be >= 0");
+        this.prefetchBufferSize = bufferSize;
+    }
+
+    @SuppressWarnings("unchecked")
     private void startIterationIfRequired() {
         if (initialized)
             return;
-        for (final SamReader reader : readers)
-            addIfNotEmpty(new ComparableSamRecordIterator(reader, reader.iterator(), comparator));
+        final List<SamReader> inputReaderList = new ArrayList<SamReader>();
+        final List<CloseableIterator<SAMRecord>> inputList = new ArrayList<CloseableIterator<SAMRecord>>();
+        if (initialIterators != null) {
+            for (final Map.Entry<SamReader, CloseableIterator<SAMRecord>> mapping : initialIterators.entrySet()) {
+                inputReaderList.add(mapping.getKey());
+                inputList.add(prefetch(mapping.getValue()));
+            }
+            initialIterators = null;
+        } else {
+            for (final SamReader reader : readers) {
+                inputReaderList.add(reader);
+                inputList.add(prefetch(reader.iterator()));
+            }
+        }
+        final int n = inputList.size();
+        inputReaders = inputReaderList.toArray(new SamReader[n]);
+        // the array only ever holds the CloseableIterator<SAMRecord>s from inputList
+        @SuppressWarnings("unchecked")
+        final CloseableIterator<SAMRecord>[] inputArray = (CloseableIterator<SAMRecord>[]) new CloseableIterator<?>[n];
+        inputs = inputList.toArray(inputArray);
+        heads = new SAMRecord[n];
+        sortKeys = new long[n];
+        tree = new int[Math.max(1, n)];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < n; i++) {
+            advance(i);
+            // play input i up the tree until it reaches a node that has not yet seen an input from its other side
+            int winner = i;
+            for (int node = (i + n) >>> 1; node > 0 && winner >= 0; node >>>= 1) {
+                if (tree[node] < 0) {
+                    tree[node] = winner;
+                    winner = -1;
+                } else if (isBefore(tree[node], winner)) {
+                    final int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            if (winner >= 0) tree[0] = winner;
+        }
         initialized = true;
     }
 
+    private CloseableIterator<SAMRecord> prefetch(final CloseableIterator<SAMRecord> iterator) {
+        if (prefetchBufferSize == 0) return iterator;
+        final CloseableIterator<SAMRecord> decodingIterator = new DelegatingIterator<SAMRecord>(iterator) {
+            @Override
+            public SAMRecord next() {
+                final SAMRecord record = super.next();
+                record.eagerDecode();
+                return record;
+            }
+        };
+        return new AsyncBufferedIterator<SAMRecord>(decodingIterator, prefetchBufferSize, 1, "MergingSamRecordIterator prefetch");
+    }
+
+    /** Moves input i on to its next record, closing it once it is exhausted. */
+    private void advance(final int i) {
+        if (inputs[i].hasNext()) {
+            heads[i] = inputs[i].next();
+            if (sortKeyComparator != null) sortKeys[i] = sortKeyComparator.getSortKey(heads[i]);
+        } else {
+            heads[i] = null;
+            inputs[i].close();
+        }
+    }
+
+    /** @return true if the next record of input a comes before that of input b; exhausted inputs come last */
+    private boolean isBefore(final int a, final int b) {
+        if (heads[a] == null) return false;
+        if (heads[b] == null) return true;
+        if (sortKeyComparator != null && sortKeys[a] != sortKeys[b]) return sortKeys[a] < sortKeys[b];
+        final int cmp = comparator.compare(heads[a], heads[b]);
+        return cmp != 0 ? cmp < 0 : a < b;
+    }
+
     /**
      * Close down all open iterators.
      */
     public void close() {
-        // Iterators not in the priority queue have already been closed; only close down the iterators that are still in the priority queue.
-        for (CloseableIterator<SAMRecord> iterator : pq)
-            iterator.close();
+        // Exhausted iterators have already been closed; only close down the iterators that still have records.
+        if (!initialized) {
+            if (initialIterators != null) {
+                for (final CloseableIterator<SAMRecord> iterator : initialIterators.values())
+                    iterator.close();
+            }
+            return;
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            if (heads[i] != null) {
+                inputs[i].close();
+                heads[i] = null;
+            }
+        }
     }
 
     /** Returns true if any of the underlying iterators has more records, otherwise false. */
     public boolean hasNext() {
         startIterationIfRequired();
-        return !this.pq.isEmpty();
+        return tree[0] >= 0 && heads[tree[0]] != null;
     }
 
     /** Returns the next record from the top most iterator during merging. */
     public SAMRecord next() {
-        startIterationIfRequired();
+        if (!hasNext()) throw new NoSuchElementException();
+
+        final int input = tree[0];
+        final SAMRecord record = heads[input];
+        advance(input);
+        // replay the matches on the path from input to the root
+        int winner = input;
+        for (int node = (input + inputs.length) >>> 1; node > 0; node >>>= 1) {
+            if (isBefore(tree[node], winner)) {
+                final int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
 
-        final ComparableSamRecordIterator iterator = this.pq.poll();
-        final SAMRecord record = iterator.next();
-        addIfNotEmpty(iterator);
         // this will resolve the reference indices against the new, merged header
         record.setHeader(this.samHeaderMerger.getMergedHeader());
 
@@ -132,7 +261,7 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
         if (this.samHeaderMerger.hasReadGroupCollisions()) {
             final String oldGroupId = (String) record.getAttribute(ReservedTagConstants.READ_GROUP_ID);
             if (oldGroupId != null) {
-                final String newGroupId = this.samHeaderMerger.getReadGroupId(iterator.getReader().getFileHeader(), oldGroupId);
+                final String newGroupId = this.samHeaderMerger.getReadGroupId(inputReaders[input].getFileHeader(), oldGroupId);
                 record.setAttribute(ReservedTagConstants.READ_GROUP_ID, newGroupId);
             }
         }
@@ -141,7 +270,7 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
         if (this.samHeaderMerger.hasProgramGroupCollisions()) {
             final String oldGroupId = (String) record.getAttribute(ReservedTagConstants.PROGRAM_GROUP_ID);
             if (oldGroupId != null) {
-                final String newGroupId = this.samHeaderMerger.getProgramGroupId(iterator.getReader().getFileHeader(), oldGroupId);
+                final String newGroupId = this.samHeaderMerger.getProgramGroupId(inputReaders[input].getFileHeader(), oldGroupId);
                 record.setAttribute(ReservedTagConstants.PROGRAM_GROUP_ID, newGroupId);
             }
         }
@@ -149,18 +278,6 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
         return record;
     }
 
-    /**
-     * Adds iterator to priority queue. If the iterator has more records it is added
-     * otherwise it is closed and not added.
-     */
-    private void addIfNotEmpty(final ComparableSamRecordIterator iterator) {
-        if (iterator.hasNext()) {
-            pq.offer(iterator);
-        } else {
-            iterator.close();
-        }
-    }
-
     /** Unsupported operation. */
     public void remove() {
         throw new UnsupportedOperationException("MergingSAMRecorderIterator.remove()");
@@ -224,6 +341,11 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
             return samRecord1.getAlignmentStart() - samRecord2.getAlignmentStart();
         }
 
+        @Override
+        public long getSortKey(final SAMRecord samRecord) {
+            return makeSortKey(getReferenceIndex(samRecord), samRecord.getAlignmentStart(), samRecord.getReadNegativeStrandFlag());
+        }
+
         private int getReferenceIndex(final SAMRecord samRecord) {
             if (samRecord.getReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
                 return samHeaderMerger.getMergedSequenceIndex(samRecord.getHeader(), samRecord.getReferenceIndex());
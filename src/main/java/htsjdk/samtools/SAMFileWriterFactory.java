@@ -54,6 +54,7 @@ public class SAMFileWriterFactory implements Cloneable {
     private int compressionLevel = BlockCompressedOutputStream.getDefaultCompressionLevel();
     private SamFlagField samFlagFieldOutput = SamFlagField.NONE;
     private Integer maxRecordsInRam = null;
+    private Long maxBytesInRam = null;
     private DeflaterFactory deflaterFactory = BlockCompressedOutputStream.getDefaultDeflaterFactory();
 
     /** simple constructor */
@@ -71,6 +72,7 @@ public class SAMFileWriterFactory implements Cloneable {
         this.tmpDir = other.tmpDir;
         this.compressionLevel = other.compressionLevel;
         this.maxRecordsInRam = other.maxRecordsInRam;
+        this.maxBytesInRam = other.maxBytesInRam;
     }
     
     @Override
@@ -157,6 +159,22 @@ public class SAMFileWriterFactory implements Cloneable {
         return this;
     }
 
+    /**
+     * Before creating a writer that is not presorted, this method may be called in order to limit the memory
+     * used by records before spilling to disk to approximately the given number of bytes, rather than limiting
+     * the number of records.  Records are then held in memory in encoded form, so this limit is not affected by
+     * the size of SAMRecord objects, and takes precedence over {@link #setMaxRecordsInRam(int)}.  This value
+     * affects subsequent calls to one of the make...() methods.
+     *
+     * @param maxBytesInRam Approximate number of bytes of records to store in RAM before spilling to temporary
+     *                      file when creating a sorted SAM or BAM file.
+     */
+    public SAMFileWriterFactory setMaxBytesInRam(final long maxBytesInRam) {
+        if (maxBytesInRam <= 0) throw new IllegalArgumentException("maxBytesInRam must be > 0");
+        this.maxBytesInRam = maxBytesInRam;
+        return this;
+    }
+
     /**
      * Turn on or off the use of asynchronous IO for writing output SAM and BAM files.  If true then
      * each SAMFileWriter creates a dedicated thread which is used for compression and IO activities.
@@ -252,6 +270,9 @@ public class SAMFileWriterFactory implements Cloneable {
         if (maxRecordsInRam != null) {
             writer.setMaxRecordsInRam(maxRecordsInRam);
         }
+        if (maxBytesInRam != null) {
+            writer.setMaxBytesInRam(maxBytesInRam);
+        }
         writer.setHeader(header);
         if (createIndex && writer.getSortOrder().equals(SAMFileHeader.SortOrder.coordinate)) {
             writer.enableBamIndexConstruction();
@@ -282,6 +303,9 @@ public class SAMFileWriterFactory implements Cloneable {
             if (maxRecordsInRam != null) {
                 ret.setMaxRecordsInRam(maxRecordsInRam);
             }
+            if (maxBytesInRam != null) {
+                ret.setMaxBytesInRam(maxBytesInRam);
+            }
             ret.setHeader(header);
 
             if (this.useAsyncIo) return new AsyncSAMFileWriter(ret, this.asyncOutputBufferSize);
@@ -340,6 +364,9 @@ public class SAMFileWriterFactory implements Cloneable {
         if (maxRecordsInRam != null) {
             writer.setMaxRecordsInRam(maxRecordsInRam);
         }
+        if (maxBytesInRam != null) {
+            writer.setMaxBytesInRam(maxBytesInRam);
+        }
         writer.setHeader(header);
 
         if (this.useAsyncIo) return new AsyncSAMFileWriter(writer, this.asyncOutputBufferSize);
@@ -499,7 +526,7 @@ public class SAMFileWriterFactory implements Cloneable {
         return "SAMFileWriterFactory [createIndex=" + createIndex + ", createMd5File=" + createMd5File + ", useAsyncIo="
                 + useAsyncIo + ", asyncOutputBufferSize=" + asyncOutputBufferSize + ", bufferSize=" + bufferSize
                 + ", tmpDir=" + tmpDir + ", compressionLevel=" + compressionLevel + ", maxRecordsInRam="
-                + maxRecordsInRam + "]";
+                + maxRecordsInRam + ", maxBytesInRam=" + maxBytesInRam + "]";
     }
 
 }
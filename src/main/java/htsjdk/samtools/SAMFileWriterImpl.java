@@ -39,6 +39,8 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
 {
     private static int DEAFULT_MAX_RECORDS_IN_RAM = 500000;      
     private int maxRecordsInRam = DEAFULT_MAX_RECORDS_IN_RAM;
+    // if > 0, records are sorted in memory in encoded form, up to this many bytes, instead of maxRecordsInRam records
+    private long maxBytesInRam = 0;
     private SAMFileHeader.SortOrder sortOrder;
     private SAMFileHeader header;
     private SortingCollection<SAMRecord> alignmentSorter;
@@ -110,6 +112,18 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
         }
         this.maxRecordsInRam = maxRecordsInRam;
     }
+
+    /**
+     * When writing records that are not presorted, specify the approximate number of bytes of memory used
+     * by records before spilling to disk, instead of a number of records.  Must be called before setHeader().
+     * @param maxBytesInRam
+     */
+    void setMaxBytesInRam(final long maxBytesInRam) {
+        if (this.header != null) {
+            throw new IllegalStateException("setMaxBytesInRam must be called before setHeader()");
+        }
+        this.maxBytesInRam = maxBytesInRam;
+    }
     
     /**
      * When writing records that are not presorted, specify the path of the temporary directory 
@@ -148,8 +162,13 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
                 sortOrderChecker = new SAMSortOrderChecker(sortOrder);
             }
         } else if (!sortOrder.equals(SAMFileHeader.SortOrder.unsorted)) {
-            alignmentSorter = SortingCollection.newInstance(SAMRecord.class,
-                    new BAMRecordCodec(header), makeComparator(), maxRecordsInRam, tmpDir);
+            if (maxBytesInRam > 0) {
+                alignmentSorter = SortingCollection.newInstanceWithMaxBytesInRam(SAMRecord.class,
+                        new BAMRecordCodec(header), makeComparator(), maxBytesInRam, tmpDir);
+            } else {
+                alignmentSorter = SortingCollection.newInstance(SAMRecord.class,
+                        new BAMRecordCodec(header), makeComparator(), maxRecordsInRam, tmpDir);
+            }
         }
     }
 
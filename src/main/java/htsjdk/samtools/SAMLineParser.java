@@ -33,6 +33,11 @@ import java.util.Optional;
 /**
  * This class enables creation of a SAMRecord object from a String in SAM text format.  The SAM flag field will be inferred
  * for each record separately, unless the expected format is set using `withSamFlagField`.
+ *
+ * The line is parsed in place: fields are located by their offsets in the line, and numbers, bases, qualities and the
+ * common tag types (A, i and Z) are converted directly from its characters, so that the only Strings created are
+ * those kept by the record.  Anything unusual falls back to the general conversions, so the records and errors are
+ * the same either way.
  */
 public class SAMLineParser {
 
@@ -52,11 +57,18 @@ public class SAMLineParser {
     private static final int NUM_REQUIRED_FIELDS = 11;
 
     /**
-     * Allocate this once rather than for every line as a performance
+     * Allocate these once rather than for every line as a performance
      * optimization. The size is arbitrary -- merely large enough to handle the
      * maximum number of fields we might expect from a reasonable SAM file.
+     * They hold the offsets in the current line of the start and end of each field.
      */
-    private final String[] mFields = new String[10000];
+    private static final int MAX_FIELDS = 10000;
+    private final int[] mFieldStarts = new int[MAX_FIELDS];
+    private final int[] mFieldEnds = new int[MAX_FIELDS];
+
+    // the last reference name seen, as it appears in the line and after truncation; lines tend to repeat it
+    private String mLastRawReferenceName;
+    private String mLastReferenceName;
 
     /**
      * Add information about the origin (reader and position) to SAM records.
@@ -166,6 +178,27 @@ public class SAMLineParser {
         return this;
     }
 
+    /**
+     * Parses a field of optionally signed decimal digits, or falls back to {@link Integer#parseInt(String)} for
+     * anything else so that the result, or the error, is the same.
+     */
+    private int parseInt(final int col, final String fieldName) {
+        final int start = mFieldStarts[col];
+        final int end = mFieldEnds[col];
+        int i = start;
+        final boolean negative = i < end && currentLine.charAt(i) == '-';
+        if (i < end && (negative || currentLine.charAt(i) == '+')) ++i;
+        // up to 9 digits cannot overflow an int
+        if (i == end || end - i > 9) return parseInt(getField(col), fieldName);
+        int value = 0;
+        for (; i < end; ++i) {
+            final char c = currentLine.charAt(i);
+            if (c < '0' || c > '9') return parseInt(getField(col), fieldName);
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
     private int parseInt(final String s, final String fieldName) {
         final int ret;
         try {
@@ -176,6 +209,27 @@ public class SAMLineParser {
         return ret;
     }
     
+    /**
+     * Parses a decimal flag directly, or falls back to {@link SamFlagField} for other formats.
+     */
+    private int parseFlag(final int col, final String fieldName) {
+        final int start = mFieldStarts[col];
+        final int end = mFieldEnds[col];
+        // a leading 0 means octal or hexadecimal, unless it is the only digit
+        if ((!samFlagField.isPresent() || samFlagField.get() == SamFlagField.DECIMAL) && end > start && end - start <= 9 &&
+                (end - start == 1 || currentLine.charAt(start) != '0')) {
+            int value = 0;
+            int i = start;
+            for (; i < end; ++i) {
+                final char c = currentLine.charAt(i);
+                if (c < '0' || c > '9') break;
+                value = value * 10 + (c - '0');
+            }
+            if (i == end) return value;
+        }
+        return parseFlag(getField(col), fieldName);
+    }
+
     private int parseFlag(final String s, final String fieldName) {
         try {
             return samFlagField.isPresent() ? samFlagField.get().parse(s) : SamFlagField.parseDefault(s);
@@ -226,15 +280,15 @@ public class SAMLineParser {
         this.currentLineNumber = lineNumber;
         this.currentLine = line;
 
-        final int numFields = StringUtil.split(line, mFields, '\t');
+        final int numFields = splitFields(line);
         if (numFields < NUM_REQUIRED_FIELDS) {
             throw reportFatalErrorParsingLine("Not enough fields");
         }
-        if (numFields == mFields.length) {
+        if (numFields == MAX_FIELDS) {
             reportErrorParsingLine("Too many fields in SAM text record.");
         }
         for (int i = 0; i < numFields; ++i) {
-            if (mFields[i].isEmpty()) {
+            if (mFieldStarts[i] == mFieldEnds[i]) {
                 reportErrorParsingLine("Empty field at position " + i + " (zero-based)");
             }
         }
@@ -244,29 +298,28 @@ public class SAMLineParser {
         if (mParentReader != null)
             samRecord.setFileSource(new SAMFileSource(mParentReader, null));
         samRecord.setHeader(this.mFileHeader);
-        samRecord.setReadName(mFields[QNAME_COL]);
+        samRecord.setReadName(getField(QNAME_COL));
 
-        final int flags = parseFlag(mFields[FLAG_COL], "FLAG");
+        final int flags = parseFlag(FLAG_COL, "FLAG");
         samRecord.setFlags(flags);
 
-        String rname = mFields[RNAME_COL];
-        if (!rname.equals("*")) {
-            rname = SAMSequenceRecord.truncateSequenceName(rname);
+        if (!isStar(RNAME_COL)) {
+            final String rname = getReferenceName(RNAME_COL);
             validateReferenceName(rname, "RNAME");
             samRecord.setReferenceName(rname);
         } else if (!samRecord.getReadUnmappedFlag()) {
             reportErrorParsingLine("RNAME is not specified but flags indicate mapped");
         }
 
-        final int pos = parseInt(mFields[POS_COL], "POS");
-        final int mapq = parseInt(mFields[MAPQ_COL], "MAPQ");
-        final String cigar = mFields[CIGAR_COL];
+        final int pos = parseInt(POS_COL, "POS");
+        final int mapq = parseInt(MAPQ_COL, "MAPQ");
+        final boolean cigarIsStar = isStar(CIGAR_COL);
         if (!SAMRecord.NO_ALIGNMENT_REFERENCE_NAME.equals(samRecord
                 .getReferenceName())) {
             if (pos == 0) {
                 reportErrorParsingLine("POS must be non-zero if RNAME is specified");
             }
-            if (!samRecord.getReadUnmappedFlag() && cigar.equals("*")) {
+            if (!samRecord.getReadUnmappedFlag() && cigarIsStar) {
                 reportErrorParsingLine("CIGAR must not be '*' if RNAME is specified");
             }
         } else {
@@ -276,16 +329,15 @@ public class SAMLineParser {
             if (mapq != 0) {
                 reportErrorParsingLine("MAPQ must be zero if RNAME is not specified");
             }
-            if (!cigar.equals("*")) {
+            if (!cigarIsStar) {
                 reportErrorParsingLine("CIGAR must be '*' if RNAME is not specified");
             }
         }
         samRecord.setAlignmentStart(pos);
         samRecord.setMappingQuality(mapq);
-        samRecord.setCigarString(cigar);
+        samRecord.setCigarString(cigarIsStar ? SAMRecord.NO_ALIGNMENT_CIGAR : getField(CIGAR_COL));
 
-        String mateRName = mFields[MRNM_COL];
-        if (mateRName.equals("*")) {
+        if (isStar(MRNM_COL)) {
             if (samRecord.getReadPairedFlag() && !samRecord.getMateUnmappedFlag()) {
                 reportErrorParsingLine("MRNM not specified but flags indicate mate mapped");
             }
@@ -293,11 +345,10 @@ public class SAMLineParser {
             if (!samRecord.getReadPairedFlag()) {
                 reportErrorParsingLine("MRNM specified but flags indicate unpaired");
             }
-            if (!"=".equals(mateRName)) {
-                mateRName = SAMSequenceRecord.truncateSequenceName(mateRName);
-            }
+            final boolean sameAsRName = mFieldEnds[MRNM_COL] - mFieldStarts[MRNM_COL] == 1 && line.charAt(mFieldStarts[MRNM_COL]) == '=';
+            final String mateRName = sameAsRName ? "=" : getReferenceName(MRNM_COL);
             validateReferenceName(mateRName, "MRNM");
-            if (mateRName.equals("=")) {
+            if (sameAsRName) {
                 if (samRecord.getReferenceName() == null) {
                     reportErrorParsingLine("MRNM is '=', but RNAME is not set");
                 }
@@ -307,8 +358,8 @@ public class SAMLineParser {
             }
         }
 
-        final int matePos = parseInt(mFields[MPOS_COL], "MPOS");
-        final int isize = parseInt(mFields[ISIZE_COL], "ISIZE");
+        final int matePos = parseInt(MPOS_COL, "MPOS");
+        final int isize = parseInt(ISIZE_COL, "ISIZE");
         if (!samRecord.getMateReferenceName().equals(
                 SAMRecord.NO_ALIGNMENT_REFERENCE_NAME)) {
             if (matePos == 0) {
@@ -324,26 +375,27 @@ public class SAMLineParser {
         }
         samRecord.setMateAlignmentStart(matePos);
         samRecord.setInferredInsertSize(isize);
-        if (!mFields[SEQ_COL].equals("*")) {
-            validateReadBases(mFields[SEQ_COL]);
-            samRecord.setReadString(mFields[SEQ_COL]);
+        if (!isStar(SEQ_COL)) {
+            samRecord.setReadBases(parseReadBases(mFieldStarts[SEQ_COL], mFieldEnds[SEQ_COL]));
         } else {
             samRecord.setReadBases(SAMRecord.NULL_SEQUENCE);
         }
-        if (!mFields[QUAL_COL].equals("*")) {
+        if (!isStar(QUAL_COL)) {
             if (samRecord.getReadBases() == SAMRecord.NULL_SEQUENCE) {
                 reportErrorParsingLine("QUAL should not be specified if SEQ is not specified");
             }
-            if (samRecord.getReadString().length() != mFields[QUAL_COL].length()) {
+            // a missing SEQ has the length of "*"
+            final int readStringLength = samRecord.getReadBases().length == 0 ? 1 : samRecord.getReadBases().length;
+            if (readStringLength != mFieldEnds[QUAL_COL] - mFieldStarts[QUAL_COL]) {
                 reportErrorParsingLine("length(QUAL) != length(SEQ)");
             }
-            samRecord.setBaseQualityString(mFields[QUAL_COL]);
+            samRecord.setBaseQualities(parseBaseQualities(mFieldStarts[QUAL_COL], mFieldEnds[QUAL_COL]));
         } else {
             samRecord.setBaseQualities(SAMRecord.NULL_QUALS);
         }
 
         for (int i = NUM_REQUIRED_FIELDS; i < numFields; ++i) {
-            parseTag(samRecord, mFields[i]);
+            parseTag(samRecord, mFieldStarts[i], mFieldEnds[i]);
         }
 
         // Only call samRecord.isValid() if errors would be reported since the validation
@@ -360,19 +412,82 @@ public class SAMLineParser {
         return samRecord;
     }
 
-    private void validateReadBases(final String bases) {
-        /*
-        * Using regex is slow, so check for invalid characters via
-        * isValidReadBase(), which hopefully the JIT will optimize. if
-        * (!VALID_BASES.matcher(bases).matches()) {
-        * reportErrorParsingLine("Invalid character in read bases"); }
-        */
-        for (int i = 0; i < bases.length(); ++i) {
-            if (!isValidReadBase(bases.charAt(i))) {
-                reportErrorParsingLine("Invalid character in read bases");
-                return;
-            }
+    /**
+     * Finds the tab-separated fields of line, as {@link StringUtil#split(String, String[], char)} would.
+     * @return the number of fields
+     */
+    private int splitFields(final String line) {
+        int numFields = 0;
+        int start = 0;
+        int end = line.indexOf('\t');
+        if (end < 0) {
+            mFieldStarts[0] = 0;
+            mFieldEnds[0] = line.length();
+            return 1;
+        }
+        while (end >= 0 && numFields < MAX_FIELDS) {
+            mFieldStarts[numFields] = start;
+            mFieldEnds[numFields++] = end;
+            start = end + 1;
+            end = line.indexOf('\t', start);
+        }
+        // Add the trailing field, if there is room and if it is not empty.
+        if (numFields < MAX_FIELDS && start < line.length()) {
+            mFieldStarts[numFields] = start;
+            mFieldEnds[numFields++] = line.length();
+        }
+        return numFields;
+    }
+
+    private String getField(final int col) {
+        return currentLine.substring(mFieldStarts[col], mFieldEnds[col]);
+    }
+
+    private boolean isStar(final int col) {
+        return mFieldEnds[col] - mFieldStarts[col] == 1 && currentLine.charAt(mFieldStarts[col]) == '*';
+    }
+
+    /**
+     * @return the reference name in column col, truncated at the first whitespace
+     */
+    private String getReferenceName(final int col) {
+        final int start = mFieldStarts[col];
+        final int length = mFieldEnds[col] - start;
+        if (mLastRawReferenceName == null || mLastRawReferenceName.length() != length ||
+                !currentLine.regionMatches(start, mLastRawReferenceName, 0, length)) {
+            mLastRawReferenceName = currentLine.substring(start, start + length);
+            mLastReferenceName = SAMSequenceRecord.truncateSequenceName(mLastRawReferenceName);
+        }
+        return mLastReferenceName;
+    }
+
+    /**
+     * Converts the read bases in [start, end) of the current line, as {@link SAMRecord#setReadString(String)} would.
+     */
+    private byte[] parseReadBases(final int start, final int end) {
+        final byte[] bases = new byte[end - start];
+        boolean valid = true;
+        for (int i = 0; i < bases.length; ++i) {
+            final char c = currentLine.charAt(start + i);
+            if (valid && !isValidReadBase(c)) valid = false;
+            final byte base = StringUtil.toUpperCase((byte) c);
+            bases[i] = base == '.' ? (byte) 'N' : base;
+        }
+        if (!valid) {
+            reportErrorParsingLine("Invalid character in read bases");
         }
+        return bases;
+    }
+
+    /**
+     * Converts the FASTQ qualities in [start, end) of the current line, as {@link SAMUtils#fastqToPhred(String)} would.
+     */
+    private byte[] parseBaseQualities(final int start, final int end) {
+        final byte[] qualities = new byte[end - start];
+        for (int i = 0; i < qualities.length; ++i) {
+            qualities[i] = (byte) SAMUtils.fastqToPhred(currentLine.charAt(start + i));
+        }
+        return qualities;
     }
 
     private boolean isValidReadBase(final char base) {
@@ -415,6 +530,49 @@ public class SAMLineParser {
         }
     }
 
+    /**
+     * Parses the tag in [start, end) of the current line.  Tags of type A, i and Z with a two character name are
+     * converted directly; anything else is decoded by {@link TextTagCodec}.
+     */
+    private void parseTag(final SAMRecord samRecord, final int start, final int end) {
+        final String line = currentLine;
+        if (end - start > 5 && line.charAt(start + 2) == ':' && line.charAt(start + 4) == ':' &&
+                line.charAt(start) != ':' && line.charAt(start + 1) != ':') {
+            final short tag = (short) (line.charAt(start + 1) << 8 | line.charAt(start));
+            final int valueStart = start + 5;
+            switch (line.charAt(start + 3)) {
+                case 'Z':
+                    samRecord.setAttribute(tag, line.substring(valueStart, end));
+                    return;
+                case 'A':
+                    if (end - valueStart == 1) {
+                        samRecord.setAttribute(tag, line.charAt(valueStart));
+                        return;
+                    }
+                    break;
+                case 'i':
+                    int i = valueStart;
+                    final boolean negative = i < end && line.charAt(i) == '-';
+                    if (i < end && (negative || line.charAt(i) == '+')) ++i;
+                    // up to 9 digits cannot overflow an int
+                    if (i < end && end - i <= 9) {
+                        int value = 0;
+                        for (; i < end; ++i) {
+                            final char c = line.charAt(i);
+                            if (c < '0' || c > '9') break;
+                            value = value * 10 + (c - '0');
+                        }
+                        if (i == end) {
+                            samRecord.setAttribute(tag, negative ? -value : value);
+                            return;
+                        }
+                    }
+                    break;
+            }
+        }
+        parseTag(samRecord, line.substring(start, end));
+    }
+
     private void parseTag(final SAMRecord samRecord, final String tag) {
         Map.Entry<String, Object> entry = null;
         try {
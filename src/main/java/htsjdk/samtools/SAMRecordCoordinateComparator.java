@@ -23,6 +23,8 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.SortKeyComparator;
+
 import java.io.Serializable;
 
 /**
@@ -39,8 +41,10 @@ import java.io.Serializable;
  * if A < B, then B > A
  * if A < B && B < C, then A < C
  *
+ * The sort key of a record packs its reference index, alignment start and strand into a long, so only records at the
+ * same position on the same strand need to be compared field by field.
  */
-public class SAMRecordCoordinateComparator implements SAMRecordComparator, Serializable {
+public class SAMRecordCoordinateComparator implements SAMRecordComparator, SortKeyComparator<SAMRecord>, Serializable {
     private static final long serialVersionUID = 1L;
 
     public int compare(final SAMRecord samRecord1, final SAMRecord samRecord2) {
@@ -102,4 +106,19 @@ public class SAMRecordCoordinateComparator implements SAMRecordComparator, Seria
         }
         return samRecord1.getAlignmentStart() - samRecord2.getAlignmentStart();
     }
+
+    @Override
+    public long getSortKey(final SAMRecord samRecord) {
+        return makeSortKey(samRecord.getReferenceIndex(), samRecord.getAlignmentStart(), samRecord.getReadNegativeStrandFlag());
+    }
+
+    /**
+     * @return the sort key of a record with the given fields; unmapped records (referenceIndex of -1) sort last, and
+     * their alignment start is ignored, as in {@link #fileOrderCompare}
+     */
+    static long makeSortKey(final int referenceIndex, final int alignmentStart, final boolean negativeStrand) {
+        final long strand = negativeStrand ? 1 : 0;
+        if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) return ((long) Integer.MAX_VALUE << 32) | strand;
+        return ((long) referenceIndex << 32) | ((long) alignmentStart << 1) | strand;
+    }
 }
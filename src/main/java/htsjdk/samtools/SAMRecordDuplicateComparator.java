@@ -24,6 +24,7 @@
 package htsjdk.samtools;
 
 import htsjdk.samtools.DuplicateScoringStrategy.ScoringStrategy;
+import htsjdk.samtools.util.SortKeyComparator;
 
 import java.io.Serializable;
 import java.util.HashMap;
@@ -40,7 +41,7 @@ import java.util.Map;
  *
  * @author nhomer
  */
-public class SAMRecordDuplicateComparator implements SAMRecordComparator, Serializable {
+public class SAMRecordDuplicateComparator implements SAMRecordComparator, SortKeyComparator<SAMRecord>, Serializable {
     private static final long serialVersionUID = 1L;
 
     /** An enum to provide type-safe keys for transient attributes the comparator puts on SAMRecords. */
@@ -50,6 +51,9 @@ public class SAMRecordDuplicateComparator implements SAMRecordComparator, Serial
 
     private static final byte FF = 0, FR = 1, F = 2, RF = 3, RR = 4, R = 5;
 
+    // reference indices from this one on share a sort key, along with unmapped reads
+    private static final int MAX_SORT_KEY_REFERENCE_INDEX = 0x7fff;
+
     private final Map<String, Short> libraryIds = new HashMap<String, Short>(); // from library string to library id
     private short nextLibraryId = 1;
     
@@ -360,4 +364,20 @@ public class SAMRecordDuplicateComparator implements SAMRecordComparator, Serial
     public int fileOrderCompare(final SAMRecord samRecord1, final SAMRecord samRecord2) {
         return fileOrderCompare(samRecord1, samRecord2, false, true);
     }
+
+    /**
+     * Packs the library, reference index and read coordinate into a long.  Reads on a reference whose index does not
+     * fit in the key, and unmapped reads, get a key that only holds their library.
+     */
+    @Override
+    public long getSortKey(final SAMRecord samRecord) {
+        populateTransientAttributes(samRecord);
+        final long library = (Short) samRecord.getTransientAttribute(Attr.LibraryId) - Short.MIN_VALUE;
+        final int referenceIndex = samRecord.getReferenceIndex();
+        if (referenceIndex == -1 || referenceIndex >= MAX_SORT_KEY_REFERENCE_INDEX) {
+            return (library << 47) | ((long) MAX_SORT_KEY_REFERENCE_INDEX << 32);
+        }
+        final long coordinate = (long) (Integer) samRecord.getTransientAttribute(Attr.ReadCoordinate) - Integer.MIN_VALUE;
+        return (library << 47) | ((long) referenceIndex << 32) | coordinate;
+    }
 }
@@ -69,4 +69,11 @@ public class SAMRecordQueryHashComparator extends SAMRecordQueryNameComparator i
     private int compareHashes(final SAMRecord lhs, final SAMRecord rhs) {
         return Integer.compare(this.hasher.hashUnencodedChars(lhs.getReadName()), this.hasher.hashUnencodedChars(rhs.getReadName()));
     }
+
+    /** The hash of the read name, followed by the first characters of the read name. */
+    @Override
+    public long getSortKey(final SAMRecord samRecord) {
+        final long hash = (long) this.hasher.hashUnencodedChars(samRecord.getReadName()) - Integer.MIN_VALUE;
+        return (hash << 31) | (getReadNameSortKey(samRecord.getReadName()) >>> 32);
+    }
 }
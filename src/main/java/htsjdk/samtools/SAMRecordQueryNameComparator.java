@@ -23,12 +23,15 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.SortKeyComparator;
+
 import java.io.Serializable;
 
 /**
- * Comparator for "queryname" ordering of SAMRecords.
+ * Comparator for "queryname" ordering of SAMRecords.  The sort key of a record holds the first characters of its read
+ * name, and its finer key all of them, since names often share a long prefix such as the instrument, run and lane.
  */
-public class SAMRecordQueryNameComparator implements SAMRecordComparator, Serializable {
+public class SAMRecordQueryNameComparator implements SAMRecordComparator, SortKeyComparator<SAMRecord>, Serializable {
     private static final long serialVersionUID = 1L;
 
     public int compare(final SAMRecord samRecord1, final SAMRecord samRecord2) {
@@ -86,4 +89,52 @@ public class SAMRecordQueryNameComparator implements SAMRecordComparator, Serial
     public static int compareReadNames(final String readName1, final String readName2) {
         return readName1.compareTo(readName2);
     }
+
+    @Override
+    public long getSortKey(final SAMRecord samRecord) {
+        return getReadNameSortKey(samRecord.getReadName());
+    }
+
+    /**
+     * Packs the first 9 characters of a read name into a long, 7 bits per character, in an order consistent with
+     * {@link #compareReadNames}.  Characters outside of printable ASCII end the key, so that names that differ there
+     * are left to the full comparison.
+     */
+    static long getReadNameSortKey(final String readName) {
+        long key = 0;
+        for (int i = 0; i < 9; i++) {
+            final int c = readName != null && i < readName.length() ? readName.charAt(i) : 0;
+            key = (key << 7) | Math.min(c, 0x7f);
+            if (c >= 0x7f) {
+                key <<= 7 * (8 - i);
+                break;
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public byte[] getSortKeyBytes(final SAMRecord samRecord) {
+        return getReadNameSortKeyBytes(samRecord.getReadName());
+    }
+
+    /**
+     * The characters of a read name as bytes, in an order consistent with {@link #compareReadNames}.  As in
+     * {@link #getReadNameSortKey}, the first character outside of ASCII ends the key as 0x7f.
+     */
+    static byte[] getReadNameSortKeyBytes(final String readName) {
+        if (readName == null) return new byte[0];
+        int length = readName.length();
+        for (int i = 0; i < readName.length(); i++) {
+            if (readName.charAt(i) >= 0x7f) {
+                length = i + 1;
+                break;
+            }
+        }
+        final byte[] key = new byte[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = (byte) Math.min(readName.charAt(i), 0x7f);
+        }
+        return key;
+    }
 }
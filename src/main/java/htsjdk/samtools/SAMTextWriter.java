@@ -24,6 +24,7 @@
 package htsjdk.samtools;
 
 import htsjdk.samtools.util.AsciiWriter;
+import htsjdk.samtools.util.BinaryCodec;
 import htsjdk.samtools.util.RuntimeIOException;
 
 import java.io.File;
@@ -32,14 +33,32 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Arrays;
 
 /**
  * Writer for text-format SAM files.
+ *
+ * When the output is an {@link AsciiWriter}, as it is when writing to a File or an OutputStream, each record is
+ * formatted directly into a reusable byte buffer, which is then copied to the output without char to byte conversion.
+ * Other Writers receive the record as Strings.  Either way the text is the same.
  */
 public class SAMTextWriter extends SAMFileWriterImpl {
     private static final String FIELD_SEPARATOR = "\t";
 
+    /** FASTQ character for each phred score, or 0 for a score that cannot be encoded. */
+    private static final byte[] PHRED_TO_FASTQ = new byte[256];
+    static {
+        for (int i = 0; i <= SAMUtils.MAX_PHRED_SCORE; ++i) {
+            PHRED_TO_FASTQ[i] = (byte) SAMUtils.phredToFastq(i);
+        }
+    }
+
     private final Writer out;
+    // out, if records can be written to it as bytes
+    private final AsciiWriter asciiOut;
+    private byte[] lineBuffer = new byte[1024];
+    private int lineLength;
     // For error reporting only.
     private final File file;
     private final TextTagCodec tagCodec = new TextTagCodec();
@@ -88,6 +107,7 @@ public class SAMTextWriter extends SAMFileWriterImpl {
         this.out = out;
         this.file = null;
         this.samFlagFieldOutput = samFlagFieldOutput;
+        this.asciiOut = this.out instanceof AsciiWriter ? (AsciiWriter) this.out : null;
     }
 
     /**
@@ -103,6 +123,7 @@ public class SAMTextWriter extends SAMFileWriterImpl {
             throw new RuntimeIOException(e);
         }
         this.samFlagFieldOutput = samFlagFieldOutput;
+        this.asciiOut = this.out instanceof AsciiWriter ? (AsciiWriter) this.out : null;
     }
 
     /**
@@ -115,6 +136,7 @@ public class SAMTextWriter extends SAMFileWriterImpl {
         this.file = null;
         this.out = new AsciiWriter(stream);
         this.samFlagFieldOutput = samFlagFieldOutput;
+        this.asciiOut = this.out instanceof AsciiWriter ? (AsciiWriter) this.out : null;
     }
 
     /**
@@ -123,6 +145,219 @@ public class SAMTextWriter extends SAMFileWriterImpl {
      * @param alignment SAMRecord.
      */
     public void writeAlignment(final SAMRecord alignment) {
+        if (asciiOut == null) {
+            writeAlignmentText(alignment);
+            return;
+        }
+        lineLength = 0;
+        appendString(alignment.getReadName());
+        appendByte('\t');
+        if (samFlagFieldOutput == SamFlagField.DECIMAL) {
+            appendLong(alignment.getFlags());
+        } else {
+            appendString(samFlagFieldOutput.format(alignment.getFlags()));
+        }
+        appendByte('\t');
+        appendString(alignment.getReferenceName());
+        appendByte('\t');
+        appendLong(alignment.getAlignmentStart());
+        appendByte('\t');
+        appendLong(alignment.getMappingQuality());
+        appendByte('\t');
+        appendString(alignment.getCigarString());
+        appendByte('\t');
+
+        //  == is OK here because these strings are interned
+        if (alignment.getReferenceName() == alignment.getMateReferenceName() &&
+                SAMRecord.NO_ALIGNMENT_REFERENCE_NAME != alignment.getReferenceName()) {
+            appendByte('=');
+        } else {
+            appendString(alignment.getMateReferenceName());
+        }
+        appendByte('\t');
+        appendLong(alignment.getMateAlignmentStart());
+        appendByte('\t');
+        appendLong(alignment.getInferredInsertSize());
+        appendByte('\t');
+
+        final byte[] bases = alignment.getReadBases();
+        if (bases.length == 0) {
+            appendString(SAMRecord.NULL_SEQUENCE_STRING);
+        } else {
+            ensureCapacity(bases.length);
+            System.arraycopy(bases, 0, lineBuffer, lineLength, bases.length);
+            lineLength += bases.length;
+        }
+        appendByte('\t');
+        final byte[] qualities = alignment.getBaseQualities();
+        if (Arrays.equals(SAMRecord.NULL_QUALS, qualities)) {
+            appendString(SAMRecord.NULL_QUALS_STRING);
+        } else {
+            ensureCapacity(qualities.length);
+            for (final byte quality : qualities) {
+                final byte fastq = PHRED_TO_FASTQ[quality & 0xff];
+                // let SAMUtils report the invalid score
+                lineBuffer[lineLength++] = fastq != 0 ? fastq : (byte) SAMUtils.phredToFastq(quality & 0xff);
+            }
+        }
+
+        SAMBinaryTagAndValue attribute = alignment.getBinaryAttributes();
+        while (attribute != null) {
+            appendByte('\t');
+            appendTag(attribute);
+            attribute = attribute.getNext();
+        }
+        appendByte('\n');
+
+        try {
+            asciiOut.write(lineBuffer, 0, lineLength);
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    /**
+     * Appends the tag in SAM text format, as {@link TextTagCodec} would encode it.
+     */
+    private void appendTag(final SAMBinaryTagAndValue attribute) {
+        final Object value = attribute.value;
+        final char tagType = attribute.isUnsignedArray() ? 'B' : BinaryTagCodec.getTagValueType(value);
+        switch (tagType) {
+            case 'Z':
+            case 'A':
+            case 'c':
+            case 'C':
+            case 's':
+            case 'S':
+            case 'i':
+            case 'I':
+                break;
+            case 'B':
+                if (value instanceof float[] || Array.getLength(value) == 0) {
+                    appendTagWithCodec(attribute);
+                    return;
+                }
+                break;
+            default:
+                appendTagWithCodec(attribute);
+                return;
+        }
+        ensureCapacity(5);
+        lineBuffer[lineLength++] = (byte) attribute.tag;
+        lineBuffer[lineLength++] = (byte) (attribute.tag >> 8);
+        lineBuffer[lineLength++] = ':';
+        switch (tagType) {
+            case 'Z':
+                lineBuffer[lineLength++] = 'Z';
+                lineBuffer[lineLength++] = ':';
+                appendString((String) value);
+                break;
+            case 'A':
+                lineBuffer[lineLength++] = 'A';
+                lineBuffer[lineLength++] = ':';
+                appendByte((Character) value);
+                break;
+            case 'B':
+                lineBuffer[lineLength++] = 'B';
+                lineBuffer[lineLength++] = ':';
+                appendIntegerArray(value, attribute.isUnsignedArray());
+                break;
+            default:
+                final long longVal = ((Number) value).longValue();
+                // as the spec says: [-2^31, 2^32)
+                if (longVal < Integer.MIN_VALUE || longVal > BinaryCodec.MAX_UINT) {
+                    throw new IllegalArgumentException("Value for tag " + tagUtil.makeStringTag(attribute.tag) +
+                            " cannot be stored in either a signed or unsigned 32-bit integer: " + longVal);
+                }
+                lineBuffer[lineLength++] = 'i';
+                lineBuffer[lineLength++] = ':';
+                appendLong(longVal);
+        }
+    }
+
+    private void appendIntegerArray(final Object array, final boolean isUnsigned) {
+        final char type;
+        final long mask;
+        if (array instanceof byte[]) {
+            type = 'c';
+            mask = 0xffL;
+        } else if (array instanceof short[]) {
+            type = 's';
+            mask = 0xffffL;
+        } else {
+            type = 'i';
+            mask = 0xffffffffL;
+        }
+        appendByte(isUnsigned ? Character.toUpperCase(type) : type);
+        final int length = Array.getLength(array);
+        for (int i = 0; i < length; ++i) {
+            appendByte(',');
+            final long value;
+            if (array instanceof byte[]) value = ((byte[]) array)[i];
+            else if (array instanceof short[]) value = ((short[]) array)[i];
+            else value = ((int[]) array)[i];
+            appendLong(isUnsigned ? value & mask : value);
+        }
+    }
+
+    private void appendTagWithCodec(final SAMBinaryTagAndValue attribute) {
+        if (attribute.isUnsignedArray()) {
+            appendString(tagCodec.encodeUnsignedArray(tagUtil.makeStringTag(attribute.tag), attribute.value));
+        } else {
+            appendString(tagCodec.encode(tagUtil.makeStringTag(attribute.tag), attribute.value));
+        }
+    }
+
+    private void ensureCapacity(final int length) {
+        if (lineLength + length > lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.max(2 * lineBuffer.length, lineLength + length));
+        }
+    }
+
+    private void appendByte(final int b) {
+        ensureCapacity(1);
+        lineBuffer[lineLength++] = (byte) b;
+    }
+
+    /** Appends the chars of s, converted to bytes as {@link AsciiWriter} would. */
+    private void appendString(final String s) {
+        final int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; ++i) {
+            lineBuffer[lineLength++] = (byte) s.charAt(i);
+        }
+    }
+
+    /** Appends value in decimal, as {@link Long#toString(long)} would. */
+    private void appendLong(final long value) {
+        // 20 is enough for the digits and sign of any long
+        ensureCapacity(20);
+        if (value == Long.MIN_VALUE) {
+            appendString(Long.toString(value));
+            return;
+        }
+        long remaining = value;
+        if (remaining < 0) {
+            lineBuffer[lineLength++] = '-';
+            remaining = -remaining;
+        }
+        final int start = lineLength;
+        do {
+            lineBuffer[lineLength++] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        // the digits were written from least to most significant
+        for (int i = start, j = lineLength - 1; i < j; ++i, --j) {
+            final byte tmp = lineBuffer[i];
+            lineBuffer[i] = lineBuffer[j];
+            lineBuffer[j] = tmp;
+        }
+    }
+
+    /**
+     * Writes the record to a Writer that is not an AsciiWriter, as Strings.
+     */
+    private void writeAlignmentText(final SAMRecord alignment) {
         try {
             out.write(alignment.getReadName());
             out.write(FIELD_SEPARATOR);
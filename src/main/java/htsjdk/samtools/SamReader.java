@@ -593,5 +593,9 @@ public interface SamReader extends Iterable<SAMRecord>, Closeable {
         abstract void setSAMRecordFactory(final SAMRecordFactory factory);
 
         abstract void setValidationStringency(final ValidationStringency validationStringency);
+
+        /** Shares the contents of this reader's BAM index, if it has one, through cache; ignored by other readers. */
+        void setIndexCache(final BAMIndexCache cache) {
+        }
     }
 }
@@ -84,6 +84,15 @@ public abstract class SamReaderFactory {
     /** Sets the specified reference sequence * */
     abstract public SamReaderFactory referenceSource(CRAMReferenceSource referenceSequence);
 
+    /**
+     * Set the cache in which the factory's {@link SamReader}s keep the contents of their BAM index files, then returns itself.
+     * Readers that share a {@link BAMIndexCache} decode each part of an index file once between them; this is useful when
+     * the same files are opened many times.  Only applies to BAM and CRAM files with a .bai index file.
+     *
+     * @param indexCache the cache, e.g. {@link BAMIndexCache#getSharedInstance()}, or null for each reader to have its own
+     */
+    abstract public SamReaderFactory indexCache(final BAMIndexCache indexCache);
+
     /** Utility method to open the file get the header and close the file */
     abstract public SAMFileHeader getFileHeader(File samFile);
 
@@ -129,6 +138,7 @@ public abstract class SamReaderFactory {
         private SAMRecordFactory samRecordFactory;
         private CustomReaderFactory customReaderFactory;
         private CRAMReferenceSource referenceSource;
+        private BAMIndexCache indexCache;
 
         private SamReaderFactoryImpl(final EnumSet<Option> enabledOptions, final ValidationStringency validationStringency, final SAMRecordFactory samRecordFactory) {
             this.enabledOptions = EnumSet.copyOf(enabledOptions);
@@ -197,6 +207,12 @@ public abstract class SamReaderFactory {
             return this;
         }
 
+        @Override
+        public SamReaderFactory indexCache(final BAMIndexCache indexCache) {
+            this.indexCache = indexCache;
+            return this;
+        }
+
         @Override
         public SAMFileHeader getFileHeader(final File samFile) {
             final SamReader reader = open(samFile);
@@ -327,6 +343,9 @@ public abstract class SamReaderFactory {
                 for (final Option option : enabledOptions) {
                     option.applyTo(reader);
                 }
+                if (indexCache != null && primitiveSamReader instanceof SamReader.ReaderImplementation) {
+                    ((SamReader.ReaderImplementation) primitiveSamReader).setIndexCache(indexCache);
+                }
 
                 return reader;
             } catch (final IOException e) {
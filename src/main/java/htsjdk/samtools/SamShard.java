@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A part of an indexed, coordinate-sorted BAM or CRAM file that can be read independently of the others, so that the
+ * file can be processed on many threads.
+ *
+ * {@link #split(SamReader, long)} cuts a file into shards holding roughly the same number of compressed bytes, using
+ * the linear index of each reference.  A shard is a range of consecutive reference positions, possibly spanning
+ * several references, and owns the records that start in that range, including those that extend into the next
+ * shard; a record is never returned by more than one shard.  The unmapped records with no position make up a last
+ * shard of their own.  Reading each of the shards in turn gives the same records, in the same order, as iterating
+ * over the whole file.
+ *
+ * {@link #stream(Supplier, long, boolean)} gives a possibly parallel stream over all the records of a file, in which
+ * each thread reads its shards with its own {@link SamReader}.
+ */
+public class SamShard {
+    /** Default compressed size of the shards made by {@link #stream(Supplier, long, boolean)}. */
+    public static final long DEFAULT_SHARD_SIZE = 16L * 1024 * 1024;
+
+    // positions covered by each entry of the linear index
+    private static final int LINEAR_INDEX_WINDOW_SIZE = 1 << LinearIndex.BAM_LIDX_SHIFT;
+
+    private final List<QueryInterval> intervals;
+    private final boolean unmapped;
+
+    private SamShard(final List<QueryInterval> intervals, final boolean unmapped) {
+        this.intervals = Collections.unmodifiableList(intervals);
+        this.unmapped = unmapped;
+    }
+
+    /**
+     * @return the sorted, disjoint intervals in which the records of this shard start; an end of 0 or less stands for
+     * the end of the reference.  Empty for the shard of unmapped records.
+     */
+    public List<QueryInterval> getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * @return true if this is the shard of unmapped records with no position
+     */
+    public boolean isUnmapped() {
+        return unmapped;
+    }
+
+    /**
+     * @param reader a reader of the file this shard was made from; it must not be iterating
+     * @return an iterator over the records owned by this shard, in file order
+     */
+    public CloseableIterator<SAMRecord> iterator(final SamReader reader) {
+        if (unmapped) return reader.queryUnmapped();
+        final CloseableIterator<SAMRecord> iterator = reader.query(intervals.toArray(new QueryInterval[intervals.size()]), false);
+        // only the first interval can begin inside a reference, after records that overlap it from the previous shard
+        final QueryInterval first = intervals.get(0);
+        return new CloseableIterator<SAMRecord>() {
+            private SAMRecord next = advance();
+
+            private SAMRecord advance() {
+                while (iterator.hasNext()) {
+                    final SAMRecord record = iterator.next();
+                    if (record.getReferenceIndex() != first.referenceIndex || record.getAlignmentStart() >= first.start) {
+                        return record;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public SAMRecord next() {
+                if (next == null) throw new NoSuchElementException();
+                final SAMRecord record = next;
+                next = advance();
+                return record;
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return unmapped ? "unmapped" : intervals.toString();
+    }
+
+    /**
+     * Cuts an indexed, coordinate-sorted file into shards of roughly targetSize compressed bytes each.  Shards are
+     * cut at the boundaries of the linear index windows (16kb of reference), so a shard holding a single window can
+     * be larger.  References with no records are left out.
+     *
+     * @param reader     a reader of the file, with an index
+     * @param targetSize the compressed size of the file covered by each shard
+     * @return the shards in file order, ending with the shard of unmapped records
+     */
+    public static List<SamShard> split(final SamReader reader, final long targetSize) {
+        if (targetSize <= 0) throw new IllegalArgumentException("targetSize must be > 0");
+        if (!reader.hasIndex()) throw new SAMException("Cannot split a file without an index into shards");
+        final SAMFileHeader header = reader.getFileHeader();
+        if (header.getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
+            throw new SAMException("Cannot split a file that is not coordinate sorted into shards");
+        }
+        final BAMIndex index = reader.indexing().getIndex();
+        final int numReferences = header.getSequenceDictionary().size();
+
+        final List<SamShard> shards = new ArrayList<SamShard>();
+        List<QueryInterval> intervals = new ArrayList<QueryInterval>();
+        long shardAddress = -1;
+        for (int referenceIndex = 0; referenceIndex < numReferences; referenceIndex++) {
+            final long[] entries;
+            final int indexStart;
+            if (index instanceof AbstractBAMFileIndex) {
+                final BAMIndexContent content = ((AbstractBAMFileIndex) index).query(referenceIndex, 1, -1);
+                if (content == null || content.getLinearIndex() == null || content.getLinearIndex().size() == 0) continue;
+                entries = content.getLinearIndex().getIndexEntries();
+                indexStart = content.getLinearIndex().getIndexStart();
+            } else {
+                // without access to the linear index, treat each reference as a single window
+                final BAMFileSpan span = index.getSpanOverlapping(referenceIndex, 1, 0);
+                if (span == null || span.isEmpty()) continue;
+                entries = new long[]{span.getFirstOffset()};
+                indexStart = 0;
+            }
+
+            int start = 1;
+            for (int i = 0; i < entries.length; i++) {
+                // windows with no records have no offset
+                if (entries[i] == 0) continue;
+                final long address = BlockCompressedFilePointerUtil.getBlockAddress(entries[i]);
+                if (shardAddress < 0) {
+                    shardAddress = address;
+                } else if (address - shardAddress >= targetSize) {
+                    final int windowStart = (indexStart + i) * LINEAR_INDEX_WINDOW_SIZE + 1;
+                    if (windowStart > start) intervals.add(new QueryInterval(referenceIndex, start, windowStart - 1));
+                    if (!intervals.isEmpty()) {
+                        shards.add(new SamShard(intervals, false));
+                        intervals = new ArrayList<QueryInterval>();
+                    }
+                    start = windowStart;
+                    shardAddress = address;
+                }
+            }
+            intervals.add(new QueryInterval(referenceIndex, start, -1));
+        }
+        if (!intervals.isEmpty()) shards.add(new SamShard(intervals, false));
+        shards.add(new SamShard(Collections.<QueryInterval>emptyList(), true));
+        return shards;
+    }
+
+    /**
+     * Makes a stream over all the records of an indexed, coordinate-sorted file.  When the stream is parallel, the
+     * shards of the file are shared out between threads, each of which reads its shards in turn with a reader of its
+     * own.  Closing the stream closes the readers still open, e.g. after a short-circuiting operation.
+     *
+     * @param readers    opens a new reader of the file for each thread; the readers must have an index
+     * @param targetSize the compressed size of the file covered by each shard, see {@link #split(SamReader, long)}
+     * @param parallel   true for a parallel stream
+     * @return a stream of the records in the file; ordered, for operations that need it
+     */
+    public static Stream<SAMRecord> stream(final Supplier<SamReader> readers, final long targetSize, final boolean parallel) {
+        final List<SamShard> shards;
+        final SamReader reader = readers.get();
+        try {
+            shards = split(reader, targetSize);
+        } finally {
+            CloserUtil.close(reader);
+        }
+        final Set<SamReader> openReaders = Collections.newSetFromMap(new ConcurrentHashMap<SamReader, Boolean>());
+        return StreamSupport.stream(new ShardSpliterator(readers, shards, 0, shards.size(), openReaders), parallel)
+                .onClose(() -> {
+                    for (final SamReader openReader : openReaders) CloserUtil.close(openReader);
+                    openReaders.clear();
+                });
+    }
+
+    /**
+     * Reads a range of shards in turn with one reader, and splits by handing the first half of the shards that it
+     * has not started reading to a new spliterator.
+     */
+    private static final class ShardSpliterator implements Spliterator<SAMRecord> {
+        private final Supplier<SamReader> readers;
+        private final List<SamShard> shards;
+        private final Set<SamReader> openReaders;
+        private int nextShard;
+        private final int endShard;
+
+        private SamReader reader = null;
+        private CloseableIterator<SAMRecord> iterator = null;
+
+        ShardSpliterator(final Supplier<SamReader> readers, final List<SamShard> shards, final int nextShard,
+                         final int endShard, final Set<SamReader> openReaders) {
+            this.readers = readers;
+            this.shards = shards;
+            this.nextShard = nextShard;
+            this.endShard = endShard;
+            this.openReaders = openReaders;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super SAMRecord> action) {
+            while (iterator == null || !iterator.hasNext()) {
+                if (iterator != null) {
+                    iterator.close();
+                    iterator = null;
+                }
+                if (nextShard == endShard) {
+                    closeReader();
+                    return false;
+                }
+                if (reader == null) {
+                    reader = readers.get();
+                    openReaders.add(reader);
+                }
+                iterator = shards.get(nextShard++).iterator(reader);
+            }
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<SAMRecord> trySplit() {
+            // the prefix handed out must come before everything left here, including a shard being read
+            if (iterator != null || endShard - nextShard < 2) return null;
+            final int middle = (nextShard + endShard) >>> 1;
+            final ShardSpliterator prefix = new ShardSpliterator(readers, shards, nextShard, middle, openReaders);
+            nextShard = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return nextShard == endShard && iterator == null ? 0 : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+
+        private void closeReader() {
+            if (reader != null) {
+                openReaders.remove(reader);
+                CloserUtil.close(reader);
+                reader = null;
+            }
+        }
+    }
+}
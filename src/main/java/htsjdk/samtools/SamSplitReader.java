@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.ContainerIO;
+import htsjdk.samtools.cram.structure.CramHeader;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedBlockFinder;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.DelegatingIterator;
+import htsjdk.samtools.util.FileSplit;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SplitReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Reads the records of a BAM or CRAM file that belong to a {@link FileSplit}, so that a large file can be processed
+ * by many independent tasks without an index.
+ *
+ * In a BAM file, a record belongs to the split that holds the start of the BGZF block in which the record starts.
+ * The first such record is found from the block boundary by {@link BAMRecordBoundaryGuesser}.  In a CRAM file, a
+ * record belongs to the split that holds the start of its container; the containers are found by walking the chain
+ * of container headers from the start of the file, which reads a few bytes per container.
+ *
+ * Each call to {@link #read(FileSplit)} opens its own {@link SamReader} with the factory given to the constructor, so
+ * the splits of a file may be read concurrently.
+ */
+public class SamSplitReader implements SplitReader<SAMRecord> {
+    private final SamReaderFactory factory;
+    private final File file;
+    private final SAMFileHeader header;
+    private final boolean isCram;
+    private final long firstRecordPointer;
+
+    /**
+     * @param factory used to open file; for a CRAM file it must be able to find the reference
+     * @param file    a BAM or CRAM file
+     */
+    public SamSplitReader(final SamReaderFactory factory, final File file) {
+        this.factory = factory;
+        this.file = file;
+        final SamReader reader = factory.open(file);
+        try {
+            if (reader.type() != SamReader.Type.BAM_TYPE && reader.type() != SamReader.Type.CRAM_TYPE) {
+                throw new SAMException("Only BAM and CRAM files can be split: " + file);
+            }
+            this.isCram = reader.type() == SamReader.Type.CRAM_TYPE;
+            this.header = reader.getFileHeader();
+            this.firstRecordPointer = ((BAMFileSpan) reader.indexing().getFilePointerSpanningReads()).getFirstOffset();
+        } finally {
+            CloserUtil.close(reader);
+        }
+    }
+
+    public SAMFileHeader getFileHeader() {
+        return header;
+    }
+
+    @Override
+    public CloseableIterator<SAMRecord> read(final FileSplit split) {
+        final BAMFileSpan span = getFileSpan(split);
+        if (span.isEmpty()) return new DelegatingIterator<SAMRecord>(Collections.<SAMRecord>emptyIterator());
+        final SamReader reader = factory.open(file);
+        final SAMRecordIterator iterator = reader.indexing().iterator(span);
+        return new DelegatingIterator<SAMRecord>(iterator) {
+            @Override
+            public void close() {
+                super.close();
+                CloserUtil.close(reader);
+            }
+        };
+    }
+
+    /**
+     * @return the span of the file that holds the records belonging to split, which may be empty
+     */
+    public BAMFileSpan getFileSpan(final FileSplit split) {
+        if (!split.getFile().equals(file)) throw new IllegalArgumentException("Split " + split + " is not a split of " + file);
+        try {
+            final SeekableStream stream = new SeekableFileStream(file);
+            try {
+                return isCram ? getCramFileSpan(stream, split) : getBamFileSpan(stream, split);
+            } finally {
+                stream.close();
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading " + file, e);
+        }
+    }
+
+    private BAMFileSpan getBamFileSpan(final SeekableStream stream, final FileSplit split) throws IOException {
+        final long startBlock = BlockCompressedBlockFinder.findNextBlockAddress(stream, split.getStart());
+        final long endBlock = BlockCompressedBlockFinder.findNextBlockAddress(stream, split.getEnd());
+        if (startBlock >= endBlock) return new BAMFileSpan();
+        final long start;
+        if (startBlock <= BlockCompressedFilePointerUtil.getBlockAddress(firstRecordPointer)) {
+            start = firstRecordPointer;
+        } else {
+            start = new BAMRecordBoundaryGuesser(stream, header.getSequenceDictionary().size()).guessNextRecordStart(startBlock);
+        }
+        if (start < 0 || BlockCompressedFilePointerUtil.getBlockAddress(start) >= endBlock) return new BAMFileSpan();
+        return new BAMFileSpan(new Chunk(start, BlockCompressedFilePointerUtil.makeFilePointer(endBlock, 0)));
+    }
+
+    private BAMFileSpan getCramFileSpan(final SeekableStream stream, final FileSplit split) throws IOException {
+        final CramHeader cramHeader = CramIO.readCramHeader(stream);
+        long offset = firstRecordPointer >> 16;
+        long first = -1;
+        while (offset < split.getEnd()) {
+            stream.seek(offset);
+            final Container container = ContainerIO.readContainerHeader(cramHeader.getVersion().major, stream);
+            if (container.isEOF()) break;
+            if (first < 0 && offset >= split.getStart()) first = offset;
+            offset = stream.position() + container.containerByteSize;
+        }
+        if (first < 0) return new BAMFileSpan();
+        // the span of a CRAM file includes the container at its end, so end it just before the first container not in the split
+        return new BAMFileSpan(new Chunk(first << 16, (offset - 1) << 16));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.seekablestream;
+
+import java.io.IOException;
+
+/**
+ * A wrapper of a {@link SeekableStream} that reads a declared range of the stream in a few large reads rather than
+ * in the many small ones made by its caller, e.g. when reading the blocks of a BAM file that make up a query result.
+ *
+ * After a call to {@link #readAhead(long, long)}, a read at a position inside the range fills a buffer of up to
+ * the read-ahead size from that position, and the following reads are served from the buffer for as long as they
+ * fall inside it.  Reads outside the range are passed to the wrapped stream as they are.
+ */
+public class SeekableReadAheadStream extends SeekableStream {
+    /** Default maximum number of bytes read from the wrapped stream at a time. */
+    public static final int DEFAULT_READ_AHEAD_SIZE = 4 * 1024 * 1024;
+
+    private final SeekableStream wrappedStream;
+    private final int readAheadSize;
+
+    private byte[] buffer = new byte[0];
+    private long bufferStart = 0;
+    private int bufferLength = 0;
+
+    private long rangeStart = 0;
+    private long rangeEnd = 0;
+
+    private long position = 0;
+    // position of the wrapped stream, or -1 if it is not known
+    private long wrappedPosition = -1;
+
+    public SeekableReadAheadStream(final SeekableStream stream) {
+        this(stream, DEFAULT_READ_AHEAD_SIZE);
+    }
+
+    /**
+     * @param stream        the stream to read from
+     * @param readAheadSize maximum number of bytes read from stream at a time
+     */
+    public SeekableReadAheadStream(final SeekableStream stream, final int readAheadSize) {
+        if (readAheadSize <= 0) throw new IllegalArgumentException("readAheadSize must be > 0");
+        this.wrappedStream = stream;
+        this.readAheadSize = readAheadSize;
+    }
+
+    /**
+     * Declares that the bytes in [start, end) are going to be read in order, replacing any earlier declaration.
+     */
+    public void readAhead(final long start, final long end) {
+        rangeStart = start;
+        rangeEnd = end;
+    }
+
+    @Override
+    public long length() {
+        return wrappedStream.length();
+    }
+
+    @Override
+    public long position() throws IOException {
+        return position;
+    }
+
+    @Override
+    public void seek(final long position) throws IOException {
+        this.position = position;
+    }
+
+    @Override
+    public boolean eof() throws IOException {
+        final long length = length();
+        if (length >= 0) return position >= length;
+        // the length is unknown, so ask the wrapped stream whether there is anything at position
+        if (isBuffered(position)) return false;
+        if (wrappedPosition != position) {
+            wrappedStream.seek(position);
+            wrappedPosition = position;
+        }
+        return wrappedStream.eof();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int offset, final int length) throws IOException {
+        if (length == 0) return 0;
+        if (!isBuffered(position) && position >= rangeStart && position < rangeEnd) {
+            fillBuffer();
+        }
+        if (isBuffered(position)) {
+            int total = 0;
+            while (total < length && (isBuffered(position) || (position < rangeEnd && fillBuffer()))) {
+                final int start = (int) (position - bufferStart);
+                final int n = Math.min(length - total, bufferLength - start);
+                System.arraycopy(buffer, start, b, offset + total, n);
+                position += n;
+                total += n;
+            }
+            return total;
+        }
+
+        // outside the read-ahead range
+        if (wrappedPosition != position) wrappedStream.seek(position);
+        final int n = wrappedStream.read(b, offset, length);
+        if (n > 0) {
+            position += n;
+            wrappedPosition = position;
+        } else {
+            wrappedPosition = -1;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = new byte[0];
+        bufferLength = 0;
+        wrappedStream.close();
+    }
+
+    @Override
+    public String getSource() {
+        return wrappedStream.getSource();
+    }
+
+    private boolean isBuffered(final long position) {
+        return position >= bufferStart && position < bufferStart + bufferLength;
+    }
+
+    /**
+     * Reads the wrapped stream from position up to the end of the read-ahead range or the read-ahead size.
+     * @return false if there was nothing to read
+     */
+    private boolean fillBuffer() throws IOException {
+        final int size = (int) Math.min(readAheadSize, rangeEnd - position);
+        if (buffer.length < size) buffer = new byte[size];
+        if (wrappedPosition != position) wrappedStream.seek(position);
+        int n = 0;
+        while (n < size) {
+            final int count = wrappedStream.read(buffer, n, size - n);
+            if (count <= 0) break;
+            n += count;
+        }
+        bufferStart = position;
+        bufferLength = n;
+        wrappedPosition = position + n;
+        return n > 0;
+    }
+}
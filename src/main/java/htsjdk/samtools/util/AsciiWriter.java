@@ -80,4 +80,21 @@ public class AsciiWriter extends Writer {
             }
         }
     }
+
+    /**
+     * Writes bytes that are already ASCII, without conversion.
+     */
+    public void write(final byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            final int bytesToCopy = Math.min(length, buffer.length - numBytes);
+            System.arraycopy(bytes, offset, buffer, numBytes, bytesToCopy);
+            numBytes += bytesToCopy;
+            offset += bytesToCopy;
+            length -= bytesToCopy;
+            if (numBytes == buffer.length) {
+                os.write(buffer, 0, numBytes);
+                numBytes = 0;
+            }
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMFormatException;
+import htsjdk.samtools.seekablestream.SeekableStream;
+
+import java.io.IOException;
+
+/**
+ * Static methods for finding BGZF block boundaries at arbitrary positions in a block compressed file, so that the
+ * file can be split into ranges that are decompressed independently.
+ *
+ * A position is taken to be the start of a block if it holds a BGZF block header and the block size in that header
+ * leads either to the end of the file or to another block header.  Since a compressed block is never larger than
+ * {@link BlockCompressedStreamConstants#MAX_COMPRESSED_BLOCK_SIZE}, the next block start is always found within that
+ * many bytes of any position.
+ */
+public final class BlockCompressedBlockFinder {
+    private static final int HEADER_LENGTH = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+
+    /** Number of bytes that must be read at a position in order to find the next block start. */
+    public static final int SEARCH_WINDOW_LENGTH = 2 * BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE + HEADER_LENGTH;
+
+    private BlockCompressedBlockFinder() {}
+
+    /**
+     * @return true if buffer holds a BGZF block header at offset; at least {@link BlockCompressedStreamConstants#BLOCK_HEADER_LENGTH}
+     * bytes must be available at offset
+     */
+    public static boolean isBlockHeader(final byte[] buffer, final int offset) {
+        return buffer[offset] == BlockCompressedStreamConstants.GZIP_ID1 &&
+                buffer[offset + 1] == (byte) BlockCompressedStreamConstants.GZIP_ID2 &&
+                buffer[offset + 2] == BlockCompressedStreamConstants.GZIP_CM_DEFLATE &&
+                buffer[offset + 3] == BlockCompressedStreamConstants.GZIP_FLG &&
+                buffer[offset + 10] == BlockCompressedStreamConstants.GZIP_XLEN &&
+                buffer[offset + 11] == 0 &&
+                buffer[offset + 12] == BlockCompressedStreamConstants.BGZF_ID1 &&
+                buffer[offset + 13] == BlockCompressedStreamConstants.BGZF_ID2 &&
+                buffer[offset + 14] == BlockCompressedStreamConstants.BGZF_LEN &&
+                buffer[offset + 15] == 0;
+    }
+
+    /**
+     * @return the total size of the compressed block whose header is at offset in buffer
+     */
+    public static int getBlockSize(final byte[] buffer, final int offset) {
+        final int i = offset + BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET;
+        return ((buffer[i] & 0xff) | ((buffer[i + 1] & 0xff) << 8)) + 1;
+    }
+
+    /**
+     * @return the uncompressed size of the data in the compressed block at offset in buffer, which must hold the whole block
+     */
+    public static int getUncompressedSize(final byte[] buffer, final int offset) {
+        final int i = offset + getBlockSize(buffer, offset) - 4;
+        return (buffer[i] & 0xff) | ((buffer[i + 1] & 0xff) << 8) | ((buffer[i + 2] & 0xff) << 16) | ((buffer[i + 3] & 0xff) << 24);
+    }
+
+    /**
+     * Finds the first block that starts at or after start in a buffer holding part of a block compressed file.
+     *
+     * @param buffer           bytes of the file
+     * @param start            offset in buffer at which to begin the search
+     * @param end              offset in buffer of the end of the valid data
+     * @param endIsEndOfFile   true if end corresponds to the end of the file
+     * @return the offset in buffer of the first block start found, or -1 if there is none that can be verified
+     */
+    public static int findNextBlockStart(final byte[] buffer, final int start, final int end, final boolean endIsEndOfFile) {
+        for (int i = start; i + HEADER_LENGTH <= end; i++) {
+            if (isBlockHeader(buffer, i)) {
+                final int next = i + getBlockSize(buffer, i);
+                if ((next == end && endIsEndOfFile) || (next + HEADER_LENGTH <= end && isBlockHeader(buffer, next))) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the address of the first block that starts at or after position.
+     *
+     * @param stream   a block compressed file; its position is changed by this method
+     * @param position a position in the compressed file
+     * @return the address of the first block starting at or after position, or the length of the file if there is none
+     * @throws SAMFormatException if no block start can be found where one is expected
+     */
+    public static long findNextBlockAddress(final SeekableStream stream, final long position) throws IOException {
+        final long length = stream.length();
+        if (position <= 0) return 0;
+        if (position >= length) return length;
+
+        final byte[] buffer = new byte[(int) Math.min(SEARCH_WINDOW_LENGTH, length - position)];
+        stream.seek(position);
+        int n = 0;
+        while (n < buffer.length) {
+            final int read = stream.read(buffer, n, buffer.length - n);
+            if (read < 0) break;
+            n += read;
+        }
+        final boolean atEndOfFile = position + n >= length;
+        final int offset = findNextBlockStart(buffer, 0, n, atEndOfFile);
+        if (offset >= 0) return position + offset;
+        if (atEndOfFile && n < BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE) return length;
+        throw new SAMFormatException("Could not find a BGZF block start after position " + position +
+                " in " + stream.getSource());
+    }
+}
@@ -241,6 +241,72 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     	return buf.toString();
     }
 
+    /**
+     * Reads bytes from the current block up to and including the next occurrence of terminator, but no more
+     * than length bytes and not past the end of the block.  This scans the decompressed block directly, so
+     * callers looking for line or record boundaries don't need to go through {@link #read()} a byte at a time.
+     *
+     * @param terminator the byte at which to stop
+     * @param buffer buffer into which data is read.
+     * @param offset the start offset in buffer at which the data is written.
+     * @param length the maximum number of bytes to read, must be &gt; 0.
+     * @return the number of bytes read, the last of which is terminator if it was found, or -1 if the end of
+     * the stream has been reached.
+     */
+    public int readUntil(final byte terminator, final byte[] buffer, final int offset, final int length)
+        throws IOException {
+        final int available = available();
+        if (available == 0) {
+            return -1;
+        }
+        final int limit = mCurrentOffset + Math.min(available, length);
+        int end = mCurrentOffset;
+        while (end < limit && mCurrentBlock[end] != terminator) {
+            ++end;
+        }
+        if (end < limit) {
+            ++end; // include the terminator
+        }
+        final int copyLength = end - mCurrentOffset;
+        System.arraycopy(mCurrentBlock, mCurrentOffset, buffer, offset, copyLength);
+        mCurrentOffset = end;
+        return copyLength;
+    }
+
+    /**
+     * Gives direct access to the decompressed data of the current block, so that callers scanning for line or record
+     * boundaries can search it in place instead of copying it out with {@link #read(byte[], int, int)}.  If the current
+     * block has been consumed, the next one is read first.  The unread bytes are those from
+     * {@link #getCurrentBlockOffset()} to the end of the returned array, which must not be modified, and are consumed
+     * with {@link #setCurrentBlockOffset(int)}.  The array is only valid until the next call to any other read method.
+     *
+     * @return the current block, or null if the end of the stream has been reached
+     */
+    public byte[] getCurrentBlock()
+        throws IOException {
+        return available() > 0 ? mCurrentBlock : null;
+    }
+
+    /**
+     * @return the offset in the array returned by {@link #getCurrentBlock()} of the next byte to be read
+     */
+    public int getCurrentBlockOffset() {
+        return mCurrentOffset;
+    }
+
+    /**
+     * Moves the read position within the current block.
+     *
+     * @param offset the offset in the array returned by {@link #getCurrentBlock()} of the next byte to be read; at
+     *               most the length of the block
+     */
+    public void setCurrentBlockOffset(final int offset) {
+        if (mCurrentBlock == null || offset < 0 || offset > mCurrentBlock.length) {
+            throw new IllegalArgumentException("Invalid offset in current block: " + offset);
+        }
+        mCurrentOffset = offset;
+    }
+
     /**
      * Reads up to len bytes of data from the input stream into an array of bytes. An attempt is made to read
      * as many as len bytes, but a smaller number may be read. The number of bytes actually read is returned as an integer.
@@ -321,7 +387,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
      * the two.
      */
     public long getFilePointer() {
-        if (mCurrentOffset == mCurrentBlock.length) {
+        if (mCurrentBlock != null && mCurrentOffset == mCurrentBlock.length) {
             // If current offset is at the end of the current block, file pointer should point
             // to the beginning of the next block.
             return BlockCompressedFilePointerUtil.makeFilePointer(mBlockAddress + mLastBlockLength, 0);
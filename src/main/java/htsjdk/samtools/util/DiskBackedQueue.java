@@ -57,7 +57,7 @@ public class DiskBackedQueue<E> implements Queue<E> {
     private final int maxRecordsInRamQueue;
     private final Queue<E> ramRecords;
     private File diskRecords = null;
-    private final TempStreamFactory tempStreamFactory = new TempStreamFactory();
+    private TempStreamFactory tempStreamFactory = new TempStreamFactory();
     private OutputStream outputStream = null;
     private InputStream inputStream = null;
     private boolean canAdd = true;
@@ -110,6 +110,21 @@ public class DiskBackedQueue<E> implements Queue<E> {
         return new DiskBackedQueue<T>(codec, maxRecordsInRam, tmpDir);
     }
 
+    /**
+     * Sets the factory used to wrap the streams of temporary files, which determines how they are compressed and
+     * counts the bytes written to them.  Must be called before any records are written to disk.
+     */
+    public void setTempStreamFactory(final TempStreamFactory tempStreamFactory) {
+        this.tempStreamFactory = tempStreamFactory;
+    }
+
+    /**
+     * @return the factory used to wrap the streams of temporary files
+     */
+    public TempStreamFactory getTempStreamFactory() {
+        return tempStreamFactory;
+    }
+
     public boolean canAdd() {
         return this.canAdd;
     }
@@ -255,7 +270,6 @@ public class DiskBackedQueue<E> implements Queue<E> {
                 this.codec.setOutputStream(this.outputStream);
             }
             this.codec.encode(record);
-            this.outputStream.flush();
             this.numRecordsOnDisk++;
         } catch (final IOException e) {
             throw new RuntimeIOException("Problem writing temporary file. Try setting TMP_DIR to a file system with lots of space.", e);
@@ -306,6 +320,8 @@ public class DiskBackedQueue<E> implements Queue<E> {
         }
         try {
             if (this.inputStream == null) {
+                // no more records are written once reading begins
+                if (this.outputStream != null) this.outputStream.flush();
                 inputStream = new FileInputStream(file);
                 this.codec.setInputStream(tempStreamFactory.wrapTempInputStream(inputStream, Defaults.BUFFER_SIZE));
             }
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.File;
+
+/**
+ * A byte range [start, end) of a file, to be read independently of the rest of the file by a {@link SplitReader}.
+ *
+ * The range is in raw (compressed) file coordinates and need not fall on a block or record boundary.  A split reader
+ * assigns every record of the file to exactly one of a set of splits that cover the file without overlapping, so the
+ * splits returned by {@link SplitCalculator#calculateSplits(File, long)} can be read by separate tasks and their
+ * records concatenated to give the records of the whole file in order.
+ */
+public class FileSplit {
+    private final File file;
+    private final long start;
+    private final long end;
+
+    /**
+     * @param file  the file the range belongs to
+     * @param start offset of the first byte of the range
+     * @param end   offset of the byte after the end of the range
+     */
+    public FileSplit(final File file, final long start, final long end) {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        if (start < 0 || end < start) throw new IllegalArgumentException("Invalid split range [" + start + ", " + end + ")");
+        this.file = file;
+        this.start = start;
+        this.end = end;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final FileSplit that = (FileSplit) o;
+        return start == that.start && end == that.end && file.equals(that.file);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = file.hashCode();
+        result = 31 * result + (int) (start ^ (start >>> 32));
+        result = 31 * result + (int) (end ^ (end >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return file + ":" + start + "-" + end;
+    }
+}
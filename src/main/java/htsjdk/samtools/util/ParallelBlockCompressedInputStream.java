@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads a whole BGZF file from start to end, decompressing the blocks ahead of the reader on a pool of threads.
+ *
+ * The file is cut into ranges of roughly equal compressed size at block boundaries (see {@link BlockCompressedBlockFinder}),
+ * and each range is read and inflated by a worker thread while the caller consumes the ranges before it.  The virtual
+ * file pointers returned by {@link #getFilePointer()} are the same as those returned by a {@link BlockCompressedInputStream}
+ * that has read the same number of bytes, so this can be used in place of one for tasks such as indexing that make a
+ * single pass over a file.  Seeking is not supported.
+ */
+public class ParallelBlockCompressedInputStream extends InputStream implements LocationAware {
+    /** Default compressed size of the ranges inflated by each task. */
+    public static final long DEFAULT_RANGE_SIZE = 4L * 1024 * 1024;
+
+    private static final ThreadLocal<BlockGunzipper> GUNZIPPER = new ThreadLocal<BlockGunzipper>() {
+        @Override
+        protected BlockGunzipper initialValue() {
+            return new BlockGunzipper();
+        }
+    };
+
+    private final File file;
+    private final FileChannel channel;
+    private final long length;
+    private final long rangeSize;
+    private final int maxPendingRanges;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<InflatedRange>> pending = new ArrayDeque<Future<InflatedRange>>();
+
+    // raw offset of the next range to submit
+    private long nextRangeStart = 0;
+
+    private InflatedRange current;
+    private int position = 0;
+    private int block = 0;
+
+    /**
+     * @param file     a BGZF file
+     * @param nThreads number of threads used to inflate the file
+     */
+    public ParallelBlockCompressedInputStream(final File file, final int nThreads) throws IOException {
+        this(file, nThreads, DEFAULT_RANGE_SIZE);
+    }
+
+    /**
+     * @param file      a BGZF file
+     * @param nThreads  number of threads used to inflate the file
+     * @param rangeSize approximate compressed size of the ranges inflated by each task; at least
+     *                  {@link BlockCompressedStreamConstants#MAX_COMPRESSED_BLOCK_SIZE}
+     */
+    public ParallelBlockCompressedInputStream(final File file, final int nThreads, final long rangeSize) throws IOException {
+        if (nThreads <= 0) throw new IllegalArgumentException("nThreads must be > 0");
+        if (rangeSize < BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE) {
+            throw new IllegalArgumentException("rangeSize must be >= " + BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE);
+        }
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        this.length = channel.size();
+        this.rangeSize = rangeSize;
+        this.maxPendingRanges = 2 * nThreads;
+        this.executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "ParallelBlockCompressedInputStream Thread");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        submitRanges();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) return -1;
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (length > 0 && ensureAvailable()) {
+            final int n = Math.min(length, current.data.length - position);
+            System.arraycopy(current.data, position, buffer, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+            total += n;
+        }
+        return total == 0 && length > 0 ? -1 : total;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && ensureAvailable()) {
+            final int count = (int) Math.min(n - skipped, current.data.length - position);
+            position += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : current.data.length - position;
+    }
+
+    /**
+     * @return the virtual file pointer of the next byte to be read
+     */
+    public long getFilePointer() {
+        if (current == null) return 0;
+        final long[] addresses = current.blockAddresses;
+        final int[] starts = current.blockStarts;
+        // move to the block that holds the next byte, stopping at the first block that starts there
+        while (block < addresses.length && position >= starts[block + 1] && position != starts[block]) {
+            block++;
+        }
+        if (block == addresses.length) {
+            return BlockCompressedFilePointerUtil.makeFilePointer(current.endAddress, 0);
+        }
+        return BlockCompressedFilePointerUtil.makeFilePointer(addresses[block], position - starts[block]);
+    }
+
+    @Override
+    public long getPosition() {
+        return getFilePointer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        current = null;
+        channel.close();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (current == null || position == current.data.length) {
+            if (pending.isEmpty()) return false;
+            final InflatedRange next;
+            try {
+                next = pending.removeFirst().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeIOException("Interrupted while inflating " + file, e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new RuntimeIOException("Error inflating " + file, e.getCause());
+            }
+            if (current != null && current.endAddress != next.startAddress) {
+                throw new SAMFormatException("Inconsistent BGZF block boundaries at " + current.endAddress + " and " +
+                        next.startAddress + " in " + file);
+            }
+            current = next;
+            position = 0;
+            block = 0;
+            submitRanges();
+        }
+        return true;
+    }
+
+    private void submitRanges() {
+        while (pending.size() < maxPendingRanges && nextRangeStart < length) {
+            final long start = nextRangeStart;
+            final long end = Math.min(length, start + rangeSize);
+            pending.addLast(executor.submit(new Callable<InflatedRange>() {
+                @Override
+                public InflatedRange call() throws IOException {
+                    return inflate(start, end);
+                }
+            }));
+            nextRangeStart = end;
+        }
+    }
+
+    /**
+     * Reads and inflates the blocks that start in [start, end).
+     */
+    private InflatedRange inflate(final long start, final long end) throws IOException {
+        final long bufferEnd = Math.min(length, end + BlockCompressedBlockFinder.SEARCH_WINDOW_LENGTH);
+        final byte[] buffer = new byte[(int) (bufferEnd - start)];
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        while (byteBuffer.hasRemaining()) {
+            if (channel.read(byteBuffer, start + byteBuffer.position()) < 0) break;
+        }
+        final int n = byteBuffer.position();
+
+        int first = 0;
+        if (start > 0) {
+            first = BlockCompressedBlockFinder.findNextBlockStart(buffer, 0, n, start + n >= length);
+            if (first < 0) {
+                if (start + n < length) {
+                    throw new SAMFormatException("Could not find a BGZF block start after position " + start + " in " + file);
+                }
+                first = n; // no more blocks; this range is empty
+            }
+        }
+
+        // walk the chain of blocks that start before end
+        int count = 0;
+        long uncompressedLength = 0;
+        long[] addresses = new long[16];
+        int[] offsets = new int[16];
+        int offset = first;
+        while (start + offset < end && offset < n) {
+            if (offset + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH > n || !BlockCompressedBlockFinder.isBlockHeader(buffer, offset)) {
+                throw new SAMFormatException("Invalid BGZF block header at " + (start + offset) + " in " + file);
+            }
+            final int blockSize = BlockCompressedBlockFinder.getBlockSize(buffer, offset);
+            if (offset + blockSize > n) {
+                throw new SAMFormatException("Truncated BGZF block at " + (start + offset) + " in " + file);
+            }
+            if (count == addresses.length) {
+                addresses = Arrays.copyOf(addresses, 2 * count);
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            }
+            addresses[count] = start + offset;
+            offsets[count] = offset;
+            uncompressedLength += BlockCompressedBlockFinder.getUncompressedSize(buffer, offset);
+            count++;
+            offset += blockSize;
+        }
+        if (uncompressedLength > Integer.MAX_VALUE) {
+            throw new SAMFormatException("Range of " + file + " at " + start + " is too large to inflate");
+        }
+
+        final BlockGunzipper gunzipper = GUNZIPPER.get();
+        final byte[] data = new byte[(int) uncompressedLength];
+        final int[] starts = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            final int blockSize = BlockCompressedBlockFinder.getBlockSize(buffer, offsets[i]);
+            starts[i + 1] = starts[i] + gunzipper.unzipBlock(data, starts[i], buffer, offsets[i], blockSize);
+        }
+        return new InflatedRange(start + first, start + offset, Arrays.copyOf(addresses, count), starts, data);
+    }
+
+    /** The inflated contents of consecutive blocks of the file. */
+    private static final class InflatedRange {
+        final long startAddress;
+        final long endAddress;
+        final long[] blockAddresses;
+        // offset in data of the start of each block, followed by the length of data
+        final int[] blockStarts;
+        final byte[] data;
+
+        InflatedRange(final long startAddress, final long endAddress, final long[] blockAddresses, final int[] blockStarts, final byte[] data) {
+            this.startAddress = startAddress;
+            this.endAddress = endAddress;
+            this.blockAddresses = blockAddresses;
+            this.blockStarts = blockStarts;
+            this.data = data;
+        }
+    }
+}
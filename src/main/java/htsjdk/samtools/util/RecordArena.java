@@ -0,0 +1,443 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Records held in memory in the form written by a {@link SortingCollection.Codec}, for a {@link SortingCollection}
+ * whose memory is limited by bytes rather than by number of records.
+ *
+ * The encoded records are appended to large blocks of bytes that are reused after {@link #clear()}, and the sort key
+ * and position of each record are kept in primitive arrays, so the records held cost the garbage collector almost
+ * nothing.  If the comparator provides {@link SortKeyComparator#getSortKeyBytes finer keys}, the finer key of each
+ * record is stored in the blocks just before it.  Records are sorted by key, runs of records with equal keys are
+ * sorted by their finer keys, and then only runs of records with equal finer keys are decoded so that they can be
+ * ordered by the comparator; records are written out in sorted order by copying their bytes.  If the comparator is
+ * not a {@link SortKeyComparator}, all records have the same key and every record is decoded when sorting, but long
+ * runs are decoded a chunk at a time, so only a small fraction of the records are held decoded at once.
+ *
+ * The codec must write each record in full in {@link SortingCollection.Codec#encode}, and the encoding of a record
+ * must not depend on the records written before it.
+ */
+final class RecordArena<T> {
+    private static final int BLOCK_SHIFT = 20;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    /** Approximate bytes of memory used for each record in addition to its encoded bytes. */
+    static final int BYTES_PER_RECORD = 44;
+
+    private final SortingCollection.Codec<T> decoder;
+    private final Comparator<T> comparator;
+    private final SortKeyComparator<T> sortKeyComparator;
+
+    private final List<byte[]> blocks = new ArrayList<byte[]>();
+    private final BlockOutputStream outputStream = new BlockOutputStream();
+    private final BlockInputStream inputStream = new BlockInputStream();
+    private final SortingCollection.Codec<T> encoder;
+    private long byteCount = 0;
+    private int size = 0;
+    private int maxRecordsDecoded = 0;
+
+    // Sort key and index of each record.  These are in the order in which the records were added until sort() is
+    // called, and in sorted order after that.
+    private long[] keys = new long[1024];
+    private int[] indices = new int[1024];
+    // position of the finer key and record with each index, followed by byteCount
+    private long[] starts = new long[1025];
+    // length of the finer key of the record with each index
+    private int[] keyLengths = new int[1024];
+
+    RecordArena(final SortingCollection.Codec<T> codec, final Comparator<T> comparator) {
+        this.encoder = codec.clone();
+        this.encoder.setOutputStream(outputStream);
+        this.decoder = codec.clone();
+        this.comparator = comparator;
+        this.sortKeyComparator = SortingCollection.asSortKeyComparator(comparator);
+    }
+
+    /** @return the number of records held */
+    int size() {
+        return size;
+    }
+
+    /** @return the approximate number of bytes of memory used by the records held */
+    long getMemoryUsed() {
+        return byteCount + (long) size * BYTES_PER_RECORD;
+    }
+
+    void add(final T record) {
+        if (size == indices.length) {
+            final int capacity = size <= Integer.MAX_VALUE / 2 - 1 ? 2 * size : Integer.MAX_VALUE - 1;
+            if (capacity == size) throw new IllegalStateException("Too many records in RecordArena");
+            keys = Arrays.copyOf(keys, capacity);
+            indices = Arrays.copyOf(indices, capacity);
+            starts = Arrays.copyOf(starts, capacity + 1);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+        }
+        final byte[] keyBytes = sortKeyComparator == null ? null : sortKeyComparator.getSortKeyBytes(record);
+        if (keyBytes != null) outputStream.write(keyBytes, 0, keyBytes.length);
+        keyLengths[size] = keyBytes == null ? 0 : keyBytes.length;
+        encoder.encode(record);
+        keys[size] = sortKeyComparator == null ? 0 : sortKeyComparator.getSortKey(record);
+        indices[size] = size;
+        starts[++size] = byteCount;
+    }
+
+    /**
+     * Sorts the records.  The sort is stable.
+     */
+    void sort() {
+        if (sortKeyComparator != null) {
+            mergeSort(Arrays.copyOf(keys, size), Arrays.copyOf(indices, size), keys, indices, 0, size);
+        }
+        for (int i = 0; i < size; ) {
+            int j = i + 1;
+            while (j < size && keys[j] == keys[i]) ++j;
+            if (j - i > 1) sortByKeyBytes(i, j);
+            i = j;
+        }
+    }
+
+    /** Orders [from, to) of the records, which all have the same key, by their finer keys and then the comparator. */
+    private void sortByKeyBytes(final int from, final int to) {
+        final int[] run = Arrays.copyOfRange(indices, from, to);
+        mergeSortByKeyBytes(run.clone(), run, 0, run.length);
+        System.arraycopy(run, 0, indices, from, run.length);
+        for (int i = from; i < to; ) {
+            int j = i + 1;
+            while (j < to && compareKeyBytes(indices[j], indices[i]) == 0) ++j;
+            if (j - i > 1) sortRun(i, j);
+            i = j;
+        }
+    }
+
+    /**
+     * Orders [from, to) of the records, which all have the same key, by the comparator.  The run is split into chunks
+     * of at most about 1/{@link #CHUNKS_PER_SORT} of the bytes held, each of which is decoded and sorted in turn, and the
+     * chunks are then merged decoding only the first remaining record of each, so that at most a small fraction of the
+     * records held are decoded at once however long the run is.
+     */
+    private void sortRun(final int from, final int to) {
+        final long maxChunkBytes = Math.max(1, byteCount / CHUNKS_PER_SORT);
+        final List<Chunk<T>> chunks = new ArrayList<Chunk<T>>();
+        final Comparator<DecodedRecord<T>> decodedRecordComparator = new Comparator<DecodedRecord<T>>() {
+            @Override
+            public int compare(final DecodedRecord<T> a, final DecodedRecord<T> b) {
+                return comparator.compare(a.record, b.record);
+            }
+        };
+        for (int i = from; i < to; ) {
+            final List<DecodedRecord<T>> chunk = new ArrayList<DecodedRecord<T>>();
+            long chunkBytes = 0;
+            do {
+                final int index = indices[i++];
+                chunk.add(new DecodedRecord<T>(decode(index), index));
+                chunkBytes += starts[index + 1] - starts[index];
+            } while (i < to && chunkBytes < maxChunkBytes);
+            Collections.sort(chunk, decodedRecordComparator);
+            maxRecordsDecoded = Math.max(maxRecordsDecoded, chunk.size());
+
+            final int[] chunkIndices = new int[chunk.size()];
+            for (int k = 0; k < chunkIndices.length; ++k) {
+                chunkIndices[k] = chunk.get(k).index;
+            }
+            chunks.add(new Chunk<T>(chunks.size(), chunkIndices));
+        }
+        if (chunks.size() == 1) {
+            System.arraycopy(chunks.get(0).indices, 0, indices, from, to - from);
+            return;
+        }
+
+        // Ties between chunks go to the earlier chunk so that the sort stays stable
+        final PriorityQueue<Chunk<T>> queue = new PriorityQueue<Chunk<T>>(chunks.size(), new Comparator<Chunk<T>>() {
+            @Override
+            public int compare(final Chunk<T> a, final Chunk<T> b) {
+                final int result = comparator.compare(a.head, b.head);
+                return result != 0 ? result : a.number - b.number;
+            }
+        });
+        for (final Chunk<T> chunk : chunks) {
+            chunk.head = decode(chunk.indices[0]);
+            queue.add(chunk);
+        }
+        maxRecordsDecoded = Math.max(maxRecordsDecoded, chunks.size());
+        for (int i = from; i < to; ++i) {
+            final Chunk<T> chunk = queue.poll();
+            indices[i] = chunk.indices[chunk.next++];
+            if (chunk.next < chunk.indices.length) {
+                chunk.head = decode(chunk.indices[chunk.next]);
+                queue.add(chunk);
+            }
+        }
+    }
+
+    /**
+     * @return the largest number of records that {@link #sort()} has held decoded at once
+     */
+    int getMaxRecordsDecoded() {
+        return maxRecordsDecoded;
+    }
+
+    /** Runs of records with equal keys are sorted in chunks of at most about this fraction of the bytes held. */
+    private static final int CHUNKS_PER_SORT = 16;
+
+    /** Lists shorter than this are sorted by insertion sort. */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Sorts [low, high) of destKeys and destIndices by key, using src, which must hold the same values, as scratch space.
+     */
+    private static void mergeSort(final long[] srcKeys, final int[] srcIndices, final long[] destKeys, final int[] destIndices,
+                                  final int low, final int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; ++i) {
+                final long key = destKeys[i];
+                final int index = destIndices[i];
+                int j = i;
+                for (; j > low && key < destKeys[j - 1]; --j) {
+                    destKeys[j] = destKeys[j - 1];
+                    destIndices[j] = destIndices[j - 1];
+                }
+                destKeys[j] = key;
+                destIndices[j] = index;
+            }
+            return;
+        }
+
+        final int mid = (low + high) >>> 1;
+        mergeSort(destKeys, destIndices, srcKeys, srcIndices, low, mid);
+        mergeSort(destKeys, destIndices, srcKeys, srcIndices, mid, high);
+
+        // If the halves are already in order, just copy them
+        if (srcKeys[mid - 1] <= srcKeys[mid]) {
+            System.arraycopy(srcKeys, low, destKeys, low, high - low);
+            System.arraycopy(srcIndices, low, destIndices, low, high - low);
+            return;
+        }
+
+        for (int i = low, p = low, q = mid; i < high; ++i) {
+            if (q >= high || (p < mid && srcKeys[p] <= srcKeys[q])) {
+                destKeys[i] = srcKeys[p];
+                destIndices[i] = srcIndices[p++];
+            } else {
+                destKeys[i] = srcKeys[q];
+                destIndices[i] = srcIndices[q++];
+            }
+        }
+    }
+
+    /**
+     * Sorts [low, high) of dest, which holds record indices, by the finer keys of the records, using src, which must
+     * hold the same indices, as scratch space.
+     */
+    private void mergeSortByKeyBytes(final int[] src, final int[] dest, final int low, final int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; ++i) {
+                final int index = dest[i];
+                int j = i;
+                for (; j > low && compareKeyBytes(index, dest[j - 1]) < 0; --j) {
+                    dest[j] = dest[j - 1];
+                }
+                dest[j] = index;
+            }
+            return;
+        }
+
+        final int mid = (low + high) >>> 1;
+        mergeSortByKeyBytes(dest, src, low, mid);
+        mergeSortByKeyBytes(dest, src, mid, high);
+
+        // If the halves are already in order, just copy them
+        if (compareKeyBytes(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, high - low);
+            return;
+        }
+
+        for (int i = low, p = low, q = mid; i < high; ++i) {
+            if (q >= high || (p < mid && compareKeyBytes(src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    /**
+     * Compares the finer keys of the records with two indices as unsigned bytes, a key that is a prefix of another first.
+     */
+    private int compareKeyBytes(final int index1, final int index2) {
+        final int length1 = keyLengths[index1];
+        final int length2 = keyLengths[index2];
+        final long start1 = starts[index1];
+        final long start2 = starts[index2];
+        for (int i = 0, n = Math.min(length1, length2); i < n; ++i) {
+            final int b1 = byteAt(start1 + i);
+            final int b2 = byteAt(start2 + i);
+            if (b1 != b2) return b1 - b2;
+        }
+        return length1 - length2;
+    }
+
+    private int byteAt(final long position) {
+        return blocks.get((int) (position >>> BLOCK_SHIFT))[(int) (position & BLOCK_MASK)] & 0xff;
+    }
+
+    /**
+     * @return a new copy of the i'th record, in sorted order if {@link #sort()} has been called
+     */
+    T get(final int i) {
+        return decode(indices[i]);
+    }
+
+    /** @return a new copy of the record with the given index */
+    private T decode(final int index) {
+        inputStream.reset(starts[index] + keyLengths[index], starts[index + 1]);
+        decoder.setInputStream(inputStream);
+        return decoder.decode();
+    }
+
+    /**
+     * Writes the encoded records to os, in sorted order if {@link #sort()} has been called.
+     */
+    void writeTo(final OutputStream os) throws IOException {
+        for (int i = 0; i < size; ++i) {
+            final int index = indices[i];
+            long position = starts[index] + keyLengths[index];
+            final long end = starts[index + 1];
+            while (position < end) {
+                final int offset = (int) (position & BLOCK_MASK);
+                final int n = (int) Math.min(end - position, BLOCK_SIZE - offset);
+                os.write(blocks.get((int) (position >>> BLOCK_SHIFT)), offset, n);
+                position += n;
+            }
+        }
+    }
+
+    /**
+     * Removes all records, keeping the memory allocated for them to be reused.
+     */
+    void clear() {
+        size = 0;
+        byteCount = 0;
+    }
+
+    private static final class DecodedRecord<T> {
+        final T record;
+        final int index;
+
+        DecodedRecord(final T record, final int index) {
+            this.record = record;
+            this.index = index;
+        }
+    }
+
+    /** Records of a run that have been sorted together, and the first of them not yet merged. */
+    private static final class Chunk<T> {
+        final int number;
+        final int[] indices;
+        int next = 0;
+        T head;
+
+        Chunk(final int number, final int[] indices) {
+            this.number = number;
+            this.indices = indices;
+        }
+    }
+
+    /** Appends to the blocks. */
+    private final class BlockOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {
+            final int block = (int) (byteCount >>> BLOCK_SHIFT);
+            if (block == blocks.size()) blocks.add(new byte[BLOCK_SIZE]);
+            blocks.get(block)[(int) (byteCount & BLOCK_MASK)] = (byte) b;
+            ++byteCount;
+        }
+
+        @Override
+        public void write(final byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                final int block = (int) (byteCount >>> BLOCK_SHIFT);
+                if (block == blocks.size()) blocks.add(new byte[BLOCK_SIZE]);
+                final int blockOffset = (int) (byteCount & BLOCK_MASK);
+                final int n = Math.min(length, BLOCK_SIZE - blockOffset);
+                System.arraycopy(bytes, offset, blocks.get(block), blockOffset, n);
+                byteCount += n;
+                offset += n;
+                length -= n;
+            }
+        }
+    }
+
+    /** Reads a range of the blocks. */
+    private final class BlockInputStream extends InputStream {
+        private long position;
+        private long end;
+
+        void reset(final long start, final long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            if (position == end) return -1;
+            final int b = blocks.get((int) (position >>> BLOCK_SHIFT))[(int) (position & BLOCK_MASK)] & 0xff;
+            ++position;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] bytes, int offset, final int length) {
+            if (length == 0) return 0;
+            if (position == end) return -1;
+            final int total = (int) Math.min(length, end - position);
+            int remaining = total;
+            while (remaining > 0) {
+                final int blockOffset = (int) (position & BLOCK_MASK);
+                final int n = Math.min(remaining, BLOCK_SIZE - blockOffset);
+                System.arraycopy(blocks.get((int) (position >>> BLOCK_SHIFT)), blockOffset, bytes, offset, n);
+                position += n;
+                offset += n;
+                remaining -= n;
+            }
+            return total;
+        }
+
+        @Override
+        public int available() {
+            return (int) (end - position);
+        }
+    }
+}
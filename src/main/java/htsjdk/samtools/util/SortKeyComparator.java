@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.util.Comparator;
+
+/**
+ * A comparator that can summarize each object as a long sort key, so that most comparisons made while sorting or
+ * merging are between two longs rather than between two objects.  The key may be a coarser ordering than the
+ * comparator (e.g. only the first few characters of a name), but it must never contradict it:
+ *
+ * if getSortKey(a) &lt; getSortKey(b), then compare(a, b) &lt; 0
+ *
+ * and therefore objects that compare equal have equal keys.  Objects with equal keys are ordered by {@link #compare}.
+ * {@link SortingCollection} computes the key of each record once, before sorting.
+ *
+ * A comparator may also provide a finer, variable-length key in {@link #getSortKeyBytes}, for orderings such as read
+ * names that a long cannot capture.  It is used to order objects with equal sort keys when the objects themselves are
+ * not at hand, e.g. when only their encoded form is held in memory.
+ *
+ * Subclasses of an implementation that change its ordering must override {@link #getSortKey} and
+ * {@link #getSortKeyBytes} to match.
+ *
+ * @param <T> the type of the objects compared
+ */
+public interface SortKeyComparator<T> extends Comparator<T> {
+    /**
+     * @return the sort key of t, to be compared as a signed long
+     */
+    long getSortKey(T t);
+
+    /**
+     * Keys are compared as unsigned bytes, and a key that is a prefix of another comes first.  For objects with equal
+     * sort keys, the order of these keys must never contradict the comparator:
+     *
+     * if getSortKey(a) == getSortKey(b) and getSortKeyBytes(a) &lt; getSortKeyBytes(b), then compare(a, b) &lt; 0
+     *
+     * @return the finer key of t, or null if this comparator does not provide finer keys
+     */
+    default byte[] getSortKeyBytes(final T t) {
+        return null;
+    }
+}
@@ -55,6 +55,15 @@ import java.util.TreeSet;
  *
  * If Snappy DLL is available and snappy.disable system property is not set to true, then Snappy is used
  * to compress temporary files.
+ *
+ * If the comparator is a {@link SortKeyComparator}, the sort key of each record is computed once per sort
+ * and the records are ordered by key, so that the comparator is only called for records with equal keys.
+ *
+ * A collection created by {@link #newInstanceWithMaxBytesInRam} holds the records in memory encoded by the codec,
+ * and spills them to disk when they take up more than a given number of bytes, rather than after a given number of
+ * records.  This bounds the memory used when records vary in size, and keeps the records in memory out of the way of
+ * the garbage collector.  It works best with a {@link SortKeyComparator}, since records with equal sort keys must
+ * be decoded in order to be sorted.
  */
 public class SortingCollection<T> implements Iterable<T> {
 
@@ -110,9 +119,16 @@ public class SortingCollection<T> implements Iterable<T> {
      * For sorting, both when spilling records to file, and merge sorting.
      */
     private final Comparator<T> comparator;
+    /** The comparator if it provides sort keys, otherwise null. */
+    private final SortKeyComparator<T> sortKeyComparator;
     private final int maxRecordsInRam;
+    /** If > 0, the records in memory are kept in arena rather than ramRecords, and are spilled when they take up this much memory. */
+    private final long maxBytesInRam;
+    private RecordArena<T> arena;
     private int numRecordsInRam = 0;
     private T[] ramRecords;
+    /** Sort keys of ramRecords, allocated on first use if there is a sortKeyComparator. */
+    private long[] ramSortKeys;
     private boolean iterationStarted = false;
     private boolean doneAdding = false;
 
@@ -136,10 +152,12 @@ public class SortingCollection<T> implements Iterable<T> {
      * @param codec For writing records to file and reading them back into RAM
      * @param comparator Defines output sort order
      * @param maxRecordsInRam how many records to accumulate before spilling to disk
+     * @param maxBytesInRam if > 0, how many bytes of encoded records to accumulate before spilling to disk
      * @param tmpDir Where to write files of records that will not fit in RAM
      */
     private SortingCollection(final Class<T> componentType, final SortingCollection.Codec<T> codec,
-                             final Comparator<T> comparator, final int maxRecordsInRam, final File... tmpDir) {
+                             final Comparator<T> comparator, final int maxRecordsInRam, final long maxBytesInRam,
+                             final File... tmpDir) {
         if (maxRecordsInRam <= 0) {
             throw new IllegalArgumentException("maxRecordsInRam must be > 0");
         }
@@ -151,8 +169,23 @@ public class SortingCollection<T> implements Iterable<T> {
         this.tmpDirs = tmpDir;
         this.codec = codec;
         this.comparator = comparator;
+        this.sortKeyComparator = asSortKeyComparator(comparator);
         this.maxRecordsInRam = maxRecordsInRam;
-        this.ramRecords = (T[])Array.newInstance(componentType, maxRecordsInRam);
+        this.maxBytesInRam = maxBytesInRam;
+        if (maxBytesInRam > 0) {
+            this.arena = new RecordArena<T>(codec, comparator);
+        } else {
+            this.ramRecords = (T[])Array.newInstance(componentType, maxRecordsInRam);
+        }
+    }
+
+    /**
+     * @return comparator if it is a SortKeyComparator, otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    static <T> SortKeyComparator<T> asSortKeyComparator(final Comparator<T> comparator) {
+        // safe because a SortKeyComparator is a Comparator of the same type, so this one compares Ts
+        return comparator instanceof SortKeyComparator ? (SortKeyComparator<T>) comparator : null;
     }
 
     public void add(final T rec) {
@@ -162,6 +195,13 @@ public class SortingCollection<T> implements Iterable<T> {
         if (iterationStarted) {
             throw new IllegalStateException("Cannot add after calling iterator()");
         }
+        if (this.arena != null) {
+            this.arena.add(rec);
+            if (++numRecordsInRam == maxRecordsInRam || this.arena.getMemoryUsed() >= maxBytesInRam) {
+                spillToDisk();
+            }
+            return;
+        }
         if (numRecordsInRam == maxRecordsInRam) {
             spillToDisk();
         }
@@ -193,6 +233,8 @@ public class SortingCollection<T> implements Iterable<T> {
 
         // Facilitate GC
         this.ramRecords = null;
+        this.ramSortKeys = null;
+        this.arena = null;
     }
 
     /**
@@ -211,21 +253,41 @@ public class SortingCollection<T> implements Iterable<T> {
         this.destructiveIteration = destructiveIteration;
     }
 
+    /**
+     * Sets the factory used to wrap the streams of temporary files, which determines how they are compressed and
+     * counts the bytes written to them.  Must be called before any records are written to disk.
+     */
+    public void setTempStreamFactory(final TempStreamFactory tempStreamFactory) {
+        this.tempStreamFactory = tempStreamFactory;
+    }
+
+    /**
+     * @return the factory used to wrap the streams of temporary files
+     */
+    public TempStreamFactory getTempStreamFactory() {
+        return tempStreamFactory;
+    }
+
     /**
      * Sort the records in memory, write them to a file, and clear the buffer of records in memory.
      */
     private void spillToDisk() {
         try {
-            Arrays.sort(this.ramRecords, 0, this.numRecordsInRam, this.comparator);
+            sortRamRecords();
             final File f = newTempFile();
             OutputStream os = null;
             try {
                 os = tempStreamFactory.wrapTempOutputStream(new FileOutputStream(f), Defaults.BUFFER_SIZE);
-                this.codec.setOutputStream(os);
-                for (int i = 0; i < this.numRecordsInRam; ++i) {
-                    this.codec.encode(ramRecords[i]);
-                    // Facilitate GC
-                    this.ramRecords[i] = null;
+                if (this.arena != null) {
+                    this.arena.writeTo(os);
+                    this.arena.clear();
+                } else {
+                    this.codec.setOutputStream(os);
+                    for (int i = 0; i < this.numRecordsInRam; ++i) {
+                        this.codec.encode(ramRecords[i]);
+                        // Facilitate GC
+                        this.ramRecords[i] = null;
+                    }
                 }
 
                 os.flush();
@@ -247,6 +309,79 @@ public class SortingCollection<T> implements Iterable<T> {
         }
     }
 
+    /**
+     * Sorts the records in memory.  The sort is stable, like {@link Arrays#sort(Object[], int, int, Comparator)}.
+     */
+    private void sortRamRecords() {
+        if (this.arena != null) {
+            this.arena.sort();
+            return;
+        }
+        if (this.sortKeyComparator == null) {
+            Arrays.sort(this.ramRecords, 0, this.numRecordsInRam, this.comparator);
+            return;
+        }
+        if (this.ramSortKeys == null) {
+            this.ramSortKeys = new long[this.maxRecordsInRam];
+        }
+        for (int i = 0; i < this.numRecordsInRam; ++i) {
+            this.ramSortKeys[i] = this.sortKeyComparator.getSortKey(this.ramRecords[i]);
+        }
+        final T[] auxRecords = Arrays.copyOf(this.ramRecords, this.numRecordsInRam);
+        final long[] auxKeys = Arrays.copyOf(this.ramSortKeys, this.numRecordsInRam);
+        mergeSort(auxRecords, auxKeys, this.ramRecords, this.ramSortKeys, 0, this.numRecordsInRam);
+    }
+
+    /** Lists shorter than this are sorted by insertion sort. */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Sorts [low, high) of dest and its keys, using src, which must hold the same records and keys, as scratch space.
+     */
+    private void mergeSort(final T[] srcRecords, final long[] srcKeys, final T[] destRecords, final long[] destKeys,
+                           final int low, final int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; ++i) {
+                final T record = destRecords[i];
+                final long key = destKeys[i];
+                int j = i;
+                for (; j > low && compare(key, record, destKeys[j - 1], destRecords[j - 1]) < 0; --j) {
+                    destRecords[j] = destRecords[j - 1];
+                    destKeys[j] = destKeys[j - 1];
+                }
+                destRecords[j] = record;
+                destKeys[j] = key;
+            }
+            return;
+        }
+
+        final int mid = (low + high) >>> 1;
+        mergeSort(destRecords, destKeys, srcRecords, srcKeys, low, mid);
+        mergeSort(destRecords, destKeys, srcRecords, srcKeys, mid, high);
+
+        // If the halves are already in order, just copy them
+        if (compare(srcKeys[mid - 1], srcRecords[mid - 1], srcKeys[mid], srcRecords[mid]) <= 0) {
+            System.arraycopy(srcRecords, low, destRecords, low, high - low);
+            System.arraycopy(srcKeys, low, destKeys, low, high - low);
+            return;
+        }
+
+        for (int i = low, p = low, q = mid; i < high; ++i) {
+            if (q >= high || (p < mid && compare(srcKeys[p], srcRecords[p], srcKeys[q], srcRecords[q]) <= 0)) {
+                destRecords[i] = srcRecords[p];
+                destKeys[i] = srcKeys[p++];
+            } else {
+                destRecords[i] = srcRecords[q];
+                destKeys[i] = srcKeys[q++];
+            }
+        }
+    }
+
+    private int compare(final long key1, final T record1, final long key2, final T record2) {
+        if (key1 != key2) return key1 < key2 ? -1 : 1;
+        return this.comparator.compare(record1, record2);
+    }
+
     /**
      * Creates a new tmp file on one of the available temp filesystems, registers it for deletion
      * on JVM exit and then returns it.
@@ -297,7 +432,7 @@ public class SortingCollection<T> implements Iterable<T> {
                                                        final Comparator<T> comparator,
                                                        final int maxRecordsInRAM,
                                                        final File... tmpDir) {
-        return new SortingCollection<T>(componentType, codec, comparator, maxRecordsInRAM, tmpDir);
+        return new SortingCollection<T>(componentType, codec, comparator, maxRecordsInRAM, 0, tmpDir);
 
     }
 
@@ -319,6 +454,7 @@ public class SortingCollection<T> implements Iterable<T> {
                                         codec,
                                         comparator,
                                         maxRecordsInRAM,
+                                        0,
                                         tmpDirs.toArray(new File[tmpDirs.size()]));
 
     }
@@ -338,7 +474,29 @@ public class SortingCollection<T> implements Iterable<T> {
                                                        final int maxRecordsInRAM) {
 
         final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
-        return new SortingCollection<T>(componentType, codec, comparator, maxRecordsInRAM, tmpDir);
+        return new SortingCollection<T>(componentType, codec, comparator, maxRecordsInRAM, 0, tmpDir);
+    }
+
+    /**
+     * Creates a collection that holds records in memory encoded by the codec, and spills them to disk when they take
+     * up more than maxBytesInRam bytes of memory.  The codec must write each record in full when it is encoded, and
+     * the encoding of a record must not depend on the records encoded before it.
+     *
+     * @param componentType Class of the record to be sorted.  Necessary because of Java generic lameness.
+     * @param codec For writing records to memory and to file, and reading them back
+     * @param comparator Defines output sort order
+     * @param maxBytesInRam approximate number of bytes of memory to use for records before spilling to disk
+     * @param tmpDir Where to write files of records that will not fit in RAM
+     */
+    public static <T> SortingCollection<T> newInstanceWithMaxBytesInRam(final Class<T> componentType,
+                                                                        final SortingCollection.Codec<T> codec,
+                                                                        final Comparator<T> comparator,
+                                                                        final long maxBytesInRam,
+                                                                        final File... tmpDir) {
+        if (maxBytesInRam <= 0) {
+            throw new IllegalArgumentException("maxBytesInRam must be > 0");
+        }
+        return new SortingCollection<T>(componentType, codec, comparator, Integer.MAX_VALUE - 1, maxBytesInRam, tmpDir);
     }
 
     /**
@@ -348,10 +506,7 @@ public class SortingCollection<T> implements Iterable<T> {
         private int iterationIndex = 0;
 
         InMemoryIterator() {
-            Arrays.sort(SortingCollection.this.ramRecords,
-                        0,
-                        SortingCollection.this.numRecordsInRam,
-                        SortingCollection.this.comparator);
+            sortRamRecords();
         }
 
         public void close() {
@@ -366,8 +521,13 @@ public class SortingCollection<T> implements Iterable<T> {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            T ret = SortingCollection.this.ramRecords[iterationIndex];
-            if (destructiveIteration) SortingCollection.this.ramRecords[iterationIndex] = null;
+            final T ret;
+            if (SortingCollection.this.arena != null) {
+                ret = SortingCollection.this.arena.get(iterationIndex);
+            } else {
+                ret = SortingCollection.this.ramRecords[iterationIndex];
+                if (destructiveIteration) SortingCollection.this.ramRecords[iterationIndex] = null;
+            }
             ++iterationIndex;
             return ret;
         }
@@ -401,7 +561,9 @@ public class SortingCollection<T> implements Iterable<T> {
             for (final File f : SortingCollection.this.files) {
                 final FileRecordIterator it = new FileRecordIterator(f);
                 if (it.hasNext()) {
-                    this.queue.add(new PeekFileRecordIterator(it, n++));
+                    final PeekFileRecordIterator peekIterator = new PeekFileRecordIterator(it, n++);
+                    peekIterator.updateSortKey();
+                    this.queue.add(peekIterator);
                 }
                 else {
                     it.close();
@@ -421,6 +583,7 @@ public class SortingCollection<T> implements Iterable<T> {
             final PeekFileRecordIterator fileIterator = queue.pollFirst();
             final T ret = fileIterator.next();
             if (fileIterator.hasNext()) {
+                fileIterator.updateSortKey();
                 this.queue.add(fileIterator);
             }
             else {
@@ -496,17 +659,24 @@ public class SortingCollection<T> implements Iterable<T> {
      */
     class PeekFileRecordIterator extends PeekIterator<T> {
         final int n; // A serial number used for tie-breaking in the sort
+        long sortKey; // The sort key of the next record, if there is a sortKeyComparator
         PeekFileRecordIterator(final Iterator<T> underlyingIterator, final int n) {
             super(underlyingIterator);
             this.n = n;
         }
+
+        /** Must be called whenever the next record changes, before this is compared to another iterator. */
+        void updateSortKey() {
+            if (sortKeyComparator != null) this.sortKey = sortKeyComparator.getSortKey(peek());
+        }
     }
 
     class PeekFileRecordIteratorComparator implements Comparator<PeekFileRecordIterator>, Serializable {
         private static final long serialVersionUID = 1L;
 
         public int compare(final PeekFileRecordIterator lhs, final PeekFileRecordIterator rhs) {
-            final int result = comparator.compare(lhs.peek(), rhs.peek());
+            final int result = sortKeyComparator != null ? SortingCollection.this.compare(lhs.sortKey, lhs.peek(), rhs.sortKey, rhs.peek())
+                    : comparator.compare(lhs.peek(), rhs.peek());
             if (result == 0) return lhs.n - rhs.n;
             else return result;
         }
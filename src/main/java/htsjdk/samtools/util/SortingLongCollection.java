@@ -23,6 +23,8 @@
  */
 package htsjdk.samtools.util;
 
+import htsjdk.samtools.Defaults;
+
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -75,6 +77,7 @@ public class SortingLongCollection {
     private int numValuesInRam = 0;
     private long[] ramValues;
 
+    private TempStreamFactory tempStreamFactory = new TempStreamFactory();
 
     /**
      * Set to true when done adding and ready to iterate
@@ -112,6 +115,21 @@ public class SortingLongCollection {
         this.ramValues = new long[maxValuesInRam];
     }
 
+    /**
+     * Sets the factory used to wrap the streams of temporary files, which determines how they are compressed and
+     * counts the bytes written to them.  Must be called before any values are written to disk.
+     */
+    public void setTempStreamFactory(final TempStreamFactory tempStreamFactory) {
+        this.tempStreamFactory = tempStreamFactory;
+    }
+
+    /**
+     * @return the factory used to wrap the streams of temporary files
+     */
+    public TempStreamFactory getTempStreamFactory() {
+        return tempStreamFactory;
+    }
+
     /**
      * Add a value to the collection.
      *
@@ -148,7 +166,7 @@ public class SortingLongCollection {
         this.priorityQueue = new PriorityQueue<PeekFileValueIterator>(files.size(),
                 new PeekFileValueIteratorComparator());
         for (final File f : files) {
-            final FileValueIterator it = new FileValueIterator(f);
+            final FileValueIterator it = new FileValueIterator(f, tempStreamFactory);
             if (it.hasNext()) {
                 this.priorityQueue.offer(new PeekFileValueIterator(it));
             }
@@ -169,7 +187,7 @@ public class SortingLongCollection {
             DataOutputStream os = null;
             try {
                 final long numBytes = this.numValuesInRam * SIZEOF;
-                os = new DataOutputStream(IOUtil.maybeBufferOutputStream(new FileOutputStream(f)));
+                os = new DataOutputStream(tempStreamFactory.wrapTempOutputStream(new FileOutputStream(f), Defaults.BUFFER_SIZE));
                 f.deleteOnExit();
                 for (int i = 0; i < this.numValuesInRam; ++i) {
                     os.writeLong(ramValues[i]);
@@ -252,10 +270,10 @@ public class SortingLongCollection {
         private long currentRecord = 0;
         private boolean isCurrentRecord = true;
 
-        FileValueIterator(final File file) {
+        FileValueIterator(final File file, final TempStreamFactory tempStreamFactory) {
             this.file = file;
             try {
-                is = new DataInputStream(IOUtil.maybeBufferInputStream(new FileInputStream(file)));
+                is = new DataInputStream(tempStreamFactory.wrapTempInputStream(new FileInputStream(file), Defaults.BUFFER_SIZE));
                 next();
             } catch (FileNotFoundException e) {
                 throw new RuntimeIOException(file.getAbsolutePath(), e);
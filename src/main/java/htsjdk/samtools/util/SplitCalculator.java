@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts a file into {@link FileSplit}s of roughly equal size, for reading by a {@link SplitReader}.  The splits are
+ * plain byte ranges; it is up to the split reader to find the first record that belongs to each of them, so they can
+ * be computed without reading the file.
+ */
+public final class SplitCalculator {
+    private SplitCalculator() {}
+
+    /**
+     * @param file      the file to split
+     * @param splitSize the size of each split in bytes; the last split may be smaller
+     * @return splits covering the whole file in order, or a single empty split if the file is empty
+     */
+    public static List<FileSplit> calculateSplits(final File file, final long splitSize) {
+        if (!file.isFile()) throw new IllegalArgumentException("Not a file: " + file);
+        return calculateSplits(file, file.length(), splitSize);
+    }
+
+    /**
+     * @param file      the file to split
+     * @param length    the length of the file
+     * @param splitSize the size of each split in bytes; the last split may be smaller
+     * @return splits covering [0, length) in order, or a single empty split if length is 0
+     */
+    public static List<FileSplit> calculateSplits(final File file, final long length, final long splitSize) {
+        if (splitSize <= 0) throw new IllegalArgumentException("splitSize must be > 0");
+        if (length < 0) throw new IllegalArgumentException("length must be >= 0");
+        final List<FileSplit> splits = new ArrayList<FileSplit>();
+        long start = 0;
+        do {
+            final long end = length - start <= splitSize ? length : start + splitSize;
+            splits.add(new FileSplit(file, start, end));
+            start = end;
+        } while (start < length);
+        return splits;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.util.zip.DeflaterFactory;
+import org.xerial.snappy.Snappy;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the blocks of temporary files written by a {@link TempStreamFactory}.  Implementations must be safe to
+ * use from several threads at once, since blocks are compressed in the background.
+ */
+public abstract class TempBlockCodec {
+
+    /** @return the name of the compression method, for logging */
+    public abstract String getName();
+
+    /** @return the largest number of bytes that {@link #compress} can produce from length bytes */
+    public abstract int maxCompressedLength(int length);
+
+    /**
+     * Compresses input[0, length) into output, which must be at least {@link #maxCompressedLength(int)} bytes long.
+     * @return the number of bytes written to output
+     */
+    public abstract int compress(byte[] input, int length, byte[] output);
+
+    /**
+     * Uncompresses input[0, length) into output, which must be exactly the size of the uncompressed data.
+     */
+    public abstract void uncompress(byte[] input, int length, byte[] output);
+
+    /**
+     * @return a codec that compresses blocks with Snappy, which must be available (see {@link SnappyLoader})
+     */
+    public static TempBlockCodec snappy() {
+        if (!new SnappyLoader().SnappyAvailable) throw new SAMException("Snappy is not available");
+        return new SnappyCodec();
+    }
+
+    /**
+     * @return a codec that compresses blocks with deflaters made by deflaterFactory at the given level; a low level
+     * such as 1 is usually best for temporary files
+     */
+    public static TempBlockCodec deflate(final int compressionLevel, final DeflaterFactory deflaterFactory) {
+        return new DeflateCodec(compressionLevel, deflaterFactory);
+    }
+
+    private static final class SnappyCodec extends TempBlockCodec {
+        @Override
+        public String getName() {
+            return "snappy";
+        }
+
+        @Override
+        public int maxCompressedLength(final int length) {
+            return Snappy.maxCompressedLength(length);
+        }
+
+        @Override
+        public int compress(final byte[] input, final int length, final byte[] output) {
+            try {
+                return Snappy.compress(input, 0, length, output, 0);
+            } catch (final Exception e) {
+                throw new SAMException("Error compressing temporary file block with Snappy", e);
+            }
+        }
+
+        @Override
+        public void uncompress(final byte[] input, final int length, final byte[] output) {
+            final int n;
+            try {
+                n = Snappy.uncompress(input, 0, length, output, 0);
+            } catch (final Exception e) {
+                throw new SAMException("Error uncompressing temporary file block with Snappy", e);
+            }
+            if (n != output.length) throw new SAMException("Unexpected length of temporary file block: " + n);
+        }
+    }
+
+    private static final class DeflateCodec extends TempBlockCodec {
+        private final int compressionLevel;
+        private final ThreadLocal<Deflater> deflater;
+        private final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+            @Override
+            protected Inflater initialValue() {
+                return new Inflater(true);
+            }
+        };
+
+        DeflateCodec(final int compressionLevel, final DeflaterFactory deflaterFactory) {
+            if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+            }
+            this.compressionLevel = compressionLevel;
+            this.deflater = new ThreadLocal<Deflater>() {
+                @Override
+                protected Deflater initialValue() {
+                    return deflaterFactory.makeDeflater(compressionLevel, true);
+                }
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "deflate-" + compressionLevel;
+        }
+
+        @Override
+        public int maxCompressedLength(final int length) {
+            // stored deflate blocks add 5 bytes per 16K, plus the end of stream
+            return length + 5 * (length / 16383 + 1) + 16;
+        }
+
+        @Override
+        public int compress(final byte[] input, final int length, final byte[] output) {
+            final Deflater deflater = this.deflater.get();
+            deflater.reset();
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            final int n = deflater.deflate(output, 0, output.length);
+            if (!deflater.finished()) throw new SAMException("Temporary file block did not fit in compression buffer");
+            return n;
+        }
+
+        @Override
+        public void uncompress(final byte[] input, final int length, final byte[] output) {
+            final Inflater inflater = this.inflater.get();
+            inflater.reset();
+            inflater.setInput(input, 0, length);
+            try {
+                final int n = inflater.inflate(output, 0, output.length);
+                if (n != output.length) {
+                    throw new SAMException("Unexpected length of temporary file block: " + n);
+                }
+            } catch (final DataFormatException e) {
+                throw new SAMException("Error uncompressing temporary file block", e);
+            }
+        }
+    }
+}
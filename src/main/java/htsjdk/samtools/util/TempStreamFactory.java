@@ -26,16 +26,37 @@ package htsjdk.samtools.util;
 import htsjdk.samtools.SAMException;
 
 import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Factory class for wrapping input and output streams for temporary files.  If available, Snappy is used to
+ * Factory class for wrapping input and output streams for temporary files.  By default, if available, Snappy is used to
  * compress output files.  Therefore, if a temporary output file is written with an output stream obtained
  * from this class, it must be read by an input stream created by this class, otherwise a file written with
  * compression will not be read with decompression.
+ *
+ * A factory may instead be created with a {@link TempBlockCodec}, in which case temporary files are written as a series
+ * of independently compressed blocks, and the blocks may be compressed on background threads while the caller goes on
+ * writing.
+ *
+ * The factory counts the bytes written to the streams it creates and the bytes written to the temporary files
+ * themselves, so that the effect of compression can be measured.
  */
 public class TempStreamFactory {
+    /** Default uncompressed size of the blocks written with a {@link TempBlockCodec}. */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
     private static SnappyLoader snappyLoader = null;
 
     private static synchronized SnappyLoader getSnappyLoader() {
@@ -43,15 +64,66 @@ public class TempStreamFactory {
         return snappyLoader;
     }
 
+    private final TempBlockCodec blockCodec;
+    private final int blockSize;
+    private final int compressionThreads;
+    private ExecutorService executor = null;
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong tempBytesWritten = new AtomicLong();
+
+    /**
+     * Creates a factory that compresses temporary files with Snappy if it is available.
+     */
+    public TempStreamFactory() {
+        this.blockCodec = null;
+        this.blockSize = 0;
+        this.compressionThreads = 0;
+    }
+
+    /**
+     * Creates a factory that writes temporary files as blocks compressed by blockCodec.
+     *
+     * @param blockCodec         compresses each block
+     * @param blockSize          uncompressed size of each block
+     * @param compressionThreads number of background threads used to compress blocks; if 0, blocks are compressed
+     *                           by the thread writing them
+     */
+    public TempStreamFactory(final TempBlockCodec blockCodec, final int blockSize, final int compressionThreads) {
+        if (blockCodec == null) throw new IllegalArgumentException("blockCodec must not be null");
+        if (blockSize <= 0) throw new IllegalArgumentException("blockSize must be > 0");
+        if (compressionThreads < 0) throw new IllegalArgumentException("compressionThreads must be >= 0");
+        this.blockCodec = blockCodec;
+        this.blockSize = blockSize;
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * @return the number of bytes written to output streams created by this factory, before compression
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the number of bytes written to temporary files by output streams created by this factory
+     */
+    public long getTempBytesWritten() {
+        return tempBytesWritten.get();
+    }
+
     /**
-     * Wrap the given InputStream in a SnappyInputStream if available.
-     * @return If Snappy is available, a SnappyInputStream wrapping inputStream.
+     * Wrap the given InputStream in a stream that reads what was written by {@link #wrapTempOutputStream}.
+     * @return If this factory has a block codec, a stream that uncompresses blocks.  If Snappy is available,
+     * a SnappyInputStream wrapping inputStream.
      * If not, and bufferSize > 0, a BufferedInputStream.
      * Otherwise inputStream is returned.
      */
     public InputStream wrapTempInputStream(final InputStream inputStream, final int bufferSize) {
         InputStream is = IOUtil.maybeBufferInputStream(inputStream, bufferSize);
-        if (getSnappyLoader().SnappyAvailable) {
+        if (blockCodec != null) {
+            return new BlockInputStream(is, blockCodec);
+        } else if (getSnappyLoader().SnappyAvailable) {
             try {
                 return getSnappyLoader().wrapInputStream(is);
             } catch (Exception e) {
@@ -63,21 +135,292 @@ public class TempStreamFactory {
     }
 
     /**
-     * Wrap the given OutputStream in a SnappyOutputStream if available.
-     * @return If Snappy is available, a SnappyOutputStream wrapping outputStream.
+     * Wrap the given OutputStream in a stream that compresses what is written to it.
+     * @return If this factory has a block codec, a stream that compresses blocks.  If Snappy is available,
+     * a SnappyOutputStream wrapping outputStream.
      * If not, and bufferSize > 0, a BufferedOutputStream.
      * Otherwise outputStream is returned.
      */
     public OutputStream wrapTempOutputStream(final OutputStream outputStream, final int bufferSize) {
-        OutputStream os = outputStream;
+        OutputStream os = new CountingOutputStream(outputStream, tempBytesWritten);
         if (bufferSize > 0) os = new BufferedOutputStream(os, bufferSize);
-        if (getSnappyLoader().SnappyAvailable) {
+        if (blockCodec != null) {
+            os = new BlockOutputStream(os, blockCodec, blockSize, getExecutor(), 2 * compressionThreads);
+        } else if (getSnappyLoader().SnappyAvailable) {
             try {
                 os = getSnappyLoader().wrapOutputStream(os);
             } catch (Exception e) {
                 throw new SAMException("Error creating SnappyOutputStream", e);
             }
         }
-        return os;
+        return new CountingOutputStream(os, bytesWritten);
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (compressionThreads > 0 && executor == null) {
+            executor = Executors.newFixedThreadPool(compressionThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "TempStreamFactory Thread");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /** Counts the bytes written through it, adding them to a total when flushed or closed. */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong total;
+        private long count = 0;
+
+        CountingOutputStream(final OutputStream out, final AtomicLong total) {
+            super(out);
+            this.total = total;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            total.addAndGet(count);
+            count = 0;
+        }
+    }
+
+    /** A block of a temporary file. */
+    private static final class Block {
+        final byte[] data;
+        int length = 0;
+        final byte[] compressed;
+        // 0 if the block is stored uncompressed
+        int compressedLength = 0;
+
+        Block(final int size, final TempBlockCodec codec) {
+            this.data = new byte[size];
+            this.compressed = new byte[codec.maxCompressedLength(size)];
+        }
+    }
+
+    /**
+     * Writes blocks, each preceded by its uncompressed length and its compressed length, or 0 if the block is stored
+     * uncompressed because compression did not make it smaller.
+     */
+    private static final class BlockOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final TempBlockCodec codec;
+        private final int blockSize;
+        private final ExecutorService executor;
+        private final int maxPendingBlocks;
+        private final ArrayDeque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+        private final ArrayDeque<Block> freeBlocks = new ArrayDeque<Block>();
+        private final byte[] header = new byte[8];
+        private Block current = null;
+
+        BlockOutputStream(final OutputStream out, final TempBlockCodec codec, final int blockSize,
+                          final ExecutorService executor, final int maxPendingBlocks) {
+            this.out = out;
+            this.codec = codec;
+            this.blockSize = blockSize;
+            this.executor = executor;
+            this.maxPendingBlocks = maxPendingBlocks;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (current == null) current = newBlock();
+            current.data[current.length++] = (byte) b;
+            if (current.length == blockSize) endBlock();
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (current == null) current = newBlock();
+                final int n = Math.min(len, blockSize - current.length);
+                System.arraycopy(b, off, current.data, current.length, n);
+                current.length += n;
+                off += n;
+                len -= n;
+                if (current.length == blockSize) endBlock();
+            }
+        }
+
+        /** Writes everything written so far to the underlying stream. */
+        @Override
+        public void flush() throws IOException {
+            if (current != null) endBlock();
+            while (!pending.isEmpty()) writeBlock(pending.removeFirst());
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private Block newBlock() {
+            return freeBlocks.isEmpty() ? new Block(blockSize, codec) : freeBlocks.removeFirst();
+        }
+
+        private void endBlock() throws IOException {
+            final Block block = current;
+            current = null;
+            final Callable<Block> task = new Callable<Block>() {
+                @Override
+                public Block call() {
+                    final int n = codec.compress(block.data, block.length, block.compressed);
+                    block.compressedLength = n < block.length ? n : 0;
+                    return block;
+                }
+            };
+            if (executor == null) {
+                writeBlock(task);
+            } else {
+                while (pending.size() >= maxPendingBlocks) writeBlock(pending.removeFirst());
+                pending.addLast(executor.submit(task));
+            }
+        }
+
+        private void writeBlock(final Callable<Block> task) throws IOException {
+            try {
+                writeBlock(task.call());
+            } catch (final IOException | RuntimeException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new SAMException("Error compressing temporary file block", e);
+            }
+        }
+
+        private void writeBlock(final Future<Block> future) throws IOException {
+            final Block block;
+            try {
+                block = future.get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeIOException("Interrupted while compressing temporary file block", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new SAMException("Error compressing temporary file block", e.getCause());
+            }
+            writeBlock(block);
+        }
+
+        private void writeBlock(final Block block) throws IOException {
+            putInt(block.length, 0);
+            putInt(block.compressedLength, 4);
+            out.write(header);
+            if (block.compressedLength == 0) {
+                out.write(block.data, 0, block.length);
+            } else {
+                out.write(block.compressed, 0, block.compressedLength);
+            }
+            block.length = 0;
+            freeBlocks.addLast(block);
+        }
+
+        private void putInt(final int value, final int offset) {
+            header[offset] = (byte) (value >>> 24);
+            header[offset + 1] = (byte) (value >>> 16);
+            header[offset + 2] = (byte) (value >>> 8);
+            header[offset + 3] = (byte) value;
+        }
+    }
+
+    /** Reads the blocks written by {@link BlockOutputStream}. */
+    private static final class BlockInputStream extends InputStream {
+        private final InputStream in;
+        private final TempBlockCodec codec;
+        private final byte[] header = new byte[8];
+        private byte[] compressed = new byte[0];
+        private byte[] data = new byte[0];
+        private int length = 0;
+        private int position = 0;
+
+        BlockInputStream(final InputStream in, final TempBlockCodec codec) {
+            this.in = in;
+            this.codec = codec;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !readBlock()) return -1;
+            return data[position++] & 0xff;
+        }
+
+        /** Reads across block boundaries, so that fewer than len bytes are only returned at the end of the stream. */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int total = 0;
+            while (total < len) {
+                if (position == length && !readBlock()) break;
+                final int n = Math.min(len - total, length - position);
+                System.arraycopy(data, position, b, off + total, n);
+                position += n;
+                total += n;
+            }
+            return total == 0 && len > 0 ? -1 : total;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /** @return false if there are no more blocks */
+        private boolean readBlock() throws IOException {
+            final int n = readFully(header, header.length);
+            if (n == 0) return false;
+            if (n < header.length) throw new EOFException("Truncated temporary file block header");
+            final int blockLength = getInt(0);
+            final int compressedLength = getInt(4);
+            if (blockLength <= 0 || compressedLength < 0) throw new SAMException("Invalid temporary file block header");
+            if (data.length != blockLength) data = new byte[blockLength];
+            if (compressedLength == 0) {
+                if (readFully(data, blockLength) < blockLength) throw new EOFException("Truncated temporary file block");
+            } else {
+                if (compressed.length < compressedLength) compressed = new byte[compressedLength];
+                if (readFully(compressed, compressedLength) < compressedLength) throw new EOFException("Truncated temporary file block");
+                codec.uncompress(compressed, compressedLength, data);
+            }
+            length = blockLength;
+            position = 0;
+            return true;
+        }
+
+        private int readFully(final byte[] buffer, final int length) throws IOException {
+            int total = 0;
+            while (total < length) {
+                final int n = in.read(buffer, total, length - total);
+                if (n < 0) break;
+                total += n;
+            }
+            return total;
+        }
+
+        private int getInt(final int offset) {
+            return ((header[offset] & 0xff) << 24) | ((header[offset + 1] & 0xff) << 16) |
+                    ((header[offset + 2] & 0xff) << 8) | (header[offset + 3] & 0xff);
+        }
     }
 }
@@ -18,18 +18,22 @@
 
 package htsjdk.tribble;
 
+import htsjdk.samtools.Defaults;
 import htsjdk.tribble.index.Index;
+import htsjdk.tribble.readers.LineReader;
 import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.tribble.util.TabixUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * jrobinso
@@ -50,6 +54,10 @@ public abstract class AbstractFeatureReader<T extends Feature, SOURCE> implement
 
     private static ComponentMethods methods = new ComponentMethods();
 
+    private boolean useAsyncIo = Defaults.USE_ASYNC_IO_READ_FOR_TRIBBLE;
+    private int decodingThreads = 0;
+    private Supplier<? extends AsciiFeatureCodec<T>> decodingCodecFactory = null;
+
     public static final Set<String> BLOCK_COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(".gz", ".gzip", ".bgz", ".bgzf")));
 
     /**
@@ -129,6 +137,69 @@ public abstract class AbstractFeatureReader<T extends Feature, SOURCE> implement
         return false;
     }
 
+    /**
+     * Read and decode the features returned by {@link #iterator()} ahead of the caller on a background thread.
+     * Queries are always read synchronously.  Default = {@link Defaults#USE_ASYNC_IO_READ_FOR_TRIBBLE}.
+     */
+    public void setUseAsyncIo(final boolean useAsyncIo) {
+        this.useAsyncIo = useAsyncIo;
+    }
+
+    /**
+     * Decode the features returned by {@link #iterator()} on several background threads, each with its own codec.
+     * The features are still returned in file order.  Only readers of line-oriented files support this.
+     *
+     * @param nThreads     number of decoding threads, or 0 to decode on the calling thread (or on the background
+     *                     thread of {@link #setUseAsyncIo(boolean)})
+     * @param codecFactory makes a new codec of the same type as this reader's codec for each decoding thread;
+     *                     each codec reads the header of the file itself
+     */
+    public void setDecodingThreads(final int nThreads, final Supplier<? extends AsciiFeatureCodec<T>> codecFactory) {
+        if (nThreads < 0) throw new IllegalArgumentException("nThreads must be >= 0");
+        if (nThreads > 0 && !(codec instanceof AsciiFeatureCodec)) {
+            throw new TribbleException("Decoding threads require an ASCII codec, but the codec is " + codec.getClass().getSimpleName());
+        }
+        if (nThreads > 0 && codecFactory == null) throw new IllegalArgumentException("codecFactory is required");
+        this.decodingThreads = nThreads;
+        this.decodingCodecFactory = codecFactory;
+    }
+
+    int getDecodingThreads() {
+        return decodingThreads;
+    }
+
+    /**
+     * @return an iterator over the features decoded from lines by the decoding threads
+     */
+    CloseableTribbleIterator<T> decodeInParallel(final LineReader lines) {
+        return new ParallelDecodingIterator<T>(path, lines, this::createDecodingCodec, decodingThreads);
+    }
+
+    /**
+     * @return iterator, read ahead on a background thread if asynchronous I/O is enabled
+     */
+    CloseableTribbleIterator<T> readAhead(final CloseableTribbleIterator<T> iterator) {
+        return useAsyncIo ? new AsyncFeatureIterator<T>(iterator) : iterator;
+    }
+
+    /**
+     * Opens a new stream over the start of the file, from which a codec like the one of this reader can read the
+     * header.  Each decoding thread of {@link #setDecodingThreads} reads the header from a stream of its own.
+     *
+     * @return a stream from which the codec of this reader can read the header
+     */
+    protected abstract InputStream openHeaderStream() throws IOException;
+
+    private AsciiFeatureCodec<T> createDecodingCodec() {
+        final AsciiFeatureCodec<T> decodingCodec = decodingCodecFactory.get();
+        try (final InputStream in = openHeaderStream()) {
+            decodingCodec.readHeader(decodingCodec.makeSourceFromStream(in));
+        } catch (final IOException e) {
+            throw new TribbleException.MalformedFeatureFile("Unable to parse header with error: " + e.getMessage(), path, e);
+        }
+        return decodingCodec;
+    }
+
     public static void setComponentMethods(ComponentMethods methods){
         AbstractFeatureReader.methods = methods;
     }
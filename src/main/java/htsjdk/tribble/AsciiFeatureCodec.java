@@ -18,6 +18,7 @@
 
 package htsjdk.tribble;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.LocationAware;
 import htsjdk.tribble.readers.*;
@@ -50,6 +51,10 @@ public abstract class AsciiFeatureCodec<T extends Feature> extends AbstractFeatu
 
     @Override
     public LocationAware makeIndexableSourceFromStream(final InputStream bufferedInputStream) {
+        if (bufferedInputStream instanceof BlockCompressedInputStream) {
+            // read the blocks directly, so that the positions are virtual file pointers
+            return new AsciiLineReaderIterator(new AsciiLineReader((BlockCompressedInputStream) bufferedInputStream));
+        }
         final PositionalBufferedStream pbs;
         if (bufferedInputStream instanceof PositionalBufferedStream) {
             pbs = (PositionalBufferedStream) bufferedInputStream;
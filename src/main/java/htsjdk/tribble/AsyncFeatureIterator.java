@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2007-2010 by The Broad Institute, Inc. and the Massachusetts Institute of Technology.
+ * All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL), Version 2.1 which
+ * is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR WARRANTIES OF
+ * ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT
+ * OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR
+ * RESPECTIVE TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES OF
+ * ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES, ECONOMIC
+ * DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER THE BROAD OR MIT SHALL
+ * BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE
+ * FOREGOING.
+ */
+package htsjdk.tribble;
+
+import htsjdk.samtools.util.AsyncBufferedIterator;
+
+import java.util.Iterator;
+
+/**
+ * Reads and decodes features ahead of the caller on a background thread.
+ */
+class AsyncFeatureIterator<T extends Feature> extends AsyncBufferedIterator<T> implements CloseableTribbleIterator<T> {
+    static final int BUFFER_SIZE = 1000;
+
+    AsyncFeatureIterator(final CloseableTribbleIterator<T> iterator) {
+        super(iterator, BUFFER_SIZE, 2);
+    }
+
+    @Override
+    protected String getThreadNamePrefix() {
+        return AsyncFeatureIterator.class.getSimpleName();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+}
@@ -18,6 +18,8 @@
 
 package htsjdk.tribble;
 
+import htsjdk.samtools.util.Locatable;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
@@ -30,6 +32,25 @@ public interface FeatureReader<T extends Feature> extends Closeable {
     
     public CloseableTribbleIterator<T> query(final String chr, final int start, final int end) throws IOException;
 
+    /**
+     * Query several intervals at once.
+     *
+     * @see #query(MultiIntervalQuery)
+     */
+    default CloseableTribbleIterator<T> query(final List<? extends Locatable> intervals) throws IOException {
+        return query(new MultiIntervalQuery<Locatable>(intervals));
+    }
+
+    /**
+     * Return the features that overlap any of the query intervals.  Each feature is returned once, in file order, however
+     * many intervals it overlaps; use {@link MultiIntervalQuery#getOverlappingIntervals(htsjdk.samtools.util.Locatable)}
+     * to find them.  This implementation queries each merged interval in turn; indexed readers override it to read
+     * each part of the file only once.
+     */
+    default CloseableTribbleIterator<T> query(final MultiIntervalQuery<?> intervals) throws IOException {
+        return new MultiIntervalIterator<T>(intervals, getSequenceNames(), MultiIntervalIterator.queryEachInterval(this));
+    }
+
     public CloseableTribbleIterator<T> iterator() throws IOException;
 
     public void close() throws IOException;
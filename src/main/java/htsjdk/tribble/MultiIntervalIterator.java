@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2007-2010 by The Broad Institute, Inc. and the Massachusetts Institute of Technology.
+ * All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL), Version 2.1 which
+ * is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR WARRANTIES OF
+ * ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT
+ * OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR
+ * RESPECTIVE TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES OF
+ * ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES, ECONOMIC
+ * DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER THE BROAD OR MIT SHALL
+ * BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE
+ * FOREGOING.
+ */
+package htsjdk.tribble;
+
+import htsjdk.samtools.util.Interval;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the features that overlap a {@link MultiIntervalQuery}, one contig at a time in the order of the file.
+ * The candidate features on each contig come from a {@link ContigQuery}, and are filtered against the query intervals.
+ */
+class MultiIntervalIterator<T extends Feature> implements CloseableTribbleIterator<T> {
+
+    /** Finds the candidate features on one contig. */
+    interface ContigQuery<T extends Feature> {
+        /**
+         * @param contig the contig, as named by the query
+         * @param mergedIntervals the sorted, disjoint intervals to query on contig
+         * @return features that may overlap mergedIntervals, sorted by start, each at most once
+         */
+        CloseableTribbleIterator<T> query(String contig, List<Interval> mergedIntervals) throws IOException;
+    }
+
+    private final MultiIntervalQuery<?> query;
+    private final Iterator<String> contigs;
+    private final ContigQuery<T> contigQuery;
+
+    private String contig;
+    private int lastEnd;
+    private CloseableTribbleIterator<T> current;
+    private T next;
+
+    /**
+     * @param query the query intervals
+     * @param contigOrder the contigs of the file, in order; query contigs that are not in it are not queried
+     * @param contigQuery finds the candidate features on each contig
+     */
+    MultiIntervalIterator(final MultiIntervalQuery<?> query, final List<String> contigOrder, final ContigQuery<T> contigQuery) throws IOException {
+        this.query = query;
+        final List<String> queried = new ArrayList<String>();
+        for (final String name : contigOrder) {
+            if (query.getLastEnd(name) > 0) queried.add(name);
+        }
+        this.contigs = queried.iterator();
+        this.contigQuery = contigQuery;
+        advance();
+    }
+
+    private void advance() throws IOException {
+        next = null;
+        while (true) {
+            if (current != null) {
+                while (current.hasNext()) {
+                    final T feature = current.next();
+                    if (feature.getStart() > lastEnd) break; // past the last interval on this contig
+                    // check against the query contig, as the file may use an alias for it
+                    if (query.overlaps(contig, feature.getStart(), feature.getEnd())) {
+                        next = feature;
+                        return;
+                    }
+                }
+                current.close();
+                current = null;
+            }
+            if (!contigs.hasNext()) return;
+            contig = contigs.next();
+            lastEnd = query.getLastEnd(contig);
+            current = contigQuery.query(contig, query.getMergedIntervals(contig));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (next == null) throw new NoSuchElementException();
+        final T ret = next;
+        try {
+            advance();
+        } catch (final IOException e) {
+            throw new TribbleException("Error reading features", e);
+        }
+        return ret;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported.");
+    }
+
+    @Override
+    public void close() {
+        if (current != null) current.close();
+        current = null;
+        next = null;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    /**
+     * @return a ContigQuery that queries reader for each merged interval in turn, dropping the features that were
+     * already returned for the previous interval
+     */
+    static <T extends Feature> ContigQuery<T> queryEachInterval(final FeatureReader<T> reader) {
+        return new ContigQuery<T>() {
+            @Override
+            public CloseableTribbleIterator<T> query(final String contig, final List<Interval> mergedIntervals) {
+                return new EachIntervalIterator<T>(reader, contig, mergedIntervals);
+            }
+        };
+    }
+
+    private static final class EachIntervalIterator<T extends Feature> implements CloseableTribbleIterator<T> {
+        private final FeatureReader<T> reader;
+        private final String contig;
+        private final List<Interval> intervals;
+        private int index = -1;
+        private CloseableTribbleIterator<T> current;
+        private T next;
+
+        EachIntervalIterator(final FeatureReader<T> reader, final String contig, final List<Interval> intervals) {
+            this.reader = reader;
+            this.contig = contig;
+            this.intervals = intervals;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            try {
+                while (true) {
+                    if (current != null) {
+                        // features that start within the previous interval were returned by its query
+                        final int previousEnd = index > 0 ? intervals.get(index - 1).getEnd() : 0;
+                        while (current.hasNext()) {
+                            final T feature = current.next();
+                            if (feature.getStart() > previousEnd) {
+                                next = feature;
+                                return;
+                            }
+                        }
+                        current.close();
+                        current = null;
+                    }
+                    if (++index == intervals.size()) return;
+                    final Interval interval = intervals.get(index);
+                    current = reader.query(contig, interval.getStart(), interval.getEnd());
+                }
+            } catch (final IOException e) {
+                throw new TribbleException("Error querying " + contig, e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (next == null) throw new NoSuchElementException();
+            final T ret = next;
+            advance();
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported.");
+        }
+
+        @Override
+        public void close() {
+            if (current != null) current.close();
+            current = null;
+            next = null;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble;
+
+import htsjdk.samtools.util.Interval;
+import htsjdk.samtools.util.Locatable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of query intervals for {@link FeatureReader#query(MultiIntervalQuery)}.  The intervals are sorted and merged
+ * per contig, so that a reader can look up the index once for all of them and read each part of the file once.
+ * The features returned by such a query can be routed back to the original intervals they overlap with
+ * {@link #getOverlappingIntervals(Locatable)}.
+ *
+ * Intervals, like features, are 1-based and closed.
+ *
+ * @param <L> the type of the query intervals
+ */
+public class MultiIntervalQuery<L extends Locatable> {
+    private final Map<String, ContigIntervals<L>> contigs = new LinkedHashMap<String, ContigIntervals<L>>();
+
+    /**
+     * @param intervals the query intervals, in any order; they may overlap
+     */
+    public MultiIntervalQuery(final Collection<? extends L> intervals) {
+        final Map<String, List<L>> byContig = new LinkedHashMap<String, List<L>>();
+        for (final L interval : intervals) {
+            if (interval.getContig() == null) throw new IllegalArgumentException("Query interval has no contig: " + interval);
+            if (interval.getEnd() < interval.getStart()) throw new IllegalArgumentException("Query interval ends before it starts: " + interval);
+            List<L> list = byContig.get(interval.getContig());
+            if (list == null) {
+                list = new ArrayList<L>();
+                byContig.put(interval.getContig(), list);
+            }
+            list.add(interval);
+        }
+        for (final Map.Entry<String, List<L>> entry : byContig.entrySet()) {
+            contigs.put(entry.getKey(), new ContigIntervals<L>(entry.getValue()));
+        }
+    }
+
+    /**
+     * @return the contigs of the query intervals, in order of first appearance
+     */
+    public List<String> getContigs() {
+        return Collections.unmodifiableList(new ArrayList<String>(contigs.keySet()));
+    }
+
+    /**
+     * @return the sorted, disjoint intervals covering the query intervals on contig; empty if there are none
+     */
+    public List<Interval> getMergedIntervals(final String contig) {
+        final ContigIntervals<L> intervals = contigs.get(contig);
+        if (intervals == null) return Collections.emptyList();
+        final List<Interval> merged = new ArrayList<Interval>(intervals.mergedStarts.length);
+        for (int i = 0; i < intervals.mergedStarts.length; i++) {
+            merged.add(new Interval(contig, intervals.mergedStarts[i], intervals.mergedEnds[i]));
+        }
+        return merged;
+    }
+
+    /**
+     * @return true if [start, end] on contig overlaps any of the query intervals
+     */
+    public boolean overlaps(final String contig, final int start, final int end) {
+        final ContigIntervals<L> intervals = contigs.get(contig);
+        if (intervals == null) return false;
+        final int i = intervals.firstMergedEndingAtOrAfter(start);
+        return i < intervals.mergedStarts.length && intervals.mergedStarts[i] <= end;
+    }
+
+    /**
+     * @return the query intervals that overlap feature, in order of start position
+     */
+    public List<L> getOverlappingIntervals(final Locatable feature) {
+        final ContigIntervals<L> intervals = contigs.get(feature.getContig());
+        if (intervals == null) return Collections.emptyList();
+        final int start = feature.getStart();
+        final int end = feature.getEnd();
+        List<L> overlapping = Collections.emptyList();
+        for (int i = intervals.firstMergedEndingAtOrAfter(start); i < intervals.mergedStarts.length && intervals.mergedStarts[i] <= end; i++) {
+            for (int j = intervals.firstMember[i]; j < intervals.firstMember[i + 1]; j++) {
+                final L interval = intervals.sorted.get(j);
+                if (interval.getStart() <= end && interval.getEnd() >= start) {
+                    if (overlapping.isEmpty()) overlapping = new ArrayList<L>();
+                    overlapping.add(interval);
+                }
+            }
+        }
+        return overlapping;
+    }
+
+    /**
+     * @return the end of the last query interval on contig, or 0 if there are none
+     */
+    int getLastEnd(final String contig) {
+        final ContigIntervals<L> intervals = contigs.get(contig);
+        return intervals == null ? 0 : intervals.mergedEnds[intervals.mergedEnds.length - 1];
+    }
+
+    /** The query intervals on one contig, sorted by start, and the merged intervals covering them. */
+    private static final class ContigIntervals<L extends Locatable> {
+        final List<L> sorted;
+        final int[] mergedStarts;
+        final int[] mergedEnds;
+        // index in sorted of the first interval of each merged interval, followed by the number of intervals
+        final int[] firstMember;
+
+        ContigIntervals(final List<L> intervals) {
+            sorted = new ArrayList<L>(intervals);
+            Collections.sort(sorted, new Comparator<L>() {
+                @Override
+                public int compare(final L a, final L b) {
+                    return a.getStart() != b.getStart() ? Integer.compare(a.getStart(), b.getStart()) : Integer.compare(a.getEnd(), b.getEnd());
+                }
+            });
+
+            final int[] starts = new int[sorted.size()];
+            final int[] ends = new int[sorted.size()];
+            final int[] first = new int[sorted.size() + 1];
+            int n = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                final L interval = sorted.get(i);
+                if (n > 0 && interval.getStart() <= ends[n - 1]) {
+                    ends[n - 1] = Math.max(ends[n - 1], interval.getEnd());
+                } else {
+                    starts[n] = interval.getStart();
+                    ends[n] = interval.getEnd();
+                    first[n] = i;
+                    n++;
+                }
+            }
+            first[n] = sorted.size();
+            mergedStarts = Arrays.copyOf(starts, n);
+            mergedEnds = Arrays.copyOf(ends, n);
+            firstMember = Arrays.copyOf(first, n + 1);
+        }
+
+        /** @return the index of the first merged interval whose end is at or after position */
+        int firstMergedEndingAtOrAfter(final int position) {
+            int lo = 0, hi = mergedEnds.length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (mergedEnds[mid] < position) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
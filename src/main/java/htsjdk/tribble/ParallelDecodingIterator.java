@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2007-2010 by The Broad Institute, Inc. and the Massachusetts Institute of Technology.
+ * All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL), Version 2.1 which
+ * is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR WARRANTIES OF
+ * ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT
+ * OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR
+ * RESPECTIVE TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES OF
+ * ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES, ECONOMIC
+ * DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER THE BROAD OR MIT SHALL
+ * BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE
+ * FOREGOING.
+ */
+package htsjdk.tribble;
+
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.readers.LineReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Decodes the lines of a feature file on several threads.  A background thread reads the lines in batches, each batch
+ * is decoded by one of the decoding threads with its own codec, and the decoded batches are returned in file order.
+ */
+class ParallelDecodingIterator<T extends Feature> implements CloseableTribbleIterator<T> {
+    static final int BATCH_SIZE = 1000;
+
+    private final String path;
+    private final LineReader lines;
+    private final ExecutorService decoders;
+    private final ThreadLocal<AsciiFeatureCodec<T>> codecs;
+    // decoded batches in file order, ending with END_OF_FILE
+    private final BlockingQueue<Future<List<T>>> batches;
+    private final Thread readerThread;
+
+    private Iterator<T> current = Collections.<T>emptyList().iterator();
+    private boolean done = false;
+
+    /**
+     * @param path         the file being read, for error messages
+     * @param lines        the lines to decode; closed when this iterator is closed
+     * @param codecFactory makes the codec for each decoding thread, ready to decode features
+     * @param nThreads     number of decoding threads
+     */
+    ParallelDecodingIterator(final String path, final LineReader lines, final Supplier<? extends AsciiFeatureCodec<T>> codecFactory, final int nThreads) {
+        if (nThreads <= 0) throw new IllegalArgumentException("nThreads must be > 0");
+        this.path = path;
+        this.lines = lines;
+        this.codecs = ThreadLocal.withInitial(codecFactory);
+        this.batches = new ArrayBlockingQueue<Future<List<T>>>(2 * nThreads + 1);
+        this.decoders = Executors.newFixedThreadPool(nThreads, r -> {
+            final Thread thread = new Thread(r, ParallelDecodingIterator.class.getSimpleName() + " decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readerThread = new Thread(this::readLines, ParallelDecodingIterator.class.getSimpleName() + " reader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /** Background thread run loop. */
+    private void readLines() {
+        try {
+            try {
+                List<String> batch = new ArrayList<String>(BATCH_SIZE);
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    batch.add(line);
+                    if (batch.size() == BATCH_SIZE) {
+                        submit(batch);
+                        batch = new ArrayList<String>(BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) submit(batch);
+                batches.put(CompletableFuture.completedFuture(null));
+            } catch (final InterruptedException e) {
+                throw e;
+            } catch (final Throwable t) {
+                // raise it on the foreground thread once it has consumed the batches before it
+                final CompletableFuture<List<T>> failed = new CompletableFuture<List<T>>();
+                failed.completeExceptionally(t);
+                batches.put(failed);
+            }
+        } catch (final InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void submit(final List<String> batch) throws InterruptedException {
+        batches.put(decoders.submit(() -> decode(batch)));
+    }
+
+    private List<T> decode(final List<String> batch) {
+        final AsciiFeatureCodec<T> codec = codecs.get();
+        final List<T> features = new ArrayList<T>(batch.size());
+        for (final String line : batch) {
+            try {
+                final T feature = codec.decode(line);
+                if (feature != null) features.add(feature);
+            } catch (final TribbleException e) {
+                e.setSource(path);
+                throw e;
+            } catch (final NumberFormatException e) {
+                throw new TribbleException.MalformedFeatureFile("Error parsing line: " + line, path, e);
+            }
+        }
+        return features;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (done) return false;
+            final List<T> batch;
+            try {
+                batch = batches.take().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for decoded features", e);
+            } catch (final ExecutionException e) {
+                done = true;
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                if (cause instanceof IOException) throw new RuntimeIOException("Error reading " + path, cause);
+                throw new TribbleException("Error decoding " + path, cause);
+            }
+            if (batch == null) {
+                done = true;
+                return false;
+            }
+            current = batch.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported.");
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        current = Collections.<T>emptyList().iterator();
+        readerThread.interrupt();
+        decoders.shutdownNow();
+        batches.clear();
+        try {
+            readerThread.join();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for background thread to complete", e);
+        } finally {
+            CloserUtil.close(lines);
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+}
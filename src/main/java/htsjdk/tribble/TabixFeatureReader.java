@@ -80,7 +80,7 @@ public class TabixFeatureReader<T extends Feature, SOURCE> extends AbstractFeatu
     private void readHeader() throws IOException {
         SOURCE source = null;
         try {
-            source = codec.makeSourceFromStream(new PositionalBufferedStream(new BlockCompressedInputStream(ParsingUtils.openInputStream(path))));
+            source = codec.makeSourceFromStream(openHeaderStream());
             header = codec.readHeader(source);
         } catch (Exception e) {
             throw new TribbleException.MalformedFeatureFile("Unable to parse header with error: " + e.getMessage(), path, e);
@@ -121,11 +121,39 @@ public class TabixFeatureReader<T extends Feature, SOURCE> extends AbstractFeatu
         return new FeatureIterator<T>(lineReader, start - 1, end);
     }
 
+    /**
+     * Return an iterator over the features overlapping any of the query intervals.  The index chunks of all the
+     * intervals on a contig are merged, so that each part of the file is read only once.
+     *
+     * @see FeatureReader#query(MultiIntervalQuery)
+     */
+    @Override
+    public CloseableTribbleIterator<T> query(final MultiIntervalQuery<?> intervals) throws IOException {
+        return new MultiIntervalIterator<T>(intervals, getSequenceNames(), (chr, merged) -> {
+            final int[] begs = new int[merged.size()];
+            final int[] ends = new int[merged.size()];
+            for (int i = 0; i < begs.length; i++) {
+                begs[i] = merged.get(i).getStart() - 1;
+                ends[i] = merged.get(i).getEnd();
+            }
+            final TabixIteratorLineReader lineReader = new TabixIteratorLineReader(tabixReader.query(tabixReader.chr2tid(chr), begs, ends));
+            return new FeatureIterator<T>(lineReader, 0, Integer.MAX_VALUE);
+        });
+    }
+
     public CloseableTribbleIterator<T> iterator() throws IOException {
         final InputStream is = new BlockCompressedInputStream(ParsingUtils.openInputStream(path));
         final PositionalBufferedStream stream = new PositionalBufferedStream(is);
         final LineReader reader = new SynchronousLineReader(stream);
-        return new FeatureIterator<T>(reader, 0, Integer.MAX_VALUE);
+        if (getDecodingThreads() > 0) {
+            return decodeInParallel(reader);
+        }
+        return readAhead(new FeatureIterator<T>(reader, 0, Integer.MAX_VALUE));
+    }
+
+    @Override
+    protected InputStream openHeaderStream() throws IOException {
+        return new PositionalBufferedStream(new BlockCompressedInputStream(ParsingUtils.openInputStream(path)));
     }
 
     public void close() throws IOException {
@@ -25,11 +25,13 @@ package htsjdk.tribble;
 
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.SeekableStreamFactory;
+import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.index.Block;
 import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.IndexFactory;
 import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.tribble.readers.SynchronousLineReader;
 import htsjdk.tribble.util.ParsingUtils;
 
 import java.io.BufferedInputStream;
@@ -40,6 +42,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -215,25 +218,36 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
      * @throws IOException throws an IOException if we can't open the file
      */
     private void readHeader() throws IOException {
-        InputStream is = null;
         PositionalBufferedStream pbs = null;
         try {
-            is = ParsingUtils.openInputStream(path);
-            if (hasBlockCompressedExtension(new URI(URLEncoder.encode(path, "UTF-8")))) {
-                // TODO -- warning I don't think this can work, the buffered input stream screws up position
-                is = new GZIPInputStream(new BufferedInputStream(is));
-            }
-            pbs = new PositionalBufferedStream(is);
+            pbs = openHeaderStream();
             final SOURCE source = codec.makeSourceFromStream(pbs);
             header = codec.readHeader(source);
         } catch (Exception e) {
             throw new TribbleException.MalformedFeatureFile("Unable to parse header with error: " + e.getMessage(), path, e);
         } finally {
             if (pbs != null) pbs.close();
-            else if (is != null) is.close();
         }
     }
 
+    @Override
+    protected PositionalBufferedStream openHeaderStream() throws IOException {
+        InputStream is = ParsingUtils.openInputStream(path);
+        try {
+            if (hasBlockCompressedExtension(new URI(URLEncoder.encode(path, "UTF-8")))) {
+                // TODO -- warning I don't think this can work, the buffered input stream screws up position
+                is = new GZIPInputStream(new BufferedInputStream(is));
+            }
+        } catch (final URISyntaxException e) {
+            is.close();
+            throw new IOException("Invalid path " + path, e);
+        } catch (final IOException e) {
+            is.close();
+            throw e;
+        }
+        return new PositionalBufferedStream(is);
+    }
+
     /**
      * Return an iterator to iterate over features overlapping the specified interval
      * <p/>
@@ -260,19 +274,96 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
 
         if (index.containsChromosome(chr)) {
             final List<Block> blocks = index.getBlocks(chr, start - 1, end);
-            return new QueryIterator(chr, start, end, blocks);
+            return new QueryIterator(chr, start, end, coalesceBlocks(blocks));
         } else {
             return new EmptyIterator<T>();
         }
     }
 
+    /**
+     * Return an iterator over the features overlapping any of the query intervals.  The index blocks of all the
+     * intervals on a contig are merged, so that each part of the file is read only once.
+     *
+     * @see FeatureReader#query(MultiIntervalQuery)
+     */
+    @Override
+    public CloseableTribbleIterator<T> query(final MultiIntervalQuery<?> intervals) throws IOException {
+        if (!this.hasIndex()) {
+            throw new TribbleException("Index not found for: " + path);
+        }
+        return new MultiIntervalIterator<T>(intervals, getSequenceNames(), (chr, merged) -> {
+            if (!index.containsChromosome(chr)) {
+                return new EmptyIterator<T>();
+            }
+            final List<Block> blocks = new ArrayList<Block>();
+            for (final Interval interval : merged) {
+                blocks.addAll(index.getBlocks(chr, interval.getStart() - 1, interval.getEnd()));
+            }
+            return new QueryIterator(chr, merged.get(0).getStart(), merged.get(merged.size() - 1).getEnd(), coalesceBlocks(blocks));
+        });
+    }
+
+    /**
+     * Blocks separated by fewer bytes than this are read as one, since reading the features in between and skipping
+     * them costs less than another seek, or another request for a remote file.
+     */
+    static final long MAX_COALESCED_GAP = 64 * 1024;
+
+    /**
+     * @return blocks sorted by position, with blocks that overlap or are less than {@link #MAX_COALESCED_GAP} apart
+     * merged into one, so that each part of the file is read once, in order
+     */
+    static List<Block> coalesceBlocks(final List<Block> blocks) {
+        final List<Block> sorted = new ArrayList<Block>(blocks);
+        Collections.sort(sorted, (a, b) -> Long.compare(a.getStartPosition(), b.getStartPosition()));
+        final List<Block> coalesced = new ArrayList<Block>(sorted.size());
+        long start = -1, end = -1;
+        for (final Block block : sorted) {
+            if (start >= 0 && block.getStartPosition() < end + MAX_COALESCED_GAP) {
+                end = Math.max(end, block.getEndPosition());
+            } else {
+                if (start >= 0) coalesced.add(new Block(start, end - start));
+                start = block.getStartPosition();
+                end = block.getEndPosition();
+            }
+        }
+        if (start >= 0) coalesced.add(new Block(start, end - start));
+        return coalesced;
+    }
+
 
     /**
      * @return Return an iterator to iterate over the entire file
      * @throws IOException
      */
     public CloseableTribbleIterator<T> iterator() throws IOException {
-        return new WFIterator();
+        if (getDecodingThreads() > 0) {
+            return decodeInParallel(new SynchronousLineReader(openFeatureStream()));
+        }
+        return readAhead(new WFIterator());
+    }
+
+    /**
+     * @return a stream over the whole file, positioned after the header
+     */
+    private PositionalBufferedStream openFeatureStream() throws IOException {
+        final InputStream inputStream = ParsingUtils.openInputStream(path);
+
+        final PositionalBufferedStream pbs;
+        if (hasBlockCompressedExtension(path)) {
+            // Gzipped -- we need to buffer the GZIPInputStream methods as this class makes read() calls,
+            // and seekableStream does not support single byte reads
+            final InputStream is = new GZIPInputStream(new BufferedInputStream(inputStream, 512000));
+            pbs = new PositionalBufferedStream(is, 1000);  // Small buffer as this is buffered already.
+        } else {
+            pbs = new PositionalBufferedStream(inputStream, 512000);
+        }
+        /**
+         * The header was already read from the original source in the constructor; don't read it again, since some codecs keep state
+         * about its initializagtion.  Instead, skip that part of the stream.
+         */
+        pbs.skip(header.getHeaderEnd());
+        return pbs;
     }
 
     /**
@@ -313,23 +404,7 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
          * @throws IOException
          */
         public WFIterator() throws IOException {
-            final InputStream inputStream = ParsingUtils.openInputStream(path);
-
-            final PositionalBufferedStream pbs;
-            if (hasBlockCompressedExtension(path)) {
-                // Gzipped -- we need to buffer the GZIPInputStream methods as this class makes read() calls,
-                // and seekableStream does not support single byte reads
-                final InputStream is = new GZIPInputStream(new BufferedInputStream(inputStream, 512000));
-                pbs = new PositionalBufferedStream(is, 1000);  // Small buffer as this is buffered already.
-            } else {
-                pbs = new PositionalBufferedStream(inputStream, 512000);
-            }
-            /**
-             * The header was already read from the original source in the constructor; don't read it again, since some codecs keep state
-             * about its initializagtion.  Instead, skip that part of the stream.
-             */
-            pbs.skip(header.getHeaderEnd());
-            source = codec.makeSourceFromStream(pbs);
+            source = codec.makeSourceFromStream(openFeatureStream());
             readNextRecord();
         }
 
@@ -397,7 +472,7 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
     }
 
     /**
-     * Iterator for a query interval
+     * Iterator for a query interval.  The blocks must be sorted and disjoint, as returned by {@link #coalesceBlocks(List)}.
      */
     class QueryIterator implements CloseableTribbleIterator<T> {
         private String chrAlias;
@@ -480,12 +555,9 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
                             continue;   // Skip
                         }
                         if ((chrAlias != null && !f.getContig().equals(chrAlias)) || f.getStart() > end) {
-                            if (blockIterator.hasNext()) {
-                                advanceBlock();
-                                continue;
-                            } else {
-                                return;    // Done
-                            }
+                            // The blocks are sorted and disjoint, and the file is sorted, so the later blocks only
+                            // hold features that start after this one.
+                            return;    // Done
                         }
                         if (f.getEnd() < start) {
                             continue;   // Skip
@@ -552,7 +624,7 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
 
         @Override
         public int read() throws IOException {
-            return (seekableStream.position() > maxPosition) ? -1 : seekableStream.read();
+            return (seekableStream.position() >= maxPosition) ? -1 : seekableStream.read();
         }
 
         @Override
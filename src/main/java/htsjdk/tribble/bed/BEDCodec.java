@@ -24,6 +24,7 @@
 package htsjdk.tribble.bed;
 
 import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
 import htsjdk.tribble.annotation.Strand;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.readers.LineIterator;
@@ -42,6 +43,7 @@ public class BEDCodec extends AsciiFeatureCodec<BEDFeature> {
 
     private static final Pattern SPLIT_PATTERN = Pattern.compile("\\t|( +)");
     private final int startOffsetValue;
+    private MutableBEDFeature locationParser;
 
     /**
      * Calls {@link #BEDCodec(StartOffset)} with an argument
@@ -62,24 +64,50 @@ public class BEDCodec extends AsciiFeatureCodec<BEDFeature> {
     }
 
 
+    /**
+     * Decodes only the location (columns 1-3) of a line, without splitting the rest of it.
+     */
     public BEDFeature decodeLoc(String line) {
-        return decode(line);
+        if (isSkipped(line)) {
+            return null;
+        }
+        if (locationParser == null) {
+            locationParser = new MutableBEDFeature(startOffsetValue == 0 ? StartOffset.ZERO : StartOffset.ONE);
+        }
+        if (!locationParser.setLine(line)) {
+            return null;
+        }
+        return new SimpleBEDFeature(locationParser.getStart(), locationParser.getEnd(), locationParser.getContig());
+    }
+
+    @Override
+    public Feature decodeLoc(final LineIterator lineIterator) {
+        return decodeLoc(lineIterator.next());
     }
 
     @Override
     public BEDFeature decode(String line) {
+        if (isSkipped(line)) {
+            return null;
+        }
 
+        String[] tokens = SPLIT_PATTERN.split(line, -1);
+        return decode(tokens);
+    }
+
+    /**
+     * @return true if line is empty or a header line, which are not decoded
+     */
+    protected boolean isSkipped(String line) {
         if (line.trim().isEmpty()) {
-            return null;
+            return true;
         }
 
         if (line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
             this.readHeaderLine(line);
-            return null;
+            return true;
         }
-
-        String[] tokens = SPLIT_PATTERN.split(line, -1);
-        return decode(tokens);
+        return false;
     }
 
     @Override
@@ -0,0 +1,282 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.bed;
+
+import htsjdk.tribble.annotation.Strand;
+import htsjdk.tribble.util.ParsingUtils;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A BED feature that is parsed in place from a line of a BED file, and can be reset to a new line without allocating.
+ * Used by {@link StreamingBEDCodec}.
+ *
+ * Only the location (columns 1-3) is parsed when the line is set.  The optional columns are parsed the first time one
+ * of them is requested; the exon blocks are built by decoding the whole line with a {@link BEDCodec}.  The values
+ * returned are the same as those of the feature that {@link BEDCodec#decode(String)} returns for the line, except that
+ * errors in the optional columns are only reported when they are parsed.
+ */
+public class MutableBEDFeature implements BEDFeature {
+    // the columns that BEDCodec reads; any more are only counted
+    private static final int MAX_FIELDS = 12;
+
+    private final int startOffsetValue;
+    private BEDCodec fullCodec;
+
+    private String line;
+    private final int[] fieldStarts = new int[MAX_FIELDS + 1];
+    private final int[] fieldEnds = new int[MAX_FIELDS + 1];
+    private int nFields;
+    // position of the separator after the last field found, or -1 if all fields have been found
+    private int scanPosition;
+
+    private String chr;
+    private int start;
+    private int end;
+
+    private boolean optionalColumnsParsed;
+    private boolean scoreValid;
+    private String name;
+    private float score;
+    private Strand strand;
+    private Color color;
+    private List<FullBEDFeature.Exon> exons;
+
+    /**
+     * @param startOffset the coordinate convention of the feature starts; see {@link BEDCodec#BEDCodec(BEDCodec.StartOffset)}
+     */
+    public MutableBEDFeature(final BEDCodec.StartOffset startOffset) {
+        this.startOffsetValue = startOffset.value();
+    }
+
+    /**
+     * Parses the location of a line of a BED file into this feature.  The line must not be empty or a header line.
+     *
+     * @return false if the line has fewer than the 2 columns required, in which case this feature is not valid
+     * @throws NumberFormatException if the start or end column is not an integer
+     */
+    public boolean setLine(final String line) {
+        this.line = line;
+        this.nFields = 0;
+        this.scanPosition = 0;
+        this.optionalColumnsParsed = false;
+        this.exons = null;
+
+        findFields(3);
+        if (nFields < 2) {
+            return false;
+        }
+        // reuse the name of the previous contig if it is the same
+        final int chrLength = fieldEnds[0] - fieldStarts[0];
+        if (chr == null || chr.length() != chrLength || !line.regionMatches(fieldStarts[0], chr, 0, chrLength)) {
+            chr = line.substring(fieldStarts[0], fieldEnds[0]);
+        }
+        // The BED format uses a first-base-is-zero convention,  Tribble features use 1 => add 1.
+        start = parseInt(line, fieldStarts[1], fieldEnds[1]) + startOffsetValue;
+        end = nFields > 2 ? parseInt(line, fieldStarts[2], fieldEnds[2]) : start;
+        return true;
+    }
+
+    /**
+     * Locates fields until there are at least n or the end of the line is reached.  Fields are separated by a tab
+     * or by a run of spaces, as in {@link BEDCodec}.
+     */
+    private void findFields(final int n) {
+        final String line = this.line;
+        final int length = line.length();
+        while (nFields < n && scanPosition >= 0) {
+            int i = scanPosition;
+            while (i < length) {
+                final char c = line.charAt(i);
+                if (c == '\t' || c == ' ') break;
+                i++;
+            }
+            if (nFields <= MAX_FIELDS) {
+                fieldStarts[nFields] = scanPosition;
+                fieldEnds[nFields] = i;
+            }
+            nFields++;
+            if (i == length) {
+                scanPosition = -1;
+            } else if (line.charAt(i) == '\t') {
+                scanPosition = i + 1;
+            } else {
+                while (i < length && line.charAt(i) == ' ') i++;
+                scanPosition = i;
+            }
+        }
+    }
+
+    private String field(final int i) {
+        return line.substring(fieldStarts[i], fieldEnds[i]);
+    }
+
+    /**
+     * Parses a decimal integer from line[start, end) without allocating, with the same results as
+     * {@link Integer#parseInt(String)}.
+     */
+    static int parseInt(final String line, final int start, final int end) {
+        if (start == end) throw new NumberFormatException("For input string: \"\"");
+        int i = start;
+        final boolean negative = line.charAt(i) == '-';
+        if (negative || line.charAt(i) == '+') {
+            i++;
+            if (i == end) throw new NumberFormatException("For input string: \"" + line.substring(start, end) + "\"");
+        }
+        // accumulate negatively, as Integer.parseInt does, so that Integer.MIN_VALUE can be parsed
+        final int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < end; i++) {
+            final int digit = Character.digit(line.charAt(i), 10);
+            if (digit < 0 || result < limit / 10 || result * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + line.substring(start, end) + "\"");
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private void parseOptionalColumns() {
+        if (optionalColumnsParsed) return;
+        findFields(MAX_FIELDS + 1);
+        name = "";
+        score = Float.NaN;
+        strand = Strand.NONE;
+        color = null;
+        scoreValid = true;
+
+        if (nFields > 3) {
+            name = field(3).replace("\"", "");
+        }
+        if (nFields > 4) {
+            try {
+                score = Float.parseFloat(field(4));
+            } catch (final NumberFormatException e) {
+                // as in BEDCodec, the remaining columns are ignored
+                scoreValid = false;
+            }
+        }
+        if (scoreValid && nFields > 5) {
+            final String strandString = field(5).trim();
+            final char c = strandString.isEmpty() ? ' ' : strandString.charAt(0);
+            strand = c == '-' ? Strand.NEGATIVE : (c == '+' ? Strand.POSITIVE : Strand.NONE);
+        }
+        if (scoreValid && nFields > 8) {
+            color = ParsingUtils.parseColor(field(8));
+        }
+        optionalColumnsParsed = true;
+    }
+
+    /**
+     * @return a new, independent feature with the values of this one
+     */
+    public FullBEDFeature toFullBEDFeature() {
+        return (FullBEDFeature) getFullCodec().decode(line);
+    }
+
+    private BEDCodec getFullCodec() {
+        if (fullCodec == null) {
+            fullCodec = new BEDCodec(startOffsetValue == 0 ? BEDCodec.StartOffset.ZERO : BEDCodec.StartOffset.ONE);
+        }
+        return fullCodec;
+    }
+
+    /**
+     * @return the line this feature was parsed from
+     */
+    public String getLine() {
+        return line;
+    }
+
+    @Deprecated
+    @Override
+    public String getChr() {
+        return getContig();
+    }
+
+    @Override
+    public String getContig() {
+        return chr;
+    }
+
+    @Override
+    public int getStart() {
+        return start;
+    }
+
+    @Override
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public Strand getStrand() {
+        parseOptionalColumns();
+        return strand;
+    }
+
+    @Override
+    public String getType() {
+        return "";
+    }
+
+    @Override
+    public Color getColor() {
+        parseOptionalColumns();
+        return color;
+    }
+
+    @Override
+    public String getDescription() {
+        return null;
+    }
+
+    @Override
+    public List<FullBEDFeature.Exon> getExons() {
+        if (exons == null) {
+            parseOptionalColumns();
+            exons = scoreValid && nFields > 11 ? toFullBEDFeature().getExons() : new ArrayList<FullBEDFeature.Exon>();
+        }
+        return exons;
+    }
+
+    @Override
+    public String getName() {
+        parseOptionalColumns();
+        return name;
+    }
+
+    @Override
+    public float getScore() {
+        parseOptionalColumns();
+        return score;
+    }
+
+    @Override
+    public String getLink() {
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.bed;
+
+/**
+ * A {@link BEDCodec} for streaming through large BED files, which decodes every line into the same
+ * {@link MutableBEDFeature} rather than allocating a new feature.  Only the location is parsed up front; the optional
+ * columns are parsed if they are requested.
+ *
+ * The feature returned by {@link #decode(String)} is only valid until the next call, so callers that keep features
+ * must copy them with {@link MutableBEDFeature#toFullBEDFeature()}.  This rules out uses such as indexing that hold
+ * on to the previous feature, which use {@link #decodeLoc(String)} and get a new feature each time.
+ */
+public class StreamingBEDCodec extends BEDCodec {
+    private final MutableBEDFeature feature;
+
+    /**
+     * Calls {@link #StreamingBEDCodec(StartOffset)} with an argument
+     * of {@code StartOffset.ONE}
+     */
+    public StreamingBEDCodec() {
+        this(StartOffset.ONE);
+    }
+
+    public StreamingBEDCodec(final StartOffset startOffset) {
+        super(startOffset);
+        this.feature = new MutableBEDFeature(startOffset);
+    }
+
+    /**
+     * @return the reused feature, set to this line, or null for empty, header and short lines
+     */
+    @Override
+    public BEDFeature decode(final String line) {
+        if (isSkipped(line)) {
+            return null;
+        }
+        return feature.setLine(line) ? feature : null;
+    }
+}
@@ -95,7 +95,7 @@ public abstract class AbstractIndex implements MutableIndex {
     /**
      * Any flags we're using
      */
-    private static final int SEQUENCE_DICTIONARY_FLAG = 0x8000; // if we have a sequence dictionary in our header
+    static final int SEQUENCE_DICTIONARY_FLAG = 0x8000; // if we have a sequence dictionary in our header
 
     /**
      * @param obj
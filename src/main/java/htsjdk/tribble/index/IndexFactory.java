@@ -57,6 +57,7 @@ import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -165,6 +166,10 @@ public class IndexFactory {
      * @param indexFile from which to load the index
      */
     public static Index loadIndex(final String indexFile) {
+        if (Defaults.USE_MEMORY_MAPPED_TRIBBLE_INDEX && !indexFile.endsWith(".gz") &&
+                !indexFile.endsWith(TabixUtils.STANDARD_INDEX_EXTENSION) && new File(indexFile).isFile()) {
+            return mapIndex(new File(indexFile));
+        }
         // Must be buffered, because getIndexType uses mark and reset
         try (BufferedInputStream bufferedInputStream = new BufferedInputStream(indexFileInputStream(indexFile), Defaults.NON_ZERO_BUFFER_SIZE)){
             final Class<Index> indexClass = IndexType.getIndexType(bufferedInputStream).getIndexType();
@@ -177,6 +182,20 @@ public class IndexFactory {
         }
     }
 
+    /**
+     * Memory-map a linear or interval tree index, so that it can be queried without reading it onto the heap.
+     *
+     * @param indexFile an uncompressed tribble index file
+     * @see MappedIndex
+     */
+    public static MappedIndex mapIndex(final File indexFile) {
+        try {
+            return new MappedIndex(indexFile);
+        } catch (final IOException ex) {
+            throw new TribbleException.UnableToReadIndexFile("Unable to read index file", indexFile.getAbsolutePath(), ex);
+        }
+    }
+
     private static InputStream indexFileInputStream(final String indexFile) throws IOException {
         final InputStream inputStreamInitial = ParsingUtils.openInputStream(indexFile);
         if (indexFile.endsWith(".gz")) {
@@ -345,6 +364,53 @@ public class IndexFactory {
         return createTabixIndex(inputFile, codec, codec.getTabixFormat(), sequenceDictionary);
     }
 
+    /**
+     * Create an index of the specified type with default binning parameters, decoding the input on several threads.
+     * The input is split into ranges (at BGZF block boundaries if it is block compressed) that are decoded in parallel,
+     * each by its own codec, so the features must be line-oriented.
+     *
+     * @param inputFile the input file to load features from
+     * @param codecFactory creates a new codec for each decoding thread
+     * @param type      the type of index to create
+     * @param sequenceDictionary May be null, but if present may reduce memory footprint for tabix index creation
+     * @param nThreads  the number of threads used to decode the input
+     */
+    public static <FEATURE_TYPE extends Feature> Index createIndex(final File inputFile,
+                                                                   final Supplier<? extends AsciiFeatureCodec<FEATURE_TYPE>> codecFactory,
+                                                                   final IndexType type,
+                                                                   final SAMSequenceDictionary sequenceDictionary,
+                                                                   final int nThreads) {
+        final IndexCreator creator;
+        switch (type) {
+            case INTERVAL_TREE: creator = new IntervalIndexCreator(inputFile); break;
+            case LINEAR:        creator = new LinearIndexCreator(inputFile); break;
+            case TABIX:         creator = new TabixIndexCreator(sequenceDictionary, codecFactory.get().getTabixFormat()); break;
+            default: throw new IllegalArgumentException("Unrecognized IndexType " + type);
+        }
+        return new ParallelFeatureIndexer(inputFile, codecFactory, ParallelFeatureIndexer.DEFAULT_RANGE_SIZE).createIndex(creator, nThreads);
+    }
+
+    /**
+     * Create a tabix index, decoding the input on several threads.  See
+     * {@link #createIndex(File, Supplier, IndexType, SAMSequenceDictionary, int)}.
+     *
+     * @param inputFile The file to be indexed.
+     * @param codecFactory creates a new codec for each decoding thread
+     * @param tabixFormat Header fields for TabixIndex to be produced.
+     * @param sequenceDictionary May be null, but if present may reduce memory footprint for index creation.  Features
+     *                           in inputFile must be in the order defined by sequenceDictionary, if it is present.
+     * @param nThreads  the number of threads used to decode the input
+     */
+    public static <FEATURE_TYPE extends Feature> TabixIndex createTabixIndex(final File inputFile,
+                                                                             final Supplier<? extends AsciiFeatureCodec<FEATURE_TYPE>> codecFactory,
+                                                                             final TabixFormat tabixFormat,
+                                                                             final SAMSequenceDictionary sequenceDictionary,
+                                                                             final int nThreads) {
+        final TabixIndexCreator indexCreator = new TabixIndexCreator(sequenceDictionary, tabixFormat);
+        return (TabixIndex) new ParallelFeatureIndexer(inputFile, codecFactory, ParallelFeatureIndexer.DEFAULT_RANGE_SIZE)
+                .createIndex(indexCreator, nThreads);
+    }
+
     private static Index createIndex(final File inputFile, final FeatureIterator iterator, final IndexCreator creator) {
         Feature lastFeature = null;
         Feature currentFeature;
@@ -352,25 +418,7 @@ public class IndexFactory {
         while (iterator.hasNext()) {
             final long position = iterator.getPosition();
             currentFeature = iterator.next();
-
-            checkSorted(inputFile, lastFeature, currentFeature);
-            //should only visit chromosomes once
-            final String curChr = currentFeature.getChr();
-            final String lastChr = lastFeature != null ? lastFeature.getChr() : null;
-            if(!curChr.equals(lastChr)){
-                if(visitedChromos.containsKey(curChr)){
-                    String msg = "Input file must have contiguous chromosomes.";
-                    msg += " Saw feature " + featToString(visitedChromos.get(curChr));
-                    msg += " followed later by " + featToString(lastFeature);
-                    msg += " and then " + featToString(currentFeature);
-                    throw new TribbleException.MalformedFeatureFile(msg, inputFile.getAbsolutePath());
-                }else{
-                    visitedChromos.put(curChr, currentFeature);
-                }
-            }
-
-            creator.addFeature(currentFeature, position);
-
+            addFeature(inputFile, creator, visitedChromos, lastFeature, currentFeature, position);
             lastFeature = currentFeature;
         }
 
@@ -378,6 +426,33 @@ public class IndexFactory {
         return creator.finalizeIndex(iterator.getPosition());
     }
 
+    /**
+     * Checks that currentFeature is correctly ordered with respect to the features before it, and adds it to creator.
+     *
+     * @param visitedChromos the first feature seen on each chromosome so far; updated by this method
+     * @param lastFeature the feature before currentFeature, or null if there is none
+     */
+    static void addFeature(final File inputFile, final IndexCreator creator, final Map<String, Feature> visitedChromos,
+                           final Feature lastFeature, final Feature currentFeature, final long position) {
+        checkSorted(inputFile, lastFeature, currentFeature);
+        //should only visit chromosomes once
+        final String curChr = currentFeature.getChr();
+        final String lastChr = lastFeature != null ? lastFeature.getChr() : null;
+        if(!curChr.equals(lastChr)){
+            if(visitedChromos.containsKey(curChr)){
+                String msg = "Input file must have contiguous chromosomes.";
+                msg += " Saw feature " + featToString(visitedChromos.get(curChr));
+                msg += " followed later by " + featToString(lastFeature);
+                msg += " and then " + featToString(currentFeature);
+                throw new TribbleException.MalformedFeatureFile(msg, inputFile.getAbsolutePath());
+            }else{
+                visitedChromos.put(curChr, currentFeature);
+            }
+        }
+
+        creator.addFeature(currentFeature, position);
+    }
+
     private static String featToString(final Feature feature){
         return feature.getChr() + ":" + feature.getStart() + "-" + feature.getEnd();
     }
@@ -434,7 +509,11 @@ public class IndexFactory {
             }
         }
 
-        private PositionalBufferedStream initStream(final File inputFile, final long skip) {
+        /**
+         * @return a stream over inputFile, positioned skip bytes into its contents; block compressed files are returned as
+         * a {@link BlockCompressedInputStream}, so that codecs can record virtual file pointers for their features
+         */
+        private InputStream initStream(final File inputFile, final long skip) {
             try {
                 final FileInputStream fileStream = new FileInputStream(inputFile);
                 final InputStream is;
@@ -454,7 +533,14 @@ public class IndexFactory {
                     // if we got here, the file is valid, make a SeekableStream for the BlockCompressedInputStream to read from
                     final SeekableStream seekableStream =
                             ssf.getBufferedStream(ssf.getStreamFor(inputFile.getAbsolutePath()));
-                    is = new BlockCompressedInputStream(seekableStream);
+                    final BlockCompressedInputStream blockStream = new BlockCompressedInputStream(seekableStream);
+                    long remaining = skip;
+                    while (remaining > 0) {
+                        final long skipped = blockStream.skip(remaining);
+                        if (skipped <= 0) break;
+                        remaining -= skipped;
+                    }
+                    return blockStream;
                 }
                 else {
                     is = fileStream;
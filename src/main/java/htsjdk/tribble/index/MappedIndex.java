@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2007-2010 by The Broad Institute, Inc. and the Massachusetts Institute of Technology.
+ * All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL), Version 2.1 which
+ * is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR WARRANTIES OF
+ * ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT
+ * OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR
+ * RESPECTIVE TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES OF
+ * ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES, ECONOMIC
+ * DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER THE BROAD OR MIT SHALL
+ * BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE
+ * FOREGOING.
+ */
+package htsjdk.tribble.index;
+
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.index.interval.IntervalTreeIndex;
+import htsjdk.tribble.index.linear.LinearIndex;
+import htsjdk.tribble.util.LittleEndianInputStream;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only view of a {@link LinearIndex} or {@link IntervalTreeIndex} file that is memory-mapped rather than
+ * read onto the heap.
+ *
+ * Opening the index reads only the header and the name and size of each contig's entry, so it costs time and memory
+ * proportional to the number of contigs rather than to the size of the index.  Linear index queries read the bin
+ * positions they need directly from the mapped file.  The intervals of an interval tree index are loaded for one
+ * contig at a time, the first time that contig is queried.
+ */
+public class MappedIndex implements Index {
+    private static final int LINEAR_CHR_HEADER_LENGTH = 5 * 4; // binWidth, nBins, longestFeature, unused, nFeatures
+    private static final int INTERVAL_LENGTH = 4 + 4 + 8 + 4; // start, end, position, size
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int type;
+    private final int version;
+    private final boolean hasOldV3LinearIndex;
+    private final Map<String, String> properties = new LinkedHashMap<String, String>();
+    // offset in buffer of the data following each contig's name
+    private final Map<String, Integer> chrOffsets = new LinkedHashMap<String, Integer>();
+    private final Map<String, IntervalTreeIndex.ChrIndex> intervalTrees = new ConcurrentHashMap<String, IntervalTreeIndex.ChrIndex>();
+
+    /**
+     * @param file an uncompressed linear or interval tree index file
+     */
+    public MappedIndex(final File file) throws IOException {
+        this.file = file;
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new TribbleException.UnableToReadIndexFile("Index file is too large to map", file.getAbsolutePath(), null);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        final ByteBuffer header = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (header.getInt() != AbstractIndex.MAGIC_NUMBER) {
+                throw new TribbleException.UnableToCreateCorrectIndexType("Not a tribble index: " + file);
+            }
+            type = header.getInt();
+            if (type != LinearIndex.INDEX_TYPE && type != IntervalTreeIndex.INDEX_TYPE) {
+                throw new TribbleException.UnableToCreateCorrectIndexType(String.format("Unexpected index type %d", type));
+            }
+            version = header.getInt();
+            readString(header); // indexed file
+            header.getLong();   // indexed file size
+            header.getLong();   // indexed file timestamp
+            readString(header); // indexed file MD5
+            final int flags = header.getInt();
+            if (version < 3 && (flags & AbstractIndex.SEQUENCE_DICTIONARY_FLAG) == AbstractIndex.SEQUENCE_DICTIONARY_FLAG) {
+                for (int n = header.getInt(); n > 0; n--) {
+                    readString(header);
+                    header.getInt();
+                }
+            }
+            if (version >= 3) {
+                for (int n = header.getInt(); n > 0; n--) {
+                    final String key = readString(header);
+                    properties.put(key, readString(header));
+                }
+            }
+
+            // find each contig's entry, skipping over its contents
+            boolean oldV3 = false;
+            for (int n = header.getInt(); n > 0; n--) {
+                final String name = readString(header);
+                final int offset = header.position();
+                if (type == LinearIndex.INDEX_TYPE) {
+                    final int nBins = header.getInt(offset + 4);
+                    oldV3 |= header.getInt(offset + 12) > 0;
+                    header.position(offset + LINEAR_CHR_HEADER_LENGTH + 8 * (nBins + 1));
+                } else {
+                    final int nIntervals = header.getInt(offset);
+                    header.position(offset + 4 + INTERVAL_LENGTH * nIntervals);
+                }
+                chrOffsets.put(name, offset);
+            }
+            hasOldV3LinearIndex = oldV3;
+        } catch (final BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new TribbleException.UnableToReadIndexFile("Truncated or corrupt index file", file.getAbsolutePath(), e);
+        }
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int start = buffer.position();
+        int end = start;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        final byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get(); // the terminating zero
+        return new String(bytes);
+    }
+
+    @Override
+    public List<Block> getBlocks(final String chr, final int start, final int end) {
+        final Integer offset = chrOffsets.get(chr);
+        if (offset == null) {
+            throw new IllegalArgumentException("getBlocks() called with of unknown contig " + chr);
+        }
+        if (type == LinearIndex.INDEX_TYPE) {
+            return getLinearBlocks(offset, start, end);
+        }
+        IntervalTreeIndex.ChrIndex chrIndex = intervalTrees.get(chr);
+        if (chrIndex == null) {
+            chrIndex = readIntervalTree(chr, offset);
+            intervalTrees.put(chr, chrIndex);
+        }
+        return chrIndex.getBlocks(start, end);
+    }
+
+    /** The same query as {@link LinearIndex.ChrIndex#getBlocks(int, int)}, reading the bins in place. */
+    private List<Block> getLinearBlocks(final int offset, final int start, final int end) {
+        final int binWidth = buffer.getInt(offset);
+        final int nBins = buffer.getInt(offset + 4);
+        final int longestFeature = buffer.getInt(offset + 8);
+        if (nBins == 0) {
+            return Collections.emptyList();
+        }
+        final int adjustedPosition = Math.max(start - longestFeature, 0);
+        final int startBinNumber = adjustedPosition / binWidth;
+        if (startBinNumber >= nBins) {
+            return Collections.emptyList();
+        }
+        final int endBinNumber = Math.min((end - 1) / binWidth, nBins - 1);
+        // bin i starts at position i, and ends where bin i + 1 starts
+        final int positions = offset + LINEAR_CHR_HEADER_LENGTH;
+        final long startPos = buffer.getLong(positions + 8 * startBinNumber);
+        final long endPos = buffer.getLong(positions + 8 * (endBinNumber + 1));
+        final long size = endPos - startPos;
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new Block(startPos, size));
+    }
+
+    private IntervalTreeIndex.ChrIndex readIntervalTree(final String chr, final int offset) {
+        // re-read the name as well, so that ChrIndex.read sees the entry as it was written
+        final int nameLength = chr.getBytes().length + 1;
+        final int nIntervals = buffer.getInt(offset);
+        final byte[] entry = new byte[nameLength + 4 + INTERVAL_LENGTH * nIntervals];
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(offset - nameLength);
+        slice.get(entry);
+        final IntervalTreeIndex.ChrIndex chrIndex = new IntervalTreeIndex.ChrIndex();
+        try {
+            chrIndex.read(new LittleEndianInputStream(new ByteArrayInputStream(entry)));
+        } catch (final IOException e) {
+            throw new TribbleException.UnableToReadIndexFile("Unable to read index for " + chr, file.getAbsolutePath(), e);
+        }
+        return chrIndex;
+    }
+
+    @Override
+    public boolean isCurrentVersion() {
+        return version == AbstractIndex.VERSION && !hasOldV3LinearIndex;
+    }
+
+    @Override
+    public List<String> getSequenceNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(chrOffsets.keySet()));
+    }
+
+    @Override
+    public boolean containsChromosome(final String chr) {
+        return chrOffsets.containsKey(chr);
+    }
+
+    /**
+     * Writes the index exactly as it is in the mapped file.
+     */
+    @Override
+    public void write(final LittleEndianOutputStream stream) throws IOException {
+        final ByteBuffer contents = buffer.duplicate();
+        contents.position(0);
+        final byte[] chunk = new byte[64 * 1024];
+        while (contents.hasRemaining()) {
+            final int n = Math.min(chunk.length, contents.remaining());
+            contents.get(chunk, 0, n);
+            stream.write(chunk, 0, n);
+        }
+    }
+
+    @Override
+    public void writeBasedOnFeatureFile(final File featureFile) throws IOException {
+        if (!featureFile.isFile()) return;
+        try (final LittleEndianOutputStream idxStream =
+                     new LittleEndianOutputStream(new BufferedOutputStream(new FileOutputStream(Tribble.indexFile(featureFile))))) {
+            write(idxStream);
+        }
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Compares the indices after reading this one onto the heap.
+     */
+    @Override
+    public boolean equalsIgnoreProperties(final Object obj) {
+        return toIndex().equalsIgnoreProperties(obj instanceof MappedIndex ? ((MappedIndex) obj).toIndex() : obj);
+    }
+
+    /**
+     * @return this index read onto the heap, as a {@link LinearIndex} or {@link IntervalTreeIndex}
+     */
+    public AbstractIndex toIndex() {
+        final ByteBuffer contents = buffer.duplicate();
+        contents.position(0);
+        final byte[] bytes = new byte[contents.remaining()];
+        contents.get(bytes);
+        try {
+            return type == LinearIndex.INDEX_TYPE ? new LinearIndex(new ByteArrayInputStream(bytes)) :
+                    new IntervalTreeIndex(new ByteArrayInputStream(bytes));
+        } catch (final IOException e) {
+            throw new TribbleException.UnableToReadIndexFile("Unable to read index file", file.getAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.index;
+
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.util.BlockCompressedBlockFinder;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.readers.LineIterator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Creates an index for a line-oriented feature file using several threads.
+ *
+ * The file is cut into ranges of roughly equal size (at BGZF block boundaries if it is block compressed), and the lines
+ * of each range are decoded on a worker thread by a codec belonging to that thread.  The features are then added to a
+ * single {@link IndexCreator} in file order with the same checks as {@link IndexFactory}, so the resulting index does
+ * not depend on the number of threads.  A line belongs to the range in which the newline before it falls, so each range
+ * skips the partial line at its start and finishes the line that crosses its end.
+ *
+ * For block compressed files the file positions given to the index creator are BGZF virtual file pointers.  As in
+ * {@link IndexFactory}, the position of a feature is that of the first line after the previous feature, so lines that
+ * do not decode to a feature are included in the block of the feature that follows them.
+ */
+final class ParallelFeatureIndexer {
+    static final long DEFAULT_RANGE_SIZE = 4L * 1024 * 1024;
+
+    private final File inputFile;
+    private final Supplier<? extends AsciiFeatureCodec<?>> codecFactory;
+    private final boolean blockCompressed;
+    private final long length;
+    private final long rangeSize;
+
+    // each worker thread decodes with its own codec, which has read the header of the file
+    private final ThreadLocal<AsciiFeatureCodec<?>> codecs = new ThreadLocal<AsciiFeatureCodec<?>>() {
+        @Override
+        protected AsciiFeatureCodec<?> initialValue() {
+            return createCodec();
+        }
+    };
+
+    ParallelFeatureIndexer(final File inputFile, final Supplier<? extends AsciiFeatureCodec<?>> codecFactory, final long rangeSize) {
+        if (!inputFile.canRead()) {
+            throw new TribbleException.FeatureFileDoesntExist("Unable to open the input file, most likely the file doesn't exist.", inputFile.getAbsolutePath());
+        }
+        this.inputFile = inputFile;
+        this.codecFactory = codecFactory;
+        this.blockCompressed = AbstractFeatureReader.hasBlockCompressedExtension(inputFile);
+        this.length = inputFile.length();
+        this.rangeSize = rangeSize;
+        if (blockCompressed) {
+            try (final InputStream in = new BufferedInputStream(new FileInputStream(inputFile))) {
+                if (!BlockCompressedInputStream.isValidFile(in)) {
+                    throw new TribbleException.MalformedFeatureFile("Input file is not in valid block compressed format.", inputFile.getAbsolutePath());
+                }
+            } catch (final IOException e) {
+                throw new TribbleException.MalformedFeatureFile("Error initializing stream", inputFile.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Adds all of the features in the file to creator.
+     *
+     * @param creator  the index creator
+     * @param nThreads number of threads used to decode the file
+     * @return the finalized index
+     */
+    Index createIndex(final IndexCreator creator, final int nThreads) {
+        if (nThreads <= 0) throw new IllegalArgumentException("nThreads must be > 0");
+        final int nRanges = (int) Math.max(1, (length + rangeSize - 1) / rangeSize);
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "ParallelFeatureIndexer Thread");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            final ArrayDeque<Future<RangeFeatures>> pending = new ArrayDeque<Future<RangeFeatures>>();
+            final Map<String, Feature> visitedChromos = new HashMap<String, Feature>(40);
+            Feature lastFeature = null;
+            final long headerEnd = getHeaderEndPosition();
+            // position of the first line after the last feature added, which is where the next feature's block starts
+            long afterLastFeature = headerEnd;
+            long endPosition = 0;
+            int nextRange = 0;
+            while (nextRange < nRanges || !pending.isEmpty()) {
+                // keep a bounded number of ranges in memory ahead of the one being added to the index
+                while (nextRange < nRanges && pending.size() < 2 * nThreads) {
+                    final int range = nextRange++;
+                    pending.addLast(executor.submit(new Callable<RangeFeatures>() {
+                        @Override
+                        public RangeFeatures call() throws IOException {
+                            return readRange(range, nRanges, headerEnd);
+                        }
+                    }));
+                }
+                final RangeFeatures features = get(pending.removeFirst());
+                for (int i = 0; i < features.features.size(); i++) {
+                    final Feature feature = features.features.get(i);
+                    final long position = i == 0 && features.skippedLinesBeforeFirst ? afterLastFeature : features.positions[i];
+                    IndexFactory.addFeature(inputFile, creator, visitedChromos, lastFeature, feature, position);
+                    lastFeature = feature;
+                }
+                if (!features.features.isEmpty()) afterLastFeature = features.afterLastFeature;
+                endPosition = features.endPosition;
+            }
+            return creator.finalizeIndex(endPosition);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RangeFeatures get(final Future<RangeFeatures> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            throw new TribbleException("Interrupted while indexing " + inputFile.getAbsolutePath(), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new TribbleException.MalformedFeatureFile("Unable to read a line from the file", inputFile.getAbsolutePath(), (Exception) e.getCause());
+        }
+    }
+
+    /**
+     * @return the position at which {@link IndexFactory} starts reading features, just after the header
+     */
+    private long getHeaderEndPosition() {
+        final AsciiFeatureCodec<?> codec = codecFactory.get();
+        try (final InputStream in = blockCompressed ? new BlockCompressedInputStream(inputFile) :
+                new BufferedInputStream(new FileInputStream(inputFile))) {
+            final long headerEnd = codec.readHeader(codec.makeSourceFromStream(in)).getHeaderEnd();
+            if (!blockCompressed) return headerEnd;
+            final BlockCompressedInputStream blockStream = new BlockCompressedInputStream(inputFile);
+            try {
+                long remaining = headerEnd;
+                while (remaining > 0) {
+                    final long skipped = blockStream.skip(remaining);
+                    if (skipped <= 0) break;
+                    remaining -= skipped;
+                }
+                return blockStream.getFilePointer();
+            } finally {
+                blockStream.close();
+            }
+        } catch (final IOException e) {
+            throw new TribbleException.InvalidHeader("Error reading header " + e.getMessage());
+        }
+    }
+
+    private AsciiFeatureCodec<?> createCodec() {
+        final AsciiFeatureCodec<?> codec = codecFactory.get();
+        try (final InputStream in = blockCompressed ? new BlockCompressedInputStream(inputFile) :
+                new BufferedInputStream(new FileInputStream(inputFile))) {
+            codec.readHeader(codec.makeSourceFromStream(in));
+        } catch (final IOException e) {
+            throw new TribbleException.InvalidHeader("Error reading header " + e.getMessage());
+        }
+        return codec;
+    }
+
+    /**
+     * Decodes the lines belonging to a range of the file.  A range owns the lines that start after the end of the
+     * previous range, up to and including its own end.  Lines before headerEnd are skipped, as in {@link IndexFactory}.
+     */
+    private RangeFeatures readRange(final int range, final int nRanges, final long headerEnd) throws IOException {
+        final long rawStart = range * rangeSize;
+        final long rawEnd = range == nRanges - 1 ? length : rawStart + rangeSize;
+
+        // start is the end of the previous range, limit the end of this one
+        final long start;
+        final long limit;
+        if (blockCompressed) {
+            final long startAddress, endAddress;
+            try (final SeekableFileStream stream = new SeekableFileStream(inputFile)) {
+                startAddress = BlockCompressedBlockFinder.findNextBlockAddress(stream, rawStart);
+                endAddress = BlockCompressedBlockFinder.findNextBlockAddress(stream, rawEnd);
+            }
+            start = BlockCompressedFilePointerUtil.makeFilePointer(startAddress, 0);
+            limit = BlockCompressedFilePointerUtil.makeFilePointer(endAddress, 0);
+            if (startAddress >= endAddress) {
+                // no block starts in this range, so no line does either
+                final RangeFeatures empty = new RangeFeatures();
+                empty.endPosition = limit;
+                return empty;
+            }
+        } else {
+            start = rawStart;
+            limit = rawEnd;
+        }
+        if (headerEnd > limit) {
+            // the whole range is header
+            final RangeFeatures empty = new RangeFeatures();
+            empty.endPosition = limit;
+            return empty;
+        }
+        final boolean headerEndsInRange = range == 0 || headerEnd > start;
+        final long sourceStart = headerEndsInRange ? headerEnd : start;
+        final LineSource source = blockCompressed ? new BlockCompressedLineSource(inputFile, sourceStart) :
+                new UncompressedLineSource(inputFile, sourceStart);
+
+        final AsciiFeatureCodec<?> codec = codecs.get();
+        final SingleLineIterator line = new SingleLineIterator();
+        final RangeFeatures features = new RangeFeatures();
+        try {
+            // the first line after the header starts at headerEnd, otherwise the line cut by start belongs to the previous range
+            if (!headerEndsInRange) source.readLine();
+
+            // position of the first line since the last feature, or -1 if there is none
+            long runStart = -1;
+            while (true) {
+                final long position = source.getPosition();
+                if (position > limit || !source.readLine()) break;
+                if (runStart < 0) runStart = position;
+                line.set(source.getLine());
+                final Feature feature = codec.decodeLoc(line);
+                if (feature != null) {
+                    if (features.features.isEmpty()) features.skippedLinesBeforeFirst = runStart != position;
+                    features.add(new SimpleFeature(feature.getContig(), feature.getStart(), feature.getEnd()), runStart);
+                    runStart = -1;
+                    features.afterLastFeature = source.getPosition();
+                }
+            }
+            features.endPosition = source.getPosition();
+        } finally {
+            source.close();
+        }
+        return features;
+    }
+
+    /** The features decoded from a range of the file, and their positions. */
+    private static final class RangeFeatures {
+        final List<Feature> features = new ArrayList<Feature>();
+        long[] positions = new long[1024];
+        long endPosition;
+        // whether lines that are not features come before the first feature, which then belongs to the block after the
+        // last feature of the ranges before this one
+        boolean skippedLinesBeforeFirst;
+        long afterLastFeature;
+
+        void add(final Feature feature, final long position) {
+            if (features.size() == positions.length) {
+                positions = Arrays.copyOf(positions, 2 * positions.length);
+            }
+            positions[features.size()] = position;
+            features.add(feature);
+        }
+    }
+
+    /** Presents one line at a time to a codec. */
+    private static final class SingleLineIterator implements LineIterator {
+        private String line;
+
+        void set(final String line) {
+            this.line = line;
+        }
+
+        @Override
+        public String peek() {
+            if (line == null) throw new NoSuchElementException();
+            return line;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return line != null;
+        }
+
+        @Override
+        public String next() {
+            final String ret = peek();
+            line = null;
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /** Reads lines and reports the file position of the start of each line. */
+    private abstract static class LineSource implements Closeable {
+        protected byte[] line = new byte[1024];
+        protected int lineLength;
+
+        /** @return the position of the next line */
+        abstract long getPosition();
+
+        /**
+         * Reads the next line.
+         * @return false if the end of the file has been reached
+         */
+        abstract boolean readLine() throws IOException;
+
+        String getLine() {
+            int end = lineLength;
+            if (end > 0 && line[end - 1] == '\r') end--;
+            return new String(line, 0, end, StandardCharsets.ISO_8859_1);
+        }
+
+        protected void growLine() {
+            line = Arrays.copyOf(line, 2 * line.length);
+        }
+    }
+
+    private static final class BlockCompressedLineSource extends LineSource {
+        private final BlockCompressedInputStream in;
+
+        BlockCompressedLineSource(final File file, final long filePointer) throws IOException {
+            in = new BlockCompressedInputStream(file);
+            in.seek(filePointer);
+        }
+
+        @Override
+        long getPosition() {
+            return in.getFilePointer();
+        }
+
+        @Override
+        boolean readLine() throws IOException {
+            lineLength = 0;
+            while (true) {
+                if (lineLength == line.length) growLine();
+                final int n = in.readUntil((byte) '\n', line, lineLength, line.length - lineLength);
+                if (n < 0) return lineLength > 0;
+                lineLength += n;
+                if (line[lineLength - 1] == '\n') {
+                    lineLength--;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class UncompressedLineSource extends LineSource {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private long bufferPosition;
+
+        UncompressedLineSource(final File file, final long position) throws IOException {
+            channel = new RandomAccessFile(file, "r").getChannel();
+            channel.position(position);
+            bufferPosition = position;
+            buffer.flip();
+        }
+
+        @Override
+        long getPosition() {
+            return bufferPosition + buffer.position();
+        }
+
+        @Override
+        boolean readLine() throws IOException {
+            lineLength = 0;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    bufferPosition += buffer.limit();
+                    buffer.clear();
+                    final int n = channel.read(buffer);
+                    buffer.flip();
+                    if (n <= 0) return lineLength > 0;
+                }
+                final byte[] bytes = buffer.array();
+                final int start = buffer.position();
+                int end = start;
+                while (end < buffer.limit() && bytes[end] != '\n') end++;
+                while (lineLength + end - start > line.length) growLine();
+                System.arraycopy(bytes, start, line, lineLength, end - start);
+                lineLength += end - start;
+                if (end < buffer.limit()) {
+                    buffer.position(end + 1);
+                    return true;
+                }
+                buffer.position(end);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
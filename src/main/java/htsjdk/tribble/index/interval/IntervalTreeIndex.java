@@ -149,24 +149,26 @@ public class IntervalTreeIndex extends AbstractIndex {
             // Sort blocks by start position
             Arrays.sort(blocks, new Comparator<Block>() {
                 public int compare(final Block b1, final Block b2) {
-                    // this is a little cryptic because the normal method (b1.getStartPosition() - b2.getStartPosition()) wraps in int space and we incorrectly sort the blocks in extreme cases
-                    return b1.getStartPosition() - b2.getStartPosition() < 1 ? -1 : (b1.getStartPosition() - b2.getStartPosition() > 1 ? 1 : 0);
+                    return Long.compare(b1.getStartPosition(), b2.getStartPosition());
                 }
             });
 
-            // Consolidate blocks  that are close together
+            // Consolidate blocks  that are close together.  The merged blocks are new ones, so that the blocks of
+            // the index are left unchanged for later queries.
             final List<Block> consolidatedBlocks = new ArrayList<Block>(blocks.length);
-            Block lastBlock = blocks[0];
-            consolidatedBlocks.add(lastBlock);
+            long startPosition = blocks[0].getStartPosition();
+            long endPosition = blocks[0].getEndPosition();
             for (int i = 1; i < blocks.length; i++) {
                 final Block block = blocks[i];
-                if (block.getStartPosition() < (lastBlock.getEndPosition() + 1000)) {
-                    lastBlock.setEndPosition(block.getEndPosition());
+                if (block.getStartPosition() < (endPosition + 1000)) {
+                    endPosition = Math.max(endPosition, block.getEndPosition());
                 } else {
-                    lastBlock = block;
-                    consolidatedBlocks.add(lastBlock);
+                    consolidatedBlocks.add(new Block(startPosition, endPosition - startPosition));
+                    startPosition = block.getStartPosition();
+                    endPosition = block.getEndPosition();
                 }
             }
+            consolidatedBlocks.add(new Block(startPosition, endPosition - startPosition));
 
             return consolidatedBlocks;
         }
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.index.tabix;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.StringUtil;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.util.TabixUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Writes features as the lines of a block compressed file and builds its tabix index as it goes, so that the file
+ * does not have to be read again with {@link IndexFactory#createTabixIndex} once it has been written.  The virtual file
+ * pointer of each line is taken from the {@link BlockCompressedOutputStream} as the line is written, and the index is
+ * written next to the file when the writer is closed.
+ *
+ * Features must be added in the order required by {@link TabixIndexCreator}: all the features on a contig together,
+ * sorted by start.  The index is built from the coordinates of the features, so the lines must hold the same
+ * coordinates in the columns described by the {@link TabixFormat}, for tabix readers to parse them back.
+ *
+ * @param <T> the type of the features written
+ */
+public class TabixIndexingFeatureWriter<T extends Feature> implements Closeable {
+    private final File file;
+    private final File indexFile;
+    private final BlockCompressedOutputStream out;
+    private final TabixIndexCreator indexCreator;
+    private final Function<? super T, String> encoder;
+    private boolean wroteFeature = false;
+    private TabixIndex index = null;
+
+    /**
+     * Writes the index to file with the {@link TabixUtils#STANDARD_INDEX_EXTENSION} extension appended.
+     *
+     * @param file    the block compressed file to write
+     * @param format  describes the columns of the lines, for readers of the index
+     * @param encoder makes the line, without its terminator, of each feature added with {@link #add(Feature)}; may be
+     *                null if features are only written with {@link #add(Feature, String)}
+     */
+    public TabixIndexingFeatureWriter(final File file, final TabixFormat format, final Function<? super T, String> encoder) {
+        this(file, new File(file.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION), format, null, encoder);
+    }
+
+    /**
+     * @param file       the block compressed file to write
+     * @param indexFile  the file to which the index is written
+     * @param format     describes the columns of the lines, for readers of the index
+     * @param dictionary is not required, but if present all features added must refer to sequences in the dictionary.
+     *                   It is used to reduce the memory needed to build the index.
+     * @param encoder    makes the line, without its terminator, of each feature added with {@link #add(Feature)}; may be
+     *                   null if features are only written with {@link #add(Feature, String)}
+     */
+    public TabixIndexingFeatureWriter(final File file, final File indexFile, final TabixFormat format,
+                                      final SAMSequenceDictionary dictionary, final Function<? super T, String> encoder) {
+        this.file = file;
+        this.indexFile = indexFile;
+        this.out = new BlockCompressedOutputStream(file);
+        this.indexCreator = new TabixIndexCreator(dictionary, format);
+        this.encoder = encoder;
+    }
+
+    /**
+     * Writes a line that is not indexed, such as a header line.  These must all be written before the first feature.
+     *
+     * @param line the line, without its terminator
+     */
+    public void writeHeaderLine(final String line) {
+        if (wroteFeature) {
+            throw new IllegalStateException("Header lines must be written before the features of " + file);
+        }
+        writeLine(line);
+    }
+
+    /**
+     * Writes the line made by the encoder for feature, and adds it to the index.
+     */
+    public void add(final T feature) {
+        if (encoder == null) {
+            throw new IllegalStateException("No encoder was given for the features of " + file);
+        }
+        add(feature, encoder.apply(feature));
+    }
+
+    /**
+     * Writes line, and adds it to the index with the location of feature.
+     *
+     * @param feature the location of the line
+     * @param line    the line, without its terminator
+     */
+    public void add(final Feature feature, final String line) {
+        if (index != null) {
+            throw new IllegalStateException("Features added after closing " + file);
+        }
+        // add the feature ***before*** writing it, with the position of its start
+        indexCreator.addFeature(feature, out.getFilePointer());
+        wroteFeature = true;
+        writeLine(line);
+    }
+
+    private void writeLine(final String line) {
+        try {
+            out.write(StringUtil.stringToBytes(line));
+            out.write('\n');
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error writing to " + file, e);
+        }
+    }
+
+    /**
+     * Closes the file and writes its index.
+     */
+    @Override
+    public void close() {
+        if (index != null) return;
+        try {
+            out.flush();
+            index = (TabixIndex) indexCreator.finalizeIndex(out.getFilePointer());
+            out.close();
+            index.write(indexFile);
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error closing " + file + " or writing its index " + indexFile, e);
+        }
+    }
+
+    /**
+     * @return the index of the file, once the writer has been closed
+     */
+    public TabixIndex getIndex() {
+        if (index == null) {
+            throw new IllegalStateException("The index of " + file + " is only available once the writer is closed");
+        }
+        return index;
+    }
+}
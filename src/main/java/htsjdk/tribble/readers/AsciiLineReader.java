@@ -17,7 +17,9 @@
  */
 package htsjdk.tribble.readers;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.LocationAware;
+import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.TribbleException;
 
 import java.io.BufferedReader;
@@ -26,9 +28,18 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
- * A simple class that provides {@link #readLine()} functionality around a PositionalBufferedStream
+ * A simple class that provides {@link #readLine()} functionality around a PositionalBufferedStream, or around a
+ * {@link BlockCompressedInputStream}, in which case {@link #getPosition()} returns virtual file pointers that can be
+ * used to index the file.
+ *
+ * Lines are found by scanning the buffer of the underlying stream in place, eight bytes at a time, so that the bytes of
+ * a line are only copied once, into the returned String.  Bytes are read as ISO-8859-1 characters.
  *
  * {@link BufferedReader} and its {@link java.io.BufferedReader#readLine()} method should be used in preference to this class (when the
  * {@link htsjdk.samtools.util.LocationAware} functionality is not required) because it offers greater performance.
@@ -40,24 +51,51 @@ public class AsciiLineReader implements LineReader, LocationAware {
     private static final byte LINEFEED = (byte) ('\n' & 0xff);
     private static final byte CARRIAGE_RETURN = (byte) ('\r' & 0xff);
 
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LINEFEEDS = ONES * LINEFEED;
+    private static final long CARRIAGE_RETURNS = ONES * CARRIAGE_RETURN;
+
     PositionalBufferedStream is;
-    char[] lineBuffer;
+    private BlockCompressedInputStream blockStream;
+    byte[] lineBuffer;
+    private int lineLength;
+
+    // little-endian view of the buffer being scanned, so that eight bytes can be read at once
+    private ByteBuffer words;
 
+    /**
+     * @param is the stream to read; if it is a {@link BlockCompressedInputStream} its blocks are scanned directly,
+     *           otherwise it is wrapped in a {@link PositionalBufferedStream}
+     */
     public AsciiLineReader(final InputStream is){
-        this(new PositionalBufferedStream(is));
+        this(is instanceof BlockCompressedInputStream ? null : new PositionalBufferedStream(is));
+        if (is instanceof BlockCompressedInputStream) blockStream = (BlockCompressedInputStream) is;
     }
 
     public AsciiLineReader(final PositionalBufferedStream is) {
         this.is = is;
         // Allocate this only once, even though it is essentially a local variable of
         // readLine.  This makes a huge difference in performance
-        lineBuffer = new char[10000];
+        lineBuffer = new byte[10000];
+    }
+
+    /**
+     * Reads lines from the decompressed blocks of stream.  {@link #getPosition()} returns the virtual file pointer of
+     * the start of the next line.
+     */
+    public AsciiLineReader(final BlockCompressedInputStream stream) {
+        this((PositionalBufferedStream) null);
+        this.blockStream = stream;
     }
 
     /**
      * @return The position of the InputStream
      */
     public long getPosition(){
+        if (blockStream != null) {
+            return blockStream.getFilePointer();
+        }
         if(is == null){
             throw new TribbleException("getPosition() called but no default stream was provided to the class on creation");
         }
@@ -74,40 +112,102 @@ public class AsciiLineReader implements LineReader, LocationAware {
      *         end of the stream has been reached
      */
     public final String readLine(final PositionalBufferedStream stream) throws IOException{
-        int linePosition = 0;
-
+        lineLength = 0;
         while (true) {
-            final int b = stream.read();
-
-            if (b == -1) {
+            if (stream.peek() < 0) {
                 // eof reached.  Return the last line, or null if this is a new line
-                if (linePosition > 0) {
-                    return new String(lineBuffer, 0, linePosition);
-                } else {
-                    return null;
-                }
+                return lineLength > 0 ? new String(lineBuffer, 0, lineLength, StandardCharsets.ISO_8859_1) : null;
+            }
+            final byte[] buffer = stream.buffer;
+            final int start = stream.nextChar;
+            final int end = stream.nChars;
+            final int terminator = findLineTerminator(buffer, start, end);
+            if (terminator < 0) {
+                appendToLine(buffer, start, end);
+                stream.position += end - start;
+                stream.nextChar = end;
+                continue;
             }
 
-            final char c = (char) (b & 0xFF);
-            if (c == LINEFEED || c == CARRIAGE_RETURN) {
-                if (c == CARRIAGE_RETURN && stream.peek() == LINEFEED) {
-                    stream.read(); // <= skip the trailing \n in case of \r\n termination
-                }
+            final String line = makeLine(buffer, start, terminator);
+            stream.position += terminator + 1 - start;
+            stream.nextChar = terminator + 1;
+            if (buffer[terminator] == CARRIAGE_RETURN && stream.peek() == LINEFEED) {
+                stream.read(); // <= skip the trailing \n in case of \r\n termination
+            }
+            return line;
+        }
+    }
 
-                return new String(lineBuffer, 0, linePosition);
-            } else {
-                // Expand line buffer size if neccessary.  Reserve at least 2 characters
-                // for potential line-terminators in return string
+    private String readLine(final BlockCompressedInputStream stream) throws IOException {
+        lineLength = 0;
+        while (true) {
+            final byte[] block = stream.getCurrentBlock();
+            if (block == null) {
+                return lineLength > 0 ? new String(lineBuffer, 0, lineLength, StandardCharsets.ISO_8859_1) : null;
+            }
+            final int start = stream.getCurrentBlockOffset();
+            final int terminator = findLineTerminator(block, start, block.length);
+            if (terminator < 0) {
+                appendToLine(block, start, block.length);
+                stream.setCurrentBlockOffset(block.length);
+                continue;
+            }
 
-                if (linePosition > (lineBuffer.length - 3)) {
-                    final char[] temp = new char[BUFFER_OVERFLOW_INCREASE_FACTOR * lineBuffer.length];
-                    System.arraycopy(lineBuffer, 0, temp, 0, lineBuffer.length);
-                    lineBuffer = temp;
+            final String line = makeLine(block, start, terminator);
+            stream.setCurrentBlockOffset(terminator + 1);
+            if (block[terminator] == CARRIAGE_RETURN) {
+                // the \n of a \r\n terminator may be in the next block
+                final byte[] next = stream.getCurrentBlock();
+                if (next != null && next[stream.getCurrentBlockOffset()] == LINEFEED) {
+                    stream.setCurrentBlockOffset(stream.getCurrentBlockOffset() + 1);
                 }
+            }
+            return line;
+        }
+    }
+
+    /** @return the line made of the bytes accumulated so far followed by buffer[start, end) */
+    private String makeLine(final byte[] buffer, final int start, final int end) {
+        if (lineLength == 0) {
+            return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        appendToLine(buffer, start, end);
+        return new String(lineBuffer, 0, lineLength, StandardCharsets.ISO_8859_1);
+    }
+
+    private void appendToLine(final byte[] buffer, final int start, final int end) {
+        final int length = end - start;
+        if (lineLength + length > lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.max(BUFFER_OVERFLOW_INCREASE_FACTOR * lineBuffer.length, lineLength + length));
+        }
+        System.arraycopy(buffer, start, lineBuffer, lineLength, length);
+        lineLength += length;
+    }
 
-                lineBuffer[linePosition++] = c;
+    /**
+     * @return the offset of the first '\n' or '\r' in buffer[start, end), or -1 if there is none
+     */
+    private int findLineTerminator(final byte[] buffer, final int start, final int end) {
+        if (words == null || words.array() != buffer) {
+            words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int i = start;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            final long word = words.getLong(i);
+            // sets the high bit of the bytes that are zero after the xor; bits above the first such byte may be
+            // spurious, but the lowest set bit is always exact
+            final long lf = word ^ LINEFEEDS;
+            final long cr = word ^ CARRIAGE_RETURNS;
+            final long found = ((lf - ONES) & ~lf | (cr - ONES) & ~cr) & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
             }
         }
+        for (; i < end; i++) {
+            if (buffer[i] == LINEFEED || buffer[i] == CARRIAGE_RETURN) return i;
+        }
+        return -1;
     }
 
     /**
@@ -116,6 +216,9 @@ public class AsciiLineReader implements LineReader, LocationAware {
      * @return
      */
     public final String readLine() throws IOException{
+        if (blockStream != null) {
+            return readLine(blockStream);
+        }
         if ( is == null ){
             throw new TribbleException("readLine() called without an explicit stream argument but no default stream was provided to the class on creation");
         }
@@ -125,7 +228,15 @@ public class AsciiLineReader implements LineReader, LocationAware {
     @Override
     public void close() {
         if ( is != null ) is.close();
+        if (blockStream != null) {
+            try {
+                blockStream.close();
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
         lineBuffer = null;
+        words = null;
     }
 
     public static void main(final String[] args) throws Exception {
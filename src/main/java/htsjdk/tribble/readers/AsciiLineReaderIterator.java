@@ -1,13 +1,12 @@
 package htsjdk.tribble.readers;
 
-import htsjdk.samtools.util.AbstractIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.LocationAware;
 import htsjdk.samtools.util.RuntimeIOException;
-import htsjdk.samtools.util.Tuple;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.NoSuchElementException;
 
 /**
  * A class that iterates over the lines and line positions in an {@link AsciiLineReader}.
@@ -16,21 +15,23 @@ import java.io.IOException;
  * implementing {@link htsjdk.samtools.util.LocationAware}, which is required for indexing.  If you do not require {@link htsjdk.samtools.util.LocationAware}, consider using
  * {@link LineIteratorImpl} as an alternative to this class.
  * 
- * Note an important distinction in the way this class and its inner iterator differ: in the inner iterator, the position stored with
- * a line is the position at the start of that line.  However, {@link #getPosition()} of the outer class must return the position at the
+ * Note an important distinction in the way this class keeps track of positions: the position stored with the line read
+ * ahead is the position at the start of that line.  However, {@link #getPosition()} must return the position at the
  * end of the most-recently-returned line (or the start of the underlying {@link AsciiLineReader}, if no line has been read).  The latter
  * bit of logic here is required to conform with the interface described by {@link htsjdk.samtools.util.LocationAware#getPosition()}.
+ * Since the line read ahead starts where the previous one ends, these are the same except at the end of the stream.
  * 
  * @author mccowan
  */
 public class AsciiLineReaderIterator implements LocationAware, LineIterator, Closeable {
     private final AsciiLineReader asciiLineReader;
-    private final TupleIterator i;
-    private Tuple<String, Long> current = null;
+    // the line read ahead, or null at the end of the stream, and the position of its start
+    private String nextLine;
+    private long nextLinePosition;
 
     public AsciiLineReaderIterator(final AsciiLineReader asciiLineReader) {
         this.asciiLineReader = asciiLineReader;
-        this.i = new TupleIterator();
+        advance();
     }
 
     @Override
@@ -40,18 +41,22 @@ public class AsciiLineReaderIterator implements LocationAware, LineIterator, Clo
 
     @Override
     public boolean hasNext() {
-        return i.hasNext();
+        return nextLine != null;
     }
 
     @Override
     public String next() {
-        current = i.next();
-        return current.a;
+        if (nextLine == null) {
+            throw new NoSuchElementException();
+        }
+        final String line = nextLine;
+        advance();
+        return line;
     }
 
     @Override
     public void remove() {
-        i.remove();
+        throw new UnsupportedOperationException("Remove() not supported.");
     }
 
     /**
@@ -60,42 +65,21 @@ public class AsciiLineReaderIterator implements LocationAware, LineIterator, Clo
      */
     @Override
     public long getPosition() {
-        return i.getPosition();
+        // Be careful: there is no next line at the end of the stream.
+        return nextLine != null ? nextLinePosition : asciiLineReader.getPosition();
     }
 
     @Override
     public String peek() {
-        return i.peek().a;
+        return nextLine;
     }
 
-    /**
-     * This is stored internally since it iterates over {@link htsjdk.samtools.util.Tuple}, not {@link String} (and the outer
-     * class can't do both).
-     */
-    private class TupleIterator extends AbstractIterator<Tuple<String, Long>> implements LocationAware {
-        
-        public TupleIterator() {
-            hasNext(); // Initialize the iterator, which appears to be a requirement of the parent class.  TODO: Really?
-        }
-        
-        @Override
-        protected Tuple<String, Long> advance() {
-            final String line;
-            final long position = asciiLineReader.getPosition(); // A line's position is where it starts, so get it before reading the line.
-            try {
-                line = asciiLineReader.readLine();
-            } catch (IOException e) {
-                throw new RuntimeIOException(e);
-            }
-            return line == null ? null : new Tuple<String, Long>(line, position);
-        }
-
-        /** Returns the byte position at the beginning of the next line. */
-        @Override
-        public long getPosition() {
-            final Tuple<String, Long> peek = peek();
-            // Be careful: peek will be null at the end of the stream.
-            return peek != null ? peek.b : asciiLineReader.getPosition();
+    private void advance() {
+        nextLinePosition = asciiLineReader.getPosition(); // A line's position is where it starts, so get it before reading the line.
+        try {
+            nextLine = asciiLineReader.readLine();
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
         }
     }
 }
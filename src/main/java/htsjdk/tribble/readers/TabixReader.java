@@ -26,17 +26,21 @@ package htsjdk.tribble.readers;
 import htsjdk.samtools.seekablestream.ISeekableStreamFactory;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.SeekableStreamFactory;
+import htsjdk.samtools.util.BinaryCodec;
 import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.tribble.util.TabixUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,6 +52,9 @@ public class TabixReader {
     private String mIdxFn;
     private BlockCompressedInputStream mFp;
 
+    // reused for every line read from mFp
+    private final LineBuffer mLine = new LineBuffer();
+
     private int mPreset;
     private int mSc;
     private int mBc;
@@ -80,9 +87,31 @@ public class TabixReader {
         }
     }
 
+    /**
+     * Index of one sequence.  The chunks of all bins are stored in one flat array rather than as
+     * one object per chunk, since large indices have millions of chunks.
+     */
     protected static class TIndex {
-        HashMap<Integer, TPair64[]> b; // binning index
+        int[] binIds; // bin numbers, sorted
+        int[] binOffsets; // the chunks of binIds[i] are chunks binOffsets[i] until binOffsets[i + 1]
+        long[] chunks; // begin and end virtual file offsets of each chunk, i.e. chunk k is at [2 * k, 2 * k + 1]
         long[] l; // linear index
+
+        /** @return the position of bin in binIds, or a negative number if there are no chunks for bin */
+        int findBin(final int bin) {
+            return Arrays.binarySearch(binIds, bin);
+        }
+    }
+
+    /**
+     * The contents of an index file, which are never modified once read, so can be shared between readers.
+     */
+    private static final class TabixIndex {
+        int preset, sc, bc, ec, meta;
+        String[] seq;
+        Map<String, Integer> chr2tid;
+        TIndex[] index;
+        long approximateBytes;
     }
 
     protected TIndex[] mIndex;
@@ -167,7 +196,11 @@ public class TabixReader {
     }
 
     public static String readLine(final InputStream is) throws IOException {
-        StringBuffer buf = new StringBuffer();
+        if (is instanceof BlockCompressedInputStream) {
+            final LineBuffer line = new LineBuffer();
+            return line.readLine((BlockCompressedInputStream) is) ? line.toString() : null;
+        }
+        StringBuilder buf = new StringBuilder();
         int c;
         while ((c = is.read()) >= 0 && c != '\n')
             buf.append((char) c);
@@ -175,78 +208,276 @@ public class TabixReader {
         return buf.toString();
     }
 
+    /**
+     * A growable byte buffer holding one line of an ASCII file, viewed as a CharSequence of Latin-1 characters.
+     */
+    private static final class LineBuffer implements CharSequence {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+
+        /**
+         * Replace the contents of this buffer with the next line of is, excluding the terminating '\n'.
+         *
+         * @return false, leaving the buffer in an undefined state, if the stream ended before a '\n' was found
+         */
+        boolean readLine(final BlockCompressedInputStream is) throws IOException {
+            length = 0;
+            for (; ;) {
+                if (length == bytes.length) bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+                final int n = is.readUntil((byte) '\n', bytes, length, bytes.length - length);
+                if (n < 0) return false;
+                length += n;
+                if (bytes[length - 1] == '\n') {
+                    --length;
+                    return true;
+                }
+            }
+        }
+
+        /** @return the index of the first occurrence of c at or after fromIndex, or -1 if there is none */
+        int indexOf(final char c, final int fromIndex) {
+            for (int i = fromIndex; i < length; ++i) {
+                if (bytes[i] == c) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            if (index >= length) throw new IndexOutOfBoundsException("index " + index + " >= " + length);
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return substring(start, end);
+        }
+
+        String substring(final int start, final int end) {
+            if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException(start + "-" + end);
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
     /**
      * Read the Tabix index from a file
      *
      * @param fp File pointer
+     * @return the index, or null if fp is null
      */
-    private void readIndex(SeekableStream fp) throws IOException {
-        if (fp == null) return;
-        BlockCompressedInputStream is = new BlockCompressedInputStream(fp);
+    private static TabixIndex readIndex(SeekableStream fp) throws IOException {
+        if (fp == null) return null;
+        final BinaryCodec is = new BinaryCodec(new BlockCompressedInputStream(fp));
+        final TabixIndex tbi = new TabixIndex();
         byte[] buf = new byte[4];
 
-        is.read(buf, 0, 4); // read "TBI\1"
-        mSeq = new String[readInt(is)]; // # sequences
-        mChr2tid = new HashMap<String, Integer>();
-        mPreset = readInt(is);
-        mSc = readInt(is);
-        mBc = readInt(is);
-        mEc = readInt(is);
-        mMeta = readInt(is);
-        readInt(is);//unused
+        is.readBytes(buf); // read "TBI\1"
+        tbi.seq = new String[is.readInt()]; // # sequences
+        final Map<String, Integer> chr2tid = new LinkedHashMap<String, Integer>();
+        tbi.preset = is.readInt();
+        tbi.sc = is.readInt();
+        tbi.bc = is.readInt();
+        tbi.ec = is.readInt();
+        tbi.meta = is.readInt();
+        is.readInt();//unused
         // read sequence dictionary
-        int i, j, k, l = readInt(is);
+        int i, j, k, l = is.readInt();
         buf = new byte[l];
-        is.read(buf);
+        is.readBytes(buf);
+        long bytes = buf.length * 2L;
         for (i = j = k = 0; i < buf.length; ++i) {
             if (buf[i] == 0) {
-                byte[] b = new byte[i - j];
-                System.arraycopy(buf, j, b, 0, b.length);
-                String s = new String(b);
-                mChr2tid.put(s, k);
-                mSeq[k++] = s;
+                String s = new String(buf, j, i - j);
+                chr2tid.put(s, k);
+                tbi.seq[k++] = s;
                 j = i + 1;
             }
         }
+        tbi.chr2tid = Collections.unmodifiableMap(chr2tid);
         // read the index
-        mIndex = new TIndex[mSeq.length];
-        for (i = 0; i < mSeq.length; ++i) {
+        tbi.index = new TIndex[tbi.seq.length];
+        for (i = 0; i < tbi.seq.length; ++i) {
             // the binning index
-            int n_bin = readInt(is);
-            mIndex[i] = new TIndex();
-            mIndex[i].b = new HashMap<Integer, TPair64[]>(n_bin);
+            final int n_bin = is.readInt();
+            final int[] binIds = new int[n_bin];
+            final int[] binSizes = new int[n_bin];
+            long[] chunks = new long[2 * n_bin];
+            int n_chunk = 0;
             for (j = 0; j < n_bin; ++j) {
-                int bin = readInt(is);
-                TPair64[] chunks = new TPair64[readInt(is)];
-                for (k = 0; k < chunks.length; ++k) {
-                    long u = readLong(is);
-                    long v = readLong(is);
-                    chunks[k] = new TPair64(u, v); // in C, this is inefficient
+                binIds[j] = is.readInt();
+                binSizes[j] = is.readInt();
+                if (2 * (n_chunk + binSizes[j]) > chunks.length)
+                    chunks = Arrays.copyOf(chunks, Math.max(2 * (n_chunk + binSizes[j]), 2 * chunks.length));
+                for (k = 0; k < binSizes[j]; ++k, ++n_chunk) {
+                    chunks[2 * n_chunk] = is.readLong();
+                    chunks[2 * n_chunk + 1] = is.readLong();
                 }
-                mIndex[i].b.put(bin, chunks);
             }
+            final TIndex idx = tbi.index[i] = sortBins(binIds, binSizes, chunks, n_chunk);
             // the linear index
-            mIndex[i].l = new long[readInt(is)];
-            for (k = 0; k < mIndex[i].l.length; ++k)
-                mIndex[i].l[k] = readLong(is);
+            idx.l = new long[is.readInt()];
+            for (k = 0; k < idx.l.length; ++k)
+                idx.l[k] = is.readLong();
+            bytes += 4L * (idx.binIds.length + idx.binOffsets.length) + 8L * (idx.chunks.length + idx.l.length);
         }
+        tbi.approximateBytes = bytes;
         // close
         is.close();
+        return tbi;
+    }
+
+    /**
+     * Build the index of a sequence from its bins in file order, which need not be sorted.
+     */
+    private static TIndex sortBins(final int[] binIds, final int[] binSizes, final long[] chunks, final int n_chunk) {
+        final int n_bin = binIds.length;
+        final int[] fileOffsets = new int[n_bin];
+        final long[] order = new long[n_bin];
+        for (int j = 0, offset = 0; j < n_bin; offset += binSizes[j], ++j) {
+            fileOffsets[j] = offset;
+            order[j] = ((long) binIds[j] << 32) | j; // bin numbers are never negative
+        }
+        Arrays.sort(order);
+
+        final TIndex idx = new TIndex();
+        idx.binIds = new int[n_bin];
+        idx.binOffsets = new int[n_bin + 1];
+        idx.chunks = new long[2 * n_chunk];
+        int offset = 0;
+        for (int i = 0; i < n_bin; ++i) {
+            final int j = (int) order[i];
+            idx.binIds[i] = binIds[j];
+            idx.binOffsets[i] = offset;
+            System.arraycopy(chunks, 2 * fileOffsets[j], idx.chunks, 2 * offset, 2 * binSizes[j]);
+            offset += binSizes[j];
+        }
+        idx.binOffsets[n_bin] = offset;
+        return idx;
     }
 
     /**
-     * Read the Tabix index from the default file.
+     * Read the Tabix index from the default file, or share a copy that another reader has already read.
      */
     private void readIndex() throws IOException {
+        final TabixIndex tbi = loadIndex(mIdxFn);
+        if (tbi == null) return;
+        mPreset = tbi.preset;
+        mSc = tbi.sc;
+        mBc = tbi.bc;
+        mEc = tbi.ec;
+        mMeta = tbi.meta;
+        mSeq = tbi.seq;
+        mChr2tid = tbi.chr2tid;
+        mIndex = tbi.index;
+    }
+
+    // ------------------------------------------------------------------------
+    // Process-wide cache of parsed index files, so that readers of the same
+    // file share a single copy of its index rather than each reading it again
+    // ------------------------------------------------------------------------
+
+    public static final long DEFAULT_INDEX_CACHE_MAX_BYTES = 256L * 1024 * 1024;
+
+    // in access order, so the first entry is the least recently used
+    private static final LinkedHashMap<String, TabixIndex> INDEX_CACHE = new LinkedHashMap<String, TabixIndex>(16, 0.75f, true);
+    private static long indexCacheBytes = 0;
+    private static long indexCacheMaxBytes = DEFAULT_INDEX_CACHE_MAX_BYTES;
+
+    /**
+     * Set the approximate amount of memory that may be used by the indices cached for sharing between readers.
+     * Only indices of local files are cached, keyed by path, modification time and size, so an index file that
+     * is rewritten is read again.
+     *
+     * @param maxBytes the bound, or 0 to disable caching
+     */
+    public static void setIndexCacheMaxBytes(final long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0");
+        synchronized (INDEX_CACHE) {
+            indexCacheMaxBytes = maxBytes;
+            evictIndices();
+        }
+    }
+
+    /** Remove all indices from the cache; readers that are already open keep their index. */
+    public static void clearIndexCache() {
+        synchronized (INDEX_CACHE) {
+            INDEX_CACHE.clear();
+            indexCacheBytes = 0;
+        }
+    }
+
+    /** @return the approximate memory used by the indices in the cache */
+    public static long getIndexCacheBytes() {
+        synchronized (INDEX_CACHE) {
+            return indexCacheBytes;
+        }
+    }
+
+    private static TabixIndex loadIndex(final String idxFn) throws IOException {
+        final File file = new File(idxFn);
+        final String key = file.isFile() ? file.getCanonicalPath() + '\t' + file.lastModified() + '\t' + file.length() : null;
+        if (key != null) {
+            synchronized (INDEX_CACHE) {
+                final TabixIndex cached = INDEX_CACHE.get(key);
+                if (cached != null) return cached;
+            }
+        }
+
         ISeekableStreamFactory ssf = SeekableStreamFactory.getInstance();
-        readIndex(ssf.getBufferedStream(ssf.getStreamFor(mIdxFn), 128000));
+        final TabixIndex tbi;
+        try {
+            tbi = readIndex(ssf.getBufferedStream(ssf.getStreamFor(idxFn), 128000));
+        } catch (final RuntimeIOException e) {
+            // BinaryCodec wraps I/O errors, but callers of the constructors expect IOExceptions
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+
+        if (key != null && tbi != null) {
+            synchronized (INDEX_CACHE) {
+                if (tbi.approximateBytes <= indexCacheMaxBytes && !INDEX_CACHE.containsKey(key)) {
+                    INDEX_CACHE.put(key, tbi);
+                    indexCacheBytes += tbi.approximateBytes;
+                    evictIndices();
+                }
+            }
+        }
+        return tbi;
+    }
+
+    private static void evictIndices() {
+        final java.util.Iterator<TabixIndex> it = INDEX_CACHE.values().iterator();
+        while (indexCacheBytes > indexCacheMaxBytes && it.hasNext()) {
+            indexCacheBytes -= it.next().approximateBytes;
+            it.remove();
+        }
     }
 
     /**
      * Read one line from the data file.
      */
     public String readLine() throws IOException {
-        return readLine(mFp);
+        return mLine.readLine(mFp) ? mLine.toString() : null;
+    }
+
+    /**
+     * Read one line from the data file without copying it into a String.
+     *
+     * @return a view of the line that is only valid until the next line is read from this reader, or null at
+     *         the end of the file
+     */
+    public CharSequence readLineAsCharSequence() throws IOException {
+        return mLine.readLine(mFp) ? mLine : null;
     }
 
     /** return chromosome ID or -1 if it is unknown */
@@ -281,15 +512,15 @@ public class TabixReader {
         return ret;
     }
 
-    private TIntv getIntv(final String s) {
+    private TIntv getIntv(final LineBuffer s) {
         TIntv intv = new TIntv();
         int col = 0, end = 0, beg = 0;
         while ((end = s.indexOf('\t', beg)) >= 0 || end == -1) {
             ++col;
             if (col == mSc) {
-                intv.tid = chr2tid(end != -1 ? s.substring(beg, end) : s.substring(beg));
+                intv.tid = chr2tid(s.substring(beg, end != -1 ? end : s.length()));
             } else if (col == mBc) {
-                intv.beg = intv.end = Integer.parseInt(end != -1 ? s.substring(beg, end) : s.substring(beg));
+                intv.beg = intv.end = Integer.parseInt(s.substring(beg, end != -1 ? end : s.length()));
                 if ((mPreset & 0x10000) != 0) ++intv.end;
                 else --intv.beg;
                 if (intv.beg < 0) intv.beg = 0;
@@ -297,7 +528,7 @@ public class TabixReader {
             } else { // FIXME: SAM supports are not tested yet
                 if ((mPreset & 0xffff) == 0) { // generic
                     if (col == mEc)
-                        intv.end = Integer.parseInt(end != -1 ? s.substring(beg, end) : s.substring(beg));
+                        intv.end = Integer.parseInt(s.substring(beg, end != -1 ? end : s.length()));
                 } else if ((mPreset & 0xffff) == 1) { // SAM
                     if (col == 6) { // CIGAR
                         int l = 0, i, j;
@@ -312,9 +543,9 @@ public class TabixReader {
                         }
                         intv.end = intv.beg + l;
                     }
-                } else if ((mPreset & 0xffff) == 2) { // VCF
+                } else if ((mPreset & 0xffff) == 2 && (col == 4 || col == 8)) { // VCF
                     String alt;
-                    alt = end >= 0 ? s.substring(beg, end) : s.substring(beg);
+                    alt = s.substring(beg, end >= 0 ? end : s.length());
                     if (col == 4) { // REF
                         if (!alt.isEmpty()) intv.end = intv.beg + alt.length();
                     } else if (col == 8) { // INFO
@@ -355,20 +586,24 @@ public class TabixReader {
     private class IteratorImpl implements Iterator {
         private int i;
         //private int n_seeks;
-        private int tid, beg, end;
+        private int tid;
+        // sorted, disjoint query intervals, and the first one that may overlap the next line
+        private int[] begs, ends;
+        private int k;
         private TPair64[] off;
         private long curr_off;
         private boolean iseof;
 
-        private IteratorImpl(final int _tid, final int _beg, final int _end, final TPair64[] _off) {
+        private IteratorImpl(final int _tid, final int[] _begs, final int[] _ends, final TPair64[] _off) {
             i = -1;
             //n_seeks = 0;
             curr_off = 0;
             iseof = false;
             off = _off;
             tid = _tid;
-            beg = _beg;
-            end = _end;
+            begs = _begs;
+            ends = _ends;
+            k = 0;
         }
 
         @Override
@@ -385,15 +620,17 @@ public class TabixReader {
                     }
                     ++i;
                 }
-                String s;
-                if ((s = readLine(mFp)) != null) {
+                // only lines that overlap the query are copied into Strings
+                if (mLine.readLine(mFp)) {
                     TIntv intv;
-                    char[] str = s.toCharArray();
                     curr_off = mFp.getFilePointer();
-                    if (str.length == 0 || str[0] == mMeta) continue;
-                    intv = getIntv(s);
-                    if (intv.tid != tid || intv.beg >= end) break; // no need to proceed
-                    else if (intv.end > beg && intv.beg < end) return s; // overlap; return
+                    if (mLine.length() == 0 || mLine.charAt(0) == mMeta) continue;
+                    intv = getIntv(mLine);
+                    if (intv.tid != tid) break; // no need to proceed
+                    // lines are sorted by start, so intervals that end before this line can't overlap any later line
+                    while (k < ends.length && ends[k] <= intv.beg) ++k;
+                    if (k == ends.length) break; // no need to proceed
+                    if (intv.end > begs[k] && intv.beg < ends[k]) return mLine.toString(); // overlap; return
                 } else break; // end of file
             }
             iseof = true;
@@ -409,26 +646,51 @@ public class TabixReader {
      * @return an iterator over the lines within the specified interval
      */
     public Iterator query(final int tid, final int beg, final int end) {
-        TPair64[] off, chunks;
-        long min_off;
-        if(tid< 0 || tid>=this.mIndex.length) return EOF_ITERATOR;
+        return query(tid, new int[]{beg}, new int[]{end});
+    }
+
+    /**
+     * Query several intervals at once.  The chunks of the file needed for all of the intervals are merged, so that
+     * each part of the file is read only once, and each line is returned once even if it overlaps several intervals.
+     *
+     * @param tid Sequence id
+     * @param begs beginnings of the intervals, genomic coords; the intervals must be sorted and must not overlap
+     * @param ends ends of the intervals, genomic coords
+     * @return an iterator over the lines that overlap any of the intervals
+     */
+    public Iterator query(final int tid, final int[] begs, final int[] ends) {
+        if (begs.length != ends.length) throw new IllegalArgumentException("begs and ends must have the same length");
+        if(tid< 0 || tid>=this.mIndex.length || begs.length == 0) return EOF_ITERATOR;
+        for (int q = 1; q < begs.length; ++q) {
+            if (begs[q] < ends[q - 1]) throw new IllegalArgumentException("Query intervals must be sorted and must not overlap");
+        }
         TIndex idx = mIndex[tid];
         int[] bins = new int[MAX_BIN];
-        int i, l, n_off, n_bins = reg2bins(beg, end, bins);
-        if (idx.l.length > 0)
-            min_off = (beg >> TAD_LIDX_SHIFT >= idx.l.length) ? idx.l[idx.l.length - 1] : idx.l[beg >> TAD_LIDX_SHIFT];
-        else min_off = 0;
-        for (i = n_off = 0; i < n_bins; ++i) {
-            if ((chunks = idx.b.get(bins[i])) != null)
-                n_off += chunks.length;
+        TPair64[] off = new TPair64[0];
+        int i, l, n_off = 0;
+        for (int q = 0; q < begs.length; ++q) {
+            final int beg = begs[q], end = ends[q];
+            long min_off;
+            int n_bins = reg2bins(beg, end, bins);
+            if (idx.l.length > 0)
+                min_off = (beg >> TAD_LIDX_SHIFT >= idx.l.length) ? idx.l[idx.l.length - 1] : idx.l[beg >> TAD_LIDX_SHIFT];
+            else min_off = 0;
+            int n = n_off;
+            for (i = 0; i < n_bins; ++i) {
+                final int b = idx.findBin(bins[i]);
+                if (b >= 0)
+                    n += idx.binOffsets[b + 1] - idx.binOffsets[b];
+            }
+            if (n > off.length) off = Arrays.copyOf(off, Math.max(n, 2 * off.length));
+            for (i = 0; i < n_bins; ++i) {
+                final int b = idx.findBin(bins[i]);
+                if (b >= 0)
+                    for (int j = idx.binOffsets[b]; j < idx.binOffsets[b + 1]; ++j)
+                        if (less64(min_off, idx.chunks[2 * j + 1]))
+                            off[n_off++] = new TPair64(idx.chunks[2 * j], idx.chunks[2 * j + 1]);
+            }
         }
         if (n_off == 0) return EOF_ITERATOR;
-        off = new TPair64[n_off];
-        for (i = n_off = 0; i < n_bins; ++i)
-            if ((chunks = idx.b.get(bins[i])) != null)
-                for (int j = 0; j < chunks.length; ++j)
-                    if (less64(min_off, chunks[j].v))
-                        off[n_off++] = new TPair64(chunks[j]);
         Arrays.sort(off, 0, n_off);
         // resolve completely contained adjacent blocks
         for (i = 1, l = 0; i < n_off; ++i) {
@@ -459,7 +721,7 @@ public class TabixReader {
         }
         if (ret.length == 0 || (ret.length == 1 && ret[0] == null))
             return EOF_ITERATOR;
-        return new TabixReader.IteratorImpl(tid, beg, end, ret);
+        return new TabixReader.IteratorImpl(tid, begs.clone(), ends.clone(), ret);
     }
 
     /**
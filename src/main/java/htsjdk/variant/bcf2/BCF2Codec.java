@@ -33,6 +33,7 @@ import htsjdk.tribble.readers.*;
 import htsjdk.variant.utils.GeneralUtils;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.InternPool;
 import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
@@ -49,9 +50,12 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Decode BCF2 files
@@ -99,6 +103,17 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
      */
     private GenotypeBuilder[] builders = null;
 
+    /**
+     * Pool of canonical alleles, shared with other codecs by default
+     */
+    private InternPool internPool = InternPool.getSharedPool();
+
+    /**
+     * The INFO and FORMAT keys to decode, or null to decode all keys.  Values of other keys are skipped.
+     */
+    private Set<String> infoFieldsToDecode = null;
+    private Set<String> formatFieldsToDecode = null;
+
     // for error handling
     private int recordNo = 0;
     private int pos = 0;
@@ -124,10 +139,12 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
             final int sitesBlockSize = decoder.readBlockSize(inputStream);
             final int genotypeBlockSize = decoder.readBlockSize(inputStream);
 
-            decoder.readNextBlock(sitesBlockSize, inputStream);
+            // the sites block is fully decoded here, so its buffer can be reused for every record
+            decoder.readNextReusableBlock(sitesBlockSize, inputStream);
             decodeSiteLoc(builder);
             final SitesInfoForDecoding info = decodeSitesExtendedInfo(builder);
 
+            // but the genotypes block is decoded lazily, so it needs its own array
             decoder.readNextBlock(genotypeBlockSize, inputStream);
             createLazyGenotypesDecoder(info, builder);
             return builder.fullyDecoded(true).make();
@@ -342,7 +359,7 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
             final String alleleBases = (String)decoder.decodeTypedValue();
 
             final boolean isRef = i == 0;
-            final Allele allele = Allele.create(alleleBases, isRef);
+            final Allele allele = internPool.allele(alleleBases, isRef);
             if ( isRef ) ref = alleleBases;
 
             alleles.add(allele);
@@ -394,6 +411,10 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
         final Map<String, Object> infoFieldEntries = new HashMap<String, Object>(numInfoFields);
         for ( int i = 0; i < numInfoFields; i++ ) {
             final String key = getDictionaryString();
+            if ( infoFieldsToDecode != null && ! infoFieldsToDecode.contains(key) ) {
+                decoder.skipTypedValue();
+                continue;
+            }
             Object value = decoder.decodeTypedValue();
             final VCFCompoundHeaderLine metaData = VariantContextUtils.getMetaDataForField(header, key);
             if ( metaData.getType() == VCFHeaderLineType.Flag ) value = true; // special case for flags
@@ -446,7 +467,7 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
     }
 
     private final String getDictionaryString() throws IOException {
-        return getDictionaryString((Integer) decoder.decodeTypedValue());
+        return getDictionaryString(decoder.decodeInt(decoder.readTypeDescriptor(), -1));
     }
 
     protected final String getDictionaryString(final int offset) {
@@ -474,6 +495,42 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
         return dict;
     }
 
+    /**
+     * Set the pool used to intern alleles decoded by this codec
+     * @param internPool the pool to use, by default {@link InternPool#getSharedPool()}
+     */
+    public void setInternPool(final InternPool internPool) {
+        if ( internPool == null ) throw new IllegalArgumentException("internPool cannot be null");
+        this.internPool = internPool;
+    }
+
+    /**
+     * Restrict decoding of INFO fields to the given keys.  The values of all other INFO fields are
+     * skipped without being decoded, and are absent from the decoded VariantContexts.
+     *
+     * @param keys the INFO keys to decode, or null to decode all INFO fields
+     */
+    public void setInfoFieldsToDecode(final Collection<String> keys) {
+        this.infoFieldsToDecode = keys == null ? null : new HashSet<String>(keys);
+    }
+
+    /**
+     * Restrict decoding of FORMAT fields to the given keys.  The values of all other FORMAT fields are
+     * skipped without being decoded, and are absent from the decoded Genotypes.
+     *
+     * @param keys the FORMAT keys to decode, or null to decode all FORMAT fields
+     */
+    public void setFormatFieldsToDecode(final Collection<String> keys) {
+        this.formatFieldsToDecode = keys == null ? null : new HashSet<String>(keys);
+    }
+
+    /**
+     * @return true if values of the FORMAT field should be decoded
+     */
+    protected boolean isFormatFieldToDecode(final String field) {
+        return formatFieldsToDecode == null || formatFieldsToDecode.contains(field);
+    }
+
     /**
      * @return the VCFHeader we found in this BCF2 file
      */
@@ -28,15 +28,26 @@ package htsjdk.variant.bcf2;
 import htsjdk.tribble.TribbleException;
 import htsjdk.variant.utils.GeneralUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 
 public final class BCF2Decoder {
     byte[] recordBytes = null;
-    ByteArrayInputStream recordStream = null;
+
+    /**
+     * Little-endian view of the current block, from which all typed values are read
+     */
+    ByteBuffer recordBuffer = null;
+
+    /**
+     * Grow-only array reused by {@link #readNextReusableBlock(int, InputStream)}
+     */
+    private byte[] reusableBytes = new byte[0];
 
     public BCF2Decoder() {
         // nothing to do
@@ -67,6 +78,22 @@ public final class BCF2Decoder {
         setRecordBytes(readRecordBytes(blockSizeInBytes, stream));
     }
 
+    /**
+     * Reads the next record from input stream into an array owned by this decoder, which is
+     * overwritten by the next call to this method.  Use this for blocks that are completely
+     * decoded before the next block is read, as it avoids allocating a new array per record.
+     * The array returned by {@link #getRecordBytes()} may be larger than the block.
+     *
+     * @param stream
+     */
+    public void readNextReusableBlock(final int blockSizeInBytes, final InputStream stream) {
+        if ( blockSizeInBytes < 0 ) throw new TribbleException("Invalid block size " + blockSizeInBytes);
+        if ( reusableBytes.length < blockSizeInBytes )
+            reusableBytes = new byte[Math.max(blockSizeInBytes, 2 * reusableBytes.length)];
+        readRecordBytes(reusableBytes, blockSizeInBytes, stream);
+        setRecordBytes(reusableBytes, blockSizeInBytes);
+    }
+
     /**
      * Skips the next record from input stream, invalidating current block data
      *
@@ -80,7 +107,7 @@ public final class BCF2Decoder {
             throw new TribbleException("I/O error while reading BCF2 file", e);
         }
         this.recordBytes = null;
-        this.recordStream = null;
+        this.recordBuffer = null;
     }
 
     /**
@@ -97,11 +124,11 @@ public final class BCF2Decoder {
      * @return
      */
     public int getBlockSize() {
-        return recordBytes.length;
+        return recordBuffer.limit();
     }
 
     public boolean blockIsFullyDecoded() {
-        return recordStream.available() == 0;
+        return ! recordBuffer.hasRemaining();
     }
 
     /**
@@ -110,8 +137,15 @@ public final class BCF2Decoder {
      * @param recordBytes
      */
     public void setRecordBytes(final byte[] recordBytes) {
+        setRecordBytes(recordBytes, recordBytes.length);
+    }
+
+    /**
+     * Use the first blockSizeInBytes bytes of recordBytes[] to read BCF2 records from now on
+     */
+    private void setRecordBytes(final byte[] recordBytes, final int blockSizeInBytes) {
         this.recordBytes = recordBytes;
-        this.recordStream = new ByteArrayInputStream(recordBytes);
+        this.recordBuffer = ByteBuffer.wrap(recordBytes, 0, blockSizeInBytes).order(ByteOrder.LITTLE_ENDIAN);
     }
 
     // ----------------------------------------------------------------------
@@ -152,6 +186,33 @@ public final class BCF2Decoder {
         }
     }
 
+    /**
+     * Skip over the next typed value without decoding it
+     */
+    public final void skipTypedValue() throws IOException {
+        final byte typeDescriptor = readTypeDescriptor();
+        skipTypedValue(typeDescriptor, decodeNumberOfElements(typeDescriptor));
+    }
+
+    /**
+     * Skip over nValues values of the type in typeDescriptor without decoding them
+     *
+     * @param typeDescriptor the type of the values, whose size has already been read
+     * @param nValues the total number of values to skip, e.g. the number of elements times the number of samples
+     */
+    public final void skipTypedValue(final byte typeDescriptor, final int nValues) {
+        if ( nValues == 0 )
+            // missing value, which may have the untyped descriptor that htslib writes for flags
+            return;
+        final BCF2Type type = BCF2Utils.decodeType(typeDescriptor);
+        if ( type == null )
+            throw new TribbleException("Cannot skip values of unknown BCF2 type " + BCF2Utils.decodeTypeID(typeDescriptor));
+        final int nBytes = nValues * type.getSizeInBytes();
+        if ( nBytes < 0 || nBytes > recordBuffer.remaining() )
+            throw new TribbleException("Cannot skip " + nBytes + " bytes, only " + recordBuffer.remaining() + " remain in the block");
+        recordBuffer.position(recordBuffer.position() + nBytes);
+    }
+
     public final Object decodeSingleValue(final BCF2Type type) throws IOException {
         // TODO -- decodeTypedValue should integrate this routine
         final int value = decodeInt(type);
@@ -179,23 +240,21 @@ public final class BCF2Decoder {
     private final Object decodeLiteralString(final int size) {
         assert size > 0;
 
-        // TODO -- assumes size > 0
-        final byte[] bytes = new byte[size]; // TODO -- in principle should just grab bytes from underlying array
-        try {
-            recordStream.read(bytes);
+        // read the string straight out of the block rather than copying it first
+        final int start = recordBuffer.position();
+        if ( size > recordBuffer.remaining() )
+            throw new TribbleException("readByte failure: string of length " + size + " extends past the end of the block");
+        recordBuffer.position(start + size);
 
-            int goodLength = 0;
-            for ( ; goodLength < bytes.length ; goodLength++ )
-                if ( bytes[goodLength] == 0 ) break;
+        int goodLength = 0;
+        for ( ; goodLength < size ; goodLength++ )
+            if ( recordBytes[start + goodLength] == 0 ) break;
 
-            if ( goodLength == 0 )
-                return null;
-            else {
-                final String s = new String(bytes, 0, goodLength);
-                return BCF2Utils.isCollapsedString(s) ? BCF2Utils.explodeStringList(s) : s;
-            }
-        } catch ( IOException e ) {
-            throw new TribbleException("readByte failure", e);
+        if ( goodLength == 0 )
+            return null;
+        else {
+            final String s = new String(recordBytes, start, goodLength);
+            return BCF2Utils.isCollapsedString(s) ? BCF2Utils.explodeStringList(s) : s;
         }
     }
 
@@ -223,7 +282,18 @@ public final class BCF2Decoder {
     }
 
     public final int decodeInt(final BCF2Type type) throws IOException {
-        return type.read(recordStream);
+        try {
+            switch ( type ) {
+                case INT8:
+                case CHAR:  return recordBuffer.get();
+                case INT16: return recordBuffer.getShort();
+                case INT32:
+                case FLOAT: return recordBuffer.getInt();
+                default:    throw new IllegalArgumentException("Cannot read " + type + " type");
+            }
+        } catch ( BufferUnderflowException e ) {
+            throw new TribbleException("Attempted to read past the end of the BCF2 block", e);
+        }
     }
 
     /**
@@ -311,9 +381,21 @@ public final class BCF2Decoder {
      * @return a non-null byte[] containing exactly blockSizeInBytes bytes from the inputStream
      */
     private static byte[] readRecordBytes(final int blockSizeInBytes, final InputStream inputStream) {
-        assert blockSizeInBytes >= 0;
-
         final byte[] record = new byte[blockSizeInBytes];
+        readRecordBytes(record, blockSizeInBytes, inputStream);
+        return record;
+    }
+
+    /**
+     * Read all bytes for a BCF record block into the start of record
+     *
+     * @param record the destination, at least blockSizeInBytes long
+     * @param blockSizeInBytes number of bytes to read
+     * @param inputStream the stream to read from
+     */
+    private static void readRecordBytes(final byte[] record, final int blockSizeInBytes, final InputStream inputStream) {
+        assert blockSizeInBytes >= 0 && record.length >= blockSizeInBytes;
+
         try {
             int bytesRead = 0;
             int nReadAttempts = 0; // keep track of how many times we've read
@@ -335,8 +417,6 @@ public final class BCF2Decoder {
         } catch ( IOException e ) {
             throw new TribbleException("I/O error while reading BCF2 file", e);
         }
-
-        return record;
     }
 
     /**
@@ -357,6 +437,6 @@ public final class BCF2Decoder {
     }
 
     public final byte readTypeDescriptor() throws IOException {
-        return BCF2Utils.readByte(recordStream);
+        return (byte)decodeInt(BCF2Type.INT8);
     }
 }
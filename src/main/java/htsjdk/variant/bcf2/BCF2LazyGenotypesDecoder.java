@@ -72,12 +72,16 @@ public class BCF2LazyGenotypesDecoder implements LazyGenotypesContext.LazyParser
 
             for ( int i = 0; i < nFields; i++ ) {
                 // get the field name
-                final int offset = (Integer) decoder.decodeTypedValue();
+                final int offset = decoder.decodeInt(decoder.readTypeDescriptor(), -1);
                 final String field = codec.getDictionaryString(offset);
 
                 // the type of each element
                 final byte typeDescriptor = decoder.readTypeDescriptor();
                 final int numElements = decoder.decodeNumberOfElements(typeDescriptor);
+                if ( ! codec.isFormatFieldToDecode(field) ) {
+                    decoder.skipTypedValue(typeDescriptor, numElements * nSamples);
+                    continue;
+                }
                 final BCF2GenotypeFieldDecoders.Decoder fieldDecoder = codec.getGenotypeFieldDecoder(field);
                 try {
                     fieldDecoder.decode(siteAlleles, field, decoder, typeDescriptor, numElements, builders);
@@ -61,7 +61,8 @@ public final class CommonInfo implements Serializable {
         this.name = name;
         setLog10PError(log10PError);
         this.filters = filters;
-        if ( attributes != null && ! attributes.isEmpty() ) {
+        // don't ask a lazy map whether it's empty, as that would decode it
+        if ( attributes instanceof LazyAttributesMap || (attributes != null && ! attributes.isEmpty()) ) {
             this.attributes = attributes;
         }
     }
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe pool of canonical Strings (contig names, FILTER and INFO keys, etc.) and Alleles that can be
+ * shared by any number of codecs and builders, so that records decoded from many files at once share a single
+ * copy of each repeated value.
+ *
+ * The pool is bounded by an approximate number of bytes.  When adding a value would exceed the bound, the pool
+ * is cleared and starts filling again, so values that are still in use are quickly re-interned while values
+ * that are no longer seen are released.  Alleles longer than a configurable number of bases are never pooled,
+ * since they rarely repeat.  Values returned by the pool are equal to, but not necessarily identical to, values
+ * returned by earlier calls.
+ *
+ * Most callers should use {@link #getSharedPool()}, which is used by default by the VCF and BCF2 codecs.
+ * {@link VariantContextBuilder} only interns when given a pool with {@link VariantContextBuilder#internPool(InternPool)}.
+ */
+public final class InternPool {
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ALLELE_LENGTH = 64;
+
+    // rough per-entry costs (object headers, backing arrays and hash table entries) used for memory accounting
+    private static final int STRING_OVERHEAD_BYTES = 40 + 48;
+    private static final int ALLELE_OVERHEAD_BYTES = STRING_OVERHEAD_BYTES + 32 + 16;
+
+    private static final InternPool SHARED_POOL = new InternPool(DEFAULT_MAX_BYTES, DEFAULT_MAX_ALLELE_LENGTH);
+
+    private final long maxBytes;
+    private final int maxAlleleLength;
+
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<String, String>();
+    private final ConcurrentHashMap<String, Allele> refAlleles = new ConcurrentHashMap<String, Allele>();
+    private final ConcurrentHashMap<String, Allele> altAlleles = new ConcurrentHashMap<String, Allele>();
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxBytes        approximate upper bound on the memory retained by the pool
+     * @param maxAlleleLength alleles with more bases than this are created but not pooled
+     */
+    public InternPool(final long maxBytes, final int maxAlleleLength) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be > 0");
+        if (maxAlleleLength < 0) throw new IllegalArgumentException("maxAlleleLength must be >= 0");
+        this.maxBytes = maxBytes;
+        this.maxAlleleLength = maxAlleleLength;
+    }
+
+    /**
+     * @return the process-wide pool, bounded to {@link #DEFAULT_MAX_BYTES}
+     */
+    public static InternPool getSharedPool() {
+        return SHARED_POOL;
+    }
+
+    /**
+     * @param str a string, may be null
+     * @return a canonical string equal to str, or null if str is null
+     */
+    public String intern(final String str) {
+        if (str == null) return null;
+        final String interned = strings.get(str);
+        if (interned != null) {
+            hits.incrementAndGet();
+            return interned;
+        }
+        misses.incrementAndGet();
+
+        final String previous = strings.putIfAbsent(str, str);
+        if (previous != null) return previous;
+        account(STRING_OVERHEAD_BYTES + 2L * str.length());
+        return str;
+    }
+
+    /**
+     * Equivalent to {@link Allele#create(String, boolean)}, but returns a pooled Allele when possible.
+     *
+     * @param bases the bases of the allele, as accepted by {@link Allele#create(String, boolean)}
+     * @param isRef should we make this a reference allele?
+     * @throws IllegalArgumentException if bases is not a valid allele
+     */
+    public Allele allele(final String bases, final boolean isRef) {
+        if (bases == null || bases.length() <= 1 || bases.length() > maxAlleleLength) {
+            // single bases are already static constants in Allele
+            return Allele.create(bases, isRef);
+        }
+
+        final ConcurrentHashMap<String, Allele> alleles = isRef ? refAlleles : altAlleles;
+        final Allele interned = alleles.get(bases);
+        if (interned != null) {
+            hits.incrementAndGet();
+            return interned;
+        }
+        misses.incrementAndGet();
+
+        final Allele allele = Allele.create(bases, isRef);
+        final Allele previous = alleles.putIfAbsent(bases, allele);
+        if (previous != null) return previous;
+        account(ALLELE_OVERHEAD_BYTES + 3L * bases.length());
+        return allele;
+    }
+
+    private void account(final long entryBytes) {
+        if (bytes.addAndGet(entryBytes) > maxBytes) {
+            clear();
+        }
+    }
+
+    /**
+     * Removes all pooled values.  Statistics other than {@link #getApproximateBytes()} are not reset.
+     */
+    public void clear() {
+        strings.clear();
+        refAlleles.clear();
+        altAlleles.clear();
+        bytes.set(0);
+    }
+
+    /** @return the approximate number of bytes retained by the values in the pool */
+    public long getApproximateBytes() {
+        return bytes.get();
+    }
+
+    /** @return the approximate upper bound on the memory retained by the pool */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** @return the number of strings currently pooled */
+    public int getStringCount() {
+        return strings.size();
+    }
+
+    /** @return the number of alleles currently pooled */
+    public int getAlleleCount() {
+        return refAlleles.size() + altAlleles.size();
+    }
+
+    /** @return the number of lookups that returned an already pooled value */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return the number of lookups that did not find a pooled value */
+    public long getMissCount() {
+        return misses.get();
+    }
+}
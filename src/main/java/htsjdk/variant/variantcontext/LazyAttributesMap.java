@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lazy-loading attributes map.  A lazy-loading map has access to the codec's parser and the unparsed
+ * attribute data (e.g. the INFO column of a VCF line).  Lookups of individual keys with {@link #get(Object)}
+ * and {@link #containsKey(Object)} parse only the requested key, so callers that look at a few attributes
+ * never pay for decoding the rest.  The values found are kept, so a key is parsed at most once and repeated
+ * lookups return the same object; after {@link #MAX_LOOKUPS_BEFORE_DECODING} different keys the whole map is
+ * decoded.  Any other use of the map decodes all of the data and from then on the map behaves like a plain HashMap.
+ *
+ * A map that is only read may be shared between threads.
+ */
+public class LazyAttributesMap implements Map<String, Object>, Serializable {
+    public static final long serialVersionUID = 1L;
+
+    /**
+     * Simple lazy parser interface.  Provide an object implementing this
+     * interface to LazyAttributesMap to decode the unparsed attribute data on demand.
+     */
+    public interface LazyParser {
+        /**
+         * @param data the unparsed attribute data
+         * @return a new mutable map containing all of the attributes in data
+         */
+        public Map<String, Object> parse(String data);
+
+        /**
+         * @param data the unparsed attribute data
+         * @param key the attribute to find
+         * @return the value that {@link #parse(String)} would have mapped key to, or null if there is none
+         */
+        public Object parse(String data, String key);
+    }
+
+    /** Number of different keys looked up individually before the whole map is decoded. */
+    public static final int MAX_LOOKUPS_BEFORE_DECODING = 8;
+
+    // stands for a key that was looked up and is not in the map
+    private static final Object ABSENT = new Object();
+
+    // the fields below are guarded by this, apart from decoded, which is only ever set once
+    private transient LazyParser parser;
+    private transient String unparsedData;
+    // the values of the keys looked up before decoding
+    private transient Map<String, Object> lookedUp;
+    private volatile Map<String, Object> decoded = null;
+
+    /**
+     * @param parser the parser to be used to load attributes on demand
+     * @param unparsedData the encoded attribute data that we will decode if necessary
+     */
+    public LazyAttributesMap(final LazyParser parser, final String unparsedData) {
+        if ( parser == null ) throw new IllegalArgumentException("parser cannot be null");
+        if ( unparsedData == null ) throw new IllegalArgumentException("unparsedData cannot be null");
+        this.parser = parser;
+        this.unparsedData = unparsedData;
+    }
+
+    /**
+     * @return true if the attributes have been fully decoded
+     */
+    public boolean isDecoded() {
+        return decoded != null;
+    }
+
+    /**
+     * @return the unparsed attribute data, or null if the attributes have already been fully decoded
+     */
+    public synchronized String getUnparsedData() {
+        return unparsedData;
+    }
+
+    /**
+     * Force us to decode the attributes, if not already done
+     */
+    public synchronized void decode() {
+        if ( decoded == null ) {
+            final Map<String, Object> map = parser.parse(unparsedData);
+            if ( lookedUp != null ) {
+                // keep returning the values already handed out
+                for ( final Entry<String, Object> entry : lookedUp.entrySet() ) {
+                    if ( entry.getValue() != ABSENT && map.containsKey(entry.getKey()) ) map.put(entry.getKey(), entry.getValue());
+                }
+            }
+            decoded = map;
+            unparsedData = null; // don't hold the unparsed data any longer
+            parser = null;
+            lookedUp = null;
+        }
+    }
+
+    private Map<String, Object> getDecoded() {
+        decode();
+        return decoded;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final Map<String, Object> map = decoded;
+        if ( map != null ) return map.get(key);
+        return key instanceof String ? lookUp((String) key) : null;
+    }
+
+    private synchronized Object lookUp(final String key) {
+        if ( decoded != null ) return decoded.get(key);
+        if ( lookedUp == null ) lookedUp = new HashMap<String, Object>();
+        final Object value = lookedUp.get(key);
+        if ( value != null ) return value == ABSENT ? null : value;
+        if ( lookedUp.size() == MAX_LOOKUPS_BEFORE_DECODING ) {
+            decode();
+            return decoded.get(key);
+        }
+        final Object parsed = parser.parse(unparsedData, key);
+        lookedUp.put(key, parsed == null ? ABSENT : parsed);
+        return parsed;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        if ( get(key) != null ) return true;
+        final Map<String, Object> map = decoded;
+        return map != null && map.containsKey(key);
+    }
+
+    @Override public int size()                                     { return getDecoded().size(); }
+    @Override public boolean isEmpty()                              { return getDecoded().isEmpty(); }
+    @Override public boolean containsValue(final Object value)      { return getDecoded().containsValue(value); }
+    @Override public Object put(final String key, final Object value) { return getDecoded().put(key, value); }
+    @Override public Object remove(final Object key)                { return getDecoded().remove(key); }
+    @Override public void putAll(final Map<? extends String, ?> m)  { getDecoded().putAll(m); }
+    @Override public void clear()                                   { getDecoded().clear(); }
+    @Override public Set<String> keySet()                           { return getDecoded().keySet(); }
+    @Override public Collection<Object> values()                    { return getDecoded().values(); }
+    @Override public Set<Entry<String, Object>> entrySet()          { return getDecoded().entrySet(); }
+    @Override public boolean equals(final Object o)                 { return o == this || getDecoded().equals(o); }
+    @Override public int hashCode()                                 { return getDecoded().hashCode(); }
+    @Override public String toString()                              { return getDecoded().toString(); }
+
+    /**
+     * The parser is not serializable, so serialize a plain decoded copy instead.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new HashMap<String, Object>(getDecoded());
+    }
+}
@@ -80,6 +80,9 @@ public class VariantContextBuilder {
     private Map<String, Object> attributes = null;
     private boolean attributesCanBeModified = false;
 
+    // if non-null, used to canonicalize contigs, filters and alleles created from strings
+    private InternPool internPool = null;
+
     /** enum of what must be validated */
     final private EnumSet<VariantContext.Validation> toValidate = EnumSet.noneOf(VariantContext.Validation.class);
 
@@ -138,6 +141,7 @@ public class VariantContextBuilder {
         this.start = parent.start;
         this.stop = parent.stop;
         this.fullyDecoded = parent.fullyDecoded;
+        this.internPool = parent.internPool;
 
         this.attributes(parent.attributes);
         this.filters(parent.filters);
@@ -163,7 +167,8 @@ public class VariantContextBuilder {
         final List<Allele> alleles = new ArrayList<Allele>(alleleStrings.size());
 
         for ( int i = 0; i < alleleStrings.size(); i++ ) {
-            alleles.add(Allele.create(alleleStrings.get(i), i == 0));
+            final boolean isRef = i == 0;
+            alleles.add(internPool == null ? Allele.create(alleleStrings.get(i), isRef) : internPool.allele(alleleStrings.get(i), isRef));
         }
 
         return alleles(alleles);
@@ -199,6 +204,20 @@ public class VariantContextBuilder {
         return this;
     }
 
+    /**
+     * Tells this builder to use this lazily decoded map of attributes for the resulting <code>VariantContext</code>.
+     * Unlike {@link #attributes(Map)} the map is not copied, so its fields are only decoded when they are
+     * requested.  Any subsequent modification of the attributes through this builder makes a decoded copy.
+     *
+     * @param attributes the lazy attributes, owned by the builder from now on
+     */
+    public VariantContextBuilder lazyAttributes(final LazyAttributesMap attributes) {
+        if ( attributes == null ) throw new IllegalArgumentException("BUG: lazy attributes cannot be null");
+        this.attributes = attributes;
+        this.attributesCanBeModified = false;
+        return this;
+    }
+
     /**
      * Puts the key -&gt; value mapping into this builder's attributes
      *
@@ -269,13 +288,16 @@ public class VariantContextBuilder {
      * @return
      */
     public VariantContextBuilder filters(final String ... filters) {
-        filters(new LinkedHashSet<String>(Arrays.asList(filters)));
+        final Set<String> filterSet = new LinkedHashSet<String>(filters.length);
+        for ( final String filter : filters )
+            filterSet.add(internPool == null ? filter : internPool.intern(filter));
+        filters(filterSet);
         return this;
     }
 
     public VariantContextBuilder filter(final String filter) {
         if ( this.filters == null ) this.filters = new LinkedHashSet<String>(1);
-        this.filters.add(filter);
+        this.filters.add(internPool == null ? filter : internPool.intern(filter));
         return this;
     }
 
@@ -403,7 +425,20 @@ public class VariantContextBuilder {
      * @return
      */
     public VariantContextBuilder chr(final String contig) {
-        this.contig = contig;
+        this.contig = internPool == null ? contig : internPool.intern(contig);
+        return this;
+    }
+
+    /**
+     * Tells this builder to canonicalize the contig, individually added filters, and alleles given as strings using internPool.
+     * This reduces memory use when many VariantContexts are held at once.  Values set before this call are
+     * not affected.
+     *
+     * @param internPool the pool to use, or null to stop interning
+     * @return this builder
+     */
+    public VariantContextBuilder internPool(final InternPool internPool) {
+        this.internPool = internPool;
         return this;
     }
 
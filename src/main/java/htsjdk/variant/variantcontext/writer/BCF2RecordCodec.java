@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext.writer;
+
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SortingCollection;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Class for translating between in-memory and disk representation of VariantContext, using the BCF2 encoding.
+ *
+ * Every stream written by this codec is a complete BCF2 stream (header followed by records), so spill files
+ * can be decoded by a fresh {@link BCF2Codec}.  Genotypes read back are left lazily encoded until they are
+ * accessed.  As with {@link BCF2Writer}, the header must have contig lines and must define every INFO and
+ * FORMAT field present in the records.
+ */
+public class BCF2RecordCodec implements SortingCollection.Codec<VariantContext> {
+    private final VCFHeader header;
+
+    private BCF2Writer writer;
+    private BCF2Codec bcf2Codec;
+    private PositionalBufferedStream inputStream;
+
+    /**
+     * @param header the header describing all records that will be encoded
+     */
+    public BCF2RecordCodec(final VCFHeader header) {
+        if (header == null) throw new IllegalArgumentException("header cannot be null");
+        this.header = header;
+    }
+
+    @Override
+    public BCF2RecordCodec clone() {
+        // The writer and decoder hold per-stream state, so a clone must not share them.
+        return new BCF2RecordCodec(this.header);
+    }
+
+    /** Sets the output stream that records will be written to, and writes the BCF2 header to it. */
+    @Override
+    public void setOutputStream(final OutputStream os) {
+        this.writer = new BCF2Writer(null, os, null, false, false);
+        this.writer.writeHeader(this.header);
+    }
+
+    /** Sets the input stream that records will be read from, and consumes the BCF2 header from it. */
+    @Override
+    public void setInputStream(final InputStream is) {
+        this.inputStream = new PositionalBufferedStream(is);
+        this.bcf2Codec = new BCF2Codec();
+        this.bcf2Codec.readHeader(this.inputStream);
+    }
+
+    /**
+     * Write object to the output stream.
+     * @param vc what to write
+     */
+    @Override
+    public void encode(final VariantContext vc) {
+        this.writer.add(vc);
+    }
+
+    /**
+     * Read the next record from the input stream.
+     * @return null if no more records.
+     */
+    @Override
+    public VariantContext decode() {
+        try {
+            if (this.inputStream.isDone()) return null;
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        return this.bcf2Codec.decode(this.inputStream);
+    }
+}
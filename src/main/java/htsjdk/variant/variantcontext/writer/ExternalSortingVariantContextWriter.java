@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext.writer;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.SortingCollection;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextComparator;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.io.File;
+
+/**
+ * VariantContextWriter that accepts records in any order and writes them to an inner writer sorted by
+ * the contig order of the header and then by start position.
+ *
+ * Unlike {@link SortingVariantContextWriter}, there is no limit on how far out of order records may be.
+ * Records are accumulated in a {@link SortingCollection}, which spills batches of at most maxRecordsInRam
+ * records to temporary files using {@link BCF2RecordCodec}.  Nothing is written to the inner writer
+ * until {@link #close()} is called.  Records with the same contig and start are emitted in the order in
+ * which they were added.  As with any BCF2 round trip, spilled records are decoded with typed values, so
+ * floating point INFO values may be formatted differently in the output than they were in the input text.
+ *
+ * The header must have contig lines, and must define every INFO and FORMAT field present in the records.
+ */
+public class ExternalSortingVariantContextWriter implements VariantContextWriter {
+
+    // The writer to which to actually write the sorted records
+    private final VariantContextWriter innerWriter;
+
+    // Should we call innerWriter.close() in close()
+    private final boolean takeOwnershipOfInner;
+
+    private final int maxRecordsInRam;
+    private final File[] tmpDirs;
+
+    // initialized when the header arrives
+    private SortingCollection<VariantContext> sorter = null;
+
+    /**
+     * @param innerWriter the writer to which sorted records are written
+     * @param maxRecordsInRam how many records to accumulate before spilling to disk
+     * @param takeOwnershipOfInner Should this Writer close innerWriter when it's done with it
+     * @param tmpDirs Where to write files of records that will not fit in RAM
+     */
+    public ExternalSortingVariantContextWriter(final VariantContextWriter innerWriter, final int maxRecordsInRam,
+                                               final boolean takeOwnershipOfInner, final File... tmpDirs) {
+        if (maxRecordsInRam <= 0) {
+            throw new IllegalArgumentException("maxRecordsInRam must be > 0");
+        }
+        if (tmpDirs == null || tmpDirs.length == 0) {
+            throw new IllegalArgumentException("At least one temp directory must be provided.");
+        }
+        this.innerWriter = innerWriter;
+        this.maxRecordsInRam = maxRecordsInRam;
+        this.takeOwnershipOfInner = takeOwnershipOfInner;
+        this.tmpDirs = tmpDirs;
+    }
+
+    /**
+     * Writes temporary files to java.io.tmpdir and does not close innerWriter.
+     */
+    public ExternalSortingVariantContextWriter(final VariantContextWriter innerWriter, final int maxRecordsInRam) {
+        this(innerWriter, maxRecordsInRam, false, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    @Override
+    public void writeHeader(final VCFHeader header) {
+        if (sorter != null) {
+            throw new IllegalStateException("The header has already been written");
+        }
+        if (header.getContigLines().isEmpty()) {
+            throw new IllegalArgumentException("Cannot sort variants with a header that has no contig lines");
+        }
+        innerWriter.writeHeader(header);
+        sorter = SortingCollection.newInstance(VariantContext.class, new BCF2RecordCodec(header),
+                new VariantContextComparator(header.getContigLines()), maxRecordsInRam, tmpDirs);
+    }
+
+    /**
+     * add a record to the file
+     *
+     * @param vc the Variant Context object
+     */
+    @Override
+    public void add(final VariantContext vc) {
+        if (sorter == null) {
+            throw new IllegalStateException("The header must be written before records can be added");
+        }
+        sorter.add(vc);
+    }
+
+    /**
+     * Write all of the accumulated records to the inner writer in sorted order, and delete any temporary files.
+     */
+    @Override
+    public void close() {
+        if (sorter != null) {
+            final CloseableIterator<VariantContext> iterator = sorter.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    innerWriter.add(iterator.next());
+                }
+            } finally {
+                iterator.close();
+                sorter.cleanup();
+                sorter = null;
+            }
+        }
+
+        if (takeOwnershipOfInner)
+            innerWriter.close();
+    }
+
+    @Override
+    public boolean checkError() {
+        return innerWriter.checkError();
+    }
+
+    /**
+     * Gets a string representation of this object.
+     * @return a string representation of this object
+     */
+    @Override
+    public String toString() {
+        return getClass().getName();
+    }
+}
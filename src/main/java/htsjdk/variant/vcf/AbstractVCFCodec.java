@@ -37,6 +37,8 @@ import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.GenotypeLikelihoods;
+import htsjdk.variant.variantcontext.InternPool;
+import htsjdk.variant.variantcontext.LazyAttributesMap;
 import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
@@ -87,10 +89,19 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
 
     protected int lineNo = 0;
 
+    /**
+     * @deprecated no longer used; strings are canonicalized with {@link #internPool}.  Kept for subclasses.
+     */
+    @Deprecated
     protected Map<String, String> stringCache = new HashMap<String, String>();
 
+    // pool of canonical strings and alleles, shared with other codecs by default
+    protected InternPool internPool = InternPool.getSharedPool();
+
     protected boolean warnedAboutNoEqualsForNonFlag = false;
 
+    private final LazyAttributesMap.LazyParser infoParser = new LazyVCFInfoParser();
+
     /**
      * If true, then we'll magically fix up VCF headers on the fly when we read them in
      */
@@ -313,19 +324,24 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         else
             builder.id(parts[2]);
 
-        final String ref = getCachedString(parts[3].toUpperCase());
-        final String alts = getCachedString(parts[4]);
+        // alleles are pooled below, so there's no need to intern the raw REF and ALT strings
+        final String ref = parts[3].toUpperCase();
+        final String alts = parts[4];
         builder.log10PError(parseQual(parts[5]));
 
         final List<String> filters = parseFilters(getCachedString(parts[6]));
         if ( filters != null ) builder.filters(new HashSet<String>(filters));
         final Map<String, Object> attrs = parseInfo(parts[7]);
-        builder.attributes(attrs);
+        if ( attrs instanceof LazyAttributesMap )
+            builder.lazyAttributes((LazyAttributesMap) attrs);
+        else
+            builder.attributes(attrs);
 
-        if ( attrs.containsKey(VCFConstants.END_KEY) ) {
+        final Object end = attrs.get(VCFConstants.END_KEY);
+        if ( end != null ) {
             // update stop with the end key if provided
             try {
-                builder.stop(Integer.valueOf(attrs.get(VCFConstants.END_KEY).toString()));
+                builder.stop(Integer.valueOf(end.toString()));
             } catch (Exception e) {
                 generateException("the END value in the INFO field is not valid");
             }
@@ -334,7 +350,7 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         }
 
         // get our alleles, filters, and setup an attribute map
-        final List<Allele> alleles = parseAlleles(ref, alts, lineNo);
+        final List<Allele> alleles = parseAlleles(ref, alts, lineNo, internPool);
         builder.alleles(alleles);
 
         // do we have genotyping data
@@ -376,6 +392,15 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         this.name = name;
     }
 
+    /**
+     * Set the pool used to intern strings and alleles decoded by this codec
+     * @param internPool the pool to use, by default {@link InternPool#getSharedPool()}
+     */
+    public void setInternPool(final InternPool internPool) {
+        if ( internPool == null ) throw new IllegalArgumentException("internPool cannot be null");
+        this.internPool = internPool;
+    }
+
     /**
      * Return a cached copy of the supplied string.
      *
@@ -383,75 +408,108 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
      * @return interned string
      */
     protected String getCachedString(String str) {
-        String internedString = stringCache.get(str);
-        if ( internedString == null ) {
-            internedString = new String(str);
-            stringCache.put(internedString, internedString);
-        }
-        return internedString;
+        return internPool.intern(str);
     }
 
     /**
-     * parse out the info fields
+     * parse out the info fields.  Only cheap validation is done here; the individual fields are decoded
+     * on demand by a {@link LazyAttributesMap}
      * @param infoField the fields
      * @return a mapping of keys to objects
      */
     private Map<String, Object> parseInfo(String infoField) {
-        Map<String, Object> attributes = new HashMap<String, Object>();
-
         if ( infoField.isEmpty() )
             generateException("The VCF specification requires a valid (non-zero length) info field");
 
-        if ( !infoField.equals(VCFConstants.EMPTY_INFO_FIELD) ) {
-            if ( infoField.indexOf('\t') != -1 || infoField.indexOf(' ') != -1 )
-                generateException("The VCF specification does not allow for whitespace in the INFO field. Offending field value was \"" + infoField + "\"");
-
-            List<String> infoFields = ParsingUtils.split(infoField, VCFConstants.INFO_FIELD_SEPARATOR_CHAR);
-            for (int i = 0; i < infoFields.size(); i++) {
-                String key;
-                Object value;
-
-                int eqI = infoFields.get(i).indexOf("=");
-                if ( eqI != -1 ) {
-                    key = infoFields.get(i).substring(0, eqI);
-                    String valueString = infoFields.get(i).substring(eqI + 1);
-
-                    // split on the INFO field separator
-                    List<String> infoValueSplit = ParsingUtils.split(valueString, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR);
-                    if ( infoValueSplit.size() == 1 ) {
-                        value = infoValueSplit.get(0);
-                        final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
-                        if ( headerLine != null && headerLine.getType() == VCFHeaderLineType.Flag && value.equals("0") ) {
-                            // deal with the case where a flag field has =0, such as DB=0, by skipping the add
-                            continue;
-                        }
-                    } else {
-                        value = infoValueSplit;
-                    }
-                } else {
-                    key = infoFields.get(i);
-                    final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
-                    if ( headerLine != null && headerLine.getType() != VCFHeaderLineType.Flag ) {
-                        if ( GeneralUtils.DEBUG_MODE_ENABLED && ! warnedAboutNoEqualsForNonFlag ) {
-                            System.err.println("Found info key " + key + " without a = value, but the header says the field is of type "
-                                               + headerLine.getType() + " but this construct is only value for FLAG type fields");
-                            warnedAboutNoEqualsForNonFlag = true;
-                        }
+        if ( infoField.equals(VCFConstants.EMPTY_INFO_FIELD) )
+            return new HashMap<String, Object>();
 
-                        value = VCFConstants.MISSING_VALUE_v4;
-                    } else {
-                        value = true;
+        if ( infoField.indexOf('\t') != -1 || infoField.indexOf(' ') != -1 )
+            generateException("The VCF specification does not allow for whitespace in the INFO field. Offending field value was \"" + infoField + "\"");
+
+        return new LazyAttributesMap(infoParser, infoField);
+    }
+
+    /**
+     * Decodes the INFO column of a VCF line, either completely or one key at a time
+     */
+    private class LazyVCFInfoParser implements LazyAttributesMap.LazyParser {
+        @Override
+        public Map<String, Object> parse(final String infoField) {
+            final Map<String, Object> attributes = new HashMap<String, Object>();
+            for ( final String infoEntry : ParsingUtils.split(infoField, VCFConstants.INFO_FIELD_SEPARATOR_CHAR) ) {
+                final int eqI = infoEntry.indexOf('=');
+                final String key = getCachedString(eqI == -1 ? infoEntry : infoEntry.substring(0, eqI));
+                final Object value = parseInfoValue(key, eqI == -1 ? null : infoEntry.substring(eqI + 1));
+                if ( value != null ) attributes.put(key, value);
+            }
+            return attributes;
+        }
+
+        @Override
+        public Object parse(final String infoField, final String key) {
+            // scan every entry, as with a full decode the last occurrence of a key wins
+            Object value = null;
+            final int keyLength = key.length();
+            int start = 0;
+            while ( start <= infoField.length() ) {
+                int end = infoField.indexOf(VCFConstants.INFO_FIELD_SEPARATOR_CHAR, start);
+                if ( end == -1 ) end = infoField.length();
+                if ( infoField.startsWith(key, start) ) {
+                    final int afterKey = start + keyLength;
+                    if ( afterKey == end ) {
+                        value = parseInfoValue(key, null);
+                    } else if ( infoField.charAt(afterKey) == '=' ) {
+                        final Object entryValue = parseInfoValue(key, infoField.substring(afterKey + 1, end));
+                        if ( entryValue != null ) value = entryValue;
                     }
                 }
+                start = end + 1;
+            }
+            return value;
+        }
+    }
 
-                // this line ensures that key/value pairs that look like key=; are parsed correctly as MISSING
-                if ( "".equals(value) ) value = VCFConstants.MISSING_VALUE_v4;
+    /**
+     * parse the value of a single info field
+     * @param key the info key
+     * @param valueString the text after the '=', or null if there was no '='
+     * @return the decoded value, or null if the field should be skipped
+     */
+    private Object parseInfoValue(final String key, final String valueString) {
+        Object value;
+        if ( valueString != null ) {
+            // split on the INFO field separator
+            List<String> infoValueSplit = ParsingUtils.split(valueString, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR);
+            if ( infoValueSplit.size() == 1 ) {
+                value = infoValueSplit.get(0);
+                final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
+                if ( headerLine != null && headerLine.getType() == VCFHeaderLineType.Flag && value.equals("0") ) {
+                    // deal with the case where a flag field has =0, such as DB=0, by skipping the add
+                    return null;
+                }
+            } else {
+                value = infoValueSplit;
+            }
+        } else {
+            final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
+            if ( headerLine != null && headerLine.getType() != VCFHeaderLineType.Flag ) {
+                if ( GeneralUtils.DEBUG_MODE_ENABLED && ! warnedAboutNoEqualsForNonFlag ) {
+                    System.err.println("Found info key " + key + " without a = value, but the header says the field is of type "
+                                       + headerLine.getType() + " but this construct is only value for FLAG type fields");
+                    warnedAboutNoEqualsForNonFlag = true;
+                }
 
-                attributes.put(key, value);
+                value = VCFConstants.MISSING_VALUE_v4;
+            } else {
+                value = true;
             }
         }
 
-        return attributes;
+        // this line ensures that key/value pairs that look like key=; are parsed correctly as MISSING
+        if ( "".equals(value) ) value = VCFConstants.MISSING_VALUE_v4;
+
+        return value;
     }
 
     /**
@@ -527,17 +585,29 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
      * @return a list of alleles, and a pair of the shortest and longest sequence
      */
     protected static List<Allele> parseAlleles(String ref, String alts, int lineNo) {
+        return parseAlleles(ref, alts, lineNo, InternPool.getSharedPool());
+    }
+
+    /**
+     * parse out the alleles
+     * @param ref the reference base
+     * @param alts a string of alternates to break into alleles
+     * @param lineNo  the line number for this record
+     * @param internPool the pool from which to get canonical alleles
+     * @return a list of alleles, and a pair of the shortest and longest sequence
+     */
+    protected static List<Allele> parseAlleles(String ref, String alts, int lineNo, InternPool internPool) {
         List<Allele> alleles = new ArrayList<Allele>(2); // we are almost always biallelic
         // ref
         checkAllele(ref, true, lineNo);
-        Allele refAllele = Allele.create(ref, true);
+        Allele refAllele = internPool.allele(ref, true);
         alleles.add(refAllele);
 
         if ( alts.indexOf(',') == -1 ) // only 1 alternatives, don't call string split
-            parseSingleAltAllele(alleles, alts, lineNo);
+            parseSingleAltAllele(alleles, alts, lineNo, internPool);
         else
             for ( String alt : alts.split(",") )
-                parseSingleAltAllele(alleles, alt, lineNo);
+                parseSingleAltAllele(alleles, alt, lineNo, internPool);
 
         return alleles;
     }
@@ -605,11 +675,12 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
      * @param alleles the alleles available
      * @param alt the allele to parse
      * @param lineNo  the line number for this record
+     * @param internPool the pool from which to get canonical alleles
      */
-    private static void parseSingleAltAllele(List<Allele> alleles, String alt, int lineNo) {
+    private static void parseSingleAltAllele(List<Allele> alleles, String alt, int lineNo, InternPool internPool) {
         checkAllele(alt, false, lineNo);
 
-        Allele allele = Allele.create(alt, false);
+        Allele allele = internPool.allele(alt, false);
         if ( ! allele.isNoCall() )
             alleles.add(allele);
     }
@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import htsjdk.samtools.util.AsyncBufferedIterator;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.PeekableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextComparator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Provides an iterator interface for merging multiple coordinate-sorted VCF/BCF inputs into a single
+ * sorted stream, analogous to {@link htsjdk.samtools.MergingSamRecordIterator} for SAM records.
+ *
+ * The headers of the inputs are combined with {@link VCFUtils#smartMergeHeaders(Collection, boolean)}, and the
+ * samples of the merged header are the union of the input samples in order of first appearance.  Records are
+ * ordered with the merged header's {@link VariantContextComparator}, so every input must have contig lines whose
+ * indices agree with the merged header.  Records that compare equal are returned in the order of their inputs.
+ *
+ * If asyncBufferSize is greater than zero, each input is read ahead on its own background thread by an
+ * {@link AsyncBufferedIterator}, overlapping decoding of the inputs with the merge.  Note that this means one
+ * thread per input, so it should be used with care when merging very large numbers of files.
+ */
+public class MergingVariantContextIterator implements CloseableIterator<VariantContext> {
+    private final PriorityQueue<ComparableVariantContextIterator> pq;
+    private final VCFHeader mergedHeader;
+    private final VariantContextComparator comparator;
+    private final Collection<VCFFileReader> readers;
+    private final int asyncBufferSize;
+
+    private boolean initialized = false;
+
+    /**
+     * Constructs a new merging iterator over the whole of each of the given readers.
+     *
+     * @param readers         the readers to merge, in the order used to break ties
+     * @param asyncBufferSize number of records to read ahead from each input on a background thread, or 0 to read synchronously
+     */
+    public MergingVariantContextIterator(final Collection<VCFFileReader> readers, final int asyncBufferSize) {
+        if (readers.isEmpty()) throw new IllegalArgumentException("At least one reader must be provided.");
+        if (asyncBufferSize < 0) throw new IllegalArgumentException("asyncBufferSize must be >= 0");
+
+        final List<VCFHeader> headers = new ArrayList<VCFHeader>(readers.size());
+        for (final VCFFileReader reader : readers) {
+            headers.add(reader.getFileHeader());
+        }
+        this.mergedHeader = mergeHeaders(headers);
+        if (this.mergedHeader.getContigLines().isEmpty()) {
+            throw new IllegalArgumentException("Cannot merge variants from inputs that have no contig lines");
+        }
+        this.comparator = new VariantContextComparator(this.mergedHeader.getContigLines());
+        for (final VCFHeader header : headers) {
+            if (!this.comparator.isCompatible(header.getContigLines())) {
+                throw new IllegalArgumentException("Input has contig lines that are incompatible with the merged header: " +
+                        header.getContigLines());
+            }
+        }
+
+        this.readers = readers;
+        this.asyncBufferSize = asyncBufferSize;
+        this.pq = new PriorityQueue<ComparableVariantContextIterator>(readers.size());
+    }
+
+    /**
+     * Constructs a new merging iterator over the given iterators, e.g. the results of querying each reader over a
+     * genomic interval, rather than iterating over every record in each input.
+     *
+     * @param iterators       iterator traversing over each reader's contents; ties are broken by the map's iteration order
+     * @param asyncBufferSize number of records to read ahead from each input on a background thread, or 0 to read synchronously
+     */
+    public MergingVariantContextIterator(final Map<VCFFileReader, CloseableIterator<VariantContext>> iterators,
+                                         final int asyncBufferSize) {
+        this(iterators.keySet(), asyncBufferSize);
+        int ordinal = 0;
+        for (final Map.Entry<VCFFileReader, CloseableIterator<VariantContext>> mapping : iterators.entrySet()) {
+            addIfNotEmpty(new ComparableVariantContextIterator(wrap(mapping.getValue()), ordinal++));
+        }
+        initialized = true;
+    }
+
+    /**
+     * Merges the given headers the same way this iterator merges the headers of its inputs.
+     *
+     * @return a header containing the merged header lines and the union of the samples of the given headers
+     */
+    public static VCFHeader mergeHeaders(final Collection<VCFHeader> headers) {
+        final Set<String> samples = new LinkedHashSet<String>();
+        for (final VCFHeader header : headers) {
+            samples.addAll(header.getGenotypeSamples());
+        }
+        return new VCFHeader(VCFUtils.smartMergeHeaders(headers, false), samples);
+    }
+
+    /** Returns the merged header that the merging iterator is working from. */
+    public VCFHeader getMergedHeader() {
+        return mergedHeader;
+    }
+
+    private CloseableIterator<VariantContext> wrap(final CloseableIterator<VariantContext> iterator) {
+        return asyncBufferSize > 0 ? new AsyncBufferedIterator<VariantContext>(iterator, asyncBufferSize) : iterator;
+    }
+
+    private void startIterationIfRequired() {
+        if (initialized)
+            return;
+        int ordinal = 0;
+        for (final VCFFileReader reader : readers)
+            addIfNotEmpty(new ComparableVariantContextIterator(wrap(reader.iterator()), ordinal++));
+        initialized = true;
+    }
+
+    /**
+     * Close down all open iterators.
+     */
+    @Override
+    public void close() {
+        // Iterators not in the priority queue have already been closed; only close down the iterators that are still in the priority queue.
+        for (final ComparableVariantContextIterator iterator : pq)
+            iterator.close();
+        pq.clear();
+        initialized = true;
+    }
+
+    /** Returns true if any of the underlying iterators has more records, otherwise false. */
+    @Override
+    public boolean hasNext() {
+        startIterationIfRequired();
+        return !this.pq.isEmpty();
+    }
+
+    /** Returns the next record from the top most iterator during merging. */
+    @Override
+    public VariantContext next() {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        final ComparableVariantContextIterator iterator = this.pq.poll();
+        final VariantContext vc = iterator.next();
+        if (iterator.hasNext() && comparator.compare(vc, iterator.peek()) > 0) {
+            final VariantContext next = iterator.peek();
+            iterator.close();
+            throw new IllegalStateException("Input " + iterator.ordinal + " is not sorted: " + next.getContig() + ":" + next.getStart() +
+                    " follows " + vc.getContig() + ":" + vc.getStart());
+        }
+        addIfNotEmpty(iterator);
+        return vc;
+    }
+
+    /**
+     * Adds iterator to priority queue. If the iterator has more records it is added
+     * otherwise it is closed and not added.
+     */
+    private void addIfNotEmpty(final ComparableVariantContextIterator iterator) {
+        if (iterator.hasNext()) {
+            pq.offer(iterator);
+        } else {
+            iterator.close();
+        }
+    }
+
+    /** Unsupported operation. */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("MergingVariantContextIterator.remove()");
+    }
+
+    /**
+     * Orders iterators by their next record, breaking ties by the position of the input in the list of inputs.
+     */
+    private class ComparableVariantContextIterator extends PeekableIterator<VariantContext>
+            implements Comparable<ComparableVariantContextIterator> {
+        private final int ordinal;
+
+        ComparableVariantContextIterator(final CloseableIterator<VariantContext> iterator, final int ordinal) {
+            super(iterator);
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int compareTo(final ComparableVariantContextIterator that) {
+            final int result = comparator.compare(this.peek(), that.peek());
+            return result != 0 ? result : this.ordinal - that.ordinal;
+        }
+    }
+}
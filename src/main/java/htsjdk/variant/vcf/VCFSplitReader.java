@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.AbstractIterator;
+import htsjdk.samtools.util.BlockCompressedBlockFinder;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.FileSplit;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SplitReader;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the variants of a block compressed (BGZF) VCF file that belong to a {@link FileSplit}, so that a large VCF can
+ * be processed by many independent tasks without an index.
+ *
+ * A line belongs to the split that holds the start of the BGZF block in which the line before it ends, and the first
+ * line of the file belongs to the first split.  A split is read by seeking to its first block, skipping up to and
+ * including the first line terminator, and reading lines until one starts after the start of the first block of the
+ * next split.  Each call to {@link #read(FileSplit)} opens the file again, so the splits of a file may be read
+ * concurrently.
+ */
+public class VCFSplitReader implements SplitReader<VariantContext> {
+    private final File file;
+    private final VCFHeader header;
+
+    /**
+     * @param file a block compressed VCF file
+     */
+    public VCFSplitReader(final File file) {
+        this.file = file;
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                if (!BlockCompressedInputStream.isValidFile(in)) {
+                    throw new TribbleException.MalformedFeatureFile("Only block compressed VCF files can be split", file.getAbsolutePath());
+                }
+            } finally {
+                in.close();
+            }
+            final BlockCompressedInputStream stream = new BlockCompressedInputStream(file);
+            try {
+                this.header = readHeader(new VCFCodec(), stream);
+            } finally {
+                stream.close();
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading " + file, e);
+        }
+    }
+
+    public VCFHeader getFileHeader() {
+        return header;
+    }
+
+    @Override
+    public CloseableIterator<VariantContext> read(final FileSplit split) {
+        if (!split.getFile().equals(file)) throw new IllegalArgumentException("Split " + split + " is not a split of " + file);
+        try {
+            final SeekableStream stream = new SeekableFileStream(file);
+            try {
+                final long startBlock = BlockCompressedBlockFinder.findNextBlockAddress(stream, split.getStart());
+                final long endBlock = BlockCompressedBlockFinder.findNextBlockAddress(stream, split.getEnd());
+                stream.seek(0);
+                final BlockCompressedInputStream in = new BlockCompressedInputStream(stream);
+                // each iterator needs its own codec, which learns the version of the file from the header
+                final VCFCodec codec = new VCFCodec();
+                readHeader(codec, in);
+                return new SplitIterator(in, codec, startBlock, endBlock);
+            } catch (final IOException | RuntimeException e) {
+                CloserUtil.close(stream);
+                throw e;
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading " + file, e);
+        }
+    }
+
+    private static VCFHeader readHeader(final VCFCodec codec, final BlockCompressedInputStream in) {
+        return (VCFHeader) codec.readActualHeader(new AsciiLineReaderIterator(new AsciiLineReader(in)));
+    }
+
+    private static class SplitIterator extends AbstractIterator<VariantContext> implements CloseableIterator<VariantContext> {
+        private final AsciiLineReader reader;
+        private final VCFCodec codec;
+        private final long end;
+        private final boolean empty;
+
+        SplitIterator(final BlockCompressedInputStream in, final VCFCodec codec, final long startBlock, final long endBlock) throws IOException {
+            this.codec = codec;
+            this.end = BlockCompressedFilePointerUtil.makeFilePointer(endBlock, 0);
+            this.reader = new AsciiLineReader(in);
+            this.empty = startBlock >= endBlock;
+            if (empty) return;
+            in.seek(BlockCompressedFilePointerUtil.makeFilePointer(startBlock, 0));
+            // the line that ends in the first block belongs to the previous split
+            if (startBlock > 0) reader.readLine();
+        }
+
+        @Override
+        protected VariantContext advance() {
+            if (empty) return null;
+            try {
+                // a line belongs to this split if the line before it ends before the next split's first block
+                while (reader.getPosition() <= end) {
+                    final String line = reader.readLine();
+                    if (line == null) return null;
+                    if (line.isEmpty() || line.startsWith(VCFHeader.HEADER_INDICATOR)) continue;
+                    return codec.decode(line);
+                }
+                return null;
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            reader.close();
+        }
+    }
+}
@@ -269,6 +269,53 @@ public class BAMFileIndexTest {
         return new Object[][]{{true}, {false}};
     }
 
+    /**
+     * Joining the chunks of a query over many small intervals must not change its results.
+     */
+    @Test(dataProvider = "testMultiIntervalQueryDataProvider")
+    public void testMultiIntervalQueryChunkGap(final boolean contained) throws Exception {
+        final int numReferences = getReferenceNames(BAM_FILE).size();
+        final Random random = new Random(contained ? 1 : 2);
+        final QueryInterval[] intervals = new QueryInterval[2000];
+        for (int i = 0; i < intervals.length; i++) {
+            final int start = 1 + random.nextInt(10000000);
+            intervals[i] = new QueryInterval(random.nextInt(numReferences), start, start + random.nextInt(2000));
+        }
+        final QueryInterval[] optimizedIntervals = QueryInterval.optimizeIntervals(intervals);
+
+        List<String> expected = null;
+        for (final long gap : new long[]{0, 1000, Defaults.BAM_QUERY_CHUNK_GAP, Long.MAX_VALUE}) {
+            final BAMFileReader reader = new BAMFileReader(BAM_FILE, null, false, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+            reader.setQueryChunkGap(gap);
+            final List<String> records = new ArrayList<String>();
+            final CloseableIterator<SAMRecord> iterator = reader.query(optimizedIntervals, contained);
+            while (iterator.hasNext()) {
+                records.add(iterator.next().getSAMString());
+            }
+            iterator.close();
+            reader.close();
+            if (expected == null) {
+                expected = records;
+                Assert.assertFalse(expected.isEmpty());
+            } else {
+                Assert.assertEquals(records, expected, "gap " + gap);
+            }
+        }
+
+        // and the same records are found one interval at a time
+        final Set<String> singleIntervalRecords = new HashSet<String>();
+        final SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE);
+        for (final QueryInterval interval : optimizedIntervals) {
+            final CloseableIterator<SAMRecord> iterator = reader.query(new QueryInterval[]{interval}, contained);
+            while (iterator.hasNext()) {
+                singleIntervalRecords.add(iterator.next().getSAMString());
+            }
+            iterator.close();
+        }
+        reader.close();
+        Assert.assertEquals(new HashSet<String>(expected), singleIntervalRecords);
+    }
+
     @Test
     public void testUnmappedMateWithCoordinate() throws Exception {
         // TODO: Use SAMRecordSetBuilder when it is able to create a pair with one end unmapped
@@ -304,6 +351,67 @@ public class BAMFileIndexTest {
         textReader.close();
     }
 
+    @Test
+    public void testSharedIndexCache() throws Exception {
+        final BAMIndexCache cache = new BAMIndexCache(BAMIndexCache.DEFAULT_MAX_SIZE_IN_BYTES);
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().indexCache(cache);
+        final SamReader uncached = SamReaderFactory.makeDefault().open(BAM_FILE);
+        final int expected = countElements(uncached.queryOverlapping("chr1", 1, 100000000));
+        final int expectedChr2 = countElements(uncached.queryOverlapping("chr2", 1, 100000000));
+        uncached.close();
+
+        final SamReader first = factory.open(BAM_FILE);
+        Assert.assertEquals(countElements(first.queryOverlapping("chr1", 1, 100000000)), expected);
+        Assert.assertEquals(cache.getHitCount(), 0);
+        Assert.assertEquals(cache.getMissCount(), 1);
+        Assert.assertEquals(cache.size(), 1);
+        final long hits = cache.getHitCount();
+        first.close();
+
+        // a second reader of the same file finds the contents loaded by the first
+        final SamReader second = factory.open(BAM_FILE);
+        Assert.assertEquals(countElements(second.queryOverlapping("chr1", 1, 100000000)), expected);
+        Assert.assertEquals(cache.getMissCount(), 1);
+        Assert.assertTrue(cache.getHitCount() > hits);
+        Assert.assertEquals(countElements(second.queryOverlapping("chr2", 1, 100000000)), expectedChr2);
+        Assert.assertEquals(cache.getMissCount(), 2);
+        Assert.assertEquals(cache.size(), 2);
+        second.close();
+    }
+
+    @Test
+    public void testSharedIndexCacheSizeLimit() throws Exception {
+        final List<String> referenceNames = getReferenceNames(BAM_FILE);
+        final SAMSequenceDictionary dictionary = SamReaderFactory.makeDefault().getFileHeader(BAM_FILE).getSequenceDictionary();
+        final CachingBAMFileIndex index = new CachingBAMFileIndex(new File(BAM_FILE.getPath() + ".bai"), dictionary);
+        long totalSize = 0;
+        long maxSize = 0;
+        for (int i = 0; i < referenceNames.size(); i++) {
+            final BAMIndexContent content = index.getQueryResults(i);
+            if (content != null) {
+                final long size = BAMIndexCache.estimateSizeInBytes(content);
+                totalSize += size;
+                maxSize = Math.max(maxSize, size);
+            }
+        }
+        index.close();
+
+        // room for any one reference, but not for all of them
+        final BAMIndexCache cache = new BAMIndexCache(Math.max(maxSize, totalSize / 2));
+        final SamReader reader = SamReaderFactory.makeDefault().indexCache(cache).open(BAM_FILE);
+        for (final String referenceName : referenceNames) {
+            countElements(reader.queryOverlapping(referenceName, 1, 100000000));
+            Assert.assertTrue(cache.getSizeInBytes() <= cache.getMaxSizeInBytes());
+        }
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+        Assert.assertTrue(cache.size() > 0);
+        reader.close();
+
+        cache.clear();
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.getSizeInBytes(), 0);
+    }
+
     private <E> void consumeAll(final Collection<E> collection, final CloseableIterator<E> iterator) {
         while (iterator.hasNext()) {
             collection.add(iterator.next());
@@ -91,6 +91,22 @@ public class BAMIndexWriterTest {
         CloserUtil.close(bam);
     }
 
+    @Test
+    public void testWriteBinaryInParallel() throws Exception {
+        // Compare the index created by decompressing on several threads with the one created from a SamReader
+        final File javaBaiFile = File.createTempFile("javaBai.", ".bai");
+        final SamReader bam = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(BAM_FILE);
+        BAMIndexer.createIndex(bam, javaBaiFile);
+
+        final File parallelBaiFile = File.createTempFile("parallelBai.", ".bai");
+        BAMIndexer.createIndex(BAM_FILE, parallelBaiFile, 4);
+        verbose("diff " + javaBaiFile + " " + parallelBaiFile);
+        IOUtil.assertFilesEqual(javaBaiFile, parallelBaiFile);
+        javaBaiFile.deleteOnExit();
+        parallelBaiFile.deleteOnExit();
+        CloserUtil.close(bam);
+    }
+
     @Test(enabled = false, dataProvider = "linearIndexTestData")
     /** Test linear index at specific references and windows */
     public void testLinearIndex(String testName, String filepath, int problemReference, int problemWindowStart, int problemWindowEnd, int expectedCount) {
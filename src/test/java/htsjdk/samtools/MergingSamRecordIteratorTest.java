@@ -25,12 +25,15 @@ package htsjdk.samtools;
 
 import htsjdk.samtools.util.SequenceUtil;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -309,4 +312,51 @@ public class MergingSamRecordIteratorTest {
         samReader1.close();
         samReader2.close();
     }
+
+    @DataProvider(name = "prefetchBufferSizes")
+    public Object[][] prefetchBufferSizes() {
+        return new Object[][]{{0}, {1}, {16}};
+    }
+
+    @Test(dataProvider = "prefetchBufferSizes")
+    public void testManyCoordinateSortedInputs(final int prefetchBufferSize) throws Exception {
+        final Random random = new Random(prefetchBufferSize);
+        final List<SamReader> readerList = new ArrayList<SamReader>();
+        final List<SAMFileHeader> headerList = new ArrayList<SAMFileHeader>();
+        final List<SAMRecord> expected = new ArrayList<SAMRecord>();
+        for (int i = 0; i < 11; i++) {
+            final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+            // inputs of different lengths, including an empty one, with many records at the same positions
+            for (int j = 0; j < 20 * i; j++) {
+                builder.addFrag("read_" + i + "_" + j, random.nextInt(3), 1 + random.nextInt(50), random.nextBoolean());
+            }
+            for (int j = 0; j < i % 3; j++) {
+                builder.addUnmappedFragment("unmapped_" + i + "_" + j);
+            }
+            for (final SAMRecord record : builder) {
+                expected.add(record);
+            }
+            final SamReader reader = builder.getSamReader();
+            readerList.add(reader);
+            headerList.add(reader.getFileHeader());
+        }
+        Collections.sort(expected, new SAMRecordCoordinateComparator());
+
+        final SamFileHeaderMerger fileHeaderMerger = new SamFileHeaderMerger(SAMFileHeader.SortOrder.coordinate, headerList, false);
+        final MergingSamRecordIterator iterator = new MergingSamRecordIterator(fileHeaderMerger, readerList, false);
+        iterator.setPrefetchBufferSize(prefetchBufferSize);
+        final List<String> actual = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            actual.add(iterator.next().getReadName());
+        }
+        iterator.close();
+
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(actual.get(i), expected.get(i).getReadName(), "record " + i);
+        }
+        for (final SamReader reader : readerList) {
+            reader.close();
+        }
+    }
 }
@@ -31,6 +31,10 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 public class SAMFileWriterFactoryTest {
 
@@ -304,4 +308,38 @@ public class SAMFileWriterFactoryTest {
         writer = builder.setUseAsyncIo(false).makeWriter(header, false, outputFile, referenceFile);
         Assert.assertFalse(writer instanceof AsyncSAMFileWriter, "testAsync option=unset");
     }
+
+    @DataProvider(name = "sortOrders")
+    public Object[][] sortOrders() {
+        return new Object[][] {{SAMFileHeader.SortOrder.coordinate}, {SAMFileHeader.SortOrder.queryname}};
+    }
+
+    @Test(dataProvider = "sortOrders")
+    public void testMaxBytesInRam(final SAMFileHeader.SortOrder sortOrder) throws IOException {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        final Random random = new Random(sortOrder.ordinal());
+        for (int i = 0; i < 1000; i++) {
+            builder.addPair("read" + random.nextInt(500), random.nextInt(3), 1 + random.nextInt(1000), 1 + random.nextInt(1000));
+        }
+        final List<SAMRecord> expected = new ArrayList<SAMRecord>(builder.getRecords());
+        Collections.sort(expected, sortOrder.getComparatorInstance());
+
+        final File outputFile = prepareOutputFile(BamFileIoUtils.BAM_FILE_EXTENSION);
+        final SAMFileHeader header = builder.getHeader().clone();
+        header.setSortOrder(sortOrder);
+        // small enough that the records are spilled to several files
+        final SAMFileWriter writer = new SAMFileWriterFactory().setMaxBytesInRam(50000).makeBAMWriter(header, false, outputFile);
+        for (final SAMRecord record : builder.getRecords()) {
+            writer.addAlignment(record);
+        }
+        writer.close();
+
+        final SamReader reader = SamReaderFactory.makeDefault().open(outputFile);
+        int i = 0;
+        for (final SAMRecord record : reader) {
+            Assert.assertEquals(record.getSAMString(), expected.get(i++).getSAMString());
+        }
+        Assert.assertEquals(i, expected.size());
+        reader.close();
+    }
 }
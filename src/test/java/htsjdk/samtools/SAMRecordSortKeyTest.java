@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.SortKeyComparator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SAMRecordSortKeyTest {
+
+    @DataProvider(name = "comparators")
+    public Object[][] comparators() {
+        return new Object[][] {
+                {new SAMRecordCoordinateComparator()},
+                {new SAMRecordQueryNameComparator()},
+                {new SAMRecordQueryHashComparator()},
+                {new SAMRecordDuplicateComparator()},
+        };
+    }
+
+    /** Records whose names share prefixes and differ in length, on a few contigs, some of them unmapped. */
+    private static List<SAMRecord> makeRecords() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        final Random random = new Random(1);
+        final String[] prefixes = {"", "r", "read", "read:1:", "READ:1:2345:", "read\u00e9"};
+        for (int i = 0; i < 200; ++i) {
+            final String name = prefixes[random.nextInt(prefixes.length)] + random.nextInt(1000);
+            final int contig = random.nextInt(3);
+            final int start = 1 + random.nextInt(50);
+            if (random.nextBoolean()) {
+                builder.addFrag(name, contig, start, random.nextBoolean(), random.nextInt(5) == 0, null, null, -1);
+            } else {
+                builder.addPair(name, contig, start, start + random.nextInt(50), random.nextInt(5) == 0,
+                        random.nextInt(5) == 0, null, null, random.nextBoolean(), random.nextBoolean(), 20);
+            }
+        }
+        return new ArrayList<SAMRecord>(builder.getRecords());
+    }
+
+    @Test(dataProvider = "comparators")
+    public void testSortKeysAreConsistentWithComparator(final SortKeyComparator<SAMRecord> comparator) {
+        final List<SAMRecord> records = makeRecords();
+        int differentKeys = 0;
+        for (final SAMRecord a : records) {
+            for (final SAMRecord b : records) {
+                final long keyA = comparator.getSortKey(a);
+                final long keyB = comparator.getSortKey(b);
+                if (keyA < keyB) {
+                    ++differentKeys;
+                    Assert.assertTrue(comparator.compare(a, b) < 0, a.getSAMString() + b.getSAMString());
+                }
+            }
+        }
+        // the keys should decide most comparisons
+        Assert.assertTrue(differentKeys > records.size() * records.size() / 4, "only " + differentKeys + " keys differ");
+    }
+
+    @Test
+    public void testReadNameSortKey() {
+        Assert.assertEquals(SAMRecordQueryNameComparator.getReadNameSortKey(""), 0L);
+        Assert.assertTrue(SAMRecordQueryNameComparator.getReadNameSortKey("a") < SAMRecordQueryNameComparator.getReadNameSortKey("a0"));
+        Assert.assertTrue(SAMRecordQueryNameComparator.getReadNameSortKey("abcdefghi") < SAMRecordQueryNameComparator.getReadNameSortKey("abcdefghj"));
+        // only the first nine characters are used
+        Assert.assertEquals(SAMRecordQueryNameComparator.getReadNameSortKey("abcdefghi0"), SAMRecordQueryNameComparator.getReadNameSortKey("abcdefghi1"));
+    }
+
+    /** Compares keys from {@link SortKeyComparator#getSortKeyBytes} as unsigned bytes, shorter prefixes first. */
+    private static int compareKeyBytes(final byte[] key1, final byte[] key2) {
+        for (int i = 0; i < Math.min(key1.length, key2.length); ++i) {
+            if (key1[i] != key2[i]) return (key1[i] & 0xff) - (key2[i] & 0xff);
+        }
+        return key1.length - key2.length;
+    }
+
+    @Test
+    public void testSortKeyBytesAreConsistentWithComparator() {
+        final SAMRecordQueryNameComparator comparator = new SAMRecordQueryNameComparator();
+        final List<SAMRecord> records = makeRecords();
+        for (final SAMRecord a : records) {
+            for (final SAMRecord b : records) {
+                if (comparator.getSortKey(a) == comparator.getSortKey(b) &&
+                        compareKeyBytes(comparator.getSortKeyBytes(a), comparator.getSortKeyBytes(b)) < 0) {
+                    Assert.assertTrue(comparator.compare(a, b) < 0, a.getSAMString() + b.getSAMString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadNameSortKeyBytesDifferForRealisticNames() {
+        // names from one run share a long prefix, so their sort keys are equal and only the finer keys tell them apart
+        final String[] names = {
+                "6194MAAXX090129:5:1:1000:1000", "6194MAAXX090129:5:1:1000:1001", "6194MAAXX090129:5:1:1001:1000",
+                "6194MAAXX090129:5:2:1000:1000", "6194MAAXX090129:6:1:100:1000",
+                "HWI-ST1234:8:1101:1234:5678#0", "HWI-ST1234:8:1101:1234:5679#0", "HWI-ST1234:8:1102:1000:2000#0",
+                "HWI-ST1234:8:1102:1000:2000#0/1", "HWI-ST1234:8:1102:1000:2000#0/2"
+        };
+        for (final String name1 : names) {
+            for (final String name2 : names) {
+                if (name1.startsWith("6194MAAXX") == name2.startsWith("6194MAAXX")) {
+                    Assert.assertEquals(SAMRecordQueryNameComparator.getReadNameSortKey(name1),
+                            SAMRecordQueryNameComparator.getReadNameSortKey(name2));
+                }
+                final int cmp = compareKeyBytes(SAMRecordQueryNameComparator.getReadNameSortKeyBytes(name1),
+                        SAMRecordQueryNameComparator.getReadNameSortKeyBytes(name2));
+                Assert.assertEquals(Integer.signum(cmp), Integer.signum(SAMRecordQueryNameComparator.compareReadNames(name1, name2)),
+                        name1 + " " + name2);
+            }
+        }
+    }
+
+    @Test
+    public void testReadNameSortKeyBytes() {
+        Assert.assertEquals(SAMRecordQueryNameComparator.getReadNameSortKeyBytes(""), new byte[0]);
+        Assert.assertEquals(SAMRecordQueryNameComparator.getReadNameSortKeyBytes("r:1"), new byte[]{'r', ':', '1'});
+        // the first character outside of ASCII ends the key, above every ASCII character
+        Assert.assertEquals(SAMRecordQueryNameComparator.getReadNameSortKeyBytes("r\u00e9\u00e8x"), new byte[]{'r', 0x7f});
+        Assert.assertTrue(compareKeyBytes(SAMRecordQueryNameComparator.getReadNameSortKeyBytes("r~~"),
+                SAMRecordQueryNameComparator.getReadNameSortKeyBytes("r\u00e9")) < 0);
+    }
+}
@@ -26,6 +26,7 @@ package htsjdk.samtools;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
@@ -134,4 +135,72 @@ public class SAMTextReaderTest {
         Assert.assertEquals(recFromText.getAttribute(SAMTag.CQ.name()), valueWithColons);
         CloserUtil.close(reader);
     }
+
+    private static SAMFileHeader createParserHeader() {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.addSequence(new SAMSequenceRecord("chr1", 1000));
+        header.addSequence(new SAMSequenceRecord("chr2", 1000));
+        return header;
+    }
+
+    @Test
+    public void testLineParser() {
+        final SAMLineParser parser = new SAMLineParser(new DefaultSAMRecordFactory(), ValidationStringency.STRICT,
+                createParserHeader(), null, null);
+        final SAMRecord rec = parser.parseLine("read1\t0x63\tchr1 extra\t+10\t60\t3M1I1M\t=\t-20\t-35\tacg.t\t#+5AI\t" +
+                "XA:Z:a:b\tXB:A:c\tXC:i:-123\tXD:i:4294967295\tXE:f:1.5\tXF:B:s,1,-2\tXG:H:1AE3\tXH:i:+7\tXI:Z:*");
+        Assert.assertEquals(rec.getReadName(), "read1");
+        Assert.assertEquals(rec.getFlags(), 0x63);
+        Assert.assertEquals(rec.getReferenceName(), "chr1");
+        Assert.assertEquals(rec.getAlignmentStart(), 10);
+        Assert.assertEquals(rec.getMappingQuality(), 60);
+        Assert.assertEquals(rec.getCigarString(), "3M1I1M");
+        Assert.assertEquals(rec.getMateReferenceName(), "chr1");
+        Assert.assertEquals(rec.getMateAlignmentStart(), -20);
+        Assert.assertEquals(rec.getInferredInsertSize(), -35);
+        Assert.assertEquals(rec.getReadString(), "ACGNT");
+        Assert.assertEquals(rec.getBaseQualityString(), "#+5AI");
+        Assert.assertEquals(rec.getAttribute("XA"), "a:b");
+        Assert.assertEquals(rec.getAttribute("XB"), 'c');
+        Assert.assertEquals(rec.getAttribute("XC"), -123);
+        Assert.assertEquals(rec.getAttribute("XD"), 4294967295L);
+        Assert.assertEquals(rec.getAttribute("XE"), 1.5f);
+        Assert.assertEquals(rec.getAttribute("XF"), new short[]{1, -2});
+        Assert.assertEquals(rec.getAttribute("XG"), new byte[]{0x1a, (byte) 0xe3});
+        Assert.assertEquals(rec.getAttribute("XH"), 7);
+        Assert.assertEquals(rec.getAttribute("XI"), "*");
+
+        final SAMRecord unmapped = parser.parseLine("read2\t4\t*\t0\t0\t*\t*\t0\t0\tA\t*\t");
+        Assert.assertEquals(unmapped.getReferenceName(), SAMRecord.NO_ALIGNMENT_REFERENCE_NAME);
+        Assert.assertEquals(unmapped.getCigarString(), SAMRecord.NO_ALIGNMENT_CIGAR);
+        Assert.assertEquals(unmapped.getReadString(), "A");
+        Assert.assertEquals(unmapped.getBaseQualities(), SAMRecord.NULL_QUALS);
+        Assert.assertTrue(unmapped.getAttributes().isEmpty());
+    }
+
+    @DataProvider(name = "badLines")
+    public Object[][] badLines() {
+        final String prefix = "read1\t0\tchr1\t10\t60\t4M\t*\t0\t0\t";
+        return new Object[][] {
+                {"read1\t0\tchr1\t10"},
+                {"read1\t0\tchr1\t1O\t60\t4M\t*\t0\t0\tACGT\tIIII"},
+                {"read1\t0\tchr1\t99999999999\t60\t4M\t*\t0\t0\tACGT\tIIII"},
+                {"read1\t0\tchr3\t10\t60\t4M\t*\t0\t0\tACGT\tIIII"},
+                {"read1\t0\tchr1\t10\t60\t4M\t*\t0\t0\tAC-T\tIIII"},
+                {"read1\t0\tchr1\t10\t60\t4M\t*\t0\t0\t*\tIIII"},
+                {prefix + "ACGT\tIII"},
+                {prefix + "ACGT\tIIII\tXA:A:ab"},
+                {prefix + "ACGT\tIIII\tXA:i:1x"},
+                {prefix + "ACGT\tIIII\tXA:i:99999999999"},
+                {prefix + "ACGT\tIIII\tXA:Z:"},
+                {prefix + "ACGT\tIIII\tXA:q:1"},
+                {prefix + "ACGT\tIIII\t\tXA:Z:a"},
+        };
+    }
+
+    @Test(dataProvider = "badLines", expectedExceptions = SAMFormatException.class)
+    public void testLineParserErrors(final String line) {
+        new SAMLineParser(new DefaultSAMRecordFactory(), ValidationStringency.STRICT, createParserHeader(), null, null)
+                .parseLine(line);
+    }
 }
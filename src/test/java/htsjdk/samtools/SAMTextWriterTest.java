@@ -24,9 +24,12 @@
 package htsjdk.samtools;
 
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -127,4 +130,56 @@ public class SAMTextWriterTest {
         Assert.assertFalse(newSAMIt.hasNext());
         inputSAM.close();
     }
+
+    @DataProvider(name = "flagFields")
+    public Object[][] flagFields() {
+        return new Object[][] {{SamFlagField.DECIMAL}, {SamFlagField.HEXADECIMAL}, {SamFlagField.OCTAL}, {SamFlagField.STRING}};
+    }
+
+    /**
+     * Records written to an OutputStream are formatted as bytes; check that they match the text written to a Writer.
+     */
+    @Test(dataProvider = "flagFields")
+    public void testOutputStreamMatchesWriter(final SamFlagField samFlagField) throws Exception {
+        final SAMRecordSetBuilder recordSetBuilder = getSAMReader(true, SAMFileHeader.SortOrder.coordinate);
+        recordSetBuilder.addUnmappedFragment("unmapped");
+        final SAMRecord first = recordSetBuilder.getRecords().iterator().next();
+        first.setAttribute("XA", 'q');
+        first.setAttribute("XB", Integer.MIN_VALUE);
+        first.setAttribute("XC", 4294967295L);
+        first.setAttribute("XD", (short) -300);
+        first.setAttribute("XE", 1.2345f);
+        first.setAttribute("XF", "Hi,Mom!");
+        first.setAttribute("XG", new byte[]{-128, 0, 127});
+        first.setAttribute("XH", new short[]{Short.MIN_VALUE, 1});
+        first.setAttribute("XI", new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE});
+        first.setAttribute("XJ", new float[]{-1.5f, 1e-10f});
+        first.setUnsignedArrayAttribute("XK", new byte[]{-1, 1});
+        first.setUnsignedArrayAttribute("XL", new short[]{-1, 1});
+        first.setUnsignedArrayAttribute("XM", new int[]{-1, 1});
+        first.setBaseQualities(new byte[first.getReadLength()]);
+        first.getBaseQualities()[0] = SAMUtils.MAX_PHRED_SCORE;
+        first.setInferredInsertSize(-1234567);
+
+        final StringWriter expected = new StringWriter();
+        final SAMTextWriter textWriter = new SAMTextWriter(expected, samFlagField);
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final SAMTextWriter streamWriter = new SAMTextWriter(actual, samFlagField);
+        for (final SAMRecord rec : recordSetBuilder.getRecords()) {
+            textWriter.writeAlignment(rec);
+            streamWriter.writeAlignment(rec);
+        }
+        textWriter.finish();
+        streamWriter.finish();
+        Assert.assertEquals(actual.toString("US-ASCII"), expected.toString());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidQuality() {
+        final SAMRecordSetBuilder recordSetBuilder = new SAMRecordSetBuilder();
+        recordSetBuilder.addUnmappedFragment("read");
+        final SAMRecord rec = recordSetBuilder.getRecords().iterator().next();
+        rec.getBaseQualities()[0] = SAMUtils.MAX_PHRED_SCORE + 1;
+        new SAMTextWriter(new ByteArrayOutputStream()).writeAlignment(rec);
+    }
 }
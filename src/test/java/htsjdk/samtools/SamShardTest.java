@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SamShardTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+    private static final File CRAM_DIR = new File("src/test/resources/htsjdk/samtools/cram");
+    private static final File CRAM_FILE = new File(CRAM_DIR, "NA12878.20.21.1-100.100-SeqsPerSlice.1-unMapped.cram");
+    private static final File CRAM_REFERENCE = new File(CRAM_DIR, "human_g1k_v37.20.21.1-100.fasta");
+
+    @DataProvider(name = "files")
+    public Object[][] files() {
+        return new Object[][]{
+                {BAM_FILE, null, 20000L, 10},
+                {BAM_FILE, null, 1L, 10},
+                {BAM_FILE, null, SamShard.DEFAULT_SHARD_SIZE, 2},
+                // the reads of each reference are all in the first window of the linear index
+                {CRAM_FILE, CRAM_REFERENCE, 1L, 3},
+        };
+    }
+
+    private static SamReader open(final File file, final File reference) {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
+        if (reference != null) factory.referenceSequence(reference);
+        return factory.open(file);
+    }
+
+    private static List<String> readAll(final File file, final File reference) throws IOException {
+        final List<String> records = new ArrayList<String>();
+        try (final SamReader reader = open(file, reference)) {
+            for (final SAMRecord record : reader) {
+                records.add(record.getSAMString());
+            }
+        }
+        return records;
+    }
+
+    @Test(dataProvider = "files")
+    public void testShardsPartitionFile(final File file, final File reference, final long targetSize, final int minShards) throws IOException {
+        final List<String> expected = readAll(file, reference);
+        final List<String> actual = new ArrayList<String>();
+        try (final SamReader reader = open(file, reference)) {
+            final List<SamShard> shards = SamShard.split(reader, targetSize);
+            Assert.assertTrue(shards.size() >= minShards, shards.toString());
+            Assert.assertTrue(shards.get(shards.size() - 1).isUnmapped());
+            for (final SamShard shard : shards) {
+                final CloseableIterator<SAMRecord> iterator = shard.iterator(reader);
+                while (iterator.hasNext()) {
+                    actual.add(iterator.next().getSAMString());
+                }
+                iterator.close();
+            }
+        }
+        Assert.assertEquals(actual.size(), expected.size());
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test(dataProvider = "files")
+    public void testStream(final File file, final File reference, final long targetSize, final int minShards) throws IOException {
+        final List<String> expected = readAll(file, reference);
+        for (final boolean parallel : new boolean[]{false, true}) {
+            try (final Stream<SAMRecord> stream = SamShard.stream(() -> open(file, reference), targetSize, parallel)) {
+                Assert.assertEquals(stream.map(SAMRecord::getSAMString).collect(Collectors.toList()), expected);
+            }
+        }
+    }
+
+    @Test
+    public void testShortCircuitedStream() {
+        try (final Stream<SAMRecord> stream = SamShard.stream(() -> open(BAM_FILE, null), 20000, true)) {
+            Assert.assertTrue(stream.anyMatch(record -> record.getReferenceIndex() > 0));
+        }
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testNoIndex() throws IOException {
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(new File("src/test/resources/htsjdk/samtools/coordinate_sorted.sam"))) {
+            SamShard.split(reader, 1000);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.FileSplit;
+import htsjdk.samtools.util.SplitCalculator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+public class SamSplitReaderTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+    private static final File CRAM_DIR = new File("src/test/resources/htsjdk/samtools/cram");
+    private static final File CRAM_FILE = new File(CRAM_DIR, "NA12878.20.21.1-100.100-SeqsPerSlice.1-unMapped.cram");
+    private static final File CRAM_REFERENCE = new File(CRAM_DIR, "human_g1k_v37.20.21.1-100.fasta");
+
+    private static SamReaderFactory factory(final File reference) {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
+        if (reference != null) factory.referenceSequence(reference);
+        return factory;
+    }
+
+    @DataProvider(name = "splits")
+    public Object[][] splits() {
+        return new Object[][]{
+                {BAM_FILE, null, 1000L},
+                {BAM_FILE, null, 20000L},
+                {BAM_FILE, null, 65536L},
+                {BAM_FILE, null, Long.MAX_VALUE},
+                {CRAM_FILE, CRAM_REFERENCE, 100L},
+                {CRAM_FILE, CRAM_REFERENCE, 5000L},
+                {CRAM_FILE, CRAM_REFERENCE, Long.MAX_VALUE},
+        };
+    }
+
+    @Test(dataProvider = "splits")
+    public void testSplitsPartitionFile(final File file, final File reference, final long splitSize) throws IOException {
+        final List<String> expected = new ArrayList<String>();
+        try (final SamReader reader = factory(reference).open(file)) {
+            for (final SAMRecord record : reader) {
+                expected.add(record.getSAMString());
+            }
+        }
+
+        final SamSplitReader splitReader = new SamSplitReader(factory(reference), file);
+        final List<FileSplit> splits = SplitCalculator.calculateSplits(file, splitSize);
+        final List<String> actual = new ArrayList<String>();
+        int nonEmptySplits = 0;
+        for (final FileSplit split : splits) {
+            final int before = actual.size();
+            try (final CloseableIterator<SAMRecord> iterator = splitReader.read(split)) {
+                while (iterator.hasNext()) {
+                    actual.add(iterator.next().getSAMString());
+                }
+            }
+            if (actual.size() > before) nonEmptySplits++;
+        }
+        Assert.assertEquals(actual, expected);
+        Assert.assertTrue(expected.size() > 0);
+        if (splits.size() > 10) Assert.assertTrue(nonEmptySplits > 1, "non-empty splits: " + nonEmptySplits);
+    }
+
+    @Test
+    public void testGuessEveryBlock() throws IOException {
+        // the start of every record, from which the first record starting in or after each block can be found
+        final TreeSet<Long> recordStarts = new TreeSet<Long>();
+        final int nReferences;
+        try (final SamReader reader = factory(null).enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(BAM_FILE)) {
+            nReferences = reader.getFileHeader().getSequenceDictionary().size();
+            for (final SAMRecord record : reader) {
+                recordStarts.add(((BAMFileSpan) record.getFileSource().getFilePointer()).getFirstOffset());
+            }
+        }
+        final TreeSet<Long> blocks = new TreeSet<Long>();
+        for (final long start : recordStarts) {
+            blocks.add(BlockCompressedFilePointerUtil.getBlockAddress(start));
+        }
+        blocks.remove(blocks.first()); // the first block holds the end of the header
+        Assert.assertTrue(blocks.size() > 5);
+
+        try (final SeekableFileStream stream = new SeekableFileStream(BAM_FILE)) {
+            final BAMRecordBoundaryGuesser guesser = new BAMRecordBoundaryGuesser(stream, nReferences);
+            for (final long block : blocks) {
+                final long expected = recordStarts.ceiling(BlockCompressedFilePointerUtil.makeFilePointer(block, 0));
+                Assert.assertEquals(guesser.guessNextRecordStart(block), expected, "block " + block);
+            }
+            Assert.assertEquals(guesser.guessNextRecordStart(stream.length()), -1);
+        }
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testSamFileCannotBeSplit() {
+        new SamSplitReader(factory(null), new File("src/test/resources/htsjdk/samtools/coordinate_sorted.sam"));
+    }
+}
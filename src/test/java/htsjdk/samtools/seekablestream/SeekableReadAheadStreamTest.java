@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.seekablestream;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class SeekableReadAheadStreamTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    /** Counts the reads made on a wrapped stream. */
+    private static class CountingStream extends SeekableMemoryStream {
+        int reads = 0;
+
+        CountingStream(final byte[] data) {
+            super(data, "test");
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            reads++;
+            return super.read(buffer, offset, length);
+        }
+    }
+
+    /** A stream that does not know its length, like an HTTP stream without a content length. */
+    private static class UnknownLengthStream extends SeekableMemoryStream {
+        UnknownLengthStream(final byte[] data) {
+            super(data, "test");
+        }
+
+        @Override
+        public long length() {
+            return -1;
+        }
+    }
+
+    @DataProvider(name = "readAheadSizes")
+    public Object[][] readAheadSizes() {
+        return new Object[][]{{1}, {1000}, {65536}, {SeekableReadAheadStream.DEFAULT_READ_AHEAD_SIZE}};
+    }
+
+    @Test(dataProvider = "readAheadSizes")
+    public void testMatchesWrappedStream(final int readAheadSize) throws IOException {
+        final byte[] data = Files.readAllBytes(BAM_FILE.toPath());
+        final SeekableStream expected = new SeekableMemoryStream(data, "expected");
+        final SeekableReadAheadStream actual = new SeekableReadAheadStream(new SeekableMemoryStream(data, "actual"), readAheadSize);
+        final Random random = new Random(readAheadSize);
+        final byte[] expectedBytes = new byte[5000];
+        final byte[] actualBytes = new byte[expectedBytes.length];
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextInt(10) == 0) {
+                final long start = random.nextInt(data.length);
+                actual.readAhead(start, start + random.nextInt(200000));
+            }
+            if (random.nextInt(4) == 0) {
+                final long position = random.nextInt(data.length);
+                expected.seek(position);
+                actual.seek(position);
+            }
+            final int length = random.nextInt(expectedBytes.length);
+            final int n = readFully(expected, expectedBytes, length);
+            Assert.assertEquals(readFully(actual, actualBytes, length), n);
+            Assert.assertTrue(Arrays.equals(Arrays.copyOf(actualBytes, n), Arrays.copyOf(expectedBytes, n)), "at read " + i);
+            Assert.assertEquals(actual.position(), expected.position());
+            Assert.assertEquals(actual.eof(), expected.position() == data.length);
+        }
+        actual.close();
+    }
+
+    @Test
+    public void testReadsRangeAtOnce() throws IOException {
+        final byte[] data = Files.readAllBytes(BAM_FILE.toPath());
+        final CountingStream wrapped = new CountingStream(data);
+        final SeekableReadAheadStream stream = new SeekableReadAheadStream(wrapped, 100000);
+        final byte[] bytes = new byte[18];
+
+        // small reads outside the range each go to the wrapped stream
+        stream.seek(1000);
+        for (int i = 0; i < 10; i++) Assert.assertEquals(stream.read(bytes, 0, bytes.length), bytes.length);
+        Assert.assertEquals(wrapped.reads, 10);
+
+        // inside the range, they are served from reads of up to the read-ahead size
+        wrapped.reads = 0;
+        stream.readAhead(200000, 450000);
+        stream.seek(200000);
+        int total = 0;
+        while (total < 250000) {
+            total += stream.read(bytes, 0, bytes.length);
+        }
+        Assert.assertEquals(wrapped.reads, 3);
+        Assert.assertEquals(stream.position(), 200000 + total);
+    }
+
+    @Test
+    public void testEofWithUnknownLength() throws IOException {
+        final byte[] data = new byte[1000];
+        final SeekableReadAheadStream stream = new SeekableReadAheadStream(new UnknownLengthStream(data), 100);
+        final byte[] bytes = new byte[600];
+        Assert.assertFalse(stream.eof());
+
+        // outside the read-ahead range
+        Assert.assertEquals(readFully(stream, bytes, 600), 600);
+        Assert.assertFalse(stream.eof());
+        Assert.assertEquals(readFully(stream, bytes, 600), 400);
+        Assert.assertTrue(stream.eof());
+
+        // inside it, both in and past the buffer
+        stream.readAhead(0, data.length);
+        stream.seek(950);
+        Assert.assertFalse(stream.eof());
+        Assert.assertEquals(readFully(stream, bytes, 10), 10);
+        Assert.assertFalse(stream.eof());
+        Assert.assertEquals(readFully(stream, bytes, 100), 40);
+        Assert.assertTrue(stream.eof());
+        stream.seek(0);
+        Assert.assertFalse(stream.eof());
+        stream.close();
+    }
+
+    private static int readFully(final SeekableStream stream, final byte[] buffer, final int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            final int count = stream.read(buffer, n, length - n);
+            if (count <= 0) break;
+            n += count;
+        }
+        return n;
+    }
+}
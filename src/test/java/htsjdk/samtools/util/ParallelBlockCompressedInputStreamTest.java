@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+public class ParallelBlockCompressedInputStreamTest {
+    private static final File BAM = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    @DataProvider(name = "threads")
+    public Object[][] threads() {
+        return new Object[][] {{1}, {3}, {8}};
+    }
+
+    @Test(dataProvider = "threads")
+    public void testMatchesBlockCompressedInputStream(final int nThreads) throws IOException {
+        final BlockCompressedInputStream expected = new BlockCompressedInputStream(BAM);
+        final ParallelBlockCompressedInputStream actual = new ParallelBlockCompressedInputStream(BAM, nThreads,
+                BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE);
+        final Random random = new Random(nThreads);
+        final byte[] expectedBytes = new byte[100000];
+        final byte[] actualBytes = new byte[expectedBytes.length];
+        long total = 0;
+        while (true) {
+            // BlockCompressedInputStream has no file pointer before the first read, and none that is meaningful after the last
+            if (total > 0 && expected.available() > 0) {
+                Assert.assertEquals(actual.getFilePointer(), expected.getFilePointer(), "at byte " + total);
+            }
+            final int length = random.nextInt(10) == 0 ? 1 + random.nextInt(expectedBytes.length) : 1 + random.nextInt(100);
+            final int n = expected.read(expectedBytes, 0, length);
+            if (n < 0) break;
+            Assert.assertEquals(actual.read(actualBytes, 0, n), n);
+            for (int i = 0; i < n; i++) {
+                if (expectedBytes[i] != actualBytes[i]) Assert.fail("Bytes differ at " + (total + i));
+            }
+            total += n;
+        }
+        Assert.assertEquals(actual.read(), -1);
+        Assert.assertTrue(total > 3 * BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE);
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public void testFindNextBlockAddress() throws IOException {
+        // walk the chain of block headers, and check that every position finds the next block in the chain
+        final SeekableFileStream stream = new SeekableFileStream(BAM);
+        final byte[] header = new byte[BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+        long address = 0;
+        int blocks = 0;
+        while (address < stream.length()) {
+            stream.seek(address);
+            stream.readFully(header);
+            Assert.assertTrue(BlockCompressedBlockFinder.isBlockHeader(header, 0));
+            final long next = address + BlockCompressedBlockFinder.getBlockSize(header, 0);
+            for (final long position : new long[]{address + 1, (address + next) / 2, next - 1}) {
+                if (position > address && position < next) {
+                    Assert.assertEquals(BlockCompressedBlockFinder.findNextBlockAddress(stream, position), next);
+                }
+            }
+            Assert.assertEquals(BlockCompressedBlockFinder.findNextBlockAddress(stream, address), address);
+            address = next;
+            blocks++;
+        }
+        Assert.assertEquals(address, stream.length());
+        Assert.assertTrue(blocks > 1);
+        stream.close();
+    }
+}
@@ -23,6 +23,7 @@
  */
 package htsjdk.samtools.util;
 
+import htsjdk.samtools.util.zip.DeflaterFactory;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.AfterTest;
@@ -102,6 +103,123 @@ public class SortingCollectionTest {
         Assert.assertEquals(tmpDir().list().length, 0);
     }
 
+    @Test(dataProvider = "test1")
+    public void testSortKeyComparator(final String testName, final int numStringsToGenerate, final int maxRecordsInRam) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = SortingCollection.newInstance(String.class, new StringCodec(),
+                new StringLengthComparator(), maxRecordsInRam, tmpDir());
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringLengthComparator());
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        sortingCollection.cleanup();
+    }
+
+    @Test
+    public void testTempStreamFactory() {
+        final String[] strings = new String[1000];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(100);
+        final TempStreamFactory tempStreamFactory = new TempStreamFactory(TempBlockCodec.deflate(1, new DeflaterFactory()), 1000, 2);
+        sortingCollection.setTempStreamFactory(tempStreamFactory);
+        for (final String s : new RandomStringGenerator(strings.length)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        Assert.assertTrue(tempStreamFactory.getBytesWritten() > 0);
+        Assert.assertTrue(tempStreamFactory.getTempBytesWritten() < tempStreamFactory.getBytesWritten());
+        sortingCollection.cleanup();
+    }
+
+    @DataProvider(name = "maxBytesInRam")
+    public Object[][] createMaxBytesInRamTestData() {
+        return new Object[][] {
+                {"empty", 0, 1000, new StringComparator(), false},
+                {"singleton", 1, 1000, new StringComparator(), false},
+                {"in memory", 100, 100000, new StringComparator(), false},
+                {"in memory with sort keys", 100, 100000, new StringLengthComparator(), false},
+                {"in memory with finer sort keys", 100, 100000, new StringLengthComparatorWithKeyBytes(), false},
+                {"spilled", 1000, 5000, new StringComparator(), true},
+                {"spilled with sort keys", 1000, 5000, new StringLengthComparator(), true},
+                {"spilled with finer sort keys", 1000, 5000, new StringLengthComparatorWithKeyBytes(), true},
+        };
+    }
+
+    @Test(dataProvider = "maxBytesInRam")
+    public void testMaxBytesInRam(final String testName, final int numStringsToGenerate, final long maxBytesInRam,
+                                  final Comparator<String> comparator, final boolean expectSpill) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = SortingCollection.newInstanceWithMaxBytesInRam(String.class,
+                new StringCodec(), comparator, maxBytesInRam, tmpDir());
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, comparator);
+
+        Assert.assertEquals(tmpDirIsEmpty(), !expectSpill);
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @Test
+    public void testFinerSortKeysAvoidDecoding() {
+        final CountingStringCodec codec = new CountingStringCodec();
+        final RecordArena<String> arena = new RecordArena<String>(codec, new StringLengthComparatorWithKeyBytes());
+        final String[] strings = new String[1000];
+        int numStringsGenerated = 0;
+        for (final String s : new RandomStringGenerator(strings.length)) {
+            arena.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringLengthComparator());
+
+        // the strings are distinct, so their finer keys decide every comparison
+        arena.sort();
+        Assert.assertEquals(codec.decodes[0], 0);
+        for (int i = 0; i < strings.length; ++i) {
+            Assert.assertEquals(arena.get(i), strings[i]);
+        }
+    }
+
+    @Test
+    public void testTiedKeysAreDecodedInChunks() {
+        // not a SortKeyComparator, so every record has the same key, and many records tie under the comparator too
+        final Comparator<String> comparator = new Comparator<String>() {
+            @Override
+            public int compare(final String s1, final String s2) {
+                return Character.compare(s1.charAt(s1.length() - 1), s2.charAt(s2.length() - 1));
+            }
+        };
+        final RecordArena<String> arena = new RecordArena<String>(new StringCodec(), comparator);
+        final String[] strings = new String[2000];
+        int numStringsGenerated = 0;
+        for (final String s : new RandomStringGenerator(strings.length)) {
+            arena.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, comparator);
+
+        arena.sort();
+        Assert.assertTrue(arena.getMaxRecordsDecoded() <= strings.length / 8, "decoded " + arena.getMaxRecordsDecoded());
+        for (int i = 0; i < strings.length; ++i) {
+            Assert.assertEquals(arena.get(i), strings[i]);
+        }
+    }
+
     private void assertIteratorEqualsList(final String[] strings, final Iterator<String> sortingCollection) {
         int i = 0;
         while (sortingCollection.hasNext()) {
@@ -155,6 +273,51 @@ public class SortingCollectionTest {
         }
     }
 
+    /** Orders strings by length, and then lexicographically; the sort key is the length. */
+    static class StringLengthComparator implements SortKeyComparator<String> {
+
+        public int compare(final String s, final String s1) {
+            return s.length() != s1.length() ? s.length() - s1.length() : s.compareTo(s1);
+        }
+
+        public long getSortKey(final String s) {
+            return s.length();
+        }
+    }
+
+    /** Orders strings like {@link StringLengthComparator}, with the bytes of the string as the finer key. */
+    static class StringLengthComparatorWithKeyBytes extends StringLengthComparator {
+
+        @Override
+        public byte[] getSortKeyBytes(final String s) {
+            return s.getBytes();
+        }
+    }
+
+    /** Counts the records decoded by it and its clones. */
+    static class CountingStringCodec extends StringCodec {
+        final int[] decodes;
+
+        CountingStringCodec() {
+            this(new int[1]);
+        }
+
+        private CountingStringCodec(final int[] decodes) {
+            this.decodes = decodes;
+        }
+
+        @Override
+        public SortingCollection.Codec<String> clone() {
+            return new CountingStringCodec(decodes);
+        }
+
+        @Override
+        public String decode() {
+            ++decodes[0];
+            return super.decode();
+        }
+    }
+
     static class StringCodec implements SortingCollection.Codec<String> {
         ByteBuffer byteBuffer = ByteBuffer.allocate(4);
         OutputStream os;
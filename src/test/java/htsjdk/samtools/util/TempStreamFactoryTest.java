@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.util.zip.DeflaterFactory;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+public class TempStreamFactoryTest {
+
+    @DataProvider(name = "factories")
+    public Object[][] factories() {
+        return new Object[][] {
+                {new TempStreamFactory(), true},
+                {new TempStreamFactory(TempBlockCodec.deflate(1, new DeflaterFactory()), 1000, 0), true},
+                {new TempStreamFactory(TempBlockCodec.deflate(1, new DeflaterFactory()), 1000, 3), true},
+                // blocks that do not get smaller are stored uncompressed
+                {new TempStreamFactory(TempBlockCodec.deflate(0, new DeflaterFactory()), 1000, 3), false},
+                {new TempStreamFactory(TempBlockCodec.snappy(), TempStreamFactory.DEFAULT_BLOCK_SIZE, 2), true},
+        };
+    }
+
+    @Test(dataProvider = "factories")
+    public void testRoundTrip(final TempStreamFactory factory, final boolean compressed) throws IOException {
+        // compressible data: random letters from a small alphabet, written in pieces of random size
+        final Random random = new Random(0);
+        final byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) ('A' + random.nextInt(4));
+
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        final OutputStream os = factory.wrapTempOutputStream(file, 100);
+        for (int i = 0; i < data.length; ) {
+            if (random.nextBoolean()) {
+                os.write(data[i++]);
+            } else {
+                final int n = Math.min(data.length - i, random.nextInt(3000));
+                os.write(data, i, n);
+                i += n;
+            }
+        }
+        os.close();
+        Assert.assertEquals(factory.getBytesWritten(), data.length);
+        Assert.assertEquals(factory.getTempBytesWritten(), file.size());
+        Assert.assertEquals(file.size() < data.length, compressed, "temp file size " + file.size());
+
+        final InputStream is = factory.wrapTempInputStream(new ByteArrayInputStream(file.toByteArray()), 100);
+        final byte[] actual = new byte[data.length];
+        int n = 0;
+        while (n < actual.length) {
+            if (random.nextBoolean()) {
+                final int b = is.read();
+                Assert.assertTrue(b >= 0, "unexpected end of stream at " + n);
+                actual[n++] = (byte) b;
+            } else {
+                final int read = is.read(actual, n, Math.min(actual.length - n, 1 + random.nextInt(3000)));
+                Assert.assertTrue(read > 0, "unexpected end of stream at " + n);
+                n += read;
+            }
+        }
+        Assert.assertEquals(is.read(), -1);
+        Assert.assertEquals(actual, data);
+        is.close();
+    }
+}
@@ -109,4 +109,44 @@ public class AbstractFeatureReaderTest {
         Assert.assertEquals(AbstractFeatureReader.hasBlockCompressedExtension(testURI), expected);
     }
 
+    @DataProvider(name = "asyncReading")
+    public Object[][] createAsyncReading() {
+        final String yri = TestUtils.DATA_DIR + "tabix/YRI.trio.2010_07.indel.sites.vcf.gz";
+        final String testVcf = TestUtils.DATA_DIR + "test.vcf";
+        final String testVcfGz = TestUtils.DATA_DIR + "test.vcf.gz";
+        return new Object[][]{
+                {yri, false, 0}, {yri, true, 0}, {yri, false, 1}, {yri, false, 4},
+                {testVcf, true, 0}, {testVcf, false, 3},
+                {testVcfGz, true, 0}, {testVcfGz, false, 2}
+        };
+    }
+
+    @Test(dataProvider = "asyncReading")
+    public void testAsyncReading(final String path, final boolean useAsyncIo, final int decodingThreads) throws IOException {
+        final AbstractFeatureReader<VariantContext, LineIterator> expected = AbstractFeatureReader.getFeatureReader(path, new VCFCodec(), false);
+        final AbstractFeatureReader<VariantContext, LineIterator> actual = AbstractFeatureReader.getFeatureReader(path, new VCFCodec(), false);
+        actual.setUseAsyncIo(useAsyncIo);
+        actual.setDecodingThreads(decodingThreads, VCFCodec::new);
+
+        final CloseableTribbleIterator<VariantContext> expectedIterator = expected.iterator();
+        final CloseableTribbleIterator<VariantContext> actualIterator = actual.iterator();
+        int n = 0;
+        while (expectedIterator.hasNext()) {
+            Assert.assertTrue(actualIterator.hasNext());
+            Assert.assertEquals(actualIterator.next().toStringDecodeGenotypes(), expectedIterator.next().toStringDecodeGenotypes());
+            n++;
+        }
+        Assert.assertFalse(actualIterator.hasNext());
+        Assert.assertTrue(n > 0);
+        expectedIterator.close();
+        actualIterator.close();
+
+        // closing part way through stops the background threads
+        final CloseableTribbleIterator<VariantContext> partial = actual.iterator();
+        Assert.assertTrue(partial.hasNext());
+        partial.next();
+        partial.close();
+        expected.close();
+        actual.close();
+    }
 }
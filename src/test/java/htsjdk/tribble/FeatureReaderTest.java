@@ -2,6 +2,7 @@ package htsjdk.tribble;
 
 import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.LocationAware;
 import htsjdk.tribble.bed.BEDCodec;
 import htsjdk.tribble.example.ExampleBinaryCodec;
@@ -9,6 +10,9 @@ import htsjdk.tribble.index.Block;
 import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.IndexFactory;
 import htsjdk.tribble.util.ParsingUtils;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCF3Codec;
+import htsjdk.variant.vcf.VCFCodec;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -17,9 +21,12 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 
 public class FeatureReaderTest {
@@ -96,6 +103,101 @@ public class FeatureReaderTest {
         reader.close();
     }
 
+    @Test(dataProvider = "indexProvider")
+    public void testMultiIntervalQuery(final File featureFile, final IndexFactory.IndexType indexType, final FeatureCodec<Feature, LocationAware> codec) throws IOException {
+        final AbstractFeatureReader<Feature, ?> reader = getReader(featureFile, indexType, codec);
+        final List<Interval> intervals = Arrays.asList(
+                new Interval("chr2", 5, 25),
+                new Interval("chr1", 100005, 100006),
+                new Interval("chr1", 150, 250),
+                new Interval("chr1", 201, 350),
+                new Interval("chr1", 100001, 100030),
+                new Interval("chr1", 500, 600),
+                new Interval("chr3", 1, 201));
+        testMultiIntervalQuery(reader, intervals);
+        reader.close();
+    }
+
+    @Test
+    public void testCoalesceBlocks() {
+        final long gap = TribbleIndexedFeatureReader.MAX_COALESCED_GAP;
+        final List<Block> blocks = Arrays.asList(new Block(100, 50), new Block(0, 10), new Block(5, 3), new Block(160, 10),
+                new Block(170 + gap, 10), new Block(180 + gap, 0));
+        final List<Block> coalesced = TribbleIndexedFeatureReader.coalesceBlocks(blocks);
+        Assert.assertEquals(coalesced.size(), 2);
+        Assert.assertEquals(coalesced.get(0).getStartPosition(), 0);
+        Assert.assertEquals(coalesced.get(0).getEndPosition(), 170);
+        Assert.assertEquals(coalesced.get(1).getStartPosition(), 170 + gap);
+        Assert.assertEquals(coalesced.get(1).getEndPosition(), 180 + gap);
+        Assert.assertTrue(TribbleIndexedFeatureReader.coalesceBlocks(new ArrayList<Block>()).isEmpty());
+    }
+
+    @Test
+    public void testMultiIntervalQueryTabix() throws IOException {
+        final File vcf = new File(TestUtils.DATA_DIR + "tabix/YRI.trio.2010_07.indel.sites.vcf.gz");
+        final AbstractFeatureReader<VariantContext, ?> reader = AbstractFeatureReader.getFeatureReader(vcf.getAbsolutePath(), new VCFCodec());
+        final Random random = new Random(42);
+        final List<Interval> intervals = new ArrayList<Interval>();
+        for (int i = 0; i < 200; i++) {
+            final String contig = reader.getSequenceNames().get(random.nextInt(reader.getSequenceNames().size()));
+            final int start = 1 + random.nextInt(50000000);
+            intervals.add(new Interval(contig, start, start + random.nextInt(200000)));
+        }
+        testMultiIntervalQuery(reader, intervals);
+        reader.close();
+    }
+
+    @Test
+    public void testMultiIntervalQueryTabixContigOrder() throws IOException {
+        final File vcf = new File(TestUtils.DATA_DIR + "tabix/trioDup.vcf.gz");
+        final AbstractFeatureReader<VariantContext, ?> reader = AbstractFeatureReader.getFeatureReader(vcf.getAbsolutePath(), new VCF3Codec());
+        // query the contigs out of file order; "10" sorts after "X" in hash order
+        final List<Interval> intervals = new ArrayList<Interval>();
+        for (final String contig : Arrays.asList("Y", "X", "10", "3", "2", "1")) {
+            intervals.add(new Interval(contig, 1, Integer.MAX_VALUE - 1));
+        }
+        final List<String> contigs = new ArrayList<String>();
+        try (final CloseableTribbleIterator<VariantContext> iter = reader.query(new MultiIntervalQuery<Interval>(intervals))) {
+            for (final VariantContext vc : iter) {
+                if (contigs.isEmpty() || !contigs.get(contigs.size() - 1).equals(vc.getContig())) contigs.add(vc.getContig());
+            }
+        }
+        Assert.assertEquals(contigs, Arrays.asList("1", "2", "3", "10", "X", "Y"));
+        testMultiIntervalQuery(reader, intervals);
+        reader.close();
+    }
+
+    /** Checks a multi-interval query against a scan of the whole file. */
+    private static <T extends Feature> void testMultiIntervalQuery(final AbstractFeatureReader<T, ?> reader, final List<Interval> intervals) throws IOException {
+        final MultiIntervalQuery<Interval> query = new MultiIntervalQuery<Interval>(intervals);
+        final List<String> expected = new ArrayList<String>();
+        final List<List<Interval>> expectedOverlaps = new ArrayList<List<Interval>>();
+        for (final T f : reader.iterator()) {
+            final List<Interval> overlaps = new ArrayList<Interval>();
+            for (final Interval interval : intervals) {
+                if (interval.getContig().equals(f.getContig()) && interval.getStart() <= f.getEnd() && interval.getEnd() >= f.getStart()) {
+                    overlaps.add(interval);
+                }
+            }
+            if (!overlaps.isEmpty()) {
+                expected.add(f.getContig() + ":" + f.getStart() + "-" + f.getEnd());
+                expectedOverlaps.add(overlaps);
+            }
+        }
+
+        final List<String> actual = new ArrayList<String>();
+        try (final CloseableTribbleIterator<T> iter = reader.query(query)) {
+            for (final T f : iter) {
+                actual.add(f.getContig() + ":" + f.getStart() + "-" + f.getEnd());
+                final List<Interval> overlaps = query.getOverlappingIntervals(f);
+                Assert.assertEquals(new HashSet<Interval>(overlaps), new HashSet<Interval>(expectedOverlaps.get(actual.size() - 1)));
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(reader.query(intervals).toList().size(), expected.size());
+    }
+
     private void testQuery(final AbstractFeatureReader<Feature, ?> reader, final String chr, final int start, final int stop, final int expectedNumRecords) throws IOException {
         final Iterator<Feature> iter = reader.query(chr, start, stop);
         int count = 0;
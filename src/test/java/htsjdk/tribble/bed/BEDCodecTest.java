@@ -34,6 +34,7 @@ import htsjdk.tribble.index.linear.LinearIndex;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.awt.*;
@@ -41,6 +42,9 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class BEDCodecTest {
@@ -222,6 +226,117 @@ public class BEDCodecTest {
         }
     }
 
+    @Test
+    public void testStreamingDecodeMatchesDecode() throws IOException {
+        final List<String> lines = new ArrayList<String>(Arrays.asList(
+                "chr1 1", "chr1\t1\t3", "chr1  1   3", "chr1 \t1\t3", "chr1\t1\t3\t", "chr1",
+                "chr2 -5 +7", "chr2 2147483646 2147483647",
+                "chr22 1000 5000 cloneA 960 + 1000 5000 0 2 567,488, 0,3512",
+                "chr22 2000 6000 \"cloneB\" 900 - 2000 6000 255,0,0 2 433,399, 0,3601",
+                "chr22 2000 6000 cloneC notAScore - 2000 6000 255,0,0 2 433,399, 0,3601",
+                "chr22\t2000\t6000\tcloneD\t1.5e2\t.\t2000\t6000\tred\t2\t433,399,\t0,3601\textra\tcolumns",
+                "chr22 2000 6000 cloneE 0 \t \t", "", "   ", "#comment", "track name=x", "browser position chr1"));
+        for (final String file : new String[]{"test.bed", "fakeBed.bed", "bed/Unigene.sample.bed", "bed/NA12878.deletions.10kbp.het.gq99.hand_curated.hg19_fixed.bed"}) {
+            lines.addAll(Files.readAllLines(new File(TestUtils.DATA_DIR + file).toPath()));
+        }
+
+        for (final BEDCodec.StartOffset offset : BEDCodec.StartOffset.values()) {
+            final BEDCodec codec = new BEDCodec(offset);
+            final StreamingBEDCodec streamingCodec = new StreamingBEDCodec(offset);
+            for (final String line : lines) {
+                final BEDFeature expected;
+                try {
+                    expected = codec.decode(line);
+                } catch (final NumberFormatException e) {
+                    assertThrowsNumberFormatException(() -> streamingCodec.decode(line), line);
+                    assertThrowsNumberFormatException(() -> codec.decodeLoc(line), line);
+                    continue;
+                }
+                final BEDFeature actual = streamingCodec.decode(line);
+                final Feature location = codec.decodeLoc(line);
+                if (expected == null) {
+                    Assert.assertNull(actual, line);
+                    Assert.assertNull(location, line);
+                    continue;
+                }
+                Assert.assertEquals(actual.getContig(), expected.getContig(), line);
+                Assert.assertEquals(actual.getStart(), expected.getStart(), line);
+                Assert.assertEquals(actual.getEnd(), expected.getEnd(), line);
+                Assert.assertEquals(location.getContig(), expected.getContig(), line);
+                Assert.assertEquals(location.getStart(), expected.getStart(), line);
+                Assert.assertEquals(location.getEnd(), expected.getEnd(), line);
+                Assert.assertEquals(actual.getName(), expected.getName(), line);
+                Assert.assertEquals(Float.compare(actual.getScore(), expected.getScore()), 0, line);
+                Assert.assertEquals(actual.getStrand(), expected.getStrand(), line);
+                Assert.assertEquals(actual.getColor(), expected.getColor(), line);
+                Assert.assertEquals(actual.getType(), expected.getType(), line);
+                Assert.assertEquals(actual.getDescription(), expected.getDescription(), line);
+                Assert.assertEquals(actual.getLink(), expected.getLink(), line);
+                Assert.assertEquals(actual.getExons().size(), expected.getExons().size(), line);
+                for (int i = 0; i < expected.getExons().size(); i++) {
+                    final Exon expectedExon = expected.getExons().get(i);
+                    final Exon actualExon = actual.getExons().get(i);
+                    Assert.assertEquals(actualExon.start, expectedExon.start, line);
+                    Assert.assertEquals(actualExon.end, expectedExon.end, line);
+                    Assert.assertEquals(actualExon.getNumber(), expectedExon.getNumber(), line);
+                    Assert.assertEquals(actualExon.getCdStart(), expectedExon.getCdStart(), line);
+                    Assert.assertEquals(actualExon.getCdEnd(), expectedExon.getCdEnd(), line);
+                }
+            }
+        }
+    }
+
+    private static void assertThrowsNumberFormatException(final Runnable decode, final String line) {
+        try {
+            decode.run();
+            Assert.fail("Expected a NumberFormatException for " + line);
+        } catch (final NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStreamingDecodeReusesFeature() {
+        final StreamingBEDCodec codec = new StreamingBEDCodec();
+        final BEDFeature first = codec.decode("chr1 10 20 a");
+        final String contig = first.getContig();
+        final FullBEDFeature copy = ((MutableBEDFeature) first).toFullBEDFeature();
+        final BEDFeature second = codec.decode("chr1 30 40 b");
+        Assert.assertSame(second, first);
+        Assert.assertSame(second.getContig(), contig, "the contig name should be reused");
+        Assert.assertEquals(second.getStart(), 31);
+        Assert.assertEquals(second.getName(), "b");
+        Assert.assertEquals(copy.getStart(), 11);
+        Assert.assertEquals(copy.getName(), "a");
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void testStreamingDecodeBadStart() {
+        new StreamingBEDCodec().decode("chr1 x 20");
+    }
+
+    @DataProvider(name = "integers")
+    public Object[][] integers() {
+        return new Object[][]{{"0"}, {"-0"}, {"+12"}, {"2147483647"}, {"-2147483648"}, {"2147483648"}, {"-2147483649"},
+                {"99999999999"}, {"-"}, {"+"}, {""}, {"1x"}, {"1.5"}, {" 1"}};
+    }
+
+    @Test(dataProvider = "integers")
+    public void testParseInt(final String s) {
+        final String line = "ab" + s + "cd";
+        Integer expected = null;
+        try {
+            expected = Integer.parseInt(s);
+        } catch (final NumberFormatException e) {
+            // expected is null
+        }
+        try {
+            Assert.assertEquals((Integer) MutableBEDFeature.parseInt(line, 2, 2 + s.length()), expected);
+        } catch (final NumberFormatException e) {
+            Assert.assertNull(expected, s);
+        }
+    }
+
     @Test
     public void testGetTabixFormat() {
         Assert.assertEquals(new BEDCodec().getTabixFormat(), TabixFormat.BED);
@@ -25,19 +25,39 @@ package htsjdk.tribble.index;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.FeatureCodecHeader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.SimpleFeature;
 import htsjdk.tribble.TestUtils;
 import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.index.interval.IntervalIndexCreator;
+import htsjdk.tribble.index.linear.LinearIndexCreator;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFFileReader;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * User: jacob
@@ -84,7 +104,7 @@ public class IndexFactoryTest {
     }
 
     @Test
-    public void testCreateTabixIndexOnBlockCompressed() {
+    public void testCreateTabixIndexOnBlockCompressed() throws IOException {
         // index a VCF
         final File inputFileVcf = new File("src/test/resources/htsjdk/tribble/tabix/testTabixIndex.vcf");
         final VCFFileReader readerVcf = new VCFFileReader(inputFileVcf, false);
@@ -111,5 +131,166 @@ public class IndexFactoryTest {
                     tabixIndexVcfGz.containsChromosome(samSequenceRecord.getSequenceName()),
                     "Tabix indexed (bgzipped) VCF does not contain sequence: " + samSequenceRecord.getSequenceName());
         }
+
+        assertQueriesFindAllRecords(inputFileVcfGz, tabixIndexVcfGz);
+
+        // the index of a bgzipped VCF spanning several blocks must hold virtual file pointers
+        final File multiBlockVcfGz = new File(TestUtils.DATA_DIR + "tabix/YRI.trio.2010_07.indel.sites.vcf.gz");
+        assertQueriesFindAllRecords(multiBlockVcfGz, IndexFactory.createTabixIndex(multiBlockVcfGz, new VCFCodec(), TabixFormat.VCF, null));
+    }
+
+    private static void assertQueriesFindAllRecords(final File vcfGz, final TabixIndex index) throws IOException {
+        final File indexFile = File.createTempFile("assertQueriesFindAllRecords.", ".tbi");
+        indexFile.deleteOnExit();
+        index.write(indexFile);
+        final FeatureReader<VariantContext> reader =
+                AbstractFeatureReader.getFeatureReader(vcfGz.getAbsolutePath(), indexFile.getAbsolutePath(), new VCFCodec(), true);
+        final Map<String, Integer> expectedCounts = new HashMap<String, Integer>();
+        for (final VariantContext vc : reader.iterator()) {
+            expectedCounts.put(vc.getContig(), expectedCounts.getOrDefault(vc.getContig(), 0) + 1);
+        }
+        Assert.assertFalse(expectedCounts.isEmpty());
+        for (final Map.Entry<String, Integer> entry : expectedCounts.entrySet()) {
+            int count = 0;
+            final CloseableIterator<VariantContext> it = reader.query(entry.getKey(), 1, Integer.MAX_VALUE);
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            it.close();
+            Assert.assertEquals(count, (int) entry.getValue(), "records on " + entry.getKey() + " in " + vcfGz);
+        }
+        reader.close();
+    }
+
+    @DataProvider(name = "parallelIndexing")
+    public Object[][] getParallelIndexing() {
+        return new Object[][] {
+                new Object[] { 1000L, 3 },
+                new Object[] { 10000L, 8 },
+                new Object[] { 100000L, 2 }
+        };
+    }
+
+    @Test(dataProvider = "parallelIndexing")
+    public void testCreateTabixIndexInParallel(final long rangeSize, final int nThreads) throws IOException {
+        final File inputFile = new File(TestUtils.DATA_DIR + "tabix/YRI.trio.2010_07.indel.sites.vcf.gz");
+        final Index expected = IndexFactory.createTabixIndex(inputFile, new VCFCodec(), TabixFormat.VCF, null);
+        final Index actual = new ParallelFeatureIndexer(inputFile, VCFCodec::new, rangeSize)
+                .createIndex(new TabixIndexCreator(TabixFormat.VCF), nThreads);
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(IndexFactory.createTabixIndex(inputFile, VCFCodec::new, TabixFormat.VCF, null, nThreads), expected);
+
+        // the index must find the same records as a scan of the whole file
+        final File indexFile = File.createTempFile("parallel.", ".tbi");
+        indexFile.deleteOnExit();
+        ((TabixIndex) actual).write(indexFile);
+        final FeatureReader<VariantContext> reader =
+                AbstractFeatureReader.getFeatureReader(inputFile.getAbsolutePath(), indexFile.getAbsolutePath(), new VCFCodec(), true);
+        final List<VariantContext> all = new ArrayList<VariantContext>();
+        for (final VariantContext vc : reader.iterator()) all.add(vc);
+        Assert.assertTrue(all.size() > 1000);
+        final int last = all.get(all.size() - 1).getStart();
+        for (int start = 1; start < last; start += last / 7) {
+            final int end = start + last / 50;
+            final List<Integer> expectedStarts = new ArrayList<Integer>();
+            for (final VariantContext vc : all) {
+                if (vc.getStart() <= end && vc.getEnd() >= start) expectedStarts.add(vc.getStart());
+            }
+            final List<Integer> actualStarts = new ArrayList<Integer>();
+            final CloseableIterator<VariantContext> it = reader.query("1", start, end);
+            while (it.hasNext()) actualStarts.add(it.next().getStart());
+            it.close();
+            Assert.assertEquals(actualStarts, expectedStarts, "query 1:" + start + "-" + end);
+        }
+        reader.close();
+    }
+
+    @Test(dataProvider = "indexFactoryProvider")
+    public void testCreateIndexInParallel(final IndexFactory.IndexType type) throws IOException {
+        final Index expected = IndexFactory.createIndex(sortedBedFile, new BEDCodec(), type);
+        final Index actual = new ParallelFeatureIndexer(sortedBedFile, BEDCodec::new, 500)
+                .createIndex(type == IndexFactory.IndexType.LINEAR ? new LinearIndexCreator(sortedBedFile) : new IntervalIndexCreator(sortedBedFile), 4);
+        Assert.assertEquals(toBytes(actual), toBytes(expected));
+        Assert.assertEquals(toBytes(IndexFactory.createIndex(sortedBedFile, BEDCodec::new, type, null, 2)), toBytes(expected));
+    }
+
+    private static byte[] toBytes(final Index index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final LittleEndianOutputStream out = new LittleEndianOutputStream(bytes);
+        index.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Test(expectedExceptions = TribbleException.MalformedFeatureFile.class, dataProvider = "indexFactoryProvider")
+    public void testCreateIndexInParallelUnsorted(final IndexFactory.IndexType type) {
+        IndexFactory.createIndex(unsortedBedFile, BEDCodec::new, type, null, 2);
+    }
+
+    /**
+     * Reads a header of lines without a comment marker, up to and including a line "END", and reports where it ends.
+     * Header lines are not features, so decoding one is an error.
+     */
+    private static class UnmarkedHeaderCodec extends AsciiFeatureCodec<SimpleFeature> {
+        UnmarkedHeaderCodec() {
+            super(SimpleFeature.class);
+        }
+
+        @Override
+        public FeatureCodecHeader readHeader(final LineIterator lineIterator) {
+            long headerEnd = 0;
+            while (lineIterator.hasNext()) {
+                final String line = lineIterator.next();
+                headerEnd += line.length() + 1;
+                if (line.equals("END")) break;
+            }
+            return new FeatureCodecHeader(null, headerEnd);
+        }
+
+        @Override
+        public Object readActualHeader(final LineIterator reader) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SimpleFeature decode(final String line) {
+            final String[] fields = line.split("\t");
+            if (fields.length != 3) throw new TribbleException("Not a feature: " + line);
+            return new SimpleFeature(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+        }
+
+        @Override
+        public boolean canDecode(final String path) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testCreateIndexInParallelSkipsHeader() throws IOException {
+        // a header longer than a BGZF block, so that it spans several ranges of the compressed file too
+        final File plainFile = File.createTempFile("unmarkedHeader.", ".txt");
+        plainFile.deleteOnExit();
+        final File gzFile = File.createTempFile("unmarkedHeader.", ".txt.gz");
+        gzFile.deleteOnExit();
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) text.append("header line ").append(i).append('\n');
+        text.append("END\n");
+        for (int i = 0; i < 5000; i++) text.append("chr1\t").append(10 * i + 1).append('\t').append(10 * i + 5).append('\n');
+        final byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+        Files.write(plainFile.toPath(), bytes);
+        final BlockCompressedOutputStream gzStream = new BlockCompressedOutputStream(gzFile);
+        gzStream.write(bytes);
+        gzStream.close();
+
+        final Index expected = IndexFactory.createLinearIndex(plainFile, new UnmarkedHeaderCodec());
+        final Index actual = new ParallelFeatureIndexer(plainFile, UnmarkedHeaderCodec::new, 1000)
+                .createIndex(new LinearIndexCreator(plainFile), 3);
+        Assert.assertEquals(toBytes(actual), toBytes(expected));
+
+        final TabixIndex expectedTabix = IndexFactory.createTabixIndex(gzFile, new UnmarkedHeaderCodec(), TabixFormat.BED, null);
+        final Index actualTabix = new ParallelFeatureIndexer(gzFile, UnmarkedHeaderCodec::new, 1000)
+                .createIndex(new TabixIndexCreator(TabixFormat.BED), 3);
+        Assert.assertEquals(actualTabix, expectedTabix);
     }
 }
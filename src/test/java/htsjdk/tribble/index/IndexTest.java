@@ -1,15 +1,20 @@
 package htsjdk.tribble.index;
 
 import htsjdk.tribble.TestUtils;
+import htsjdk.tribble.bed.BEDCodec;
 import htsjdk.tribble.index.linear.LinearIndex;
+import htsjdk.tribble.util.LittleEndianOutputStream;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Random;
 
 
 public class IndexTest {
@@ -47,4 +52,70 @@ public class IndexTest {
 
         Assert.assertTrue(allSize >= Math.max(leftSize,rightSize), "Expected size of joint query " + allSize + " to be at least >= max of left " + leftSize + " and right queries " + rightSize);
     }
+
+    @Test
+    public void testIntervalTreeQueriesLeaveIndexUnchanged() throws IOException {
+        final Index index = IndexFactory.createIntervalIndex(new File(TestUtils.DATA_DIR + "test.bed"), new BEDCodec(), 2);
+        final byte[] before = toBytes(index);
+        for (final String chr : index.getSequenceNames()) {
+            final List<Block> all = index.getBlocks(chr, 1, Integer.MAX_VALUE);
+            Assert.assertFalse(all.isEmpty());
+            for (int i = 1; i < all.size(); i++) {
+                Assert.assertTrue(all.get(i - 1).getEndPosition() < all.get(i).getStartPosition(), "blocks should be sorted and disjoint");
+            }
+            index.getBlocks(chr, 1, 100);
+        }
+        Assert.assertEquals(toBytes(index), before);
+    }
+
+    private static byte[] toBytes(final Index index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final LittleEndianOutputStream out = new LittleEndianOutputStream(bytes);
+        index.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @DataProvider(name = "MappedIndexProvider")
+    public Object[][] makeMappedIndexProvider() throws IOException {
+        final File intervalTreeIndexFile = File.createTempFile("htsjdk-test.mappedindex", ".idx");
+        intervalTreeIndexFile.deleteOnExit();
+        IndexFactory.writeIndex(IndexFactory.createIntervalIndex(new File(TestUtils.DATA_DIR + "test.bed"), new BEDCodec(), 2), intervalTreeIndexFile);
+        return new Object[][]{
+                {MassiveIndexFile},
+                {new File(TestUtils.DATA_DIR + "trio.vcf.idx")},
+                {intervalTreeIndexFile}
+        };
+    }
+
+    @Test(dataProvider = "MappedIndexProvider")
+    public void testMappedIndex(final File indexFile) throws IOException {
+        final Index index = IndexFactory.loadIndex(indexFile.getAbsolutePath());
+        final MappedIndex mapped = IndexFactory.mapIndex(indexFile);
+
+        Assert.assertEquals(mapped.getSequenceNames(), index.getSequenceNames());
+        Assert.assertEquals(mapped.getProperties(), index.getProperties());
+        Assert.assertEquals(mapped.isCurrentVersion(), index.isCurrentVersion());
+        Assert.assertFalse(mapped.containsChromosome("noSuchContig"));
+        if (index instanceof LinearIndex) { // interval tree indices never compare equal, as their ChrIndex has no equals
+            Assert.assertTrue(mapped.equalsIgnoreProperties(index));
+        }
+
+        final Random random = new Random(42);
+        for (final String chr : index.getSequenceNames()) {
+            Assert.assertTrue(mapped.containsChromosome(chr));
+            for (int i = 0; i < 1000; i++) {
+                final int start = 1 + random.nextInt(i < 500 ? 1000 : 250000000);
+                final int end = start + random.nextInt(i % 2 == 0 ? 100 : 10000000);
+                Assert.assertEquals(mapped.getBlocks(chr, start, end), index.getBlocks(chr, start, end), chr + ":" + start + "-" + end);
+            }
+        }
+
+        // the mapped index is written out unchanged
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final LittleEndianOutputStream stream = new LittleEndianOutputStream(bytes);
+        mapped.write(stream);
+        stream.close();
+        Assert.assertEquals(bytes.toByteArray(), Files.readAllBytes(indexFile.toPath()));
+    }
 }
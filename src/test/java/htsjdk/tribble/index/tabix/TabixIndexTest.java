@@ -23,8 +23,15 @@
  */
 package htsjdk.tribble.index.tabix;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.TestUtils;
+import htsjdk.tribble.bed.BEDCodec;
 import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.readers.AsciiLineReader;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import htsjdk.tribble.util.TabixUtils;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -37,6 +44,8 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Iterator;
 
 public class TabixIndexTest {
@@ -140,4 +149,75 @@ public class TabixIndexTest {
         }
         return counter;
     }
+
+    @Test
+    public void testIndexOnTheFlyMatchesIndexFactory() throws IOException {
+        final File output = File.createTempFile("testIndexOnTheFly.", ".bed.gz");
+        output.deleteOnExit();
+        final File indexFile = new File(output.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION);
+        indexFile.deleteOnExit();
+        final BEDCodec codec = new BEDCodec();
+        final TabixIndexingFeatureWriter<Feature> writer = new TabixIndexingFeatureWriter<Feature>(output, TabixFormat.BED, null);
+        for (final String line : Files.readAllLines(new File(TestUtils.DATA_DIR + "bed/Unigene.sample.bed").toPath())) {
+            writer.add(codec.decode(line), line);
+        }
+        writer.close();
+
+        final TabixIndex expected = IndexFactory.createTabixIndex(output, new BEDCodec(), TabixFormat.BED, null);
+        Assert.assertEquals(writer.getIndex(), expected);
+        // an index read from disk is only comparable to another one read from disk
+        final File expectedIndexFile = File.createTempFile("testIndexOnTheFly.", TabixUtils.STANDARD_INDEX_EXTENSION);
+        expectedIndexFile.deleteOnExit();
+        expected.write(expectedIndexFile);
+        Assert.assertEquals(new TabixIndex(indexFile), new TabixIndex(expectedIndexFile));
+    }
+
+    @Test
+    public void testIndexOnTheFlyQueries() throws IOException {
+        final File input = new File(TestUtils.DATA_DIR + "tabix/YRI.trio.2010_07.indel.sites.vcf.gz");
+        final File output = File.createTempFile("testIndexOnTheFly.", ".vcf.gz");
+        output.deleteOnExit();
+        final File indexFile = new File(output.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION);
+        indexFile.deleteOnExit();
+
+        // copy the lines of the input, with the locations of the variants taken from the CHROM, POS and REF columns
+        final TabixIndexingFeatureWriter<Feature> writer = new TabixIndexingFeatureWriter<Feature>(output, TabixFormat.VCF, null);
+        final AsciiLineReader reader = new AsciiLineReader(new BlockCompressedInputStream(input));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.startsWith("#")) {
+                writer.writeHeaderLine(line);
+            } else {
+                final String[] fields = line.split("\t", 5);
+                final int start = Integer.parseInt(fields[1]);
+                writer.add(new SimpleFeature(fields[0], start, start + fields[3].length() - 1), line);
+            }
+        }
+        reader.close();
+        writer.close();
+        Assert.assertTrue(output.length() > 3 * 65536, "the output should span several blocks");
+
+        final VCFFileReader expected = new VCFFileReader(input, new File(input.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION));
+        final VCFFileReader actual = new VCFFileReader(output, indexFile);
+        for (int start = 1; start < 250000000; start += 3000000) {
+            final CloseableIterator<VariantContext> expectedIterator = expected.query("1", start, start + 1000000);
+            final CloseableIterator<VariantContext> actualIterator = actual.query("1", start, start + 1000000);
+            Assert.assertEquals(countIteratedElements(actualIterator), countIteratedElements(expectedIterator), "query at " + start);
+            expectedIterator.close();
+            actualIterator.close();
+        }
+        expected.close();
+        actual.close();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testIndexOnTheFlyHeaderAfterFeatures() throws IOException {
+        final File output = File.createTempFile("testIndexOnTheFly.", ".bed.gz");
+        output.deleteOnExit();
+        new File(output.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION).deleteOnExit();
+        try (final TabixIndexingFeatureWriter<Feature> writer = new TabixIndexingFeatureWriter<Feature>(output, TabixFormat.BED,
+                f -> f.getContig() + "\t" + (f.getStart() - 1) + "\t" + f.getEnd())) {
+            writer.add(new SimpleFeature("chr1", 1, 10));
+            writer.writeHeaderLine("track name=late");
+        }
+    }
 }
@@ -1,12 +1,22 @@
 package htsjdk.tribble.readers;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.tribble.TestUtils;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
@@ -49,4 +59,75 @@ public class AsciiLineReaderTest {
         assertEquals(expectedNumber, actualLines);
 
     }
+
+    /** @return random lines with every kind of terminator, some long and some empty, and the text holding them */
+    private static String makeLines(final int nLines, final List<String> lines) {
+        final Random random = new Random(42);
+        final String[] terminators = {"\n", "\r", "\r\n"};
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < nLines; i++) {
+            final StringBuilder line = new StringBuilder();
+            final int length = random.nextInt(20) == 0 ? random.nextInt(3000) : random.nextInt(30);
+            for (int j = 0; j < length; j++) line.append((char) (random.nextBoolean() ? 'a' + random.nextInt(26) : 0xa0 + random.nextInt(0x60)));
+            // an empty line ending with '\n' after one ending with '\r' would read as a single "\r\n" terminator
+            if (line.length() == 0 && text.length() > 0 && text.charAt(text.length() - 1) == '\r') line.append('x');
+            lines.add(line.toString());
+            text.append(line).append(terminators[random.nextInt(terminators.length)]);
+        }
+        return text.toString();
+    }
+
+    @DataProvider(name = "bufferSizes")
+    public Object[][] bufferSizes() {
+        return new Object[][]{{1}, {7}, {8}, {13}, {1000}, {512000}};
+    }
+
+    @Test(dataProvider = "bufferSizes")
+    public void testLineTerminators(final int bufferSize) throws IOException {
+        final List<String> expected = new ArrayList<String>();
+        final byte[] bytes = (makeLines(2000, expected) + "last line without terminator").getBytes(StandardCharsets.ISO_8859_1);
+        expected.add("last line without terminator");
+
+        final PositionalBufferedStream stream = new PositionalBufferedStream(new ByteArrayInputStream(bytes), bufferSize);
+        final AsciiLineReaderIterator iterator = new AsciiLineReaderIterator(new AsciiLineReader(stream));
+        for (final String line : expected) {
+            final long position = iterator.getPosition();
+            assertEquals(iterator.next(), line);
+            // the position of each line leads back to it
+            final AsciiLineReader reader = new AsciiLineReader(new ByteArrayInputStream(bytes, (int) position, bytes.length));
+            assertEquals(reader.readLine(), line);
+        }
+        assertTrue(!iterator.hasNext());
+        assertEquals(iterator.getPosition(), bytes.length);
+        iterator.close();
+    }
+
+    @Test
+    public void testBlockCompressedPositions() throws IOException {
+        final List<String> expected = new ArrayList<String>();
+        final String text = makeLines(5000, expected);
+        final File file = File.createTempFile("AsciiLineReaderTest.", ".gz");
+        file.deleteOnExit();
+        final BlockCompressedOutputStream out = new BlockCompressedOutputStream(file);
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        out.close();
+
+        final AsciiLineReaderIterator iterator = new AsciiLineReaderIterator(new AsciiLineReader(new BlockCompressedInputStream(file)));
+        final BlockCompressedInputStream seekable = new BlockCompressedInputStream(file);
+        final AsciiLineReader reader = new AsciiLineReader(seekable);
+        long previous = -1;
+        for (final String line : expected) {
+            final long position = iterator.getPosition();
+            assertTrue(position > previous);
+            previous = position;
+            assertEquals(iterator.next(), line);
+            // the virtual file pointer of each line leads back to it
+            seekable.seek(position);
+            assertEquals(reader.readLine(), line, "at " + (position >> 16) + ":" + (position & 0xffff));
+        }
+        assertTrue(!iterator.hasNext());
+        assertTrue(file.length() > 3 * 65536, "the lines should span several blocks");
+        iterator.close();
+        reader.close();
+    }
 }
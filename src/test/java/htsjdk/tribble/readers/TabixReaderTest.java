@@ -1,6 +1,7 @@
 package htsjdk.tribble.readers;
 
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.TestUtil;
 import htsjdk.tribble.TestUtils;
 import org.testng.Assert;
@@ -8,7 +9,10 @@ import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -159,4 +163,70 @@ public class TabixReaderTest {
         assertTrue(nRecords > 0);
 
     }
+
+    @Test
+    public void testReadLinesMatchByteAtATimeReading() throws IOException {
+        // a BufferedInputStream hides the BlockCompressedInputStream, so this reads the slow way
+        final InputStream slow = new BufferedInputStream(new BlockCompressedInputStream(new File(tabixFile)));
+        final TabixReader strings = new TabixReader(tabixFile);
+        final TabixReader views = new TabixReader(tabixFile);
+
+        int nLines = 0;
+        String expected;
+        while ((expected = TabixReader.readLine(slow)) != null) {
+            Assert.assertEquals(strings.readLine(), expected);
+            Assert.assertEquals(views.readLineAsCharSequence().toString(), expected);
+            nLines++;
+        }
+        Assert.assertTrue(nLines > 0);
+        Assert.assertNull(strings.readLine());
+        Assert.assertNull(views.readLineAsCharSequence());
+
+        slow.close();
+        strings.close();
+        views.close();
+    }
+
+    private static List<String> queryAll(final TabixReader reader) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        for (final String chr : new String[]{"1", "4", "X"}) {
+            for (int start = 1; start < 2000000; start += 50000) {
+                final TabixReader.Iterator iter = reader.query(chr, start, start + 100000);
+                String line;
+                while ((line = iter.next()) != null) lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testIndexCache() throws IOException {
+        try {
+            TabixReader.clearIndexCache();
+            Assert.assertEquals(TabixReader.getIndexCacheBytes(), 0);
+
+            final TabixReader first = new TabixReader(tabixFile);
+            final long cachedBytes = TabixReader.getIndexCacheBytes();
+            Assert.assertTrue(cachedBytes > 0);
+            final TabixReader second = new TabixReader(tabixFile);
+            Assert.assertEquals(TabixReader.getIndexCacheBytes(), cachedBytes);
+
+            TabixReader.setIndexCacheMaxBytes(0);
+            Assert.assertEquals(TabixReader.getIndexCacheBytes(), 0);
+            final TabixReader uncached = new TabixReader(tabixFile);
+            Assert.assertEquals(TabixReader.getIndexCacheBytes(), 0);
+
+            final List<String> expected = queryAll(uncached);
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(queryAll(first), expected);
+            Assert.assertEquals(queryAll(second), expected);
+            Assert.assertEquals(first.getChromosomes(), uncached.getChromosomes());
+
+            first.close();
+            second.close();
+            uncached.close();
+        } finally {
+            TabixReader.setIndexCacheMaxBytes(TabixReader.DEFAULT_INDEX_CACHE_MAX_BYTES);
+        }
+    }
 }
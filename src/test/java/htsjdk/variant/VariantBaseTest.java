@@ -27,9 +27,12 @@ package htsjdk.variant;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
 import org.testng.Assert;
 
 import java.io.File;
@@ -104,6 +107,27 @@ public class VariantBaseTest {
         }
     }
 
+    /**
+     * @return all of the records in an unindexed VCF file
+     */
+    public static List<VariantContext> readAll(final File vcf) {
+        final List<VariantContext> records = new ArrayList<VariantContext>();
+        try (final VCFFileReader reader = new VCFFileReader(vcf, false);
+             final CloseableIterator<VariantContext> it = reader.iterator()) {
+            while (it.hasNext()) records.add(it.next());
+        }
+        return records;
+    }
+
+    /**
+     * @return the header of an unindexed VCF file
+     */
+    public static VCFHeader readHeader(final File vcf) {
+        try (final VCFFileReader reader = new VCFFileReader(vcf, false)) {
+            return reader.getFileHeader();
+        }
+    }
+
     public static SAMSequenceDictionary createArtificialSequenceDictionary() {
         final int[] contigLengths = { 249250621, 243199373, 198022430, 191154276, 180915260, 171115067, 159138663, 146364022,
                                       141213431, 135534747, 135006516, 133851895, 115169878, 107349540, 102531392, 90354753,
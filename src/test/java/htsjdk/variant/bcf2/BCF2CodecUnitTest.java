@@ -0,0 +1,209 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.bcf2;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFFormatHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderLineType;
+import htsjdk.variant.vcf.VCFInfoHeaderLine;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class BCF2CodecUnitTest extends VariantBaseTest {
+    private static final File BCF = new File(variantTestDataRoot + "serialization_test.bcf");
+
+    private static List<VariantContext> readAll(final BCF2Codec codec) throws IOException {
+        return readAll(BCF, codec);
+    }
+
+    private static List<VariantContext> readAll(final File bcf, final BCF2Codec codec) throws IOException {
+        final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(bcf.getAbsolutePath(), codec, false);
+        final List<VariantContext> records = new ArrayList<VariantContext>();
+        for (final VariantContext vc : reader.iterator()) {
+            vc.getGenotypes().size(); // force the lazy genotypes to be decoded while the codec settings apply
+            records.add(vc);
+        }
+        reader.close();
+        return records;
+    }
+
+    @Test
+    public void testDecodeOnlyRequestedFields() throws IOException {
+        final List<VariantContext> all = readAll(new BCF2Codec());
+
+        final Set<String> infoKeys = new HashSet<String>();
+        final Set<String> formatKeys = new HashSet<String>();
+        for (final VariantContext vc : all) {
+            infoKeys.addAll(vc.getAttributes().keySet());
+            for (final Genotype g : vc.getGenotypes()) formatKeys.addAll(g.getExtendedAttributes().keySet());
+        }
+        Assert.assertFalse(infoKeys.isEmpty());
+        final String infoKey = infoKeys.iterator().next();
+
+        final BCF2Codec codec = new BCF2Codec();
+        codec.setInfoFieldsToDecode(Collections.singleton(infoKey));
+        codec.setFormatFieldsToDecode(Arrays.asList("GT"));
+        final List<VariantContext> some = readAll(codec);
+
+        Assert.assertEquals(some.size(), all.size());
+        for (int i = 0; i < all.size(); i++) {
+            final VariantContext expected = all.get(i);
+            final VariantContext actual = some.get(i);
+            Assert.assertEquals(actual.getStart(), expected.getStart());
+            Assert.assertEquals(actual.getAlleles(), expected.getAlleles());
+            Assert.assertEquals(actual.getFilters(), expected.getFilters());
+            Assert.assertEquals(actual.getAttributes().keySet(),
+                    expected.hasAttribute(infoKey) ? Collections.singleton(infoKey) : Collections.emptySet());
+            Assert.assertEquals(actual.getAttribute(infoKey), expected.getAttribute(infoKey));
+            for (final Genotype g : actual.getGenotypes()) {
+                final Genotype e = expected.getGenotype(g.getSampleName());
+                Assert.assertEquals(g.getAlleles(), e.getAlleles());
+                Assert.assertFalse(g.hasDP() || g.hasGQ() || g.hasAD() || g.hasPL());
+                Assert.assertTrue(g.getExtendedAttributes().isEmpty());
+            }
+        }
+    }
+
+    /**
+     * Writes a BCF file with one record, in which the INFO flag FL and the FORMAT field FF are encoded the way htslib
+     * encodes flags: as a bare 0x00 type descriptor, with neither a type nor any values.
+     */
+    private static File writeBcfWithUntypedFlags() throws IOException {
+        final Set<VCFHeaderLine> lines = new LinkedHashSet<VCFHeaderLine>();
+        lines.add(new VCFInfoHeaderLine("FL", 0, VCFHeaderLineType.Flag, "a flag"));
+        lines.add(new VCFInfoHeaderLine("DP", 1, VCFHeaderLineType.Integer, "depth"));
+        lines.add(new VCFFormatHeaderLine(VCFConstants.GENOTYPE_KEY, 1, VCFHeaderLineType.String, "Genotype"));
+        lines.add(new VCFFormatHeaderLine("FF", 0, VCFHeaderLineType.Integer, "a format field without values"));
+        final VCFHeader header = new VCFHeader(lines, Collections.singletonList("S1"));
+        header.setSequenceDictionary(new SAMSequenceDictionary(Collections.singletonList(new SAMSequenceRecord("1", 1000))));
+
+        final List<Allele> alleles = Arrays.asList(Allele.create("A", true), Allele.create("C"));
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("FL", true);
+        attributes.put("DP", 7);
+        final VariantContext vc = new VariantContextBuilder("test", "1", 100, 100, alleles).attributes(attributes)
+                .genotypes(new GenotypeBuilder("S1", alleles).make()).make();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final VariantContextWriter writer = new VariantContextWriterBuilder().setOutputBCFStream(out)
+                .unsetOption(Options.INDEX_ON_THE_FLY).build();
+        writer.writeHeader(header);
+        writer.add(vc);
+        writer.close();
+
+        // the writer may reorder the header lines, so take the dictionary from the header as written
+        final File bcf = createTempFile("untypedFlags.", ".bcf");
+        final OutputStream os = new FileOutputStream(bcf);
+        out.writeTo(os);
+        os.close();
+        final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(bcf.getAbsolutePath(), new BCF2Codec(), false);
+        final List<String> dictionary = BCF2Utils.makeDictionary((VCFHeader) reader.getHeader());
+        reader.close();
+
+        // the header is preceded by the 5 byte magic and its 4 byte length, and followed by the two block lengths
+        final ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        final int recordStart = 9 + bytes.getInt(5);
+        final byte[] sites = Arrays.copyOfRange(bytes.array(), recordStart + 8, recordStart + 8 + bytes.getInt(recordStart));
+        final byte[] genotypes = Arrays.copyOfRange(bytes.array(), recordStart + 8 + sites.length, bytes.capacity());
+        Assert.assertEquals(genotypes.length, bytes.getInt(recordStart + 4));
+
+        // htsjdk writes FL as the INT8 value 1, so replace its value with a bare 0x00
+        final byte flagKey = (byte) dictionary.indexOf("FL");
+        final ByteArrayOutputStream newSites = new ByteArrayOutputStream();
+        int flags = 0;
+        for (int i = 0; i < sites.length; i++) {
+            newSites.write(sites[i]);
+            if (i + 3 < sites.length && sites[i] == 0x11 && sites[i + 1] == flagKey && sites[i + 2] == 0x11 && sites[i + 3] == 0x01) {
+                newSites.write(flagKey);
+                newSites.write(0x00);
+                i += 3;
+                flags++;
+            }
+        }
+        Assert.assertEquals(flags, 1);
+        final byte[] patchedSites = newSites.toByteArray();
+        // add FF after GT, and count it in the high byte of n_sample|n_fmt
+        patchedSites[23]++;
+        final byte[] patchedGenotypes = Arrays.copyOf(genotypes, genotypes.length + 3);
+        patchedGenotypes[genotypes.length] = 0x11;
+        patchedGenotypes[genotypes.length + 1] = (byte) dictionary.indexOf("FF");
+        patchedGenotypes[genotypes.length + 2] = 0x00;
+
+        final OutputStream patched = new FileOutputStream(bcf);
+        patched.write(bytes.array(), 0, recordStart);
+        patched.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(patchedSites.length).putInt(patchedGenotypes.length).array());
+        patched.write(patchedSites);
+        patched.write(patchedGenotypes);
+        patched.close();
+        return bcf;
+    }
+
+    @Test
+    public void testSkipUntypedFlags() throws IOException {
+        final File bcf = writeBcfWithUntypedFlags();
+
+        final BCF2Codec codec = new BCF2Codec();
+        codec.setInfoFieldsToDecode(Collections.singleton("DP"));
+        codec.setFormatFieldsToDecode(Collections.singleton(VCFConstants.GENOTYPE_KEY));
+        final List<VariantContext> records = readAll(bcf, codec);
+        Assert.assertEquals(records.size(), 1);
+        final VariantContext vc = records.get(0);
+        Assert.assertEquals(vc.getAttributes().keySet(), Collections.singleton("DP"));
+        Assert.assertEquals(vc.getAttributeAsInt("DP", 0), 7);
+        Assert.assertEquals(vc.getGenotype("S1").getAlleles(), vc.getAlleles());
+        Assert.assertTrue(vc.getGenotype("S1").getExtendedAttributes().isEmpty());
+    }
+}
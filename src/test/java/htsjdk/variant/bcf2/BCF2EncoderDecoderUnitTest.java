@@ -26,6 +26,7 @@
 package htsjdk.variant.bcf2;
 
 // the imports for unit testing.
+import htsjdk.tribble.TribbleException;
 import htsjdk.variant.VariantBaseTest;
 import htsjdk.variant.variantcontext.writer.BCF2Encoder;
 import org.testng.Assert;
@@ -444,6 +445,53 @@ public class BCF2EncoderDecoderUnitTest extends VariantBaseTest {
         decodeRecord(block2, decoder);
     }
 
+    @Test(dataProvider = "BCF2EncodingTestProviderSequences", dependsOnMethods = "testBCF2EncodingTestProviderSequences")
+    public void testReusableBlocks(final List<BCF2TypedValue> block) throws IOException {
+        final byte[] record1 = encodeRecord(block);
+        final byte[] record2 = encodeRecord(forCombinations);
+        final InputStream stream = new ByteArrayInputStream(combineRecords(combineRecords(record1, record2), record1));
+
+        // the reused array may be larger than the block, which must not leak into decoding
+        final BCF2Decoder decoder = new BCF2Decoder();
+        decoder.readNextReusableBlock(record1.length, stream);
+        decodeRecord(block, decoder);
+        decoder.readNextReusableBlock(record2.length, stream);
+        decodeRecord(forCombinations, decoder);
+        decoder.readNextReusableBlock(record1.length, stream);
+        Assert.assertEquals(decoder.getBlockSize(), record1.length);
+        decodeRecord(block, decoder);
+    }
+
+    @Test(dataProvider = "BCF2EncodingTestProviderSequences", dependsOnMethods = "testBCF2EncodingTestProviderSequences")
+    public void testSkipTypedValues(final List<BCF2TypedValue> block) throws IOException {
+        final BCF2Decoder decoder = new BCF2Decoder(encodeRecord(block));
+        for ( int i = 0; i < block.size(); i++ ) {
+            Assert.assertFalse(decoder.blockIsFullyDecoded());
+            if ( i % 2 == 0 )
+                decoder.skipTypedValue();
+            else
+                myAssertEquals(block.get(i), decoder.decodeTypedValue());
+        }
+        Assert.assertTrue(decoder.blockIsFullyDecoded());
+    }
+
+    @Test
+    public void testSkipUntypedMissingValue() throws IOException {
+        // htslib writes flags as a bare 0x00 descriptor: no type and no values
+        final BCF2Decoder decoder = new BCF2Decoder(new byte[]{ 0x00, 0x00, 0x11, 0x05 });
+        decoder.skipTypedValue();
+        final byte typeDescriptor = decoder.readTypeDescriptor();
+        decoder.skipTypedValue(typeDescriptor, decoder.decodeNumberOfElements(typeDescriptor));
+        Assert.assertEquals(decoder.decodeTypedValue(), 5);
+        Assert.assertTrue(decoder.blockIsFullyDecoded());
+    }
+
+    @Test(expectedExceptions = TribbleException.class)
+    public void testSkipUnknownType() throws IOException {
+        // type 4 is not defined by the BCF2 spec
+        new BCF2Decoder(new byte[]{ 0x14, 0x00 }).skipTypedValue();
+    }
+
     // -----------------------------------------------------------------
     //
     // Test encoding / decoding arrays of ints
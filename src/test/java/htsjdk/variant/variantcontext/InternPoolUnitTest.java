@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext;
+
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+public class InternPoolUnitTest extends VariantBaseTest {
+
+    @Test
+    public void testInternString() {
+        final InternPool pool = new InternPool(InternPool.DEFAULT_MAX_BYTES, InternPool.DEFAULT_MAX_ALLELE_LENGTH);
+        final String first = pool.intern(new String("chr1"));
+        final String second = pool.intern(new String("chr1"));
+        Assert.assertEquals(first, "chr1");
+        Assert.assertSame(second, first);
+        Assert.assertNull(pool.intern(null));
+        Assert.assertEquals(pool.getStringCount(), 1);
+        Assert.assertEquals(pool.getHitCount(), 1);
+        Assert.assertEquals(pool.getMissCount(), 1);
+        Assert.assertTrue(pool.getApproximateBytes() > 0);
+    }
+
+    @Test
+    public void testInternAllele() {
+        final InternPool pool = new InternPool(InternPool.DEFAULT_MAX_BYTES, 4);
+        final Allele ref = pool.allele("ACGT", true);
+        final Allele alt = pool.allele("ACGT", false);
+        Assert.assertEquals(ref, Allele.create("ACGT", true));
+        Assert.assertEquals(alt, Allele.create("ACGT", false));
+        Assert.assertSame(pool.allele("ACGT", true), ref);
+        Assert.assertSame(pool.allele("ACGT", false), alt);
+        Assert.assertNotSame(ref, alt);
+
+        // single bases use Allele's constants, and long alleles are not pooled
+        Assert.assertSame(pool.allele("A", true), Allele.create("A", true));
+        Assert.assertEquals(pool.allele("ACGTA", false), Allele.create("ACGTA", false));
+        Assert.assertEquals(pool.getAlleleCount(), 2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadAllele() {
+        new InternPool(InternPool.DEFAULT_MAX_BYTES, InternPool.DEFAULT_MAX_ALLELE_LENGTH).allele("AXXT", false);
+    }
+
+    @Test
+    public void testBounded() {
+        final InternPool pool = new InternPool(10000, InternPool.DEFAULT_MAX_ALLELE_LENGTH);
+        for (int i = 0; i < 10000; i++) {
+            pool.intern("key" + i);
+            Assert.assertTrue(pool.getApproximateBytes() <= pool.getMaxBytes());
+        }
+        Assert.assertTrue(pool.getStringCount() < 10000);
+    }
+
+    @Test
+    public void testSharedAcrossCodecs() {
+        final VCFHeader header = new VCFHeader(Collections.<VCFHeaderLine>emptySet());
+        final InternPool pool = new InternPool(InternPool.DEFAULT_MAX_BYTES, InternPool.DEFAULT_MAX_ALLELE_LENGTH);
+        final String line = "chr1\t100\t.\tACG\tA,ACGT\t.\tPASS\tKEY=1";
+
+        final VariantContext[] decoded = new VariantContext[2];
+        for (int i = 0; i < decoded.length; i++) {
+            final VCFCodec codec = new VCFCodec();
+            codec.setVCFHeader(header, VCFHeaderVersion.VCF4_1);
+            codec.setInternPool(pool);
+            decoded[i] = codec.decode(line);
+        }
+
+        Assert.assertSame(decoded[1].getContig(), decoded[0].getContig());
+        Assert.assertSame(decoded[1].getReference(), decoded[0].getReference());
+        Assert.assertSame(decoded[1].getAlternateAllele(1), decoded[0].getAlternateAllele(1));
+        Assert.assertSame(decoded[1].getAttributes().keySet().iterator().next(), decoded[0].getAttributes().keySet().iterator().next());
+    }
+
+    @Test
+    public void testBuilder() {
+        final InternPool pool = new InternPool(InternPool.DEFAULT_MAX_BYTES, InternPool.DEFAULT_MAX_ALLELE_LENGTH);
+        final VariantContext first = new VariantContextBuilder().internPool(pool).source("test").chr(new String("chr1"))
+                .start(1).stop(2).alleles("AC", "A").filter(new String("LowQual")).make();
+        final VariantContext second = new VariantContextBuilder().internPool(pool).source("test").chr(new String("chr1"))
+                .start(1).stop(2).alleles("AC", "A").filter(new String("LowQual")).make();
+        Assert.assertSame(second.getContig(), first.getContig());
+        Assert.assertSame(second.getReference(), first.getReference());
+        Assert.assertSame(second.getFilters().iterator().next(), first.getFilters().iterator().next());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext.writer;
+
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.VariantContextComparator;
+import htsjdk.variant.vcf.VCFHeader;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class ExternalSortingVariantContextWriterUnitTest extends VariantBaseTest {
+    private static final File INPUT = new File(variantTestDataRoot + "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf");
+
+    private static VariantContextWriter newVcfWriter(final File output) {
+        return new VariantContextWriterBuilder()
+                .setOutputFile(output)
+                .unsetOption(Options.INDEX_ON_THE_FLY)
+                .build();
+    }
+
+    /**
+     * Spilled records go through BCF2, which re-formats floating point INFO values, so compare everything else.
+     */
+    private static String summarize(final VariantContext vc) {
+        return vc.getContig() + ":" + vc.getStart() + "-" + vc.getEnd() + " " + vc.getID() + " " + vc.getAlleles() + " " +
+                vc.getFilters() + " " + new TreeSet<String>(vc.getAttributes().keySet()) + " " + vc.getGenotypes();
+    }
+
+    @DataProvider(name = "maxRecordsInRam")
+    public Object[][] maxRecordsInRam() {
+        return new Object[][]{{1}, {10}, {100000}};
+    }
+
+    @Test(dataProvider = "maxRecordsInRam")
+    public void testSortShuffledRecords(final int maxRecordsInRam) throws Exception {
+        final VCFHeader header = readHeader(INPUT);
+        final List<VariantContext> records = readAll(INPUT);
+        Collections.shuffle(records, new Random(42));
+
+        final File expectedFile = createTempFile("expected.", ".vcf");
+        final VariantContextWriter expectedWriter = newVcfWriter(expectedFile);
+        expectedWriter.writeHeader(header);
+        for (final VariantContext vc : readAll(INPUT)) expectedWriter.add(vc);
+        expectedWriter.close();
+
+        final File sortedFile = createTempFile("sorted.", ".vcf");
+        final VariantContextWriter sortingWriter =
+                new ExternalSortingVariantContextWriter(newVcfWriter(sortedFile), maxRecordsInRam, true, sortedFile.getParentFile());
+        sortingWriter.writeHeader(header);
+        for (final VariantContext vc : records) sortingWriter.add(vc);
+        sortingWriter.close();
+
+        final List<VariantContext> expected = readAll(expectedFile);
+        final List<VariantContext> sorted = readAll(sortedFile);
+        Assert.assertEquals(sorted.size(), expected.size());
+
+        final VariantContextComparator comparator = new VariantContextComparator(header.getContigLines());
+        final List<String> expectedStrings = new ArrayList<String>();
+        final List<String> sortedStrings = new ArrayList<String>();
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i > 0) Assert.assertTrue(comparator.compare(sorted.get(i - 1), sorted.get(i)) <= 0, "Records out of order at " + i);
+            sortedStrings.add(summarize(sorted.get(i)));
+            expectedStrings.add(summarize(expected.get(i)));
+        }
+        // records at the same position may legitimately be emitted in a different order than in the input file
+        Collections.sort(expectedStrings);
+        Collections.sort(sortedStrings);
+        Assert.assertEquals(sortedStrings, expectedStrings);
+    }
+
+    @Test(dataProvider = "maxRecordsInRam")
+    public void testEqualPositionsKeepInputOrder(final int maxRecordsInRam) throws Exception {
+        final VCFHeader header = readHeader(INPUT);
+        final List<VariantContext> original = readAll(INPUT).subList(0, 50);
+
+        // three copies of each record, distinguished by ID, with the copies of a record added in shuffled order
+        final List<VariantContext> records = new ArrayList<VariantContext>();
+        int n = 0;
+        for (int copy = 0; copy < 3; copy++) {
+            final List<VariantContext> shuffled = new ArrayList<VariantContext>(original);
+            Collections.shuffle(shuffled, new Random(copy));
+            for (final VariantContext vc : shuffled) {
+                records.add(new VariantContextBuilder(vc).id("r" + n++).make());
+            }
+        }
+
+        final File sortedFile = createTempFile("sorted.", ".vcf");
+        final VariantContextWriter sortingWriter =
+                new ExternalSortingVariantContextWriter(newVcfWriter(sortedFile), maxRecordsInRam, true, sortedFile.getParentFile());
+        sortingWriter.writeHeader(header);
+        for (final VariantContext vc : records) sortingWriter.add(vc);
+        sortingWriter.close();
+
+        // Collections.sort is stable, so this is the order in which records at the same position were added
+        final List<VariantContext> expected = new ArrayList<VariantContext>(records);
+        Collections.sort(expected, new VariantContextComparator(header.getContigLines()));
+        final List<String> expectedIds = new ArrayList<String>();
+        for (final VariantContext vc : expected) expectedIds.add(vc.getContig() + ":" + vc.getStart() + " " + vc.getID());
+        final List<String> sortedIds = new ArrayList<String>();
+        for (final VariantContext vc : readAll(sortedFile)) sortedIds.add(vc.getContig() + ":" + vc.getStart() + " " + vc.getID());
+        Assert.assertEquals(sortedIds, expectedIds);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAddBeforeHeader() {
+        final VariantContextWriter writer = new ExternalSortingVariantContextWriter(newVcfWriter(createTempFile("noHeader.", ".vcf")), 10);
+        writer.add(readAll(INPUT).get(0));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testHeaderWithoutContigs() {
+        final VariantContextWriter writer = new ExternalSortingVariantContextWriter(newVcfWriter(createTempFile("noContigs.", ".vcf")), 10);
+        writer.writeHeader(new VCFHeader());
+    }
+}
@@ -4,13 +4,28 @@ import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.variant.VariantBaseTest;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.LazyAttributesMap;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 
@@ -57,4 +72,108 @@ public class AbstractVCFCodecTest extends VariantBaseTest {
 		Assert.assertEquals(new VCFCodec().getTabixFormat(), TabixFormat.VCF);
 		Assert.assertEquals(new VCF3Codec().getTabixFormat(), TabixFormat.VCF);
 	}
+
+	private static VCFCodec codecForInfoTests() {
+		final VCFHeader header = new VCFHeader(new HashSet<VCFHeaderLine>(Arrays.<VCFHeaderLine>asList(
+				new VCFInfoHeaderLine("DB", 0, VCFHeaderLineType.Flag, "flag"),
+				new VCFInfoHeaderLine("DP", 1, VCFHeaderLineType.Integer, "depth"),
+				new VCFInfoHeaderLine("AF", VCFHeaderLineCount.A, VCFHeaderLineType.Float, "frequency"),
+				new VCFInfoHeaderLine("END", 1, VCFHeaderLineType.Integer, "end"))));
+		final VCFCodec codec = new VCFCodec();
+		codec.setVCFHeader(header, VCFHeaderVersion.VCF4_2);
+		return codec;
+	}
+
+	@DataProvider(name="infoFields")
+	public Object[][] getInfoFields() {
+		final Map<String, Object> multi = new HashMap<String, Object>();
+		multi.put("DP", "12");
+		multi.put("AF", Arrays.asList("0.1", "0.2"));
+		multi.put("NF", true);
+		multi.put("E", VCFConstants.MISSING_VALUE_v4);
+		multi.put("DPX", "5");
+
+		final Map<String, Object> flags = new HashMap<String, Object>();
+		flags.put("DB", true);
+		flags.put("DP", VCFConstants.MISSING_VALUE_v4);
+
+		return new Object[][] {
+				{".", new HashMap<String, Object>()},
+				{"DP=10;DB=0;AF=0.1,0.2;NF;E=;DPX=5;DP=12", multi},
+				{"DB;DP", flags},
+				{"DB=1;DB=0", Collections.<String, Object>singletonMap("DB", "1")},
+		};
+	}
+
+	@Test(dataProvider = "infoFields")
+	public void testLazyInfoDecoding(final String info, final Map<String, Object> expected) {
+		final VCFCodec codec = codecForInfoTests();
+		final String line = "1\t100\t.\tA\tG,T\t.\tPASS\t" + info;
+
+		// looking up individual keys, including absent ones, must agree with a full decode
+		final VariantContext byKey = codec.decode(line);
+		for (final String key : Arrays.asList("DP", "AF", "NF", "E", "DPX", "DB", "D", "XX")) {
+			Assert.assertEquals(byKey.getAttribute(key), expected.get(key), key);
+			Assert.assertEquals(byKey.hasAttribute(key), expected.containsKey(key), key);
+		}
+		Assert.assertEquals(byKey.getAttributes(), expected);
+
+		Assert.assertEquals(codec.decode(line).getAttributes(), expected);
+	}
+
+	@Test
+	public void testLazyInfoEnd() {
+		final VariantContext vc = codecForInfoTests().decode("1\t100\t.\tA\t<DEL>\t.\tPASS\tDP=3;END=150");
+		Assert.assertEquals(vc.getEnd(), 150);
+		Assert.assertEquals(vc.getAttribute("DP"), "3");
+	}
+
+	@Test
+	public void testLazyInfoLookupsAreKept() {
+		final VariantContext vc = codecForInfoTests().decode("1\t100\t.\tA\tG,T\t.\tPASS\tDP=3;AF=0.1,0.2;K1=1;K2=2;K3=3;K4=4;K5=5;K6=6;K7=7;K8=8");
+		final Object af = vc.getAttribute("AF");
+		Assert.assertSame(vc.getAttribute("AF"), af);
+		// enough different keys to decode the whole map, which must keep the value already returned
+		for (int i = 1; i <= LazyAttributesMap.MAX_LOOKUPS_BEFORE_DECODING; i++) {
+			Assert.assertEquals(vc.getAttribute("K" + i), String.valueOf(i));
+		}
+		Assert.assertSame(vc.getAttribute("AF"), af);
+	}
+
+	@Test
+	public void testLazyInfoSharedBetweenThreads() throws Exception {
+		final VCFCodec codec = codecForInfoTests();
+		for (int n = 0; n < 50; n++) {
+			final VariantContext vc = codec.decode("1\t100\t.\tA\tG,T\t.\tPASS\tDP=3;AF=0.1,0.2;K1=1;K2=2;K3=3;K4=4;K5=5;K6=6;K7=7;K8=8;K9=9");
+			final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int t = 0; t < 4; t++) {
+				final int offset = t;
+				tasks.add(() -> {
+					for (int i = 0; i < 20; i++) {
+						final int k = 1 + (i + offset) % 9;
+						Assert.assertEquals(vc.getAttribute("K" + k), String.valueOf(k));
+						Assert.assertEquals(vc.getAttribute("DP"), "3");
+					}
+					return null;
+				});
+			}
+			final ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+			try {
+				for (final Future<Void> future : executor.invokeAll(tasks)) future.get();
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testLazyInfoSerialization() throws Exception {
+		final VariantContext vc = codecForInfoTests().decode("1\t100\t.\tA\tG\t.\tPASS\tDP=3;DB");
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(vc);
+		out.close();
+		final VariantContext copy = (VariantContext) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		Assert.assertEquals(copy.getAttributes(), vc.getAttributes());
+	}
 }
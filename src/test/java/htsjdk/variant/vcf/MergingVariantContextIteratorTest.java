@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class MergingVariantContextIteratorTest extends VariantBaseTest {
+    private static final File INPUT = new File(variantTestDataRoot + "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf");
+
+    private static File writeShard(final VCFHeader header, final List<VariantContext> records) {
+        final File shard = createTempFile("MergingVariantContextIteratorTest.", ".vcf");
+        final VariantContextWriter writer = new VariantContextWriterBuilder()
+                .setOutputFile(shard)
+                .unsetOption(Options.INDEX_ON_THE_FLY)
+                .build();
+        writer.writeHeader(header);
+        for (final VariantContext vc : records) writer.add(vc);
+        writer.close();
+        return shard;
+    }
+
+    @DataProvider(name = "shardingScenarios")
+    public Object[][] shardingScenarios() {
+        return new Object[][]{
+                {1, 0}, {3, 0}, {3, 10}, {20, 1}
+        };
+    }
+
+    @Test(dataProvider = "shardingScenarios")
+    public void testMergeInterleavedShards(final int nShards, final int asyncBufferSize) {
+        final VCFHeader header = readHeader(INPUT);
+        final List<VariantContext> expected = readAll(INPUT);
+
+        // deal the records out round-robin so that every shard is sorted but the shards interleave
+        final List<List<VariantContext>> shardRecords = new ArrayList<List<VariantContext>>();
+        for (int i = 0; i < nShards; i++) shardRecords.add(new ArrayList<VariantContext>());
+        for (int i = 0; i < expected.size(); i++) shardRecords.get(i % nShards).add(expected.get(i));
+        final List<VCFFileReader> readers = new ArrayList<VCFFileReader>();
+        for (final List<VariantContext> records : shardRecords) {
+            readers.add(new VCFFileReader(writeShard(header, records), false));
+        }
+
+        final MergingVariantContextIterator merged = new MergingVariantContextIterator(readers, asyncBufferSize);
+        Assert.assertEquals(merged.getMergedHeader().getGenotypeSamples(), header.getGenotypeSamples());
+        final List<VariantContext> actual = new ArrayList<VariantContext>();
+        while (merged.hasNext()) actual.add(merged.next());
+        merged.close();
+        for (final VCFFileReader reader : readers) reader.close();
+
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(actual.get(i).getContig(), expected.get(i).getContig());
+            Assert.assertEquals(actual.get(i).getStart(), expected.get(i).getStart());
+            Assert.assertEquals(actual.get(i).getAlleles(), expected.get(i).getAlleles());
+        }
+    }
+
+    @Test
+    public void testMergeDifferentSamples() {
+        final VCFHeader header = readHeader(INPUT);
+        final List<VariantContext> records = readAll(INPUT);
+        final List<String> allSamples = header.getGenotypeSamples();
+        Assert.assertTrue(allSamples.size() >= 3);
+        // the shards share one sample, and each has samples the other lacks
+        final List<String> samples1 = allSamples.subList(0, allSamples.size() / 2 + 1);
+        final List<String> samples2 = allSamples.subList(allSamples.size() / 2, allSamples.size());
+        final List<List<String>> shardSamples = Arrays.asList(samples1, samples2);
+
+        final List<VCFFileReader> readers = new ArrayList<VCFFileReader>();
+        for (int shard = 0; shard < 2; shard++) {
+            final Set<String> samples = new LinkedHashSet<String>(shardSamples.get(shard));
+            final List<VariantContext> shardRecords = new ArrayList<VariantContext>();
+            for (int i = shard; i < records.size(); i += 2) shardRecords.add(records.get(i).subContextFromSamples(samples));
+            final VCFHeader shardHeader = new VCFHeader(header.getMetaDataInInputOrder(), samples);
+            readers.add(new VCFFileReader(writeShard(shardHeader, shardRecords), false));
+        }
+
+        final MergingVariantContextIterator merged = new MergingVariantContextIterator(readers, 0);
+        Assert.assertEquals(merged.getMergedHeader().getGenotypeSamples(), allSamples);
+        int count = 0;
+        while (merged.hasNext()) {
+            final VariantContext vc = merged.next();
+            Assert.assertEquals(vc.getStart(), records.get(count).getStart());
+            // each record keeps the samples of the shard it came from
+            Assert.assertEquals(new ArrayList<String>(vc.getSampleNamesOrderedByName()),
+                    new ArrayList<String>(new TreeSet<String>(shardSamples.get(count % 2))));
+            count++;
+        }
+        merged.close();
+        for (final VCFFileReader reader : readers) reader.close();
+        Assert.assertEquals(count, records.size());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testUnsortedInput() {
+        final VCFHeader header = readHeader(INPUT);
+        final List<VariantContext> records = readAll(INPUT);
+        Collections.reverse(records);
+
+        final VCFFileReader reader = new VCFFileReader(writeShard(header, records), false);
+        final MergingVariantContextIterator merged = new MergingVariantContextIterator(Arrays.asList(reader), 0);
+        try {
+            while (merged.hasNext()) merged.next();
+        } finally {
+            merged.close();
+            reader.close();
+        }
+    }
+}
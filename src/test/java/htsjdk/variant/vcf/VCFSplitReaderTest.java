@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.FileSplit;
+import htsjdk.samtools.util.SplitCalculator;
+import htsjdk.tribble.TribbleException;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VCFSplitReaderTest {
+    private static final File MULTI_BLOCK_VCF = new File("src/test/resources/htsjdk/tribble/tabix/YRI.trio.2010_07.indel.sites.vcf.gz");
+    private static final File VCF_WITH_GENOTYPES = new File("src/test/resources/htsjdk/tribble/test.vcf.bgz");
+
+    @DataProvider(name = "splits")
+    public Object[][] splits() {
+        return new Object[][]{
+                {MULTI_BLOCK_VCF, 500L, 3},
+                {MULTI_BLOCK_VCF, 30000L, 3},
+                {MULTI_BLOCK_VCF, Long.MAX_VALUE, 1},
+                {VCF_WITH_GENOTYPES, 10L, 1},
+                {VCF_WITH_GENOTYPES, Long.MAX_VALUE, 1},
+        };
+    }
+
+    @Test(dataProvider = "splits")
+    public void testSplitsPartitionFile(final File file, final long splitSize, final int minNonEmptySplits) {
+        final List<String> expected = new ArrayList<String>();
+        final List<String> samples;
+        try (final VCFFileReader reader = new VCFFileReader(file, false)) {
+            samples = reader.getFileHeader().getGenotypeSamples();
+            for (final VariantContext vc : reader) {
+                expected.add(vc.toStringDecodeGenotypes());
+            }
+        }
+
+        final VCFSplitReader splitReader = new VCFSplitReader(file);
+        Assert.assertEquals(splitReader.getFileHeader().getGenotypeSamples(), samples);
+        final List<FileSplit> splits = SplitCalculator.calculateSplits(file, splitSize);
+        final List<String> actual = new ArrayList<String>();
+        int nonEmptySplits = 0;
+        for (final FileSplit split : splits) {
+            final int before = actual.size();
+            try (final CloseableIterator<VariantContext> iterator = splitReader.read(split)) {
+                while (iterator.hasNext()) {
+                    actual.add(iterator.next().toStringDecodeGenotypes());
+                }
+            }
+            if (actual.size() > before) nonEmptySplits++;
+        }
+        Assert.assertEquals(actual.size(), expected.size());
+        Assert.assertEquals(actual, expected);
+        Assert.assertTrue(nonEmptySplits >= minNonEmptySplits, "non-empty splits: " + nonEmptySplits);
+    }
+
+    @Test(expectedExceptions = TribbleException.class)
+    public void testUncompressedFileCannotBeSplit() {
+        new VCFSplitReader(new File("src/test/resources/htsjdk/variant/ex2.vcf"));
+    }
+}